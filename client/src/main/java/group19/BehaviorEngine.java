@@ -0,0 +1,42 @@
+package group19;
+
+import java.io.IOException;
+
+/**
+ * Runs the distributed light behavior: it receives the light configuration and
+ * the sensor events, and emits the light settings to a
+ * {@link SmartLightEventListener}.
+ * 
+ * See {@link BehaviorEngines} for the supported program formats.
+ */
+public interface BehaviorEngine {
+
+	public void setListener(SmartLightEventListener listener);
+
+	/**
+	 * Starts the behavior.
+	 * 
+	 * @throws IOException
+	 *             If an error occurred during startup.
+	 */
+	public void start() throws IOException;
+
+	/**
+	 * Stops the behavior and releases its resources.
+	 */
+	public void destroy();
+
+	public void setLocation(double x, double y);
+
+	public void setOwnership(String ownershipJson);
+
+	public void notifySensorOccupied(String sensor_id, boolean is_occupied);
+
+	public void setUser3(String user_id);
+
+	/**
+	 * @return The time between a sensor event and the resulting light
+	 *         settings.
+	 */
+	public ReactionLatency getReactionLatency();
+}
@@ -0,0 +1,54 @@
+package group19;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Creates the light behavior for a (verified) program:
+ * <ul>
+ * <li>no program: the in-process default behavior
+ * ({@link OwnershipBehavior});</li>
+ * <li>a script starting with {@code #!}: the script runs as a child process
+ * ({@link SmartLight}), this requires its interpreter on the device;</li>
+ * <li>a text starting with {@code behavior rules}: the in-process rule
+ * interpreter ({@link RuleBehavior});</li>
+ * <li>a text starting with {@code behavior ownership}: the in-process default
+ * behavior.</li>
+ * </ul>
+ * Programs are distributed in the same signed format whatever the engine (see
+ * {@link SignedData}).
+ */
+public class BehaviorEngines {
+
+	private BehaviorEngines() {
+	}
+
+	public static BehaviorEngine create(byte[] program) throws IOException {
+		if (program == null) {
+			return new OwnershipBehavior();
+		}
+		String text = new String(program, StandardCharsets.UTF_8);
+		if (text.startsWith("#!")) {
+			return new SmartLight(program);
+		}
+		String header = firstStatement(text);
+		switch (header) {
+		case "behavior rules":
+			return new RuleBehavior(text);
+		case "behavior ownership":
+			return new OwnershipBehavior();
+		default:
+			throw new IOException("Unsupported light behavior program: " + header);
+		}
+	}
+
+	private static String firstStatement(String text) {
+		for (String line : text.split("\r?\n")) {
+			line = line.trim();
+			if (!line.isEmpty() && !line.startsWith("#")) {
+				return line;
+			}
+		}
+		return "";
+	}
+}
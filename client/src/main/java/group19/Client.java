@@ -60,7 +60,9 @@ public class Client {
 		options.addOption("h", "help", false, "Display help information.");
 		options.addOption("u", "server", true, "Set the LWM2M or Bootstrap server URL.\nDefault: localhost:5683.");
 		options.addOption("m", "mqtt", true, "Set the MQTT broker address.\nDefault the LWM2M broker host.");
-		options.addOption("t", "type", true, "Set the device type (light or sensor).\nDefault: light.");
+		options.addOption("t", "type", true,
+				"Set the device type (light, sensor or aggregator).\nDefault: light.\n"
+						+ "The aggregator merges the sensor states into per-room summaries for the lights.");
 		options.addOption("d", "discover", false,
 				"Discover the LWM2M server through mDNS-SD (ignores the --server parameter).");
 		options.addOption("n", "number", true, "Device number. Default: 1.");
@@ -92,6 +94,7 @@ public class Client {
 
 		// set device type
 		boolean isSensor = false;
+		boolean isAggregator = false;
 		if (cl.hasOption("t")) {
 			switch (cl.getOptionValue("t")) {
 			case "light":
@@ -99,6 +102,9 @@ public class Client {
 			case "sensor":
 				isSensor = true;
 				break;
+			case "aggregator":
+				isAggregator = true;
+				break;
 			default:
 				System.err.println("Invalid value for option \"--type\".");
 				return;
@@ -165,6 +171,11 @@ public class Client {
 			return;
 		}
 
+		if (isAggregator) {
+			connectMqtt(String.format("Aggregator-%d-%d", GROUP_NO, deviceNumber), mqttServerURI,
+					new SensorAggregator());
+			return;
+		}
 		createClient(endpoint, coapServerURI, mqttServerURI, isSensor, roomId);
 	}
 
@@ -246,10 +257,14 @@ public class Client {
 		});
 
 		// Register MQTT client to update SmartLight or publish sensor data.
+		connectMqtt(endpoint, mqttServerURI, mqttClientUser);
+	}
+
+	private static void connectMqtt(String clientId, URI mqttServerURI, final MqttClientUser mqttClientUser) {
 		// Use MemoryPersistence since we do not care about reliability across
 		// client restarts.
 		try {
-			final MqttAsyncClient mqttClient = new MqttAsyncClient(mqttServerURI.toString(), endpoint,
+			final MqttAsyncClient mqttClient = new MqttAsyncClient(mqttServerURI.toString(), clientId,
 					new MemoryPersistence());
 			MqttConnectOptions mqttOptions = new MqttConnectOptions();
 			mqttOptions.setAutomaticReconnect(true);
@@ -0,0 +1,122 @@
+package group19;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for the light behaviors evaluated in the client JVM. Events are
+ * handled one at a time, on the calling thread; the delayed settings are
+ * applied by a timer thread.
+ */
+public abstract class InProcessBehavior implements BehaviorEngine {
+
+	private final static Logger LOG = LoggerFactory.getLogger(InProcessBehavior.class);
+
+	private final ReactionLatency latency = new ReactionLatency("Light behavior");
+	private SmartLightEventListener listener;
+	private ScheduledExecutorService timer;
+
+	@Override
+	public void setListener(SmartLightEventListener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public synchronized void start() throws IOException {
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "light-behavior-timer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public synchronized void destroy() {
+		if (timer != null) {
+			timer.shutdownNow();
+			timer = null;
+		}
+	}
+
+	@Override
+	public synchronized void setLocation(double x, double y) {
+		onLocation(x, y);
+	}
+
+	@Override
+	public synchronized void setOwnership(String ownershipJson) {
+		try {
+			onOwnership(ownershipJson);
+		} catch (RuntimeException e) {
+			LOG.warn("Invalid ownership information", e);
+		}
+	}
+
+	@Override
+	public synchronized void notifySensorOccupied(String sensor_id, boolean is_occupied) {
+		long start = System.nanoTime();
+		onSensorOccupied(sensor_id, is_occupied);
+		latency.record(sensor_id, start);
+	}
+
+	@Override
+	public synchronized void setUser3(String user_id) {
+		onUser3(user_id);
+	}
+
+	@Override
+	public ReactionLatency getReactionLatency() {
+		return latency;
+	}
+
+	protected abstract void onLocation(double x, double y);
+
+	protected abstract void onOwnership(String ownershipJson);
+
+	protected abstract void onSensorOccupied(String sensorId, boolean isOccupied);
+
+	protected abstract void onUser3(String userId);
+
+	/**
+	 * Sends a light setting to the listener.
+	 */
+	protected void emit(String key, String value) {
+		LOG.debug("Emitting {} {}", key, value);
+		if (listener != null) {
+			try {
+				listener.childValueEmitted(key, value);
+			} catch (IllegalArgumentException e) {
+				LOG.warn("Invalid option emitted by light behavior", e);
+			}
+		}
+	}
+
+	/**
+	 * Runs a task after a delay, with the lock of this behavior held.
+	 * 
+	 * @return The scheduled task, or null if the behavior is not running.
+	 */
+	protected synchronized ScheduledFuture<?> schedule(final Runnable task, long delay, TimeUnit unit) {
+		if (timer == null) {
+			return null;
+		}
+		return timer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (InProcessBehavior.this) {
+					task.run();
+				}
+			}
+		}, delay, unit);
+	}
+}
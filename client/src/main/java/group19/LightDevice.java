@@ -3,6 +3,9 @@ package group19;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.SignatureException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.leshan.client.resource.BaseInstanceEnabler;
 import org.eclipse.leshan.core.node.LwM2mResource;
@@ -16,8 +19,6 @@ import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import group19.SensorDevice.SensorState;
-
 public class LightDevice extends BaseInstanceEnabler
 		implements SmartLightEventListener, MqttClientUser, IMqttMessageListener {
 
@@ -37,10 +38,13 @@ public class LightDevice extends BaseInstanceEnabler
 	private BehaviorDeployment behaviorDeployment = BehaviorDeployment.Distributed;
 
 	private LightProvider realDevice;
-	private SmartLight smartLight;
+	private BehaviorEngine smartLight;
 	private String ownershipPriorityJson;
 	private MqttAsyncClient mqttClient;
 	private String mqttTopicFilter;
+	// sensor states of the last room occupancy summary
+	private final Map<String, Boolean> sensorsOccupied = new HashMap<>();
+	private final ReactionLatency pipelineLatency = new ReactionLatency("Sensor pipeline");
 	private byte[] smartLightProgram;
 
 	public LightDevice(String lightId) {
@@ -230,7 +234,7 @@ public class LightDevice extends BaseInstanceEnabler
 			return;
 		}
 		try {
-			smartLight = new SmartLight(smartLightProgram);
+			smartLight = BehaviorEngines.create(smartLightProgram);
 			smartLight.setListener(this);
 			smartLight.start();
 			smartLight.setLocation(locationX, locationY);
@@ -244,7 +248,7 @@ public class LightDevice extends BaseInstanceEnabler
 
 	private void installCustomLightBehavior(byte[] program) {
 		this.smartLightProgram = program;
-		// Kill any existing smart light processes.
+		// Stop any existing smart light behavior.
 		if (smartLight != null) {
 			LOG.info("Replacing existing SmartLight program.");
 			// if a smart light service is already running, replace it.
@@ -388,7 +392,8 @@ public class LightDevice extends BaseInstanceEnabler
 			LOG.warn("Not subscribing to sensor state, room is unknown");
 			return;
 		}
-		String topic = String.format("TUE/%s/Sensor/%s/State", roomId, "+");
+		// the sensor states are aggregated per room, see SensorAggregator
+		String topic = RoomOccupancy.topic(roomId);
 		if (mqttTopicFilter != null && mqttTopicFilter.equals(topic)) {
 			LOG.info("Topic did not change, skipping re-subscription");
 			return;
@@ -399,7 +404,10 @@ public class LightDevice extends BaseInstanceEnabler
 				mqttClient.unsubscribe(mqttTopicFilter);
 			}
 			mqttTopicFilter = topic;
-			mqttClient.subscribe(topic, 0, this);
+			synchronized (sensorsOccupied) {
+				sensorsOccupied.clear();
+			}
+			mqttClient.subscribe(topic, 1, this);
 			LOG.info("Subscribed to MQTT topic " + topic);
 		} catch (MqttException e) {
 			LOG.warn("Failed to subscribe to MQTT topic", e);
@@ -408,14 +416,34 @@ public class LightDevice extends BaseInstanceEnabler
 
 	@Override
 	public void messageArrived(String topic, MqttMessage message) throws Exception {
-		String[] parts = topic.split("/");
-		String roomId = parts[1];
-		String sensorId = parts[3];
-		String payload = new String(message.getPayload());
-		// We subscribed only to the long topic, so assume sufficient parts.
-		LOG.info("MQTT message received: roomId={} sensorId={} payload={}", roomId, sensorId, payload);
-
-		boolean isOccupied = SensorState.valueOf(payload) == SensorState.OCCUPIED;
+		RoomOccupancy occupancy;
+		try {
+			occupancy = RoomOccupancy.decode(message.getPayload());
+		} catch (IOException e) {
+			LOG.warn("Invalid occupancy summary on topic {}", topic, e);
+			return;
+		}
+		LOG.debug("Occupancy summary received on {}: {}", topic, occupancy);
+
+		// only notify the behavior of the sensors which changed since the last summary. A sensor
+		// omitted from the summary is unknown (e.g. the aggregator restarted), not free: the
+		// aggregator reports a sensor leaving the room as free before omitting it.
+		Map<String, Boolean> sensors = occupancy.getSensors();
+		synchronized (sensorsOccupied) {
+			for (Map.Entry<String, Boolean> sensor : sensors.entrySet()) {
+				Boolean previous = sensorsOccupied.put(sensor.getKey(), sensor.getValue());
+				if (!sensor.getValue().equals(previous)) {
+					notifySensorOccupied(sensor.getKey(), sensor.getValue());
+				}
+			}
+		}
+		if (!message.isRetained()) {
+			long latency = System.currentTimeMillis() - occupancy.getEventTime();
+			pipelineLatency.recordLatency(roomId, TimeUnit.MILLISECONDS.toNanos(Math.max(latency, 0)));
+		}
+	}
+
+	private void notifySensorOccupied(String sensorId, boolean isOccupied) {
 		if (smartLight != null) {
 			smartLight.notifySensorOccupied(sensorId, isOccupied);
 		}
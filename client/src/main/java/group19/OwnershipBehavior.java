@@ -0,0 +1,275 @@
+package group19;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Default adaptive light behavior, the in-process equivalent of
+ * {@code smartlight.py} (see that file for the expected transformations).
+ */
+public class OwnershipBehavior extends InProcessBehavior {
+
+	private final static Logger LOG = LoggerFactory.getLogger(OwnershipBehavior.class);
+
+	/** Delay before applying the settings when a user leaves. */
+	private static final long LEAVE_DELAY = 3000; // ms
+
+	private final long leaveDelayInMs;
+	private Double lightX, lightY;
+
+	// Map from sensor ID or user ID to the same sensor/user info
+	private final Map<String, UserInfo> sensorsDb = new LinkedHashMap<>();
+	private final Map<String, UserInfo> usersDb = new LinkedHashMap<>();
+
+	// Map from sensor ID to true/false
+	private final Map<String, Boolean> sensorsOccupied = new LinkedHashMap<>();
+	// Current active user (info)
+	private UserInfo currentSetting;
+	// Whether any user is present, used for deciding whether to dim/turn off
+	// lights.
+	private boolean anyUserPresent;
+
+	// Delayed application of settings, a timer which already started only
+	// applies its settings if it is still the current one.
+	private ScheduledFuture<?> delayedTimer;
+	private int delayedGeneration;
+
+	public OwnershipBehavior() {
+		this(LEAVE_DELAY);
+	}
+
+	OwnershipBehavior(long leaveDelayInMs) {
+		this.leaveDelayInMs = leaveDelayInMs;
+	}
+
+	@Override
+	protected void onLocation(double x, double y) {
+		lightX = x;
+		lightY = y;
+	}
+
+	/**
+	 * Loads information about sensors and users from a JSON string.
+	 */
+	@Override
+	protected void onOwnership(String ownershipJson) {
+		// If current user is USER3, remember it for priority reasons.
+		String oldUser3 = null;
+		if (currentSetting != null && currentSetting.userType.equals("USER3")) {
+			oldUser3 = currentSetting.userId;
+		}
+
+		// Clear all information from the previous DB and load new stuff.
+		sensorsDb.clear();
+		usersDb.clear();
+		currentSetting = null;
+		for (JsonElement element : new JsonParser().parse(ownershipJson).getAsJsonArray()) {
+			UserInfo info = new UserInfo(element.getAsJsonObject());
+			usersDb.put(info.userId, info);
+			sensorsDb.put(info.sensorId, info);
+		}
+		LOG.info("Loaded new userdb: {}", usersDb.keySet());
+
+		// Set user information with current information object.
+		applyLightSetting(findNextUser(oldUser3), false);
+	}
+
+	/**
+	 * Find the user with the highest priority according to the currently
+	 * known sensor occupance information.
+	 */
+	private UserInfo findNextUser(String user3Id) {
+		UserInfo user2 = null, user3 = null;
+		for (UserInfo info : usersDb.values()) {
+			if (Boolean.TRUE.equals(sensorsOccupied.get(info.sensorId))) {
+				switch (info.userType) {
+				case "USER1":
+					return info;
+				case "USER2":
+					user2 = info;
+					break;
+				case "USER3":
+					if (info.userId.equals(user3Id)) {
+						user3 = info;
+					}
+					if (currentSetting != null && currentSetting.userId.equals(info.userId)) {
+						user3 = info;
+					}
+					break;
+				}
+			}
+		}
+		return user2 != null ? user2 : user3;
+	}
+
+	/**
+	 * Save the sensor state. If the update results in a ownership change (due
+	 * to priority), apply the change immediately (if occupied) or delay change
+	 * (if not occupied).
+	 */
+	@Override
+	protected void onSensorOccupied(String sensorId, boolean isOccupied) {
+		// Note: even if sensor is known in db, remember in case we get updates
+		// later.
+		sensorsOccupied.put(sensorId, isOccupied);
+		applyLightSetting(findNextUser(null), !isOccupied);
+	}
+
+	/**
+	 * Calculate priority of the user. Lower values have higher priority.
+	 */
+	private double priority(UserInfo info) {
+		if (lightX == null || lightY == null) {
+			return 0;
+		}
+		// Use Euclidean distance (actually, omit sqrt because the exact value
+		// does not matter, only the relative distance between two users).
+		double dx = info.locationX - lightX;
+		double dy = info.locationY - lightY;
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * User3 is allowed to take ownership if the light is free. If it is used
+	 * by another user3 with lower priority, ownership can also be taken.
+	 */
+	@Override
+	protected void onUser3(String userId) {
+		UserInfo user = usersDb.get(userId);
+		if (user == null) {
+			LOG.warn("Unknown user: {}", userId);
+			return;
+		}
+		if (!user.userType.equals("USER3")) {
+			LOG.warn("Not a user3: {}", userId);
+			return;
+		}
+
+		if (currentSetting != null) {
+			if (!currentSetting.userType.equals("USER3")) {
+				LOG.warn("Other user type is still active");
+				return;
+			}
+			if (priority(currentSetting) < priority(user)) {
+				LOG.warn("Other user3 has higher priority than you");
+				return;
+			}
+		}
+
+		// Yes, user3 is allowed to be set and take ownership. Assume that the
+		// user is present (in case the light was added to network after
+		// sensor).
+		sensorsOccupied.put(userId, true);
+		applyLightSetting(user, false);
+	}
+
+	/**
+	 * Emits the appropriate settings to make the settings from "info"
+	 * effective. If "info" is null, take into account whether people are in
+	 * the room.
+	 */
+	private void applyLightSetting(final UserInfo info, boolean delay) {
+		if (delayedTimer != null) {
+			delayedTimer.cancel(false);
+			delayedTimer = null;
+			delayedGeneration++;
+		}
+
+		// Assume that all advertised sensors belong to this room.
+		boolean anyUserPresentNow = sensorsOccupied.containsValue(true);
+
+		if (Objects.equals(info, currentSetting) && anyUserPresent == anyUserPresentNow) {
+			LOG.debug("Nothing to do, situation is unchanged");
+			return;
+		}
+
+		if (delay) {
+			final int generation = delayedGeneration;
+			delayedTimer = schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (generation == delayedGeneration) {
+						delayedTimer = null;
+						applyLightSetting(info, false);
+					}
+				}
+			}, leaveDelayInMs, TimeUnit.MILLISECONDS);
+			return;
+		}
+
+		if (info != null) {
+			emit("color", info.lightColor);
+			emit("lowlight", info.lowLight);
+			emit("userid", info.userId);
+			emit("state", "USED");
+			emit("usertype", info.userType);
+		} else {
+			emit("state", "FREE");
+			if (anyUserPresentNow) {
+				emit("color", "(250, 200, 100)");
+				emit("lowlight", "true");
+			} else {
+				// Assume that black is the same as "off".
+				emit("color", "(0, 0, 0)");
+			}
+		}
+		currentSetting = info;
+		anyUserPresent = anyUserPresentNow;
+		LOG.debug("New state: present={} setting={}", anyUserPresent, currentSetting);
+	}
+
+	/**
+	 * An entry of the ownership JSON array.
+	 */
+	private static class UserInfo {
+		private final String userType;
+		private final String userId;
+		private final String sensorId;
+		private final String lightColor;
+		private final String lowLight;
+		private final double locationX;
+		private final double locationY;
+
+		public UserInfo(JsonObject json) {
+			userType = json.get("user_type").getAsString();
+			userId = json.get("user_id").getAsString();
+			sensorId = json.get("sensor_id").getAsString();
+			lightColor = json.get("light_color").getAsString();
+			lowLight = json.get("low_light").getAsString();
+			locationX = json.get("user_location_x").getAsDouble();
+			locationY = json.get("user_location_y").getAsDouble();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof UserInfo)) {
+				return false;
+			}
+			UserInfo other = (UserInfo) obj;
+			return userType.equals(other.userType) && userId.equals(other.userId)
+					&& sensorId.equals(other.sensorId) && lightColor.equals(other.lightColor)
+					&& lowLight.equals(other.lowLight) && locationX == other.locationX
+					&& locationY == other.locationY;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(userType, userId, sensorId);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("UserInfo [userType=%s, userId=%s, sensorId=%s]", userType, userId, sensorId);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package group19;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the time between a sensor event and its handling, e.g. the
+ * reaction of the light behavior.
+ */
+public class ReactionLatency {
+
+	private final static Logger LOG = LoggerFactory.getLogger(ReactionLatency.class);
+
+	/** Number of events between two summaries in the log. */
+	private static final int SUMMARY_INTERVAL = 1000;
+
+	private final String name;
+	private long count;
+	private long totalNanos;
+	private long maxNanos;
+	private long lastNanos;
+
+	/**
+	 * @param name
+	 *            What is measured, used in the log messages.
+	 */
+	public ReactionLatency(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Records the reaction to a sensor event.
+	 * 
+	 * @param sensorId
+	 *            The sensor which triggered the event.
+	 * @param startNanos
+	 *            The {@link System#nanoTime()} at which the event was received.
+	 */
+	public void record(String sensorId, long startNanos) {
+		recordLatency(sensorId, System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Records the latency of an event.
+	 * 
+	 * @param source
+	 *            The sensor or room which triggered the event.
+	 */
+	public void recordLatency(String source, long nanos) {
+		long n;
+		synchronized (this) {
+			n = ++count;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+			lastNanos = nanos;
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("{}: event from {} handled in {} us", name, source, TimeUnit.NANOSECONDS.toMicros(nanos));
+		}
+		if (n % SUMMARY_INTERVAL == 0) {
+			LOG.info("{} latency: {}", name, this);
+		}
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized long getLastMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(lastNanos);
+	}
+
+	public synchronized long getAverageMicros() {
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos / count);
+	}
+
+	public synchronized long getMaxMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(maxNanos);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("events=%d last=%dus avg=%dus max=%dus", count, getLastMicros(), getAverageMicros(),
+				getMaxMicros());
+	}
+}
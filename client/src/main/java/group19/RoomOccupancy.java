@@ -0,0 +1,118 @@
+package group19;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Occupancy summary of all the sensors of a room, published by the
+ * {@link SensorAggregator} on {@code TUE/<roomId>/Occupancy}.
+ * 
+ * Binary payload (big endian):
+ * 
+ * <pre>
+ * version        1 byte  (1)
+ * sequence       4 bytes (incremented for each summary of the room)
+ * eventTime      8 bytes (sensor time of the oldest change in this summary, ms since epoch)
+ * count          2 bytes
+ * count times:
+ *   state        1 byte  (1 if occupied, 0 otherwise)
+ *   idLength     1 byte
+ *   sensorId     idLength bytes, UTF-8
+ * </pre>
+ */
+public class RoomOccupancy {
+
+	private static final byte VERSION = 1;
+
+	private final int sequence;
+	private final long eventTime;
+	private final Map<String, Boolean> sensors;
+
+	public RoomOccupancy(int sequence, long eventTime, Map<String, Boolean> sensors) {
+		this.sequence = sequence;
+		this.eventTime = eventTime;
+		this.sensors = sensors;
+	}
+
+	public static String topic(String roomId) {
+		return String.format("TUE/%s/Occupancy", roomId);
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return The time at which the oldest change of this summary was detected
+	 *         by its sensor (ms since epoch).
+	 */
+	public long getEventTime() {
+		return eventTime;
+	}
+
+	/**
+	 * @return The state of each sensor of the room, true if occupied.
+	 */
+	public Map<String, Boolean> getSensors() {
+		return Collections.unmodifiableMap(sensors);
+	}
+
+	public byte[] encode() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(15 + sensors.size() * 12);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(VERSION);
+			out.writeInt(sequence);
+			out.writeLong(eventTime);
+			out.writeShort(sensors.size());
+			for (Map.Entry<String, Boolean> sensor : sensors.entrySet()) {
+				byte[] id = sensor.getKey().getBytes(StandardCharsets.UTF_8);
+				if (id.length > 255) {
+					throw new IllegalArgumentException("Sensor ID too long: " + sensor.getKey());
+				}
+				out.writeByte(sensor.getValue() ? 1 : 0);
+				out.writeByte(id.length);
+				out.write(id);
+			}
+		} catch (IOException e) {
+			// not possible with a byte array
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @throws IOException
+	 *             If the payload is not a valid summary.
+	 */
+	public static RoomOccupancy decode(byte[] payload) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+			byte version = in.readByte();
+			if (version != VERSION) {
+				throw new IOException("Unsupported occupancy summary version " + version);
+			}
+			int sequence = in.readInt();
+			long eventTime = in.readLong();
+			int count = in.readUnsignedShort();
+			Map<String, Boolean> sensors = new LinkedHashMap<>(count * 2);
+			for (int i = 0; i < count; i++) {
+				boolean occupied = in.readByte() != 0;
+				byte[] id = new byte[in.readUnsignedByte()];
+				in.readFully(id);
+				sensors.put(new String(id, StandardCharsets.UTF_8), occupied);
+			}
+			return new RoomOccupancy(sequence, eventTime, sensors);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RoomOccupancy [sequence=%d, eventTime=%d, sensors=%s]", sequence, eventTime, sensors);
+	}
+}
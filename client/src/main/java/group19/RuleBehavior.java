@@ -0,0 +1,517 @@
+package group19;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Light behavior described by a list of rules, evaluated in the client JVM.
+ * 
+ * A program is a text starting with a {@code behavior rules} line, followed by
+ * one rule per line ({@code #} starts a comment):
+ * 
+ * <pre>
+ * when &lt;condition&gt; [after &lt;seconds&gt;] then &lt;key&gt; &lt;value&gt; [; &lt;key&gt; &lt;value&gt;]...
+ * </pre>
+ * 
+ * On each event, the rules are evaluated in order and the first rule whose
+ * condition holds is selected. When the selected rule changes, its settings
+ * are emitted, after the given delay if any (the delay is canceled if another
+ * rule is selected meanwhile). The settings are the same as the ones of
+ * {@code smartlight.py}: {@code color}, {@code lowlight}, {@code userid},
+ * {@code state} and {@code usertype}.
+ * 
+ * The condition supports {@code and}, {@code or}, {@code not}, comparisons
+ * ({@code == != < <= > >=}), parentheses, numbers, {@code "strings"},
+ * {@code true}/{@code false} and the following variables and functions:
+ * <ul>
+ * <li>{@code occupied}: number of occupied sensors</li>
+ * <li>{@code sensor}, {@code sensor_occupied}: sensor and state of the last
+ * sensor event</li>
+ * <li>{@code user3}: the last user ID written by a user3</li>
+ * <li>{@code x}, {@code y}: light location</li>
+ * <li>{@code is_occupied("sensorId")}: state of a given sensor</li>
+ * </ul>
+ * 
+ * Example:
+ * 
+ * <pre>
+ * behavior rules
+ * when is_occupied("desk1") then state USED; color (255, 0, 0); lowlight false
+ * when occupied &gt; 0 then state FREE; color (250, 200, 100); lowlight true
+ * when occupied == 0 after 3 then state FREE; color (0, 0, 0)
+ * </pre>
+ */
+public class RuleBehavior extends InProcessBehavior {
+
+	private final static Logger LOG = LoggerFactory.getLogger(RuleBehavior.class);
+
+	private final List<Rule> rules;
+
+	// event state, read by the rule conditions
+	private final Map<String, Boolean> sensorsOccupied = new LinkedHashMap<>();
+	private String lastSensor = "";
+	private boolean lastSensorOccupied;
+	private String user3 = "";
+	private double x, y;
+
+	private Rule currentRule;
+	private Rule delayedRule;
+	private ScheduledFuture<?> delayedTimer;
+
+	/**
+	 * Compiles a rule program.
+	 * 
+	 * @throws IOException
+	 *             If the program is not valid.
+	 */
+	public RuleBehavior(String program) throws IOException {
+		rules = parse(program);
+		LOG.info("Loaded {} light behavior rules", rules.size());
+	}
+
+	@Override
+	protected void onLocation(double x, double y) {
+		this.x = x;
+		this.y = y;
+		evaluate();
+	}
+
+	@Override
+	protected void onOwnership(String ownershipJson) {
+		// not used by the rules
+	}
+
+	@Override
+	protected void onSensorOccupied(String sensorId, boolean isOccupied) {
+		sensorsOccupied.put(sensorId, isOccupied);
+		lastSensor = sensorId;
+		lastSensorOccupied = isOccupied;
+		evaluate();
+	}
+
+	@Override
+	protected void onUser3(String userId) {
+		user3 = userId;
+		evaluate();
+	}
+
+	private void evaluate() {
+		Rule selected = null;
+		for (Rule rule : rules) {
+			if (isTrue(rule.condition.eval(this))) {
+				selected = rule;
+				break;
+			}
+		}
+
+		if (selected == delayedRule) {
+			// already waiting for this rule
+			return;
+		}
+		cancelDelayedRule();
+		if (selected == null || selected == currentRule) {
+			return;
+		}
+
+		if (selected.delaySeconds > 0) {
+			final Rule rule = selected;
+			delayedRule = rule;
+			delayedTimer = schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (delayedRule == rule) {
+						delayedRule = null;
+						delayedTimer = null;
+						apply(rule);
+					}
+				}
+			}, (long) (selected.delaySeconds * 1000), TimeUnit.MILLISECONDS);
+		} else {
+			apply(selected);
+		}
+	}
+
+	private void cancelDelayedRule() {
+		if (delayedTimer != null) {
+			delayedTimer.cancel(false);
+			delayedTimer = null;
+		}
+		delayedRule = null;
+	}
+
+	private void apply(Rule rule) {
+		LOG.debug("Applying rule at line {}", rule.line);
+		for (String[] action : rule.actions) {
+			emit(action[0], action[1]);
+		}
+		currentRule = rule;
+	}
+
+	// /////// Program parsing
+
+	private static class Rule {
+		private final int line;
+		private final Expression condition;
+		private final double delaySeconds;
+		private final List<String[]> actions;
+
+		public Rule(int line, Expression condition, double delaySeconds, List<String[]> actions) {
+			this.line = line;
+			this.condition = condition;
+			this.delaySeconds = delaySeconds;
+			this.actions = actions;
+		}
+	}
+
+	private static List<Rule> parse(String program) throws IOException {
+		List<Rule> rules = new ArrayList<>();
+		boolean header = false;
+		String[] lines = program.split("\r?\n");
+		for (int i = 0; i < lines.length; i++) {
+			String line = stripComment(lines[i]).trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+			try {
+				if (!header) {
+					if (!line.equals("behavior rules")) {
+						throw new IllegalArgumentException("expected 'behavior rules'");
+					}
+					header = true;
+				} else {
+					rules.add(parseRule(i + 1, line));
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IOException(String.format("Invalid light behavior at line %d: %s", i + 1, e.getMessage()));
+			}
+		}
+		if (rules.isEmpty()) {
+			throw new IOException("Light behavior without any rule");
+		}
+		return rules;
+	}
+
+	private static String stripComment(String line) {
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (c == '#' && !quoted) {
+				return line.substring(0, i);
+			}
+		}
+		return line;
+	}
+
+	private static Rule parseRule(int lineNumber, String line) {
+		Parser parser = new Parser(line);
+		if (!parser.accept("when")) {
+			throw new IllegalArgumentException("expected 'when'");
+		}
+		// the condition is parsed first, so 'then' may appear in its strings and in the action values
+		Expression condition = parser.parseExpression();
+		double delay = 0;
+		if (parser.accept("after")) {
+			Object value = parser.parseLiteral();
+			if (!(value instanceof Double) || (Double) value < 0) {
+				throw new IllegalArgumentException("expected a delay in seconds after 'after'");
+			}
+			delay = (Double) value;
+		}
+		if (!parser.accept("then")) {
+			throw new IllegalArgumentException("expected 'then' at '" + parser.remaining() + "'");
+		}
+
+		List<String[]> actions = new ArrayList<>();
+		for (String action : parser.remaining().split(";")) {
+			String[] keyValue = action.trim().split(" ", 2);
+			if (keyValue.length != 2 || keyValue[1].trim().isEmpty()) {
+				throw new IllegalArgumentException("expected '<key> <value>' in '" + action.trim() + "'");
+			}
+			actions.add(new String[] { keyValue[0], keyValue[1].trim() });
+		}
+		return new Rule(lineNumber, condition, delay, actions);
+	}
+
+	// /////// Expressions
+
+	private interface Expression {
+		Object eval(RuleBehavior state);
+	}
+
+	private static boolean isTrue(Object value) {
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
+		if (value instanceof Double) {
+			return (Double) value != 0;
+		}
+		return !((String) value).isEmpty();
+	}
+
+	private static Expression constant(final Object value) {
+		return new Expression() {
+			@Override
+			public Object eval(RuleBehavior state) {
+				return value;
+			}
+		};
+	}
+
+	private static Expression variable(final String name) {
+		switch (name) {
+		case "occupied":
+		case "sensor":
+		case "sensor_occupied":
+		case "user3":
+		case "x":
+		case "y":
+			break;
+		default:
+			throw new IllegalArgumentException("unknown variable " + name);
+		}
+		return new Expression() {
+			@Override
+			public Object eval(RuleBehavior state) {
+				switch (name) {
+				case "occupied":
+					int count = 0;
+					for (Boolean occupied : state.sensorsOccupied.values()) {
+						if (occupied) {
+							count++;
+						}
+					}
+					return (double) count;
+				case "sensor":
+					return state.lastSensor;
+				case "sensor_occupied":
+					return state.lastSensorOccupied;
+				case "user3":
+					return state.user3;
+				case "x":
+					return state.x;
+				default:
+					return state.y;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Recursive descent parser of the rule conditions.
+	 */
+	private static class Parser {
+		private final String text;
+		private int pos;
+
+		public Parser(String text) {
+			this.text = text;
+		}
+
+		public Expression parseExpression() {
+			Expression left = parseAnd();
+			while (accept("or")) {
+				final Expression l = left, r = parseAnd();
+				left = new Expression() {
+					@Override
+					public Object eval(RuleBehavior state) {
+						return isTrue(l.eval(state)) || isTrue(r.eval(state));
+					}
+				};
+			}
+			return left;
+		}
+
+		private Expression parseAnd() {
+			Expression left = parseNot();
+			while (accept("and")) {
+				final Expression l = left, r = parseNot();
+				left = new Expression() {
+					@Override
+					public Object eval(RuleBehavior state) {
+						return isTrue(l.eval(state)) && isTrue(r.eval(state));
+					}
+				};
+			}
+			return left;
+		}
+
+		private Expression parseNot() {
+			if (accept("not")) {
+				final Expression e = parseNot();
+				return new Expression() {
+					@Override
+					public Object eval(RuleBehavior state) {
+						return !isTrue(e.eval(state));
+					}
+				};
+			}
+			return parseComparison();
+		}
+
+		private Expression parseComparison() {
+			final Expression l = parsePrimary();
+			skipSpaces();
+			for (final String op : new String[] { "==", "!=", "<=", ">=", "<", ">" }) {
+				if (text.startsWith(op, pos)) {
+					pos += op.length();
+					final Expression r = parsePrimary();
+					return new Expression() {
+						@Override
+						public Object eval(RuleBehavior state) {
+							return compare(op, l.eval(state), r.eval(state));
+						}
+					};
+				}
+			}
+			return l;
+		}
+
+		private Expression parsePrimary() {
+			skipSpaces();
+			if (pos >= text.length()) {
+				throw new IllegalArgumentException("unexpected end of condition");
+			}
+			char c = text.charAt(pos);
+			if (c == '(') {
+				pos++;
+				Expression e = parseExpression();
+				expect(')');
+				return e;
+			}
+			if (c == '"' || c == '-' || Character.isDigit(c)) {
+				return constant(parseLiteral());
+			}
+			String name = parseIdentifier();
+			switch (name) {
+			case "true":
+				return constant(true);
+			case "false":
+				return constant(false);
+			case "is_occupied":
+				expect('(');
+				skipSpaces();
+				final Object sensorId = parseLiteral();
+				if (!(sensorId instanceof String)) {
+					throw new IllegalArgumentException("is_occupied expects a sensor ID");
+				}
+				expect(')');
+				return new Expression() {
+					@Override
+					public Object eval(RuleBehavior state) {
+						return Boolean.TRUE.equals(state.sensorsOccupied.get(sensorId));
+					}
+				};
+			default:
+				return variable(name);
+			}
+		}
+
+		public Object parseLiteral() {
+			skipSpaces();
+			if (pos < text.length() && text.charAt(pos) == '"') {
+				int end = text.indexOf('"', pos + 1);
+				if (end < 0) {
+					throw new IllegalArgumentException("unterminated string");
+				}
+				String value = text.substring(pos + 1, end);
+				pos = end + 1;
+				return value;
+			}
+			int start = pos;
+			if (pos < text.length() && text.charAt(pos) == '-') {
+				pos++;
+			}
+			while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+				pos++;
+			}
+			try {
+				return Double.valueOf(text.substring(start, pos));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("expected a number at '" + text.substring(start) + "'");
+			}
+		}
+
+		private String parseIdentifier() {
+			int start = pos;
+			while (pos < text.length() && isIdentifierPart(text.charAt(pos))) {
+				pos++;
+			}
+			if (start == pos) {
+				throw new IllegalArgumentException("unexpected '" + text.substring(pos) + "'");
+			}
+			return text.substring(start, pos);
+		}
+
+		/**
+		 * Consumes a keyword, which must not be the start of a longer
+		 * identifier.
+		 */
+		public boolean accept(String keyword) {
+			skipSpaces();
+			int end = pos + keyword.length();
+			if (text.startsWith(keyword, pos) && (end == text.length() || !isIdentifierPart(text.charAt(end)))) {
+				pos = end;
+				return true;
+			}
+			return false;
+		}
+
+		private static boolean isIdentifierPart(char c) {
+			return Character.isLetterOrDigit(c) || c == '_';
+		}
+
+		public String remaining() {
+			skipSpaces();
+			return text.substring(pos);
+		}
+
+		private void expect(char c) {
+			skipSpaces();
+			if (pos >= text.length() || text.charAt(pos) != c) {
+				throw new IllegalArgumentException("expected '" + c + "'");
+			}
+			pos++;
+		}
+
+		private void skipSpaces() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+		}
+	}
+
+	private static boolean compare(String op, Object l, Object r) {
+		int cmp;
+		if (l instanceof Double && r instanceof Double) {
+			cmp = ((Double) l).compareTo((Double) r);
+		} else if (l instanceof Boolean || r instanceof Boolean) {
+			cmp = isTrue(l) == isTrue(r) ? 0 : 1;
+		} else {
+			cmp = String.valueOf(l).compareTo(String.valueOf(r));
+		}
+		switch (op) {
+		case "==":
+			return cmp == 0;
+		case "!=":
+			return cmp != 0;
+		case "<":
+			return cmp < 0;
+		case "<=":
+			return cmp <= 0;
+		case ">":
+			return cmp > 0;
+		default:
+			return cmp >= 0;
+		}
+	}
+}
@@ -0,0 +1,257 @@
+package group19;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates the state messages of the sensors into one occupancy summary per
+ * room.
+ * 
+ * The first sensor change of a room opens a window of {@code windowInMs}: the
+ * changes received during this window are merged and, if the room state
+ * changed, a {@link RoomOccupancy} summary is published (retained) on
+ * {@code TUE/<roomId>/Occupancy}. Lights only subscribe to this topic, so they
+ * receive at most one message per room and window instead of one message per
+ * sensor change.
+ * 
+ * The sensor states are retained by the broker, so the aggregator rebuilds the
+ * state of all the sensors when it (re)subscribes. A sensor which left the room
+ * is reported once as free, then omitted from the summaries.
+ */
+public class SensorAggregator implements MqttClientUser, IMqttMessageListener {
+
+	private final static Logger LOG = LoggerFactory.getLogger(SensorAggregator.class);
+
+	/** Topic filter of the state messages published by the sensors. */
+	public static final String SENSOR_TOPIC_FILTER = "TUE/+/Sensor/+/State";
+
+	/** Default window during which sensor changes are merged. */
+	public static final long DEFAULT_WINDOW = 100; // ms
+
+	private static final long STATS_INTERVAL = 60; // seconds
+
+	private final long windowInMs;
+	private final ScheduledExecutorService scheduler;
+	private MqttAsyncClient mqttClient;
+
+	// guarded by this
+	private final Map<String, Room> rooms = new HashMap<>();
+	private final Map<String, String> roomBySensor = new HashMap<>();
+
+	private final AtomicLong receivedEvents = new AtomicLong();
+	private final AtomicLong invalidEvents = new AtomicLong();
+	private final AtomicLong publishedSummaries = new AtomicLong();
+
+	private static class Room {
+		private final String roomId;
+		// state of the sensors in the last summary
+		private final Map<String, Boolean> sensors = new LinkedHashMap<>();
+		// changes received since the last summary
+		private final Map<String, Boolean> pending = new LinkedHashMap<>();
+		private long oldestPendingTime;
+		private boolean flushScheduled;
+		private int sequence;
+
+		public Room(String roomId) {
+			this.roomId = roomId;
+		}
+	}
+
+	public SensorAggregator() {
+		this(DEFAULT_WINDOW);
+	}
+
+	public SensorAggregator(long windowInMs) {
+		this.windowInMs = windowInMs;
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "sensor-aggregator");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				logStats();
+			}
+		}, STATS_INTERVAL, STATS_INTERVAL, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void setMqttClient(MqttAsyncClient client) {
+		this.mqttClient = client;
+		try {
+			client.subscribe(SENSOR_TOPIC_FILTER, 1, this);
+			LOG.info("Aggregating sensor states from MQTT topic {} every {} ms", SENSOR_TOPIC_FILTER, windowInMs);
+		} catch (MqttException e) {
+			LOG.warn("Failed to subscribe to MQTT topic", e);
+		}
+	}
+
+	@Override
+	public void messageArrived(String topic, MqttMessage message) {
+		receivedEvents.incrementAndGet();
+		// TUE/<roomId>/Sensor/<sensorId>/State
+		int roomStart = topic.indexOf('/') + 1;
+		int roomEnd = topic.indexOf('/', roomStart);
+		int sensorStart = topic.indexOf('/', roomEnd + 1) + 1;
+		int sensorEnd = topic.indexOf('/', sensorStart);
+		if (roomStart == 0 || roomEnd < 0 || sensorStart == 0 || sensorEnd < 0) {
+			invalidEvents.incrementAndGet();
+			return;
+		}
+		String roomId = topic.substring(roomStart, roomEnd);
+		String sensorId = topic.substring(sensorStart, sensorEnd);
+
+		if (message.getPayload().length == 0) {
+			// retained state cleared, the sensor left the room
+			remove(roomId, sensorId);
+			return;
+		}
+
+		// "<STATE> [<sensor time in ms>]"
+		String payload = new String(message.getPayload(), StandardCharsets.UTF_8);
+		int space = payload.indexOf(' ');
+		String state = space < 0 ? payload : payload.substring(0, space);
+		long eventTime;
+		try {
+			eventTime = space < 0 ? System.currentTimeMillis() : Long.parseLong(payload.substring(space + 1).trim());
+		} catch (NumberFormatException e) {
+			eventTime = System.currentTimeMillis();
+		}
+		boolean occupied;
+		if (state.equals(SensorDevice.SensorState.OCCUPIED.name())) {
+			occupied = true;
+		} else if (state.equals(SensorDevice.SensorState.FREE.name())) {
+			occupied = false;
+		} else {
+			invalidEvents.incrementAndGet();
+			LOG.warn("Invalid state from sensor {}: {}", sensorId, payload);
+			return;
+		}
+
+		update(roomId, sensorId, occupied, eventTime);
+	}
+
+	private synchronized void update(String roomId, String sensorId, boolean occupied, long eventTime) {
+		String previousRoomId = roomBySensor.put(sensorId, roomId);
+		if (previousRoomId != null && !previousRoomId.equals(roomId)) {
+			// the sensor moved, it is no longer part of its previous room
+			Room previousRoom = rooms.get(previousRoomId);
+			previousRoom.pending.put(sensorId, null);
+			scheduleFlush(previousRoom, eventTime);
+		}
+
+		Room room = rooms.get(roomId);
+		if (room == null) {
+			room = new Room(roomId);
+			rooms.put(roomId, room);
+		}
+		room.pending.put(sensorId, occupied);
+		scheduleFlush(room, eventTime);
+	}
+
+	private synchronized void remove(String roomId, String sensorId) {
+		if (roomId.equals(roomBySensor.get(sensorId))) {
+			roomBySensor.remove(sensorId);
+			Room room = rooms.get(roomId);
+			room.pending.put(sensorId, null);
+			scheduleFlush(room, System.currentTimeMillis());
+		}
+	}
+
+	private void scheduleFlush(final Room room, long eventTime) {
+		if (room.oldestPendingTime == 0 || eventTime < room.oldestPendingTime) {
+			room.oldestPendingTime = eventTime;
+		}
+		if (!room.flushScheduled) {
+			room.flushScheduled = true;
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					flush(room);
+				}
+			}, windowInMs, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void flush(Room room) {
+		RoomOccupancy summary;
+		synchronized (this) {
+			room.flushScheduled = false;
+			boolean changed = false;
+			// lights treat an omitted sensor as unknown, so the sensors which left occupied are reported free once
+			Map<String, Boolean> departed = new LinkedHashMap<>();
+			for (Map.Entry<String, Boolean> change : room.pending.entrySet()) {
+				if (change.getValue() == null) {
+					if (Boolean.TRUE.equals(room.sensors.remove(change.getKey()))) {
+						departed.put(change.getKey(), false);
+						changed = true;
+					}
+				} else if (!change.getValue().equals(room.sensors.put(change.getKey(), change.getValue()))) {
+					changed = true;
+				}
+			}
+			long eventTime = room.oldestPendingTime;
+			room.pending.clear();
+			room.oldestPendingTime = 0;
+			if (!changed) {
+				// the sensors changed back during the window
+				return;
+			}
+			Map<String, Boolean> sensors = new LinkedHashMap<>(room.sensors);
+			sensors.putAll(departed);
+			summary = new RoomOccupancy(++room.sequence, eventTime, sensors);
+		}
+
+		try {
+			publish(room.roomId, summary);
+			publishedSummaries.incrementAndGet();
+			LOG.debug("Published occupancy of room {}: {}", room.roomId, summary);
+		} catch (MqttException e) {
+			LOG.warn("Failed to publish occupancy of room {}, code {}", room.roomId, e.getReasonCode(), e);
+		}
+	}
+
+	void publish(String roomId, RoomOccupancy summary) throws MqttException {
+		// retained, so lights joining the room get its current state
+		mqttClient.publish(RoomOccupancy.topic(roomId), summary.encode(), 1, true);
+	}
+
+	private void logStats() {
+		int roomCount;
+		synchronized (this) {
+			roomCount = rooms.size();
+		}
+		LOG.info("Sensor aggregation: {} sensor events ({} invalid) merged into {} summaries for {} rooms",
+				receivedEvents.get(), invalidEvents.get(), publishedSummaries.get(), roomCount);
+	}
+
+	public long getReceivedEvents() {
+		return receivedEvents.get();
+	}
+
+	public long getPublishedSummaries() {
+		return publishedSummaries.get();
+	}
+
+	public void destroy() {
+		scheduler.shutdownNow();
+	}
+}
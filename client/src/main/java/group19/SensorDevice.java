@@ -127,6 +127,10 @@ public class SensorDevice extends BaseInstanceEnabler implements SensorChangeLis
 			throw new IllegalArgumentException("Invalid argument");
 		}
 		if (!this.roomId.equals(roomId)) {
+			if (mqttClient != null && !this.roomId.isEmpty() && !sensorId.isEmpty()) {
+				// an empty retained message clears the state kept by the broker for the previous room
+				publish(stateTopic(this.roomId), new byte[0]);
+			}
 			this.roomId = roomId;
 			fireResourcesChange(7);
 			publishSensorState();
@@ -160,12 +164,21 @@ public class SensorDevice extends BaseInstanceEnabler implements SensorChangeLis
 			LOG.warn("Not publishing sensor state, sensorId is unknown");
 			return;
 		}
-		String topic = String.format("TUE/%s/Sensor/%s/State", roomId, sensorId);
-		byte[] payload = sensorState.name().getBytes();
+		// the detection time lets the aggregator and lights report the end-to-end latency
+		byte[] payload = String.format("%s %d", sensorState.name(), System.currentTimeMillis()).getBytes();
+		publish(stateTopic(roomId), payload);
+	}
+
+	private String stateTopic(String roomId) {
+		return String.format("TUE/%s/Sensor/%s/State", roomId, sensorId);
+	}
+
+	private void publish(String topic, byte[] payload) {
 		for (int attempt = 1; attempt <= 2; attempt++) {
 			try {
-				mqttClient.publish(topic, payload, 0, false);
-				LOG.info("Published to MQTT topic {}: {}", topic, sensorState.name());
+				// retained, so a restarted SensorAggregator gets the state of the idle sensors
+				mqttClient.publish(topic, payload, 1, true);
+				LOG.info("Published to MQTT topic {}: {}", topic, new String(payload));
 				return;
 			} catch (MqttException e) {
 				LOG.warn("Failed to publish sensor state, code {}", e.getReasonCode(), e);
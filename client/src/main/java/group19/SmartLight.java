@@ -19,7 +19,7 @@ import org.slf4j.LoggerFactory;
  * 
  * See {@code smartlight.py} for the interface documentation.
  */
-public class SmartLight extends RPiDevice {
+public class SmartLight extends RPiDevice implements BehaviorEngine {
 
 	private final static Logger LOG = LoggerFactory.getLogger(SmartLight.class);
 
@@ -29,6 +29,10 @@ public class SmartLight extends RPiDevice {
 	private final Path tempDirectory;
 	private final File pyFile;
 	private SmartLightEventListener listener;
+	private final ReactionLatency latency = new ReactionLatency("Light behavior");
+	// sensor event waiting for a reaction of the child
+	private volatile String pendingSensor;
+	private volatile long pendingSince;
 
 	/**
 	 * Default adaptive light behavior implementation.
@@ -55,6 +59,7 @@ public class SmartLight extends RPiDevice {
 		}
 	}
 
+	@Override
 	public void setListener(SmartLightEventListener listener) {
 		this.listener = listener;
 	}
@@ -65,6 +70,7 @@ public class SmartLight extends RPiDevice {
 	 * @throws IOException
 	 *             If an error occurred during startup.
 	 */
+	@Override
 	public void start() throws IOException {
 		try {
 			proc = Runtime.getRuntime().exec(pyFile.getAbsolutePath());
@@ -86,6 +92,7 @@ public class SmartLight extends RPiDevice {
 		tempDirectory.toFile().delete();
 	}
 
+	@Override
 	public void destroy() {
 		proc.destroy();
 		deleteStuff();
@@ -124,6 +131,11 @@ public class SmartLight extends RPiDevice {
 							LOG.warn("Unexpected input from child: " + line);
 							continue;
 						}
+						String sensor = pendingSensor;
+						if (sensor != null) {
+							pendingSensor = null;
+							latency.record(sensor, pendingSince);
+						}
 						if (listener != null) {
 							try {
 								listener.childValueEmitted(args[1], args[2].trim());
@@ -139,22 +151,34 @@ public class SmartLight extends RPiDevice {
 		}).start();
 	}
 
+	@Override
 	public void setLocation(double x, double y) {
 		writeChild(String.format(Locale.ENGLISH, "location %f %f", x, y));
 	}
 
+	@Override
 	public void setOwnership(String ownershipJson) {
 		writeChild("ownership " + ownershipJson.replace("\r", "").replace("\n", ""));
 	}
 
+	@Override
 	public void notifySensorOccupied(String sensor_id, boolean is_occupied) {
 		if (sensor_id.contains(" ")) {
 			throw new IllegalArgumentException("Bad Sensor ID");
 		}
+		// the reaction is the next line emitted by the child, if any
+		pendingSince = System.nanoTime();
+		pendingSensor = sensor_id;
 		writeChild(String.format("sensor_occupied %s %s", sensor_id, is_occupied));
 	}
 
+	@Override
 	public void setUser3(String user_id) {
 		writeChild("user3 " + user_id);
 	}
+
+	@Override
+	public ReactionLatency getReactionLatency() {
+		return latency;
+	}
 }
@@ -0,0 +1,174 @@
+package group19;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The expected settings follow the transformations of {@code smartlight.py}.
+ */
+public class OwnershipBehaviorTest {
+
+	private static final long LEAVE_DELAY = 100; // ms
+
+	private static final String OWNERSHIP = "["
+			+ user("USER1", "alice", "sensor1", "(255, 0, 0)", 1, 1) + ","
+			+ user("USER2", "bob", "sensor2", "(0, 255, 0)", 2, 2) + ","
+			+ user("USER3", "carol", "sensor3", "(0, 0, 255)", 5, 5) + ","
+			+ user("USER3", "dave", "sensor4", "(9, 9, 9)", 1, 0) + "]";
+
+	private final List<String> emitted = Collections.synchronizedList(new ArrayList<String>());
+	private OwnershipBehavior behavior;
+
+	@Before
+	public void setUp() throws Exception {
+		behavior = new OwnershipBehavior(LEAVE_DELAY);
+		behavior.setListener(new SmartLightEventListener() {
+			@Override
+			public void childValueEmitted(String key, String value) {
+				emitted.add(key + " " + value);
+			}
+		});
+		behavior.start();
+		behavior.setLocation(0, 0);
+		behavior.setOwnership(OWNERSHIP);
+	}
+
+	@After
+	public void tearDown() {
+		behavior.destroy();
+	}
+
+	@Test
+	public void loading_the_ownership_of_a_free_room_changes_nothing() {
+		assertEmitted();
+	}
+
+	@Test
+	public void occupied_user_sensor_applies_the_user_settings_immediately() {
+		behavior.notifySensorOccupied("sensor2", true);
+		assertEmitted(used("USER2", "bob", "(0, 255, 0)"));
+
+		// higher user type
+		behavior.notifySensorOccupied("sensor1", true);
+		assertEmitted(used("USER1", "alice", "(255, 0, 0)"));
+
+		// lower user type
+		behavior.notifySensorOccupied("sensor2", false);
+		assertEmitted();
+	}
+
+	@Test
+	public void leaving_user_is_replaced_after_the_delay() throws Exception {
+		behavior.notifySensorOccupied("sensor2", true);
+		behavior.notifySensorOccupied("sensor1", true);
+		emitted.clear();
+
+		behavior.notifySensorOccupied("sensor1", false);
+		assertEmitted();
+		Thread.sleep(LEAVE_DELAY * 3);
+		assertEmitted(used("USER2", "bob", "(0, 255, 0)"));
+
+		behavior.notifySensorOccupied("sensor2", false);
+		Thread.sleep(LEAVE_DELAY * 3);
+		assertEmitted("state FREE", "color (0, 0, 0)");
+	}
+
+	@Test
+	public void returning_user_cancels_the_delayed_settings() throws Exception {
+		behavior.notifySensorOccupied("sensor1", true);
+		emitted.clear();
+
+		behavior.notifySensorOccupied("sensor1", false);
+		behavior.notifySensorOccupied("sensor1", true);
+		Thread.sleep(LEAVE_DELAY * 3);
+		assertEmitted();
+	}
+
+	@Test
+	public void unknown_occupied_sensor_dims_the_free_light() {
+		behavior.notifySensorOccupied("visitor", true);
+		assertEmitted("state FREE", "color (250, 200, 100)", "lowlight true");
+	}
+
+	@Test
+	public void user3_takes_ownership_of_a_free_light_only() throws Exception {
+		behavior.notifySensorOccupied("sensor2", true);
+		emitted.clear();
+		behavior.setUser3("carol");
+		assertEmitted();
+
+		// the light stays used until the end of the delay
+		behavior.notifySensorOccupied("sensor2", false);
+		behavior.setUser3("carol");
+		assertEmitted();
+		Thread.sleep(LEAVE_DELAY * 3);
+		emitted.clear();
+		behavior.setUser3("carol");
+		assertEmitted(used("USER3", "carol", "(0, 0, 255)"));
+	}
+
+	@Test
+	public void closer_user3_takes_ownership_from_another_user3() {
+		behavior.setUser3("carol");
+		assertEmitted(used("USER3", "carol", "(0, 0, 255)"));
+
+		behavior.setUser3("dave");
+		assertEmitted(used("USER3", "dave", "(9, 9, 9)"));
+
+		behavior.setUser3("carol");
+		assertEmitted();
+	}
+
+	@Test
+	public void user3_is_kept_when_the_ownership_is_reloaded() {
+		behavior.notifySensorOccupied("sensor3", true);
+		assertEmitted("state FREE", "color (250, 200, 100)", "lowlight true");
+		behavior.setUser3("carol");
+		assertEmitted(used("USER3", "carol", "(0, 0, 255)"));
+
+		behavior.setOwnership(OWNERSHIP);
+		assertEmitted(used("USER3", "carol", "(0, 0, 255)"));
+	}
+
+	@Test
+	public void user3_without_occupied_sensor_is_dropped_when_the_ownership_is_reloaded() {
+		// like smartlight.py, only the user ID is marked as occupied, not its sensor
+		behavior.setUser3("carol");
+		emitted.clear();
+
+		behavior.setOwnership(OWNERSHIP);
+		assertEmitted();
+	}
+
+	@Test
+	public void unknown_users_and_other_user_types_are_ignored_as_user3() {
+		behavior.setUser3("nobody");
+		behavior.setUser3("alice");
+		assertEmitted();
+	}
+
+	private static String user(String type, String id, String sensor, String color, double x, double y) {
+		return String.format("{\"user_type\":\"%s\",\"user_id\":\"%s\",\"sensor_id\":\"%s\",\"light_color\":\"%s\","
+				+ "\"low_light\":\"false\",\"user_location_x\":%s,\"user_location_y\":%s}", type, id, sensor, color, x,
+				y);
+	}
+
+	private static String[] used(String type, String id, String color) {
+		return new String[] { "color " + color, "lowlight false", "userid " + id, "state USED", "usertype " + type };
+	}
+
+	private void assertEmitted(String... expected) {
+		synchronized (emitted) {
+			assertEquals(Arrays.asList(expected), new ArrayList<>(emitted));
+			emitted.clear();
+		}
+	}
+}
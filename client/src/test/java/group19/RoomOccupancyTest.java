@@ -0,0 +1,58 @@
+package group19;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class RoomOccupancyTest {
+
+	@Test
+	public void summary_is_decoded_as_encoded() throws IOException {
+		Map<String, Boolean> sensors = new LinkedHashMap<>();
+		sensors.put("sensor-1", true);
+		sensors.put("sensor-2", false);
+		sensors.put("capteur-é", true);
+
+		RoomOccupancy decoded = RoomOccupancy.decode(new RoomOccupancy(42, 1234567890123L, sensors).encode());
+
+		assertEquals(42, decoded.getSequence());
+		assertEquals(1234567890123L, decoded.getEventTime());
+		assertEquals(sensors, decoded.getSensors());
+	}
+
+	@Test
+	public void empty_summary_is_decoded() throws IOException {
+		RoomOccupancy decoded = RoomOccupancy.decode(new RoomOccupancy(1, 0, new LinkedHashMap<String, Boolean>())
+				.encode());
+
+		assertTrue(decoded.getSensors().isEmpty());
+	}
+
+	@Test(expected = IOException.class)
+	public void unknown_version_is_rejected() throws IOException {
+		byte[] payload = new RoomOccupancy(1, 0, new LinkedHashMap<String, Boolean>()).encode();
+		payload[0] = 2;
+		RoomOccupancy.decode(payload);
+	}
+
+	@Test(expected = IOException.class)
+	public void truncated_summary_is_rejected() throws IOException {
+		Map<String, Boolean> sensors = new LinkedHashMap<>();
+		sensors.put("sensor-1", true);
+		byte[] payload = new RoomOccupancy(1, 0, sensors).encode();
+		byte[] truncated = new byte[payload.length - 1];
+		System.arraycopy(payload, 0, truncated, 0, truncated.length);
+		RoomOccupancy.decode(truncated);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void too_long_sensor_id_is_rejected() {
+		Map<String, Boolean> sensors = new LinkedHashMap<>();
+		sensors.put(new String(new char[256]).replace('\0', 'x'), true);
+		new RoomOccupancy(1, 0, sensors).encode();
+	}
+}
@@ -0,0 +1,155 @@
+package group19;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class RuleBehaviorTest {
+
+	private final List<String> emitted = Collections.synchronizedList(new ArrayList<String>());
+	private RuleBehavior behavior;
+
+	@After
+	public void tearDown() {
+		if (behavior != null) {
+			behavior.destroy();
+		}
+	}
+
+	@Test
+	public void first_matching_rule_is_applied() throws Exception {
+		start("behavior rules",
+				"when is_occupied(\"desk1\") then state USED; color (255, 0, 0)",
+				"when occupied > 0 then state FREE; lowlight true",
+				"when occupied == 0 then color (0, 0, 0)");
+
+		behavior.notifySensorOccupied("desk2", true);
+		assertEmitted("state FREE", "lowlight true");
+
+		// both first rules hold, the first one wins
+		behavior.notifySensorOccupied("desk1", true);
+		assertEmitted("state USED", "color (255, 0, 0)");
+
+		// the selected rule did not change
+		behavior.notifySensorOccupied("desk3", true);
+		assertEmitted();
+
+		behavior.notifySensorOccupied("desk1", false);
+		assertEmitted("state FREE", "lowlight true");
+	}
+
+	@Test
+	public void delayed_rule_is_applied_after_its_delay() throws Exception {
+		start("behavior rules",
+				"when occupied > 0 then state USED",
+				"when occupied == 0 after 0.1 then state FREE");
+
+		behavior.notifySensorOccupied("desk1", true);
+		assertEmitted("state USED");
+		behavior.notifySensorOccupied("desk1", false);
+		assertEmitted();
+
+		Thread.sleep(300);
+		assertEmitted("state FREE");
+	}
+
+	@Test
+	public void delayed_rule_is_canceled_when_another_rule_is_selected() throws Exception {
+		start("behavior rules",
+				"when occupied > 0 then state USED",
+				"when occupied == 0 after 0.1 then state FREE");
+
+		behavior.notifySensorOccupied("desk1", true);
+		assertEmitted("state USED");
+		behavior.notifySensorOccupied("desk1", false);
+		behavior.notifySensorOccupied("desk1", true);
+
+		Thread.sleep(300);
+		assertEmitted();
+	}
+
+	@Test
+	public void conditions_support_operators_and_variables() throws Exception {
+		start("behavior rules",
+				"when not (sensor == \"desk1\") and (user3 != \"\" or x >= 2) then userid other  # comment",
+				"when sensor_occupied and -1 < y then userid desk1");
+
+		behavior.setLocation(0, 0);
+		behavior.notifySensorOccupied("desk1", true);
+		assertEmitted("userid desk1");
+
+		behavior.setUser3("bob");
+		behavior.notifySensorOccupied("desk2", false);
+		assertEmitted("userid other");
+	}
+
+	@Test
+	public void then_may_appear_in_strings_and_values() throws Exception {
+		start("behavior rules", "when sensor == \"a then b\" then userid first then second");
+
+		behavior.notifySensorOccupied("a then b", true);
+		assertEmitted("userid first then second");
+	}
+
+	@Test
+	public void keywords_are_not_matched_in_identifiers() {
+		assertParseError("unknown variable not_x", "behavior rules", "when not_x then state USED");
+		assertParseError("unknown variable occupied_or", "behavior rules",
+				"when occupied_or then state USED");
+		assertParseError("expected 'when'", "behavior rules", "whenever occupied then state USED");
+	}
+
+	@Test
+	public void invalid_programs_are_rejected() {
+		assertParseError("expected 'behavior rules'", "behavior other");
+		assertParseError("without any rule", "behavior rules", "# nothing");
+		assertParseError("line 2: expected 'then'", "behavior rules", "when occupied > 0 state USED");
+		assertParseError("unknown variable foo", "behavior rules", "when foo then state USED");
+		assertParseError("expected a delay", "behavior rules", "when occupied after \"3\" then state USED");
+		assertParseError("expected '<key> <value>'", "behavior rules", "when occupied then state");
+		assertParseError("expected ')'", "behavior rules", "when (occupied then state USED");
+		assertParseError("unterminated string", "behavior rules", "when sensor == \"a then state USED");
+	}
+
+	private void start(String... lines) throws IOException {
+		behavior = new RuleBehavior(program(lines));
+		behavior.setListener(new SmartLightEventListener() {
+			@Override
+			public void childValueEmitted(String key, String value) {
+				emitted.add(key + " " + value);
+			}
+		});
+		behavior.start();
+	}
+
+	private void assertEmitted(String... expected) {
+		synchronized (emitted) {
+			assertEquals(Arrays.asList(expected), new ArrayList<>(emitted));
+			emitted.clear();
+		}
+	}
+
+	private void assertParseError(String expectedMessage, String... lines) {
+		try {
+			new RuleBehavior(program(lines));
+			fail("IOException expected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+		}
+	}
+
+	private static String program(String... lines) {
+		StringBuilder program = new StringBuilder();
+		for (String line : lines) {
+			program.append(line).append('\n');
+		}
+		return program.toString();
+	}
+}
@@ -0,0 +1,122 @@
+package group19;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SensorAggregatorTest {
+
+	private static final long WINDOW = 50; // ms
+
+	private final BlockingQueue<RoomOccupancy> published = new LinkedBlockingQueue<>();
+	private SensorAggregator aggregator;
+
+	@Before
+	public void setUp() {
+		aggregator = new SensorAggregator(WINDOW) {
+			@Override
+			void publish(String roomId, RoomOccupancy summary) {
+				published.add(summary);
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		aggregator.destroy();
+	}
+
+	@Test
+	public void changes_of_a_window_are_merged_in_one_summary() throws Exception {
+		send("room1", "s1", "OCCUPIED 1000");
+		send("room1", "s2", "OCCUPIED 1001");
+		send("room1", "s1", "FREE 1002");
+
+		RoomOccupancy summary = nextSummary();
+		assertEquals(1, summary.getSequence());
+		assertEquals(1000, summary.getEventTime());
+		assertEquals(Boolean.FALSE, summary.getSensors().get("s1"));
+		assertEquals(Boolean.TRUE, summary.getSensors().get("s2"));
+		assertNoSummary();
+	}
+
+	@Test
+	public void change_reverted_during_the_window_is_not_published() throws Exception {
+		send("room1", "s1", "OCCUPIED 1000");
+		assertEquals(Boolean.TRUE, nextSummary().getSensors().get("s1"));
+
+		send("room1", "s1", "FREE 2000");
+		send("room1", "s1", "OCCUPIED 2001");
+		assertNoSummary();
+	}
+
+	@Test
+	public void summaries_contain_all_known_sensors_of_the_room() throws Exception {
+		send("room1", "s1", "OCCUPIED 1000");
+		nextSummary();
+
+		send("room1", "s2", "FREE 2000");
+		RoomOccupancy summary = nextSummary();
+		assertEquals(2, summary.getSequence());
+		assertEquals(2, summary.getSensors().size());
+		assertEquals(Boolean.TRUE, summary.getSensors().get("s1"));
+	}
+
+	@Test
+	public void sensor_leaving_occupied_is_reported_free_once() throws Exception {
+		send("room1", "s1", "OCCUPIED 1000");
+		send("room1", "s2", "OCCUPIED 1000");
+		nextSummary();
+
+		send("room2", "s1", "OCCUPIED 2000");
+		RoomOccupancy first = nextSummary();
+		RoomOccupancy second = nextSummary();
+		RoomOccupancy room1 = first.getSensors().containsKey("s2") ? first : second;
+		assertEquals(Boolean.FALSE, room1.getSensors().get("s1"));
+
+		send("room1", "s2", "FREE 3000");
+		RoomOccupancy summary = nextSummary();
+		assertFalse(summary.getSensors().containsKey("s1"));
+		assertEquals(Boolean.FALSE, summary.getSensors().get("s2"));
+	}
+
+	@Test
+	public void cleared_retained_state_removes_the_sensor() throws Exception {
+		send("room1", "s1", "OCCUPIED 1000");
+		nextSummary();
+
+		send("room1", "s1", "");
+		RoomOccupancy summary = nextSummary();
+		assertEquals(Boolean.FALSE, summary.getSensors().get("s1"));
+	}
+
+	@Test
+	public void invalid_states_are_ignored() throws Exception {
+		send("room1", "s1", "MAYBE 1000");
+		assertNoSummary();
+		assertEquals(1, aggregator.getReceivedEvents());
+	}
+
+	private void send(String roomId, String sensorId, String payload) {
+		aggregator.messageArrived(String.format("TUE/%s/Sensor/%s/State", roomId, sensorId),
+				new MqttMessage(payload.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private RoomOccupancy nextSummary() throws InterruptedException {
+		RoomOccupancy summary = published.poll(1, TimeUnit.SECONDS);
+		assertNotNull("summary expected", summary);
+		return summary;
+	}
+
+	private void assertNoSummary() throws InterruptedException {
+		assertNull(published.poll(WINDOW * 3, TimeUnit.MILLISECONDS));
+	}
+}
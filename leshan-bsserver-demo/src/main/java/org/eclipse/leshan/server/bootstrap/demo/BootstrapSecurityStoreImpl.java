@@ -39,16 +39,18 @@ public class BootstrapSecurityStoreImpl implements BootstrapSecurityStore {
 
     @Override
     public SecurityInfo getByIdentity(String identity) {
+        String endpoint = bsStore.getEndpointByPskIdentity(identity);
+        if (endpoint == null) {
+            return null;
+        }
         byte[] identityBytes = identity.getBytes(Charsets.UTF_8);
-        for (Map.Entry<String, BootstrapConfig> e : bsStore.getBootstrapConfigs().entrySet()) {
-            BootstrapConfig bsConfig = e.getValue();
-            if (bsConfig.security != null) {
-                for (Map.Entry<Integer, BootstrapConfig.ServerSecurity> ec : bsConfig.security.entrySet()) {
-                    ServerSecurity serverSecurity = ec.getValue();
-                    if (serverSecurity.bootstrapServer && serverSecurity.securityMode == SecurityMode.PSK
-                            && Arrays.equals(serverSecurity.publicKeyOrId, identityBytes)) {
-                        return SecurityInfo.newPreSharedKeyInfo(e.getKey(), identity, serverSecurity.secretKey);
-                    }
+        BootstrapConfig bsConfig = bsStore.getBootstrap(endpoint);
+        if (bsConfig != null && bsConfig.security != null) {
+            for (Map.Entry<Integer, BootstrapConfig.ServerSecurity> ec : bsConfig.security.entrySet()) {
+                ServerSecurity serverSecurity = ec.getValue();
+                if (serverSecurity.bootstrapServer && serverSecurity.securityMode == SecurityMode.PSK
+                        && Arrays.equals(serverSecurity.publicKeyOrId, identityBytes)) {
+                    return SecurityInfo.newPreSharedKeyInfo(endpoint, identity, serverSecurity.secretKey);
                 }
             }
         }
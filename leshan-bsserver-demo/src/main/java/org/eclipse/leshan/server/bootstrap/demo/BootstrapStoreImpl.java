@@ -1,56 +1,231 @@
 /*******************************************************************************
  * Copyright (c) 2013-2015 Sierra Wireless and others.
- * 
+ *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * and Eclipse Distribution License v1.0 which accompany this distribution.
- * 
+ *
  * The Eclipse Public License is available at
  *    http://www.eclipse.org/legal/epl-v10.html
  * and the Eclipse Distribution License is available at
  *    http://www.eclipse.org/org/documents/edl-v10.html.
- * 
+ *
  * Contributors:
  *     Sierra Wireless - initial API and implementation
  *     Achim Kraus (Bosch Software Innovations GmbH) - add json as storage format
  *******************************************************************************/
 package org.eclipse.leshan.server.bootstrap.demo;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
+import org.apache.commons.io.Charsets;
 import org.apache.commons.lang.Validate;
+import org.eclipse.leshan.server.Destroyable;
 import org.eclipse.leshan.server.bootstrap.BootstrapConfig;
+import org.eclipse.leshan.server.bootstrap.BootstrapConfig.ServerSecurity;
 import org.eclipse.leshan.server.bootstrap.BootstrapStore;
+import org.eclipse.leshan.server.bootstrap.SecurityMode;
 import org.eclipse.leshan.server.bootstrap.demo.ConfigurationChecker.ConfigurationException;
+import org.eclipse.leshan.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
 
 /**
- * Simple bootstrap store implementation storing bootstrap information in memory
+ * A bootstrap store keeping bootstrap information in memory and persisting it in a file.
+ * <p>
+ * Configurations can be shared: a <em>template</em> is a named configuration, an endpoint can use a template as is or
+ * override some of its server and security instances. Endpoints without their own configuration get the template of
+ * the first matching <em>rule</em> (an endpoint name pattern where {@code *} matches any sequence of characters). An
+ * endpoint using a template as is does not hold a copy of it, so the memory used by the configurations is proportional
+ * to the number of distinct configurations.
+ * </p>
+ * <p>
+ * The store content is persisted in a snapshot file and in a journal of the changes made since this snapshot, one JSON
+ * record per line. The journal is synced to the disk every {@code syncIntervalInMs} and compacted into a new snapshot
+ * when it contains more than {@code compactionThreshold} records and more records than the snapshot.
+ * </p>
  */
-public class BootstrapStoreImpl implements BootstrapStore {
+public class BootstrapStoreImpl implements BootstrapStore, Destroyable {
 
     private static final Logger LOG = LoggerFactory.getLogger(BootstrapStoreImpl.class);
 
     // default location for persistence
     public static final String DEFAULT_FILE = "data/bootstrap.json";
 
+    /** Default interval between two journal syncs */
+    public static final long DEFAULT_SYNC_INTERVAL = 1000; // ms
+
+    /** Default number of journal records triggering a snapshot */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+
+    private static final String JOURNAL_EXTENSION = ".journal";
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private static final String PUT_TEMPLATE = "putTemplate";
+    private static final String DELETE_TEMPLATE = "deleteTemplate";
+    private static final String PUT_ENDPOINT = "putEndpoint";
+    private static final String DELETE_ENDPOINT = "deleteEndpoint";
+    private static final String PUT_RULE = "putRule";
+    private static final String DELETE_RULE = "deleteRule";
+
+    /**
+     * The configuration of an endpoint: either a full configuration or a template name with optional instance
+     * overrides.
+     */
+    private static class EndpointEntry {
+        private final String template;
+        private final BootstrapConfig config;
+        // the template merged with the overrides, not persisted
+        private transient volatile MergedConfig merged;
+
+        public EndpointEntry(String template, BootstrapConfig config) {
+            this.template = template;
+            this.config = config;
+        }
+
+        public boolean hasOverrides() {
+            return config != null && !(config.servers.isEmpty() && config.security.isEmpty());
+        }
+    }
+
+    /**
+     * A merged configuration and the template instance it was built from: templates are replaced, never modified, so
+     * a merged configuration is stale as soon as its template instance is no longer the current one.
+     */
+    private static class MergedConfig {
+        private final BootstrapConfig template;
+        private final BootstrapConfig config;
+
+        public MergedConfig(BootstrapConfig template, BootstrapConfig config) {
+            this.template = template;
+            this.config = config;
+        }
+    }
+
+    /**
+     * Assigns a template to the endpoints matching a name pattern.
+     */
+    public static class EndpointRule {
+        private final String pattern;
+        private final String template;
+        private transient Pattern regex;
+
+        public EndpointRule(String pattern, String template) {
+            Validate.notEmpty(pattern);
+            Validate.notEmpty(template);
+            this.pattern = pattern;
+            this.template = template;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public String getTemplate() {
+            return template;
+        }
+
+        public boolean matches(String endpoint) {
+            if (regex == null) {
+                regex = toRegex(pattern);
+            }
+            return regex.matcher(endpoint).matches();
+        }
+
+        private static Pattern toRegex(String pattern) {
+            StringBuilder regex = new StringBuilder();
+            String[] parts = pattern.split("\\*", -1);
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    regex.append(".*");
+                }
+                if (!parts[i].isEmpty()) {
+                    regex.append(Pattern.quote(parts[i]));
+                }
+            }
+            return Pattern.compile(regex.toString());
+        }
+    }
+
+    private static class JournalRecord {
+        private String op;
+        private String name;
+        private String template;
+        private BootstrapConfig config;
+
+        public JournalRecord(String op, String name, String template, BootstrapConfig config) {
+            this.op = op;
+            this.name = name;
+            this.template = template;
+            this.config = config;
+        }
+    }
+
+    private static class Snapshot {
+        private int version = SNAPSHOT_VERSION;
+        private Map<String, BootstrapConfig> templates;
+        private Map<String, EndpointEntry> endpoints;
+        private List<EndpointRule> rules;
+    }
+
     private final String filename;
+    private final File journalFile;
+    private final int compactionThreshold;
     private final Gson gson;
-    private final Type gsonType;
+    private final Type legacyType;
+
+    // lookups are lock-free, changes are serialized by the store monitor
+    private final Map<String, BootstrapConfig> templates = new ConcurrentHashMap<>();
+    private final Map<String, EndpointEntry> endpoints = new ConcurrentHashMap<>();
+    private final List<EndpointRule> rules = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, String> endpointByPskIdentity = new ConcurrentHashMap<>();
+    // guarded by this
+    private final Map<String, String> pskIdentityByEndpoint = new HashMap<>();
+    private final Map<String, Set<String>> endpointsByTemplate = new HashMap<>();
+
+    // guarded by this
+    private Writer journal;
+    private FileOutputStream journalOut;
+    private int journalRecords = 0;
+    private int snapshotSize = 0;
+    private boolean dirty = false;
+    private boolean loading = false;
+
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler;
 
     public BootstrapStoreImpl() {
         this(DEFAULT_FILE);
@@ -60,49 +235,399 @@ public class BootstrapStoreImpl implements BootstrapStore {
      * @param filename the file path to persist the registry
      */
     public BootstrapStoreImpl(String filename) {
+        this(filename, DEFAULT_SYNC_INTERVAL, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param filename the snapshot file, the journal is stored next to it with the {@code .journal} extension
+     * @param syncIntervalInMs the interval between two syncs of the journal to the disk
+     * @param compactionThreshold the number of journal records triggering a new snapshot
+     */
+    public BootstrapStoreImpl(String filename, long syncIntervalInMs, int compactionThreshold) {
         Validate.notEmpty(filename);
-        GsonBuilder builder = new GsonBuilder();
-        builder.setPrettyPrinting();
-        this.gson = builder.create();
-        this.gsonType = new TypeToken<Map<String, BootstrapConfig>>() {
+        Validate.isTrue(syncIntervalInMs > 0, "syncIntervalInMs must be greater than 0");
+        Validate.isTrue(compactionThreshold > 0, "compactionThreshold must be greater than 0");
+        this.gson = new GsonBuilder().create();
+        this.legacyType = new TypeToken<Map<String, BootstrapConfig>>() {
         }.getType();
         this.filename = filename;
+        this.journalFile = new File(filename + JOURNAL_EXTENSION);
+        this.compactionThreshold = compactionThreshold;
+
         this.loadFromFile();
-    }
 
-    private Map<String, BootstrapConfig> bootstrapByEndpoint = new ConcurrentHashMap<>();
+        final ThreadFactory threadFactory = new NamedThreadFactory("leshan-bootstrap-store-%d");
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = threadFactory.newThread(r);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sync();
+            }
+        }, syncIntervalInMs, syncIntervalInMs, TimeUnit.MILLISECONDS);
+    }
 
     @Override
     public BootstrapConfig getBootstrap(String endpoint) {
-        return bootstrapByEndpoint.get(endpoint);
+        EndpointEntry entry = endpoints.get(endpoint);
+        if (entry != null) {
+            return resolve(entry);
+        }
+        for (EndpointRule rule : rules) {
+            if (rule.matches(endpoint)) {
+                return templates.get(rule.getTemplate());
+            }
+        }
+        return null;
+    }
+
+    private BootstrapConfig resolve(EndpointEntry entry) {
+        if (entry.template == null) {
+            return entry.config;
+        }
+        BootstrapConfig template = templates.get(entry.template);
+        if (template == null || !entry.hasOverrides()) {
+            // share the template instance, this also lets the bootstrap handler reuse its encoded form
+            return template;
+        }
+        // return the same instance until the template or the entry changes, for the same reason
+        MergedConfig merged = entry.merged;
+        if (merged == null || merged.template != template) {
+            merged = new MergedConfig(template, merge(template, entry.config));
+            entry.merged = merged;
+        }
+        return merged.config;
+    }
+
+    private static BootstrapConfig merge(BootstrapConfig template, BootstrapConfig overrides) {
+        BootstrapConfig merged = new BootstrapConfig();
+        merged.servers.putAll(template.servers);
+        merged.servers.putAll(overrides.servers);
+        merged.security.putAll(template.security);
+        merged.security.putAll(overrides.security);
+        return merged;
     }
 
+    /**
+     * Returns the endpoint whose bootstrap server security uses the given pre-shared key identity.
+     * <p>
+     * Only the endpoints having their own configuration are indexed.
+     * </p>
+     */
+    public String getEndpointByPskIdentity(String identity) {
+        return endpointByPskIdentity.get(identity);
+    }
+
+    // /////// Endpoints
+
     public void addConfig(String endpoint, BootstrapConfig config) throws ConfigurationException {
-        ConfigurationChecker.verify(config);
-        bootstrapByEndpoint.put(endpoint, config);
-        saveToFile();
+        addConfig(endpoint, null, config);
     }
 
+    /**
+     * Sets the configuration of an endpoint.
+     *
+     * @param endpoint the endpoint name
+     * @param template the template used by this endpoint, or <code>null</code> if <code>config</code> is a full
+     *        configuration
+     * @param config the server and security instances overriding the ones of the template, may be <code>null</code>
+     *        when a template is used
+     * @throws ConfigurationException if the resulting configuration is not valid or the template does not exist
+     */
+    public synchronized void addConfig(String endpoint, String template, BootstrapConfig config)
+            throws ConfigurationException {
+        Validate.notEmpty(endpoint);
+        if (template == null) {
+            Validate.notNull(config);
+        } else if (!templates.containsKey(template)) {
+            throw new ConfigurationException("unknown template: " + template);
+        }
+
+        EndpointEntry entry = new EndpointEntry(template, config);
+        BootstrapConfig resolved = resolve(entry);
+        ConfigurationChecker.verify(resolved);
+
+        EndpointEntry previous = endpoints.put(endpoint, entry);
+        if (previous != null) {
+            unindex(endpoint, previous);
+        }
+        index(endpoint, entry, resolved);
+        append(new JournalRecord(PUT_ENDPOINT, endpoint, template, config));
+    }
+
+    /**
+     * Returns the configurations of the endpoints having their own configuration, templates resolved.
+     */
     public Map<String, BootstrapConfig> getBootstrapConfigs() {
-        return Collections.unmodifiableMap(bootstrapByEndpoint);
+        Map<String, BootstrapConfig> configs = new HashMap<>();
+        for (Map.Entry<String, EndpointEntry> e : endpoints.entrySet()) {
+            BootstrapConfig config = resolve(e.getValue());
+            if (config != null) {
+                configs.put(e.getKey(), config);
+            }
+        }
+        return Collections.unmodifiableMap(configs);
+    }
+
+    public synchronized boolean deleteConfig(String enpoint) {
+        EndpointEntry res = endpoints.remove(enpoint);
+        if (res == null) {
+            return false;
+        }
+        unindex(enpoint, res);
+        append(new JournalRecord(DELETE_ENDPOINT, enpoint, null, null));
+        return true;
+    }
+
+    // /////// Templates
+
+    /**
+     * Adds or replaces a template.
+     *
+     * @throws ConfigurationException if the template, or the configuration of an endpoint overriding it, is not valid
+     */
+    public synchronized void addTemplate(String name, BootstrapConfig config) throws ConfigurationException {
+        Validate.notEmpty(name);
+        Validate.notNull(config);
+        ConfigurationChecker.verify(config);
+
+        Set<String> users = endpointsByTemplate.get(name);
+        if (users != null) {
+            for (String endpoint : users) {
+                EndpointEntry entry = endpoints.get(endpoint);
+                if (entry.hasOverrides()) {
+                    ConfigurationChecker.verify(merge(config, entry.config));
+                }
+            }
+        }
+
+        templates.put(name, config);
+        if (users != null) {
+            // the endpoint identities may come from the template
+            for (String endpoint : users) {
+                EndpointEntry entry = endpoints.get(endpoint);
+                unindexIdentity(endpoint);
+                indexIdentity(endpoint, resolve(entry));
+            }
+        }
+        append(new JournalRecord(PUT_TEMPLATE, name, null, config));
+    }
+
+    /**
+     * Removes a template.
+     *
+     * @return false if there is no template with this name
+     * @throws ConfigurationException if the template is still used by an endpoint or a rule
+     */
+    public synchronized boolean deleteTemplate(String name) throws ConfigurationException {
+        if (!templates.containsKey(name)) {
+            return false;
+        }
+        Set<String> users = endpointsByTemplate.get(name);
+        if (users != null && !users.isEmpty()) {
+            throw new ConfigurationException(
+                    String.format("template %s is used by %d endpoint(s)", name, users.size()));
+        }
+        for (EndpointRule rule : rules) {
+            if (rule.getTemplate().equals(name)) {
+                throw new ConfigurationException(
+                        String.format("template %s is used by rule %s", name, rule.getPattern()));
+            }
+        }
+        templates.remove(name);
+        append(new JournalRecord(DELETE_TEMPLATE, name, null, null));
+        return true;
+    }
+
+    public Map<String, BootstrapConfig> getTemplates() {
+        return Collections.unmodifiableMap(templates);
+    }
+
+    // /////// Rules
+
+    /**
+     * Assigns a template to the endpoints matching the given pattern. Rules are evaluated in insertion order, adding a
+     * rule with an existing pattern replaces it at the same position.
+     *
+     * @param pattern an endpoint name pattern, <code>*</code> matches any sequence of characters
+     * @throws ConfigurationException if the template does not exist
+     */
+    public synchronized void addRule(String pattern, String template) throws ConfigurationException {
+        if (!templates.containsKey(template)) {
+            throw new ConfigurationException("unknown template: " + template);
+        }
+        EndpointRule rule = new EndpointRule(pattern, template);
+        int index = indexOfRule(pattern);
+        if (index < 0) {
+            rules.add(rule);
+        } else {
+            rules.set(index, rule);
+        }
+        append(new JournalRecord(PUT_RULE, pattern, template, null));
     }
 
-    public boolean deleteConfig(String enpoint) {
-        BootstrapConfig res = bootstrapByEndpoint.remove(enpoint);
-        saveToFile();
-        return res != null;
+    public synchronized boolean deleteRule(String pattern) {
+        int index = indexOfRule(pattern);
+        if (index < 0) {
+            return false;
+        }
+        rules.remove(index);
+        append(new JournalRecord(DELETE_RULE, pattern, null, null));
+        return true;
+    }
+
+    public List<EndpointRule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    private int indexOfRule(String pattern) {
+        for (int i = 0; i < rules.size(); i++) {
+            if (rules.get(i).getPattern().equals(pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // /////// Indexes
+
+    private void index(String endpoint, EndpointEntry entry, BootstrapConfig resolved) {
+        if (entry.template != null) {
+            Set<String> users = endpointsByTemplate.get(entry.template);
+            if (users == null) {
+                users = new HashSet<>();
+                endpointsByTemplate.put(entry.template, users);
+            }
+            users.add(endpoint);
+        }
+        indexIdentity(endpoint, resolved);
+    }
+
+    private void unindex(String endpoint, EndpointEntry entry) {
+        if (entry.template != null) {
+            Set<String> users = endpointsByTemplate.get(entry.template);
+            if (users != null) {
+                users.remove(endpoint);
+                if (users.isEmpty()) {
+                    endpointsByTemplate.remove(entry.template);
+                }
+            }
+        }
+        unindexIdentity(endpoint);
+    }
+
+    private void indexIdentity(String endpoint, BootstrapConfig config) {
+        if (config == null || config.security == null) {
+            return;
+        }
+        for (ServerSecurity security : config.security.values()) {
+            if (security.bootstrapServer && security.securityMode == SecurityMode.PSK
+                    && security.publicKeyOrId != null) {
+                String identity = new String(security.publicKeyOrId, Charsets.UTF_8);
+                endpointByPskIdentity.put(identity, endpoint);
+                pskIdentityByEndpoint.put(endpoint, identity);
+                return;
+            }
+        }
+    }
+
+    private void unindexIdentity(String endpoint) {
+        String identity = pskIdentityByEndpoint.remove(endpoint);
+        if (identity != null) {
+            // another endpoint may have been given the same identity since
+            endpointByPskIdentity.remove(identity, endpoint);
+        }
     }
 
     // /////// File persistence
 
+    private void append(JournalRecord record) {
+        if (loading) {
+            return;
+        }
+        try {
+            if (journal == null) {
+                openJournal();
+            }
+            journal.write(gson.toJson(record));
+            journal.write('\n');
+            // hand the record to the OS, the disk sync is batched
+            journal.flush();
+            dirty = true;
+            journalRecords++;
+        } catch (IOException e) {
+            LOG.error("Could not write bootstrap change to journal", e);
+        }
+
+        // the journal can grow as large as the snapshot, so compaction cost stays proportional to the changes
+        if (journalRecords >= Math.max(compactionThreshold, snapshotSize) && !scheduler.isShutdown()
+                && compactionScheduled.compareAndSet(false, true)) {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compactionScheduled.set(false);
+                    saveToFile();
+                }
+            });
+        }
+    }
+
+    private void openJournal() throws IOException {
+        File parent = journalFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        journalOut = new FileOutputStream(journalFile, true);
+        journal = new BufferedWriter(new OutputStreamWriter(journalOut, Charsets.UTF_8));
+    }
+
+    private void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.flush();
+            journalOut.getFD().sync();
+            journal.close();
+            journal = null;
+            journalOut = null;
+        }
+    }
+
+    /**
+     * Syncs the journal to the disk.
+     */
+    protected synchronized void sync() {
+        try {
+            if (dirty && journal != null) {
+                journalOut.getFD().sync();
+                dirty = false;
+            }
+        } catch (IOException e) {
+            LOG.error("Could not sync bootstrap journal", e);
+        }
+    }
+
     @SuppressWarnings("unchecked")
-    private void loadFromFile() {
+    private synchronized void loadFromFile() {
+        loading = true;
+        boolean migrated = false;
         try {
             File file = new File(filename);
             if (file.exists()) {
-                try (InputStreamReader in = new InputStreamReader(new FileInputStream(file))) {
-                    Map<String, BootstrapConfig> config = gson.fromJson(in, gsonType);
-                    bootstrapByEndpoint.putAll(config);
+                try (InputStreamReader in = new InputStreamReader(new FileInputStream(file), Charsets.UTF_8)) {
+                    JsonElement content = new JsonParser().parse(in);
+                    if (content.isJsonObject() && isSnapshot(content.getAsJsonObject())) {
+                        load(gson.fromJson(content, Snapshot.class));
+                    } else if (content.isJsonObject()) {
+                        // configuration file written by a previous version: one full configuration per endpoint
+                        Map<String, BootstrapConfig> configs = gson.fromJson(content, legacyType);
+                        loadConfigs(configs);
+                        migrated = true;
+                    }
                 }
             } else {
                 // TODO temporary code for retro compatibility: remove it later.
@@ -110,7 +635,8 @@ public class BootstrapStoreImpl implements BootstrapStore {
                     file = new File("data/bootstrap.data");// old bootstrap configurations default filename
                     if (file.exists()) {
                         try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
-                            bootstrapByEndpoint.putAll((Map<String, BootstrapConfig>) in.readObject());
+                            loadConfigs((Map<String, BootstrapConfig>) in.readObject());
+                            migrated = true;
                         }
                     }
                 }
@@ -118,26 +644,165 @@ public class BootstrapStoreImpl implements BootstrapStore {
         } catch (Exception e) {
             LOG.error("Could not load bootstrap infos from file", e);
         }
+
+        if (journalFile.exists() && journalFile.length() > 0) {
+            int replayed = replayJournal();
+            LOG.debug("{} bootstrap journal records replayed", replayed);
+            migrated = true;
+        }
+        loading = false;
+
+        if (migrated) {
+            // start again from a clean snapshot, this also drops an incomplete last record
+            saveToFile();
+        }
+    }
+
+    private static boolean isSnapshot(JsonObject content) {
+        JsonElement version = content.get("version");
+        return version != null && version.isJsonPrimitive() && version.getAsJsonPrimitive().isNumber();
+    }
+
+    private void load(Snapshot snapshot) {
+        if (snapshot.templates != null) {
+            templates.putAll(snapshot.templates);
+        }
+        if (snapshot.endpoints != null) {
+            for (Map.Entry<String, EndpointEntry> e : snapshot.endpoints.entrySet()) {
+                endpoints.put(e.getKey(), e.getValue());
+                index(e.getKey(), e.getValue(), resolve(e.getValue()));
+            }
+        }
+        if (snapshot.rules != null) {
+            rules.addAll(snapshot.rules);
+        }
+        snapshotSize = endpoints.size();
+        LOG.debug("{} templates, {} endpoints and {} rules loaded", templates.size(), endpoints.size(),
+                rules.size());
+    }
+
+    private void loadConfigs(Map<String, BootstrapConfig> configs) {
+        if (configs == null) {
+            return;
+        }
+        for (Map.Entry<String, BootstrapConfig> e : configs.entrySet()) {
+            EndpointEntry entry = new EndpointEntry(null, e.getValue());
+            endpoints.put(e.getKey(), entry);
+            index(e.getKey(), entry, e.getValue());
+        }
     }
 
-    private synchronized void saveToFile() {
+    private int replayJournal() {
+        int replayed = 0;
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), Charsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                JournalRecord record;
+                try {
+                    record = gson.fromJson(line, JournalRecord.class);
+                } catch (JsonParseException e) {
+                    // record partially written before a crash
+                    LOG.warn("Invalid bootstrap journal record, skipping the end of the journal");
+                    break;
+                }
+                try {
+                    replay(record);
+                } catch (ConfigurationException e) {
+                    LOG.warn("Could not replay bootstrap journal record {} {}: {}", record.op, record.name,
+                            e.getMessage());
+                }
+                replayed++;
+            }
+        } catch (IOException e) {
+            LOG.error("Could not replay bootstrap journal", e);
+        }
+        return replayed;
+    }
+
+    private void replay(JournalRecord record) throws ConfigurationException {
+        switch (record.op) {
+        case PUT_TEMPLATE:
+            addTemplate(record.name, record.config);
+            break;
+        case DELETE_TEMPLATE:
+            deleteTemplate(record.name);
+            break;
+        case PUT_ENDPOINT:
+            addConfig(record.name, record.template, record.config);
+            break;
+        case DELETE_ENDPOINT:
+            deleteConfig(record.name);
+            break;
+        case PUT_RULE:
+            addRule(record.name, record.template);
+            break;
+        case DELETE_RULE:
+            deleteRule(record.name);
+            break;
+        default:
+            LOG.warn("Unexpected bootstrap journal record {}", record.op);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the store content and truncates the journal.
+     */
+    protected synchronized void saveToFile() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.templates = templates;
+        snapshot.endpoints = endpoints;
+        snapshot.rules = rules;
+
         try {
-            // Create file if it does not exists.
             File file = new File(filename);
-            if (!file.exists()) {
-                File parent = file.getParentFile();
-                if (parent != null) {
-                    parent.mkdirs();
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            File tmpFile = new File(filename + ".tmp");
+            try (FileOutputStream fileOut = new FileOutputStream(tmpFile);
+                    Writer out = new BufferedWriter(new OutputStreamWriter(fileOut, Charsets.UTF_8))) {
+                gson.toJson(snapshot, out);
+                out.flush();
+                fileOut.getFD().sync();
+            }
+            if (!tmpFile.renameTo(file)) {
+                // renaming over an existing file is not supported on all platforms
+                file.delete();
+                if (!tmpFile.renameTo(file)) {
+                    throw new IOException("Unable to rename " + tmpFile + " to " + file);
                 }
-                file.createNewFile();
             }
 
-            // Write file
-            try (OutputStreamWriter out = new OutputStreamWriter(new FileOutputStream(filename))) {
-                out.write(gson.toJson(getBootstrapConfigs(), gsonType));
-            }
-        } catch (Exception e) {
+            closeJournal();
+            new FileOutputStream(journalFile).close();
+            journalRecords = 0;
+            snapshotSize = endpoints.size();
+            dirty = false;
+            LOG.debug("{} bootstrap endpoint configurations saved", snapshotSize);
+        } catch (IOException e) {
             LOG.error("Could not save bootstrap infos to file", e);
         }
     }
+
+    /**
+     * Syncs the pending changes to the disk and stops the background tasks.
+     */
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                closeJournal();
+            } catch (IOException e) {
+                LOG.error("Could not close bootstrap journal", e);
+            }
+        }
+    }
 }
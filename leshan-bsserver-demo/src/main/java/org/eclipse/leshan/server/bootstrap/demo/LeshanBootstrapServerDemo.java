@@ -31,6 +31,7 @@ import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.eclipse.leshan.server.bootstrap.BootstrapSessionManager;
 import org.eclipse.leshan.server.bootstrap.demo.servlet.BootstrapServlet;
+import org.eclipse.leshan.server.bootstrap.demo.servlet.BootstrapTemplateServlet;
 import org.eclipse.leshan.server.californium.LeshanServerBuilder;
 import org.eclipse.leshan.server.californium.impl.LwM2mBootstrapServerImpl;
 import org.eclipse.leshan.server.impl.BootstrapSessionManagerImpl;
@@ -167,6 +168,9 @@ public class LeshanBootstrapServerDemo {
         ServletHolder bsServletHolder = new ServletHolder(new BootstrapServlet(bsStore));
         root.addServlet(bsServletHolder, "/api/bootstrap/*");
 
+        ServletHolder templateServletHolder = new ServletHolder(new BootstrapTemplateServlet(bsStore));
+        root.addServlet(templateServletHolder, "/api/templates/*");
+
         server.setHandler(root);
 
         server.start();
@@ -18,7 +18,6 @@ package org.eclipse.leshan.server.bootstrap.demo.servlet;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.lang.reflect.Type;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -33,13 +32,6 @@ import org.eclipse.leshan.server.bootstrap.demo.ConfigurationChecker.Configurati
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
 import com.google.gson.JsonSyntaxException;
 
 /**
@@ -48,20 +40,6 @@ import com.google.gson.JsonSyntaxException;
 @SuppressWarnings("serial")
 public class BootstrapServlet extends HttpServlet {
 
-    private static class SignedByteUnsignedByteAdapter implements JsonSerializer<Byte>, JsonDeserializer<Byte> {
-
-        @Override
-        public Byte deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
-                throws JsonParseException {
-            return json.getAsByte();
-        }
-
-        @Override
-        public JsonElement serialize(Byte src, Type typeOfSrc, JsonSerializationContext context) {
-            return new JsonPrimitive((int) src & 0xff);
-        }
-    }
-
     private final BootstrapStoreImpl bsStore;
 
     private final Gson gson;
@@ -106,11 +84,13 @@ public class BootstrapServlet extends HttpServlet {
 
         try {
             BootstrapConfig cfg = gson.fromJson(new InputStreamReader(req.getInputStream()), BootstrapConfig.class);
+            // with a template, the content only holds the overridden instances
+            String template = req.getParameter("template");
 
-            if (cfg == null) {
+            if (cfg == null && template == null) {
                 resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "no content");
             } else {
-                bsStore.addConfig(endpoint, cfg);
+                bsStore.addConfig(endpoint, template, cfg);
                 resp.setStatus(HttpServletResponse.SC_OK);
             }
         } catch (JsonSyntaxException jsonEx) {
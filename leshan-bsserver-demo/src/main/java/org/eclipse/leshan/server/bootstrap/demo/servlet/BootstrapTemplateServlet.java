@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.leshan.server.bootstrap.demo.servlet;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.Charsets;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.leshan.server.bootstrap.BootstrapConfig;
+import org.eclipse.leshan.server.bootstrap.demo.BootstrapStoreImpl;
+import org.eclipse.leshan.server.bootstrap.demo.ConfigurationChecker.ConfigurationException;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Servlet for REST API in charge of the bootstrap configuration templates and of the rules assigning them to endpoints.
+ * <ul>
+ * <li>GET /: all templates and rules</li>
+ * <li>POST /{template}, DELETE /{template}: add or delete a template</li>
+ * <li>POST /{template}/rules/{pattern}: assign the template to the endpoints matching the pattern</li>
+ * <li>DELETE /{template}/rules/{pattern}: delete a rule</li>
+ * </ul>
+ */
+@SuppressWarnings("serial")
+public class BootstrapTemplateServlet extends HttpServlet {
+
+    private final BootstrapStoreImpl bsStore;
+
+    private final Gson gson;
+
+    public BootstrapTemplateServlet(BootstrapStoreImpl bsStore) {
+        this.bsStore = bsStore;
+
+        this.gson = new GsonBuilder().registerTypeHierarchyAdapter(Byte.class, new SignedByteUnsignedByteAdapter())
+                .create();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (req.getPathInfo() != null && !req.getPathInfo().equals("/")) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        JsonObject content = new JsonObject();
+        content.add("templates", gson.toJsonTree(bsStore.getTemplates()));
+        content.add("rules", gson.toJsonTree(bsStore.getRules()));
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("application/json");
+        resp.getOutputStream().write(gson.toJson(content).getBytes(Charsets.UTF_8));
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String[] path = StringUtils.split(req.getPathInfo(), '/');
+        if (path == null || path.length == 0) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "template name should be specified in the URL");
+            return;
+        }
+
+        try {
+            if (path.length == 1) {
+                BootstrapConfig cfg = gson.fromJson(new InputStreamReader(req.getInputStream()),
+                        BootstrapConfig.class);
+                if (cfg == null) {
+                    resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "no content");
+                    return;
+                }
+                bsStore.addTemplate(path[0], cfg);
+            } else if (path.length == 3 && path[1].equals("rules")) {
+                bsStore.addRule(path[2], path[0]);
+            } else {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            resp.setStatus(HttpServletResponse.SC_OK);
+        } catch (JsonSyntaxException jsonEx) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, jsonEx.getMessage());
+        } catch (ConfigurationException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @Override
+    protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String[] path = StringUtils.split(req.getPathInfo(), '/');
+        if (path == null || path.length == 0) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "template name should be specified in the URL");
+            return;
+        }
+
+        boolean deleted;
+        try {
+            if (path.length == 1) {
+                deleted = bsStore.deleteTemplate(path[0]);
+            } else if (path.length == 3 && path[1].equals("rules")) {
+                deleted = bsStore.deleteRule(path[2]);
+            } else {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+        } catch (ConfigurationException e) {
+            resp.sendError(HttpServletResponse.SC_CONFLICT, e.getMessage());
+            return;
+        }
+
+        if (deleted) {
+            resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        } else {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+}
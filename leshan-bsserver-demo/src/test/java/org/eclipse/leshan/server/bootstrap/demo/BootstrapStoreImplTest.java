@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.bootstrap.demo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.apache.commons.io.Charsets;
+import org.eclipse.leshan.server.bootstrap.BootstrapConfig;
+import org.eclipse.leshan.server.bootstrap.BootstrapConfig.ServerConfig;
+import org.eclipse.leshan.server.bootstrap.BootstrapConfig.ServerSecurity;
+import org.eclipse.leshan.server.bootstrap.SecurityMode;
+import org.eclipse.leshan.server.bootstrap.demo.ConfigurationChecker.ConfigurationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BootstrapStoreImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String filename;
+    private BootstrapStoreImpl store;
+
+    @Before
+    public void setUp() throws Exception {
+        filename = new File(folder.getRoot(), "bootstrap.json").getPath();
+        store = new BootstrapStoreImpl(filename);
+    }
+
+    @After
+    public void tearDown() {
+        store.destroy();
+    }
+
+    @Test
+    public void endpoints_without_overrides_share_the_template() throws Exception {
+        store.addTemplate("default", newConfig("coap://server", 300));
+        store.addConfig("ep1", "default", null);
+        store.addConfig("ep2", "default", null);
+
+        assertSame(store.getBootstrap("ep1"), store.getBootstrap("ep2"));
+        assertSame(store.getTemplates().get("default"), store.getBootstrap("ep1"));
+    }
+
+    @Test
+    public void overrides_replace_template_instances() throws Exception {
+        store.addTemplate("default", newConfig("coap://server", 300));
+        BootstrapConfig overrides = new BootstrapConfig();
+        ServerConfig server = newServer(600);
+        overrides.servers.put(0, server);
+        store.addConfig("ep1", "default", overrides);
+
+        BootstrapConfig config = store.getBootstrap("ep1");
+        assertEquals(600, config.servers.get(0).lifetime);
+        assertEquals("coap://server", config.security.get(1).uri);
+        // the template is not modified
+        assertEquals(300, store.getTemplates().get("default").servers.get(0).lifetime);
+    }
+
+    @Test
+    public void merged_configuration_is_reused_until_a_change() throws Exception {
+        store.addTemplate("default", newConfig("coap://server", 300));
+        BootstrapConfig overrides = new BootstrapConfig();
+        overrides.servers.put(0, newServer(600));
+        store.addConfig("ep1", "default", overrides);
+
+        BootstrapConfig config = store.getBootstrap("ep1");
+        assertSame(config, store.getBootstrap("ep1"));
+
+        store.addTemplate("default", newConfig("coap://other", 300));
+        BootstrapConfig updated = store.getBootstrap("ep1");
+        assertNotSame(config, updated);
+        assertEquals("coap://other", updated.security.get(1).uri);
+        assertSame(updated, store.getBootstrap("ep1"));
+
+        overrides = new BootstrapConfig();
+        overrides.servers.put(0, newServer(900));
+        store.addConfig("ep1", "default", overrides);
+        assertEquals(900, store.getBootstrap("ep1").servers.get(0).lifetime);
+    }
+
+    @Test
+    public void rules_apply_to_endpoints_without_configuration() throws Exception {
+        store.addTemplate("sensors", newConfig("coap://sensors", 300));
+        store.addTemplate("other", newConfig("coap://other", 300));
+        store.addRule("sensor-*", "sensors");
+        store.addRule("*", "other");
+        store.addConfig("sensor-own", newConfig("coap://own", 300));
+
+        assertEquals("coap://sensors", store.getBootstrap("sensor-1").security.get(1).uri);
+        assertEquals("coap://other", store.getBootstrap("light-1").security.get(1).uri);
+        assertEquals("coap://own", store.getBootstrap("sensor-own").security.get(1).uri);
+
+        assertTrue(store.deleteRule("*"));
+        assertNull(store.getBootstrap("light-1"));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void used_template_cannot_be_deleted() throws Exception {
+        store.addTemplate("default", newConfig("coap://server", 300));
+        store.addConfig("ep1", "default", null);
+
+        store.deleteTemplate("default");
+    }
+
+    @Test
+    public void psk_identity_index_follows_changes() throws Exception {
+        BootstrapConfig config = newConfig("coap://server", 300);
+        config.security.put(0, newBootstrapPsk("id1"));
+        store.addConfig("ep1", config);
+        assertEquals("ep1", store.getEndpointByPskIdentity("id1"));
+
+        config = newConfig("coap://server", 300);
+        config.security.put(0, newBootstrapPsk("id2"));
+        store.addConfig("ep1", config);
+        assertNull(store.getEndpointByPskIdentity("id1"));
+        assertEquals("ep1", store.getEndpointByPskIdentity("id2"));
+
+        store.deleteConfig("ep1");
+        assertNull(store.getEndpointByPskIdentity("id2"));
+    }
+
+    @Test
+    public void changes_are_reloaded_from_journal_and_snapshot() throws Exception {
+        store.addTemplate("default", newConfig("coap://server", 300));
+        store.addConfig("ep1", "default", null);
+        store.addConfig("ep2", newConfig("coap://own", 300));
+        store.addRule("sensor-*", "default");
+        store.deleteConfig("ep2");
+        store.destroy();
+
+        // replays the journal and compacts it
+        store = new BootstrapStoreImpl(filename);
+        assertEquals("coap://server", store.getBootstrap("ep1").security.get(1).uri);
+        assertNull(store.getBootstrap("ep2"));
+        assertEquals("coap://server", store.getBootstrap("sensor-1").security.get(1).uri);
+        assertEquals(0, new File(filename + ".journal").length());
+        store.destroy();
+
+        // loads the snapshot
+        store = new BootstrapStoreImpl(filename);
+        assertSame(store.getTemplates().get("default"), store.getBootstrap("ep1"));
+        assertEquals(1, store.getRules().size());
+    }
+
+    private static BootstrapConfig newConfig(String uri, int lifetime) {
+        BootstrapConfig config = new BootstrapConfig();
+        config.servers.put(0, newServer(lifetime));
+        ServerSecurity security = new ServerSecurity();
+        security.uri = uri;
+        security.securityMode = SecurityMode.NO_SEC;
+        security.serverId = 123;
+        config.security.put(1, security);
+        return config;
+    }
+
+    private static ServerConfig newServer(int lifetime) {
+        ServerConfig server = new ServerConfig();
+        server.shortId = 123;
+        server.lifetime = lifetime;
+        return server;
+    }
+
+    private static ServerSecurity newBootstrapPsk(String identity) {
+        ServerSecurity security = new ServerSecurity();
+        security.uri = "coaps://bootstrap";
+        security.bootstrapServer = true;
+        security.securityMode = SecurityMode.PSK;
+        security.publicKeyOrId = identity.getBytes(Charsets.UTF_8);
+        security.secretKey = new byte[] { 1, 2, 3 };
+        security.serverId = 0;
+        return security;
+    }
+}
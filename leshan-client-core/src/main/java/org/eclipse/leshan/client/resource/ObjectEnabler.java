@@ -191,7 +191,7 @@ public class ObjectEnabler extends BaseObjectEnabler {
                 if (instanceEnabler == null) {
                     doCreate(new CreateRequest(path.getObjectId(), instanceNode));
                 } else {
-                    doWrite(identity, new WriteRequest(Mode.REPLACE, path.getObjectId(), path.getObjectInstanceId(),
+                    doWrite(identity, new WriteRequest(Mode.REPLACE, path.getObjectId(), instanceNode.getId(),
                             instanceNode.getResources().values()));
                 }
             }
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.core.node.codec;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.eclipse.leshan.core.model.LwM2mModel;
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.TimestampedLwM2mNode;
+import org.eclipse.leshan.core.request.ContentFormat;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * A {@link LwM2mNodeEncoder} which reuses the last payloads it encoded.
+ * <p>
+ * When the same request is sent to many clients, the same node instance is encoded again and again with the same
+ * content format and model. This encoder keeps a few recently encoded payloads, looked up by node identity, so the
+ * payload is encoded only once. {@link LwM2mNode} instances are immutable, so a payload can be reused as long as the
+ * node, format, path and model are the same. The returned arrays are shared and must not be modified.
+ * </p>
+ */
+public class CachingLwM2mNodeEncoder implements LwM2mNodeEncoder {
+
+    private static final int DEFAULT_SIZE = 16;
+
+    private final LwM2mNodeEncoder encoder;
+    private final AtomicReferenceArray<Entry> entries;
+
+    public CachingLwM2mNodeEncoder(LwM2mNodeEncoder encoder) {
+        this(encoder, DEFAULT_SIZE);
+    }
+
+    /**
+     * @param encoder the encoder used when the payload is not cached
+     * @param size the maximum number of cached payloads
+     */
+    public CachingLwM2mNodeEncoder(LwM2mNodeEncoder encoder, int size) {
+        Validate.notNull(encoder);
+        Validate.isTrue(size > 0, "size must be greater than 0");
+        this.encoder = encoder;
+        this.entries = new AtomicReferenceArray<>(size);
+    }
+
+    @Override
+    public byte[] encode(LwM2mNode node, ContentFormat format, LwM2mPath path, LwM2mModel model) {
+        int index = (System.identityHashCode(node) & Integer.MAX_VALUE) % entries.length();
+        Entry entry = entries.get(index);
+        if (entry != null && entry.matches(node, format, path, model)) {
+            return entry.payload;
+        }
+        byte[] payload = encoder.encode(node, format, path, model);
+        entries.set(index, new Entry(node, format, path, model, payload));
+        return payload;
+    }
+
+    @Override
+    public byte[] encodeTimestampedData(List<TimestampedLwM2mNode> timestampedNodes, ContentFormat format,
+            LwM2mPath path, LwM2mModel model) {
+        return encoder.encodeTimestampedData(timestampedNodes, format, path, model);
+    }
+
+    @Override
+    public boolean isSupported(ContentFormat format) {
+        return encoder.isSupported(format);
+    }
+
+    private static class Entry {
+        private final LwM2mNode node;
+        private final ContentFormat format;
+        private final LwM2mPath path;
+        private final LwM2mModel model;
+        private final byte[] payload;
+
+        public Entry(LwM2mNode node, ContentFormat format, LwM2mPath path, LwM2mModel model, byte[] payload) {
+            this.node = node;
+            this.format = format;
+            this.path = path;
+            this.model = model;
+            this.payload = payload;
+        }
+
+        public boolean matches(LwM2mNode node, ContentFormat format, LwM2mPath path, LwM2mModel model) {
+            return this.node == node && this.model == model && Objects.equals(this.format, format)
+                    && Objects.equals(this.path, path);
+        }
+    }
+}
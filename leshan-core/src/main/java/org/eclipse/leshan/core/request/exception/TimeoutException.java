@@ -23,4 +23,8 @@ public class TimeoutException extends Exception {
         super("Request timed out after all CoAP retransmission attempts");
     }
 
+    public TimeoutException(String message) {
+        super(message);
+    }
+
 }
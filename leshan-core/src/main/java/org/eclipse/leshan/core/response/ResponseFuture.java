@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.core.response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.leshan.core.request.exception.RequestCanceledException;
+
+/**
+ * The pending result of a request sent asynchronously.
+ * <p>
+ * Callbacks can be added at any time with {@link #addCallback(ResponseCallback, ErrorCallback)}: they are invoked once,
+ * by the thread completing the future, or immediately if the future is already completed. They should not block.
+ * </p>
+ *
+ * @param <T> the type of the expected response
+ */
+public class ResponseFuture<T extends LwM2mResponse> implements Future<T> {
+
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile T response;
+    private volatile Exception error;
+    private volatile boolean cancelled;
+
+    // guarded by this, null once the future is completed
+    private List<Callback<T>> callbacks = new ArrayList<>(1);
+
+    /**
+     * Completes this future with the given response.
+     *
+     * @return false if the future was already completed.
+     */
+    public boolean complete(T response) {
+        return set(response, null, false);
+    }
+
+    /**
+     * Completes this future with the given error.
+     *
+     * @return false if the future was already completed.
+     */
+    public boolean fail(Exception error) {
+        return set(null, error, false);
+    }
+
+    /**
+     * Cancels this future: error callbacks are invoked with a {@link RequestCanceledException} and {@link #onCancel()}
+     * is called.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (set(null, new RequestCanceledException("Canceled request"), true)) {
+            onCancel();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called when this future is cancelled, e.g. to cancel the underlying request.
+     */
+    protected void onCancel() {
+    }
+
+    private boolean set(T response, Exception error, boolean cancelled) {
+        if (!completed.compareAndSet(false, true)) {
+            return false;
+        }
+        this.response = response;
+        this.error = error;
+        this.cancelled = cancelled;
+
+        List<Callback<T>> toNotify;
+        synchronized (this) {
+            toNotify = callbacks;
+            callbacks = null;
+        }
+        done.countDown();
+        for (Callback<T> callback : toNotify) {
+            notify(callback);
+        }
+        return true;
+    }
+
+    /**
+     * Adds callbacks invoked when this future is completed.
+     */
+    public void addCallback(ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        Callback<T> callback = new Callback<>(responseCallback, errorCallback);
+        synchronized (this) {
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        notify(callback);
+    }
+
+    private void notify(Callback<T> callback) {
+        if (error != null) {
+            if (callback.errorCallback != null) {
+                callback.errorCallback.onError(error);
+            }
+        } else if (callback.responseCallback != null) {
+            callback.responseCallback.onResponse(response);
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return isDone() && cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return response;
+    }
+
+    private static class Callback<T extends LwM2mResponse> {
+        private final ResponseCallback<T> responseCallback;
+        private final ErrorCallback errorCallback;
+
+        public Callback(ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+            this.responseCallback = responseCallback;
+            this.errorCallback = errorCallback;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ThreadPoolExecutor} with a bounded number of threads and a bounded task queue.
+ * <p>
+ * When both are exhausted, the task is executed by the submitting thread. This slows down the producer (e.g. the CoAP
+ * stack or a Redis subscriber) instead of spawning new threads or dropping tasks. A warning with the queue depth and the
+ * number of tasks run by the submitting threads is logged when this happens, at most every 10 seconds.
+ * </p>
+ */
+public class BoundedExecutorService extends ThreadPoolExecutor implements MonitoredExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BoundedExecutorService.class);
+
+    /** Default number of threads: twice the number of available processors */
+    public static final int DEFAULT_MAX_THREADS = 2 * Runtime.getRuntime().availableProcessors();
+
+    /** Default maximum number of tasks waiting for a thread */
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    private static final long WARNING_PERIOD = TimeUnit.SECONDS.toNanos(10);
+
+    private final String nameFormat;
+    private final AtomicLong rejectedTaskCount = new AtomicLong();
+    private final AtomicLong lastWarning = new AtomicLong(System.nanoTime() - WARNING_PERIOD);
+
+    /**
+     * Creates a new executor with {@link #DEFAULT_MAX_THREADS} threads and a queue of {@link #DEFAULT_QUEUE_CAPACITY}
+     * tasks.
+     *
+     * @param nameFormat thread name format (see {@link NamedThreadFactory})
+     */
+    public BoundedExecutorService(String nameFormat) {
+        this(nameFormat, DEFAULT_MAX_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a new executor.
+     *
+     * @param nameFormat thread name format (see {@link NamedThreadFactory})
+     * @param maxThreads maximum number of threads, idle threads are released after 60 seconds
+     * @param queueCapacity maximum number of tasks waiting for a thread
+     */
+    public BoundedExecutorService(String nameFormat, int maxThreads, int queueCapacity) {
+        super(maxThreads, maxThreads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new NamedThreadFactory(nameFormat), new SaturationPolicy());
+        this.nameFormat = nameFormat;
+        allowCoreThreadTimeOut(true);
+    }
+
+    private void saturated() {
+        long rejected = rejectedTaskCount.incrementAndGet();
+        long now = System.nanoTime();
+        long last = lastWarning.get();
+        if (now - last >= WARNING_PERIOD && lastWarning.compareAndSet(last, now)) {
+            LOG.warn("Executor {} is saturated: {} tasks queued, {} tasks run by the submitting threads so far",
+                    nameFormat, getQueueDepth(), rejected);
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    @Override
+    public long getRejectedTaskCount() {
+        return rejectedTaskCount.get();
+    }
+
+    /**
+     * Counts the rejected tasks and runs them on the submitting thread.
+     */
+    private static class SaturationPolicy implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler callerRuns = new CallerRunsPolicy();
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            ((BoundedExecutorService) executor).saturated();
+            callerRuns.rejectedExecution(r, executor);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.util;
+
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link Executor} exposing metrics about its load.
+ */
+public interface MonitoredExecutor extends Executor {
+
+    /**
+     * @return the number of tasks waiting to be executed.
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the number of tasks which could not be queued and were executed by the submitting thread.
+     */
+    long getRejectedTaskCount();
+}
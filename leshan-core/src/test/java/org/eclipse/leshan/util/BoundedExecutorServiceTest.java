@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoundedExecutorServiceTest {
+
+    private BoundedExecutorService executor;
+    private CountDownLatch started;
+    private CountDownLatch blocked;
+
+    @Before
+    public void setUp() {
+        // one thread and one queued task at most
+        executor = new BoundedExecutorService("test-%d", 1, 1);
+        started = new CountDownLatch(1);
+        blocked = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        blocked.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void tasks_are_queued_while_threads_are_busy() throws InterruptedException {
+        occupyThread();
+        assertEquals(0, executor.getQueueDepth());
+
+        executor.execute(new Noop());
+        assertEquals(1, executor.getQueueDepth());
+        assertEquals(0, executor.getRejectedTaskCount());
+
+        blocked.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getQueueDepth());
+    }
+
+    @Test
+    public void task_runs_on_submitting_thread_when_saturated() throws InterruptedException {
+        occupyThread();
+        executor.execute(new Noop());
+
+        final AtomicReference<Thread> runner = new AtomicReference<>();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runner.set(Thread.currentThread());
+            }
+        });
+
+        assertSame(Thread.currentThread(), runner.get());
+        assertEquals(1, executor.getRejectedTaskCount());
+        assertEquals(1, executor.getQueueDepth());
+
+        executor.execute(new Noop());
+        assertEquals(2, executor.getRejectedTaskCount());
+    }
+
+    private void occupyThread() throws InterruptedException {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private static class Noop implements Runnable {
+        @Override
+        public void run() {
+        }
+    }
+}
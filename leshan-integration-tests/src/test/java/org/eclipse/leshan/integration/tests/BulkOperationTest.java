@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.leshan.integration.tests;
+
+import static org.eclipse.leshan.integration.tests.IntegrationTestHelper.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.ResponseCode;
+import org.eclipse.leshan.core.node.LwM2mResource;
+import org.eclipse.leshan.core.request.ContentFormat;
+import org.eclipse.leshan.core.request.ReadRequest;
+import org.eclipse.leshan.core.request.WriteRequest;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ReadResponse;
+import org.eclipse.leshan.core.response.WriteResponse;
+import org.eclipse.leshan.server.bulk.BulkOperation;
+import org.eclipse.leshan.server.bulk.BulkOperationListener;
+import org.eclipse.leshan.server.bulk.BulkOperationSummary;
+import org.eclipse.leshan.server.bulk.BulkOptions;
+import org.eclipse.leshan.server.bulk.RegistrationFilter;
+import org.eclipse.leshan.server.client.Registration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkOperationTest {
+
+    private IntegrationTestHelper helper = new IntegrationTestHelper();
+
+    @Before
+    public void start() {
+        helper.initialize();
+        helper.createServer();
+        helper.server.start();
+        helper.createClient();
+        helper.client.start();
+        helper.waitForRegistration(1);
+    }
+
+    @After
+    public void stop() {
+        helper.client.stop(false);
+        helper.server.stop();
+        helper.dispose();
+    }
+
+    @Test
+    public void can_read_from_endpoint_list() throws InterruptedException {
+        ResultCollector<ReadResponse> results = new ResultCollector<>();
+        BulkOperation operation = helper.server.getBulkOperationService().send(
+                Arrays.asList(helper.getCurrentEndpoint(), "unknown_endpoint"), new ReadRequest(3, 0, 1),
+                new BulkOptions.Builder().setMaxInFlightRequests(1).setMaxRequestsPerSecond(10).build(), results);
+
+        BulkOperationSummary summary = operation.awaitCompletion(5, TimeUnit.SECONDS);
+
+        // verify result
+        assertNotNull(summary);
+        assertEquals(2, summary.getTargeted());
+        assertEquals(1, summary.getSucceeded());
+        assertEquals(1, summary.getSkipped());
+        assertEquals(ResponseCode.CONTENT, results.responses.get(helper.getCurrentEndpoint()).getCode());
+        assertTrue(results.errors.containsKey("unknown_endpoint"));
+    }
+
+    @Test
+    public void can_write_to_filtered_registrations() throws InterruptedException {
+        ResultCollector<WriteResponse> results = new ResultCollector<>();
+        BulkOperation operation = helper.server.getBulkOperationService().send(new RegistrationFilter() {
+            @Override
+            public boolean accept(Registration registration) {
+                return registration.getEndpoint().equals(helper.getCurrentEndpoint());
+            }
+        }, new WriteRequest(ContentFormat.TEXT, TEST_OBJECT_ID, 0, STRING_RESOURCE_ID, "bulk value"),
+                new BulkOptions.Builder().build(), results);
+
+        BulkOperationSummary summary = operation.awaitCompletion(5, TimeUnit.SECONDS);
+
+        // verify result
+        assertNotNull(summary);
+        assertEquals(1, summary.getTargeted());
+        assertEquals(1, summary.getSucceeded());
+        assertEquals(ResponseCode.CHANGED, results.responses.get(helper.getCurrentEndpoint()).getCode());
+        ReadResponse readResponse = helper.server.send(helper.getCurrentRegistration(),
+                new ReadRequest(TEST_OBJECT_ID, 0, STRING_RESOURCE_ID));
+        assertEquals("bulk value", ((LwM2mResource) readResponse.getContent()).getValue());
+    }
+
+    private static class ResultCollector<T extends LwM2mResponse> implements BulkOperationListener<T> {
+        private final Map<String, T> responses = new ConcurrentHashMap<>();
+        private final Map<String, Exception> errors = new ConcurrentHashMap<>();
+
+        @Override
+        public void onResponse(String endpoint, T response) {
+            responses.put(endpoint, response);
+        }
+
+        @Override
+        public void onError(String endpoint, Exception error) {
+            errors.put(endpoint, error);
+        }
+
+        @Override
+        public void onCompleted(BulkOperationSummary summary) {
+        }
+    }
+}
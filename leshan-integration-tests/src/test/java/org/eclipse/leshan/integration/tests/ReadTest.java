@@ -22,12 +22,15 @@ import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.junit.Assert.*;
 
+import java.util.concurrent.ExecutionException;
+
 import org.eclipse.californium.core.coap.Response;
 import org.eclipse.leshan.core.node.LwM2mObject;
 import org.eclipse.leshan.core.node.LwM2mObjectInstance;
 import org.eclipse.leshan.core.node.LwM2mResource;
 import org.eclipse.leshan.core.request.ReadRequest;
 import org.eclipse.leshan.core.response.ReadResponse;
+import org.eclipse.leshan.core.response.ResponseFuture;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -85,6 +88,20 @@ public class ReadTest {
         assertEquals(0, instance.getId());
     }
 
+    @Test
+    public void can_read_object_asynchronously() throws InterruptedException, ExecutionException {
+        // read device object without blocking on the request
+        ResponseFuture<ReadResponse> future = helper.server.sendAsync(helper.getCurrentRegistration(),
+                new ReadRequest(3), 5000);
+        ReadResponse response = future.get();
+
+        // verify result
+        assertTrue(future.isDone());
+        assertEquals(CONTENT, response.getCode());
+        LwM2mObject object = (LwM2mObject) response.getContent();
+        assertEquals(3, object.getId());
+    }
+
     @Test
     public void can_read_object_instance() throws InterruptedException {
         // read device single instance
@@ -21,10 +21,12 @@ import org.eclipse.leshan.core.request.DownlinkRequest;
 import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ResponseFuture;
 import org.eclipse.leshan.server.Destroyable;
 import org.eclipse.leshan.server.LwM2mServer;
 import org.eclipse.leshan.server.Startable;
 import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.server.bulk.BulkOperationService;
 import org.eclipse.leshan.server.client.Registration;
 import org.eclipse.leshan.server.client.RegistrationListener;
 import org.eclipse.leshan.server.client.RegistrationService;
@@ -159,6 +161,17 @@ public class QueueModeLeshanServer implements LwM2mServer {
         // Noop.
     }
 
+    @Override
+    public <T extends LwM2mResponse> ResponseFuture<T> sendAsync(Registration destination,
+            DownlinkRequest<T> request, long timeout) {
+        throw new UnsupportedOperationException("Server doesn't support sending of messages with futures");
+    }
+
+    @Override
+    public BulkOperationService getBulkOperationService() {
+        throw new UnsupportedOperationException("Server doesn't support bulk operations");
+    }
+
     @Override
     public <T extends LwM2mResponse> void send(Registration destination, String requestTicket, DownlinkRequest<T> request) {
         lwM2mRequestSender.send(destination, requestTicket, request);
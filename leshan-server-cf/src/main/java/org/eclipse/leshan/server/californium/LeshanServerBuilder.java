@@ -21,6 +21,7 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.ExecutorService;
 
 import org.eclipse.leshan.core.node.codec.DefaultLwM2mNodeDecoder;
 import org.eclipse.leshan.core.node.codec.DefaultLwM2mNodeEncoder;
@@ -32,7 +33,9 @@ import org.eclipse.leshan.server.californium.impl.LeshanServer;
 import org.eclipse.leshan.server.impl.FileSecurityStore;
 import org.eclipse.leshan.server.model.LwM2mModelProvider;
 import org.eclipse.leshan.server.model.StandardModelProvider;
+import org.eclipse.leshan.server.registration.RegistrationAdmissionControl;
 import org.eclipse.leshan.server.security.SecurityStore;
+import org.eclipse.leshan.util.BoundedExecutorService;
 
 /**
  * Class helping you to build and configure a Californium based Leshan Lightweight M2M server. Usage: create it, call
@@ -62,6 +65,10 @@ public class LeshanServerBuilder {
     private X509Certificate[] certificateChain;
     private Certificate[] trustedCertificates;
 
+    private ExecutorService responseProcessingExecutor;
+
+    private RegistrationAdmissionControl admissionControl;
+
     public LeshanServerBuilder setLocalAddress(String hostname, int port) {
         if (hostname == null) {
             this.localAddress = new InetSocketAddress(port);
@@ -135,6 +142,23 @@ public class LeshanServerBuilder {
         return this;
     }
 
+    /**
+     * Sets the executor used to notify response listeners. By default, a {@link BoundedExecutorService} is used.
+     */
+    public LeshanServerBuilder setResponseProcessingExecutor(ExecutorService responseProcessingExecutor) {
+        this.responseProcessingExecutor = responseProcessingExecutor;
+        return this;
+    }
+
+    /**
+     * Sets the admission control limiting the rate of Register and Update requests. By default, all requests are
+     * admitted.
+     */
+    public LeshanServerBuilder setRegistrationAdmissionControl(RegistrationAdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+        return this;
+    }
+
     public LeshanServer build() {
         if (localAddress == null)
             localAddress = new InetSocketAddress((InetAddress) null, PORT);
@@ -152,6 +176,7 @@ public class LeshanServerBuilder {
             decoder = new DefaultLwM2mNodeDecoder();
 
         return new LeshanServer(localAddress, localSecureAddress, registrationStore, securityStore, modelProvider,
-                encoder, decoder, publicKey, privateKey, certificateChain, trustedCertificates);
+                encoder, decoder, publicKey, privateKey, certificateChain, trustedCertificates,
+                responseProcessingExecutor, admissionControl);
     }
 }
@@ -21,6 +21,7 @@ import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.network.Endpoint;
 import org.eclipse.leshan.core.model.LwM2mModel;
+import org.eclipse.leshan.core.node.codec.CachingLwM2mNodeEncoder;
 import org.eclipse.leshan.core.node.codec.DefaultLwM2mNodeDecoder;
 import org.eclipse.leshan.core.node.codec.DefaultLwM2mNodeEncoder;
 import org.eclipse.leshan.core.node.codec.LwM2mNodeDecoder;
@@ -41,7 +42,8 @@ public class CaliforniumLwM2mBootstrapRequestSender implements LwM2mBootstrapReq
     private final Endpoint secureEndpoint;
     private final LwM2mModel model;
     private final LwM2mNodeDecoder decoder = new DefaultLwM2mNodeDecoder();
-    private final LwM2mNodeEncoder encoder = new DefaultLwM2mNodeEncoder();
+    // the nodes of a bootstrap config are reused for all the sessions, so are their payloads
+    private final LwM2mNodeEncoder encoder = new CachingLwM2mNodeEncoder(new DefaultLwM2mNodeEncoder(), 64);
 
     public CaliforniumLwM2mBootstrapRequestSender(final Endpoint secureEndpoint, final Endpoint nonSecureEndpoint,
             final LwM2mModel model) {
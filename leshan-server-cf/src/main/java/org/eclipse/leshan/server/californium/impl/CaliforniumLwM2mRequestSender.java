@@ -23,7 +23,9 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.californium.core.coap.MessageObserver;
 import org.eclipse.californium.core.coap.Request;
@@ -33,14 +35,17 @@ import org.eclipse.leshan.core.model.LwM2mModel;
 import org.eclipse.leshan.core.node.codec.LwM2mNodeDecoder;
 import org.eclipse.leshan.core.node.codec.LwM2mNodeEncoder;
 import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
 import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ResponseFuture;
 import org.eclipse.leshan.server.client.Registration;
 import org.eclipse.leshan.server.model.LwM2mModelProvider;
 import org.eclipse.leshan.server.request.LwM2mRequestSender;
 import org.eclipse.leshan.server.response.ResponseListener;
 import org.eclipse.leshan.server.response.ResponseProcessingTask;
+import org.eclipse.leshan.util.BoundedExecutorService;
 import org.eclipse.leshan.util.NamedThreadFactory;
 import org.eclipse.leshan.util.Validate;
 
@@ -55,8 +60,9 @@ public class CaliforniumLwM2mRequestSender implements LwM2mRequestSender {
     // This is mainly used to cancel request and avoid retransmission on de-registration
     private final ConcurrentNavigableMap<String/* registrationId#requestId */, Request /* pending coap Request */> pendingRequests = new ConcurrentSkipListMap<>();
     private final Collection<ResponseListener> responseListeners = new ConcurrentLinkedQueue<>();
-    private final ExecutorService processingExecutor = Executors
-            .newCachedThreadPool(new NamedThreadFactory("californium-lwm2m-requestsender-processingExecutor-%d"));
+    private final ExecutorService processingExecutor;
+    // A single timer shared by all asynchronous requests to handle their timeout
+    private final ScheduledThreadPoolExecutor timeoutTimer;
 
     /**
      * @param endpoints the CoAP endpoints to use for sending requests
@@ -66,6 +72,19 @@ public class CaliforniumLwM2mRequestSender implements LwM2mRequestSender {
     public CaliforniumLwM2mRequestSender(final Set<Endpoint> endpoints,
             final ObservationServiceImpl observationService, LwM2mModelProvider modelProvider,
             LwM2mNodeEncoder encoder, LwM2mNodeDecoder decoder) {
+        this(endpoints, observationService, modelProvider, encoder, decoder, null);
+    }
+
+    /**
+     * @param endpoints the CoAP endpoints to use for sending requests
+     * @param observationService the service for keeping track of observed resources
+     * @param modelProvider provides the supported objects definitions
+     * @param processingExecutor the executor used to notify response listeners. If null, a
+     *        {@link BoundedExecutorService} is used.
+     */
+    public CaliforniumLwM2mRequestSender(final Set<Endpoint> endpoints,
+            final ObservationServiceImpl observationService, LwM2mModelProvider modelProvider,
+            LwM2mNodeEncoder encoder, LwM2mNodeDecoder decoder, ExecutorService processingExecutor) {
         Validate.notNull(endpoints);
         Validate.notNull(observationService);
         Validate.notNull(modelProvider);
@@ -74,6 +93,24 @@ public class CaliforniumLwM2mRequestSender implements LwM2mRequestSender {
         this.modelProvider = modelProvider;
         this.encoder = encoder;
         this.decoder = decoder;
+        this.timeoutTimer = new ScheduledThreadPoolExecutor(1,
+                new NamedThreadFactory("californium-lwm2m-requestsender-timer-%d"));
+        this.timeoutTimer.setRemoveOnCancelPolicy(true);
+        this.timeoutTimer.setKeepAliveTime(10, TimeUnit.SECONDS);
+        this.timeoutTimer.allowCoreThreadTimeOut(true);
+        if (processingExecutor == null) {
+            this.processingExecutor = new BoundedExecutorService(
+                    "californium-lwm2m-requestsender-processingExecutor-%d");
+        } else {
+            this.processingExecutor = processingExecutor;
+        }
+    }
+
+    /**
+     * @return the executor used to notify response listeners.
+     */
+    public ExecutorService getProcessingExecutor() {
+        return processingExecutor;
     }
 
     @Override
@@ -127,6 +164,70 @@ public class CaliforniumLwM2mRequestSender implements LwM2mRequestSender {
         request.accept(coapRequestBuilder);
         final Request coapRequest = coapRequestBuilder.getRequest();
 
+        send(destination, request, model, coapRequest, responseCallback, errorCallback);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> ResponseFuture<T> sendAsync(final Registration destination,
+            final DownlinkRequest<T> request, final Long timeout) {
+        // Retrieve the objects definition
+        final LwM2mModel model = modelProvider.getObjectModel(destination);
+
+        // Create the CoAP request from LwM2m request
+        final CoapRequestBuilder coapRequestBuilder = new CoapRequestBuilder(
+                new InetSocketAddress(destination.getAddress(), destination.getPort()), destination.getRootPath(),
+                destination.getId(), destination.getEndpoint(), model, encoder);
+        request.accept(coapRequestBuilder);
+        final Request coapRequest = coapRequestBuilder.getRequest();
+
+        final ResponseFuture<T> future = new ResponseFuture<T>() {
+            @Override
+            protected void onCancel() {
+                coapRequest.cancel();
+            }
+        };
+
+        // Schedule the timeout on the shared timer instead of blocking a thread
+        if (timeout != null) {
+            final ScheduledFuture<?> timeoutTask = timeoutTimer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (future.fail(new TimeoutException(
+                            String.format("Request timed out after %d ms", timeout)))) {
+                        coapRequest.cancel();
+                    }
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            future.addCallback(new ResponseCallback<T>() {
+                @Override
+                public void onResponse(T response) {
+                    timeoutTask.cancel(false);
+                }
+            }, new ErrorCallback() {
+                @Override
+                public void onError(Exception e) {
+                    timeoutTask.cancel(false);
+                }
+            });
+        }
+
+        send(destination, request, model, coapRequest, new ResponseCallback<T>() {
+            @Override
+            public void onResponse(T response) {
+                future.complete(response);
+            }
+        }, new ErrorCallback() {
+            @Override
+            public void onError(Exception e) {
+                future.fail(e);
+            }
+        });
+        return future;
+    }
+
+    private <T extends LwM2mResponse> void send(final Registration destination, final DownlinkRequest<T> request,
+            final LwM2mModel model, final Request coapRequest, final ResponseCallback<T> responseCallback,
+            final ErrorCallback errorCallback) {
         // Add CoAP request callback
         coapRequest.addMessageObserver(new AsyncRequestObserver<T>(coapRequest, responseCallback, errorCallback) {
             @Override
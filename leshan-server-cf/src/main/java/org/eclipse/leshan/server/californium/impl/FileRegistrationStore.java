@@ -0,0 +1,759 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import static org.eclipse.leshan.util.Charsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.serialization.DataParser;
+import org.eclipse.californium.core.network.serialization.DataSerializer;
+import org.eclipse.californium.core.network.serialization.UdpDataParser;
+import org.eclipse.californium.core.network.serialization.UdpDataSerializer;
+import org.eclipse.californium.elements.RawData;
+import org.eclipse.leshan.core.observation.Observation;
+import org.eclipse.leshan.server.Destroyable;
+import org.eclipse.leshan.server.client.Registration;
+import org.eclipse.leshan.server.client.RegistrationUpdate;
+import org.eclipse.leshan.server.registration.Deregistration;
+import org.eclipse.leshan.util.NamedThreadFactory;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link InMemoryRegistrationStore} which persists registrations and observations in a file, so clients do not
+ * have to register again after a server restart.
+ * <p>
+ * Like the {@link org.eclipse.leshan.server.impl.FileSecurityStore}, the content is persisted in a snapshot and
+ * numbered append-only journals of the changes made since this snapshot. The journal is synced to the disk every
+ * {@code syncIntervalInMs} and a new journal generation and snapshot are started when the journal contains more than
+ * {@code compactionThreshold} records and more records than the snapshot. The snapshot is loaded and the journals
+ * are replayed when the store is started. Records which cannot be replayed are skipped, in this case the original
+ * files are kept aside with a {@code .corrupt-<timestamp>} suffix instead of being compacted.
+ * </p>
+ * <p>
+ * The disk syncs and snapshots are done without holding the store or journal locks, so they never delay the store
+ * readers and writers.
+ * </p>
+ * <p>
+ * The correlation context (e.g. the DTLS session) of the observations is not persisted.
+ * </p>
+ */
+public class FileRegistrationStore extends InMemoryRegistrationStore implements Destroyable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileRegistrationStore.class);
+
+    // default location for persistence
+    private static final String DEFAULT_FILE = "data/registration.data";
+
+    /** Default interval between two journal syncs */
+    public static final long DEFAULT_SYNC_INTERVAL = 1000; // ms
+
+    /** Default number of journal records triggering a snapshot */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10_000;
+
+    private static final String JOURNAL_EXTENSION = ".journal.";
+    private static final String CORRUPT_EXTENSION = ".corrupt-";
+    // type and length of a record
+    private static final int RECORD_HEADER_SIZE = 5;
+    private static final byte ADD_REGISTRATION = 1;
+    private static final byte UPDATE_REGISTRATION = 2;
+    private static final byte REFRESH_REGISTRATION = 3;
+    private static final byte REMOVE_REGISTRATION = 4;
+    private static final byte ADD_OBSERVATION = 5;
+    private static final byte REMOVE_OBSERVATION = 6;
+    private static final byte REMOVE_OBSERVATIONS = 7;
+
+    private static final DataSerializer serializer = new UdpDataSerializer();
+
+    // the name of the file used to persist the store snapshot
+    private final String filename;
+    private final int compactionThreshold;
+
+    // guards the current journal, always acquired after the store lock and never held during a disk sync
+    private final ReentrantLock journalLock = new ReentrantLock();
+    private long generation = 0;
+    private FileOutputStream journalOut;
+    private DataOutputStream journal;
+    private int journalRecords = 0;
+    private boolean dirty = false;
+    private volatile int snapshotSize = 0;
+
+    // serializes the snapshots, never acquired by the store readers and writers
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    // false when some records could not be loaded on startup
+    private boolean loadComplete;
+
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler;
+
+    public FileRegistrationStore() {
+        this(DEFAULT_FILE);
+    }
+
+    public FileRegistrationStore(String file) {
+        this(file, DEFAULT_SYNC_INTERVAL, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param file the snapshot file, the journals are stored next to it with the {@code .journal.<generation>}
+     *        extension
+     * @param syncIntervalInMs the interval between two syncs of the journal to the disk
+     * @param compactionThreshold the number of journal records triggering a new snapshot
+     */
+    public FileRegistrationStore(String file, long syncIntervalInMs, int compactionThreshold) {
+        Validate.notEmpty(file);
+        Validate.isTrue(syncIntervalInMs > 0, "syncIntervalInMs must be greater than 0");
+        Validate.isTrue(compactionThreshold > 0, "compactionThreshold must be greater than 0");
+        this.filename = file;
+        this.compactionThreshold = compactionThreshold;
+
+        final ThreadFactory threadFactory = new NamedThreadFactory("leshan-registration-store-%d");
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = threadFactory.newThread(r);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sync();
+            }
+        }, syncIntervalInMs, syncIntervalInMs, TimeUnit.MILLISECONDS);
+    }
+
+    /* *************** Leshan Registration API **************** */
+
+    @Override
+    public Deregistration addRegistration(Registration registration) {
+        byte[] record = serialize(registration);
+
+        lock.writeLock().lock();
+        Deregistration deregistration;
+        try {
+            deregistration = super.addRegistration(registration);
+            // keep the journal in the same order as the store
+            journalLock.lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        appendAndUnlock(ADD_REGISTRATION, record);
+        return deregistration;
+    }
+
+    @Override
+    public Registration updateRegistration(RegistrationUpdate update) {
+        lock.writeLock().lock();
+        Registration registration;
+        byte[] record;
+        try {
+            registration = super.updateRegistration(update);
+            if (registration == null) {
+                return null;
+            }
+            record = serialize(registration);
+            journalLock.lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        appendAndUnlock(UPDATE_REGISTRATION, record);
+        return registration;
+    }
+
+    @Override
+    public Registration refreshRegistration(RegistrationUpdate update) {
+        // refreshes only extend the last update time, so their order in the journal does not matter
+        lock.readLock().lock();
+        Registration registration;
+        try {
+            registration = super.refreshRegistration(update);
+            if (registration == null) {
+                return null;
+            }
+            journalLock.lock();
+        } finally {
+            lock.readLock().unlock();
+        }
+        byte[] id = registration.getId().getBytes(UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(8 + id.length);
+        record.putLong(registration.getLastUpdate().getTime());
+        record.put(id);
+        appendAndUnlock(REFRESH_REGISTRATION, record.array());
+        return registration;
+    }
+
+    @Override
+    public Deregistration removeRegistration(String registrationId) {
+        lock.writeLock().lock();
+        Deregistration deregistration;
+        try {
+            deregistration = super.removeRegistration(registrationId);
+            if (deregistration == null) {
+                return null;
+            }
+            journalLock.lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        appendAndUnlock(REMOVE_REGISTRATION, registrationId.getBytes(UTF_8));
+        return deregistration;
+    }
+
+    /* *************** Leshan Observation API **************** */
+
+    @Override
+    public Observation removeObservation(String registrationId, byte[] observationId) {
+        lock.writeLock().lock();
+        Observation observation;
+        try {
+            observation = super.removeObservation(registrationId, observationId);
+            if (observation == null) {
+                return null;
+            }
+            journalLock.lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        appendAndUnlock(REMOVE_OBSERVATION, observationId);
+        return observation;
+    }
+
+    @Override
+    public Collection<Observation> removeObservations(String registrationId) {
+        lock.writeLock().lock();
+        Collection<Observation> observations;
+        try {
+            observations = super.removeObservations(registrationId);
+            if (observations.isEmpty()) {
+                return observations;
+            }
+            journalLock.lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        appendAndUnlock(REMOVE_OBSERVATIONS, registrationId.getBytes(UTF_8));
+        return observations;
+    }
+
+    /* *************** Californium ObservationStore API **************** */
+
+    @Override
+    public void add(org.eclipse.californium.core.observe.Observation obs) {
+        if (obs == null) {
+            return;
+        }
+        byte[] record = serialize(obs);
+
+        lock.writeLock().lock();
+        try {
+            super.add(obs);
+            journalLock.lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        appendAndUnlock(ADD_OBSERVATION, record);
+    }
+
+    @Override
+    public void remove(byte[] token) {
+        lock.writeLock().lock();
+        try {
+            super.remove(token);
+            journalLock.lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        appendAndUnlock(REMOVE_OBSERVATION, token);
+    }
+
+    /* *************** Journal **************** */
+
+    private void appendAndUnlock(byte type, byte[] record) {
+        boolean compact;
+        try {
+            if (journal == null) {
+                openJournal();
+            }
+            journal.writeByte(type);
+            journal.writeInt(record.length);
+            journal.write(record);
+            // hand the record to the OS, the disk sync is batched
+            journal.flush();
+            dirty = true;
+            journalRecords++;
+        } catch (IOException e) {
+            LOG.error("Could not write registration change to journal", e);
+        } finally {
+            // the journal can grow as large as the snapshot, so compaction cost stays proportional to the changes
+            compact = journalRecords >= Math.max(compactionThreshold, snapshotSize);
+            journalLock.unlock();
+        }
+
+        if (compact && !scheduler.isShutdown() && compactionScheduled.compareAndSet(false, true)) {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compactionScheduled.set(false);
+                    saveToFile();
+                }
+            });
+        }
+    }
+
+    private File journalFile(long generation) {
+        return new File(filename + JOURNAL_EXTENSION + generation);
+    }
+
+    private void openJournal() throws IOException {
+        File journalFile = journalFile(generation);
+        File parent = journalFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        journalOut = new FileOutputStream(journalFile, true);
+        journal = new DataOutputStream(new BufferedOutputStream(journalOut));
+    }
+
+    private static void closeJournal(DataOutputStream journal, FileOutputStream journalOut) throws IOException {
+        if (journal != null) {
+            journal.flush();
+            journalOut.getFD().sync();
+            journal.close();
+        }
+    }
+
+    /**
+     * @return the journal files next to the snapshot, sorted by generation
+     */
+    private SortedMap<Long, File> listJournals() {
+        SortedMap<Long, File> journals = new TreeMap<>();
+        File file = new File(filename).getAbsoluteFile();
+        String prefix = file.getName() + JOURNAL_EXTENSION;
+        File[] files = file.getParentFile() == null ? null : file.getParentFile().listFiles();
+        if (files != null) {
+            for (File candidate : files) {
+                String name = candidate.getName();
+                if (name.startsWith(prefix)) {
+                    try {
+                        journals.put(Long.parseLong(name.substring(prefix.length())), candidate);
+                    } catch (NumberFormatException e) {
+                        // not a journal, e.g. a journal kept aside
+                    }
+                }
+            }
+        }
+        return journals;
+    }
+
+    /**
+     * Syncs the journal to the disk.
+     */
+    protected void sync() {
+        FileOutputStream out;
+        journalLock.lock();
+        try {
+            if (!dirty || journal == null) {
+                return;
+            }
+            out = journalOut;
+            dirty = false;
+        } finally {
+            journalLock.unlock();
+        }
+
+        // writers keep appending to the OS while the disk sync is in progress
+        try {
+            out.getFD().sync();
+        } catch (IOException e) {
+            LOG.error("Could not sync registration journal", e);
+            journalLock.lock();
+            try {
+                dirty |= out == journalOut;
+            } finally {
+                journalLock.unlock();
+            }
+        }
+    }
+
+    protected void loadFromFile() {
+        loadComplete = true;
+
+        File file = new File(filename);
+        if (file.exists()) {
+            snapshotSize = replay(file);
+            LOG.debug("{} registrations and observations loaded", snapshotSize);
+        }
+
+        SortedMap<Long, File> journals = listJournals();
+        for (Entry<Long, File> journal : journals.entrySet()) {
+            int replayed = replay(journal.getValue());
+            generation = journal.getKey() + 1;
+            LOG.debug("{} registration journal records replayed from {}", replayed, journal.getValue());
+        }
+
+        if (!loadComplete) {
+            // a compaction would lose the records which could not be loaded, keep them for a manual recovery
+            String suffix = CORRUPT_EXTENSION + System.currentTimeMillis();
+            keepAside(file, suffix);
+            for (File journal : journals.values()) {
+                keepAside(journal, suffix);
+            }
+        }
+        if (!loadComplete || !journals.isEmpty()) {
+            // start again from a clean snapshot, this also drops an incomplete last record
+            saveToFile();
+        }
+    }
+
+    private static void keepAside(File file, String suffix) {
+        if (file.exists()) {
+            File aside = new File(file.getPath() + suffix);
+            if (!file.renameTo(aside)) {
+                throw new IllegalStateException("Unable to rename " + file + " to " + aside);
+            }
+            LOG.warn("{} could not be fully loaded and was renamed to {}", file, aside);
+        }
+    }
+
+    /*
+     * The snapshot uses the same records as the journal: the registrations followed by their observations. The
+     * records which cannot be applied are skipped and the load is marked as incomplete.
+     */
+    private int replay(File file) {
+        int replayed = 0;
+        long remaining = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (remaining > 0) {
+                if (remaining < RECORD_HEADER_SIZE) {
+                    // record partially written before a crash
+                    break;
+                }
+                byte type = in.readByte();
+                int length = in.readInt();
+                remaining -= RECORD_HEADER_SIZE;
+                if (type < ADD_REGISTRATION || type > REMOVE_OBSERVATIONS || length < 0) {
+                    LOG.error("Corrupted registration record in {}, skipping the end of the file", file);
+                    loadComplete = false;
+                    break;
+                }
+                if (length > remaining) {
+                    // record partially written before a crash
+                    break;
+                }
+                byte[] record = new byte[length];
+                in.readFully(record);
+                remaining -= length;
+
+                try {
+                    apply(type, record);
+                    replayed++;
+                } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                    LOG.warn("Skipping invalid registration record in {}", file, e);
+                    loadComplete = false;
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Could not read registrations from " + file, e);
+            loadComplete = false;
+        }
+        return replayed;
+    }
+
+    private void apply(byte type, byte[] record) throws IOException, ClassNotFoundException {
+        switch (type) {
+        case ADD_REGISTRATION:
+            super.addRegistration(deserializeRegistration(record));
+            break;
+        case UPDATE_REGISTRATION:
+            Registration updated = deserializeRegistration(record);
+            lock.writeLock().lock();
+            try {
+                putRegistration(updated);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            break;
+        case REFRESH_REGISTRATION:
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            long lastUpdate = buffer.getLong();
+            Registration registration = getRegistration(
+                    new String(record, buffer.position(), buffer.remaining(), UTF_8));
+            if (registration != null) {
+                registration.refreshLastUpdate(new Date(lastUpdate));
+            }
+            break;
+        case REMOVE_REGISTRATION:
+            super.removeRegistration(new String(record, UTF_8));
+            break;
+        case ADD_OBSERVATION:
+            org.eclipse.californium.core.observe.Observation obs = deserializeObservation(record);
+            try {
+                super.add(obs);
+            } catch (IllegalStateException e) {
+                LOG.warn("Could not restore observation: {}", e.getMessage());
+            }
+            break;
+        case REMOVE_OBSERVATION:
+            super.remove(record);
+            break;
+        case REMOVE_OBSERVATIONS:
+            super.removeObservations(new String(record, UTF_8));
+            break;
+        default:
+            throw new IllegalArgumentException("Unexpected registration record type " + type);
+        }
+    }
+
+    /**
+     * Starts a new journal generation, writes a snapshot of the store content and deletes the previous journals.
+     */
+    protected void saveToFile() {
+        snapshotLock.lock();
+        try {
+            List<Registration> registrations;
+            List<org.eclipse.californium.core.observe.Observation> observations = new ArrayList<>();
+            DataOutputStream previousJournal;
+            FileOutputStream previousJournalOut;
+            long snapshotGeneration;
+            // no change can happen between the in-memory copy of the content and the journal rotation, refreshes
+            // made during the copy wait for the journal and are appended to the new generation
+            lock.readLock().lock();
+            try {
+                journalLock.lock();
+                try {
+                    registrations = new ArrayList<>(getAllRegistration());
+                    for (Registration registration : registrations) {
+                        for (Observation observation : getObservations(registration.getId())) {
+                            org.eclipse.californium.core.observe.Observation obs = get(observation.getId());
+                            if (obs != null) {
+                                observations.add(obs);
+                            }
+                        }
+                    }
+                    previousJournal = journal;
+                    previousJournalOut = journalOut;
+                    journal = null;
+                    journalOut = null;
+                    snapshotGeneration = ++generation;
+                    journalRecords = 0;
+                    dirty = false;
+                } finally {
+                    journalLock.unlock();
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            try {
+                // the previous journal stays the reference until the snapshot is complete
+                closeJournal(previousJournal, previousJournalOut);
+                writeSnapshot(registrations, observations);
+                snapshotSize = registrations.size() + observations.size();
+
+                for (File previous : listJournals().headMap(snapshotGeneration).values()) {
+                    if (!previous.delete()) {
+                        LOG.warn("Could not delete registration journal {}", previous);
+                    }
+                }
+                LOG.debug("{} registrations and {} observations saved", registrations.size(), observations.size());
+            } catch (IOException e) {
+                LOG.error("Could not save registrations to file", e);
+            }
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private void writeSnapshot(List<Registration> registrations,
+            List<org.eclipse.californium.core.observe.Observation> observations) throws IOException {
+        File file = new File(filename);
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        File tmpFile = new File(filename + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmpFile);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));) {
+            for (Registration registration : registrations) {
+                writeRecord(out, ADD_REGISTRATION, serialize(registration));
+            }
+            for (org.eclipse.californium.core.observe.Observation obs : observations) {
+                writeRecord(out, ADD_OBSERVATION, serialize(obs));
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        if (!tmpFile.renameTo(file)) {
+            // renaming over an existing file is not supported on all platforms
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Unable to rename " + tmpFile + " to " + file);
+            }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte type, byte[] record) throws IOException {
+        out.writeByte(type);
+        out.writeInt(record.length);
+        out.write(record);
+    }
+
+    /* *************** Lifecycle **************** */
+
+    /**
+     * Loads the persisted registrations and observations, then starts the regular cleanup of dead registrations.
+     */
+    @Override
+    public void start() {
+        loadFromFile();
+        super.start();
+    }
+
+    /**
+     * Stops the cleanup of the registrations and syncs the pending changes to the disk.
+     */
+    @Override
+    public void stop() {
+        super.stop();
+        sync();
+    }
+
+    /**
+     * Syncs the pending changes to the disk and stops the background tasks.
+     */
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        DataOutputStream currentJournal;
+        FileOutputStream currentJournalOut;
+        journalLock.lock();
+        try {
+            currentJournal = journal;
+            currentJournalOut = journalOut;
+            journal = null;
+            journalOut = null;
+        } finally {
+            journalLock.unlock();
+        }
+        try {
+            closeJournal(currentJournal, currentJournalOut);
+        } catch (IOException e) {
+            LOG.error("Could not close registration journal", e);
+        }
+    }
+
+    /* *************** Serialization **************** */
+
+    private static byte[] serialize(Registration registration) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(registration);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to serialize registration", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Registration deserializeRegistration(byte[] record) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(record))) {
+            return (Registration) in.readObject();
+        }
+    }
+
+    /*
+     * request length | CoAP request | context entry count | (key | value)*
+     */
+    private static byte[] serialize(org.eclipse.californium.core.observe.Observation obs) {
+        byte[] request = serializer.serializeRequest(obs.getRequest()).bytes;
+        Map<String, String> context = obs.getRequest().getUserContext();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(request.length + 128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(request.length);
+            out.write(request);
+            List<Entry<String, String>> entries = new ArrayList<>();
+            if (context != null) {
+                for (Entry<String, String> e : context.entrySet()) {
+                    if (e.getValue() != null) {
+                        entries.add(e);
+                    }
+                }
+            }
+            out.writeInt(entries.size());
+            for (Entry<String, String> e : entries) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to serialize observation", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static org.eclipse.californium.core.observe.Observation deserializeObservation(byte[] record)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte[] req = new byte[in.readInt()];
+        in.readFully(req);
+        DataParser parser = new UdpDataParser();
+        Request request = (Request) parser.parseMessage(new RawData(req, null, 0));
+
+        int count = in.readInt();
+        Map<String, String> context = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            context.put(in.readUTF(), in.readUTF());
+        }
+        request.setUserContext(context);
+        return new org.eclipse.californium.core.observe.Observation(request, null);
+    }
+}
@@ -21,10 +21,13 @@ import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -45,9 +48,11 @@ import org.eclipse.leshan.server.Startable;
 import org.eclipse.leshan.server.Stoppable;
 import org.eclipse.leshan.server.californium.CaliforniumRegistrationStore;
 import org.eclipse.leshan.server.client.Registration;
+import org.eclipse.leshan.server.client.RegistrationPage;
 import org.eclipse.leshan.server.client.RegistrationUpdate;
 import org.eclipse.leshan.server.registration.Deregistration;
 import org.eclipse.leshan.server.registration.ExpirationListener;
+import org.eclipse.leshan.util.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,15 +63,17 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
     private final Logger LOG = LoggerFactory.getLogger(InMemoryRegistrationStore.class);
 
     // Data structure
-    private final Map<String /* end-point */, Registration> regsByEp = new HashMap<>();
+    // sorted by end-point to support cursor pagination
+    private final NavigableMap<String /* end-point */, Registration> regsByEp = new TreeMap<>();
+    private final Map<String /* registration id */, Registration> regsById = new HashMap<>();
     private Map<KeyToken, org.eclipse.californium.core.observe.Observation> obsByToken = new HashMap<>();
     private Map<String, List<KeyToken>> tokensByRegId = new HashMap<>();
 
     // Request serializer to persist observation
     private static final DataSerializer serializer = new UdpDataSerializer();
 
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    
+    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
     // Listener use to notify when a registration expires
     private ExpirationListener expirationListener;
 
@@ -78,7 +85,11 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
             lock.writeLock().lock();
 
             Registration registrationRemoved = regsByEp.put(registration.getEndpoint(), registration);
+            regsById.put(registration.getId(), registration);
             if (registrationRemoved != null) {
+                if (!registrationRemoved.getId().equals(registration.getId())) {
+                    regsById.remove(registrationRemoved.getId());
+                }
                 Collection<Observation> observationsRemoved = unsafeRemoveAllObservations(registrationRemoved.getId());
                 return new Deregistration(registrationRemoved, observationsRemoved);
             }
@@ -98,7 +109,7 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
                 return null;
             } else {
                 Registration updatedRegistration = update.update(registration);
-                regsByEp.put(updatedRegistration.getEndpoint(), updatedRegistration);
+                putRegistration(updatedRegistration);
                 return updatedRegistration;
             }
         } finally {
@@ -107,18 +118,39 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
     }
 
     @Override
-    public Registration getRegistration(String registrationId) {
+    public Registration refreshRegistration(RegistrationUpdate update) {
         try {
+            // the last update time is extended in place: no need to exclude the other threads
             lock.readLock().lock();
 
-            if (registrationId != null) {
-                for (Registration registration : regsByEp.values()) {
-                    if (registrationId.equals(registration.getId())) {
-                        return registration;
-                    }
-                }
+            Registration registration = getRegistration(update.getRegistrationId());
+            if (registration == null || !update.isRefreshOf(registration)) {
+                return null;
             }
-            return null;
+            registration.refreshLastUpdate(new Date());
+            return registration;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores the given registration in place of the registration with the same id, keeping its observations.
+     * <p>
+     * The caller must hold the write lock.
+     * </p>
+     */
+    protected void putRegistration(Registration registration) {
+        regsByEp.put(registration.getEndpoint(), registration);
+        regsById.put(registration.getId(), registration);
+    }
+
+    @Override
+    public Registration getRegistration(String registrationId) {
+        try {
+            lock.readLock().lock();
+
+            return registrationId == null ? null : regsById.get(registrationId);
         } finally {
             lock.readLock().unlock();
         }
@@ -151,6 +183,42 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Registrations are sorted by endpoint, the cursor is the endpoint of the last registration of the previous page.
+     * </p>
+     */
+    @Override
+    public RegistrationPage getRegistrations(String endpointPrefix, String cursor, int limit) {
+        Validate.isTrue(limit > 0, "limit must be greater than 0");
+        String prefix = endpointPrefix == null ? "" : endpointPrefix;
+        try {
+            lock.readLock().lock();
+
+            NavigableMap<String, Registration> tail;
+            if (cursor != null && cursor.compareTo(prefix) >= 0) {
+                tail = regsByEp.tailMap(cursor, false);
+            } else {
+                tail = regsByEp.tailMap(prefix, true);
+            }
+
+            List<Registration> page = new ArrayList<>(Math.min(limit, tail.size()));
+            for (Entry<String, Registration> entry : tail.entrySet()) {
+                if (!entry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                if (page.size() == limit) {
+                    return new RegistrationPage(page, page.get(page.size() - 1).getEndpoint());
+                }
+                page.add(entry.getValue());
+            }
+            return new RegistrationPage(page, null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     @Override
     public Deregistration removeRegistration(String registrationId) {
         try {
@@ -160,6 +228,7 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
             if (registration != null) {
                 Collection<Observation> observationsRemoved = unsafeRemoveAllObservations(registration.getId());
                 regsByEp.remove(registration.getEndpoint());
+                regsById.remove(registration.getId());
                 return new Deregistration(registration, observationsRemoved);
             }
             return null;
@@ -23,6 +23,7 @@ import java.security.cert.X509Certificate;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.eclipse.californium.core.CoapResource;
 import org.eclipse.californium.core.CoapServer;
@@ -35,18 +36,22 @@ import org.eclipse.californium.core.server.resources.Resource;
 import org.eclipse.californium.scandium.DTLSConnector;
 import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
 import org.eclipse.californium.scandium.config.DtlsConnectorConfig.Builder;
+import org.eclipse.leshan.core.node.codec.CachingLwM2mNodeEncoder;
 import org.eclipse.leshan.core.node.codec.LwM2mNodeDecoder;
 import org.eclipse.leshan.core.node.codec.LwM2mNodeEncoder;
 import org.eclipse.leshan.core.request.DownlinkRequest;
 import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ResponseFuture;
 import org.eclipse.leshan.server.Destroyable;
 import org.eclipse.leshan.server.LwM2mServer;
 import org.eclipse.leshan.server.Startable;
 import org.eclipse.leshan.server.Stoppable;
 import org.eclipse.leshan.server.californium.CaliforniumRegistrationStore;
 import org.eclipse.leshan.server.californium.LeshanServerBuilder;
+import org.eclipse.leshan.server.bulk.BulkOperationService;
+import org.eclipse.leshan.server.bulk.impl.BulkOperationServiceImpl;
 import org.eclipse.leshan.server.client.Registration;
 import org.eclipse.leshan.server.client.RegistrationListener;
 import org.eclipse.leshan.server.client.RegistrationService;
@@ -54,6 +59,7 @@ import org.eclipse.leshan.server.client.RegistrationUpdate;
 import org.eclipse.leshan.server.impl.RegistrationServiceImpl;
 import org.eclipse.leshan.server.model.LwM2mModelProvider;
 import org.eclipse.leshan.server.observation.ObservationService;
+import org.eclipse.leshan.server.registration.RegistrationAdmissionControl;
 import org.eclipse.leshan.server.registration.RegistrationHandler;
 import org.eclipse.leshan.server.request.LwM2mRequestSender;
 import org.eclipse.leshan.server.response.ResponseListener;
@@ -84,6 +90,8 @@ public class LeshanServer implements LwM2mServer {
 
     private final LwM2mRequestSender requestSender;
 
+    private final BulkOperationServiceImpl bulkOperationService;
+
     private final RegistrationServiceImpl registrationService;
 
     private final ObservationServiceImpl observationService;
@@ -119,6 +127,59 @@ public class LeshanServer implements LwM2mServer {
             LwM2mModelProvider modelProvider,
             LwM2mNodeEncoder encoder, LwM2mNodeDecoder decoder, PublicKey publicKey, PrivateKey privateKey,
             X509Certificate[] x509CertChain, Certificate[] trustedCertificates) {
+        this(localAddress, localSecureAddress, registrationStore, securityStore, modelProvider, encoder, decoder,
+                publicKey, privateKey, x509CertChain, trustedCertificates, null);
+    }
+
+    /**
+     * Initialize a server which will bind to the specified address and port.
+     *
+     * @param localAddress the address to bind the CoAP server.
+     * @param localSecureAddress the address to bind the CoAP server for DTLS connection.
+     * @param registrationStore the {@link Registration} store.
+     * @param securityStore the {@link SecurityInfo} store.
+     * @param modelProvider provides the objects description for each client.
+     * @param decoder decoder used to decode response payload.
+     * @param encoder encode used to encode request payload.
+     * @param publicKey the server public key used for RPK DTLS authentication.
+     * @param privateKey the server private key used to RPK or X509 DTLS authentication.
+     * @param certificateChain the server X509 certificate (will be used for RPK too, in this case no need to set public
+     *        key).
+     * @param trustedCertificates the trusted certificates used to authenticate client certificates.
+     * @param responseProcessingExecutor the executor used to notify response listeners, a bounded one is used if null.
+     */
+    public LeshanServer(InetSocketAddress localAddress, InetSocketAddress localSecureAddress,
+            CaliforniumRegistrationStore registrationStore, SecurityStore securityStore,
+            LwM2mModelProvider modelProvider, LwM2mNodeEncoder encoder, LwM2mNodeDecoder decoder, PublicKey publicKey,
+            PrivateKey privateKey, X509Certificate[] x509CertChain, Certificate[] trustedCertificates,
+            ExecutorService responseProcessingExecutor) {
+        this(localAddress, localSecureAddress, registrationStore, securityStore, modelProvider, encoder, decoder,
+                publicKey, privateKey, x509CertChain, trustedCertificates, responseProcessingExecutor, null);
+    }
+
+    /**
+     * Initialize a server which will bind to the specified address and port.
+     *
+     * @param localAddress the address to bind the CoAP server.
+     * @param localSecureAddress the address to bind the CoAP server for DTLS connection.
+     * @param registrationStore the {@link Registration} store.
+     * @param securityStore the {@link SecurityInfo} store.
+     * @param modelProvider provides the objects description for each client.
+     * @param decoder decoder used to decode response payload.
+     * @param encoder encode used to encode request payload.
+     * @param publicKey the server public key used for RPK DTLS authentication.
+     * @param privateKey the server private key used to RPK or X509 DTLS authentication.
+     * @param certificateChain the server X509 certificate (will be used for RPK too, in this case no need to set public
+     *        key).
+     * @param trustedCertificates the trusted certificates used to authenticate client certificates.
+     * @param responseProcessingExecutor the executor used to notify response listeners, a bounded one is used if null.
+     * @param admissionControl limits the rate of Register and Update requests, all requests are admitted if null.
+     */
+    public LeshanServer(InetSocketAddress localAddress, InetSocketAddress localSecureAddress,
+            CaliforniumRegistrationStore registrationStore, SecurityStore securityStore,
+            LwM2mModelProvider modelProvider, LwM2mNodeEncoder encoder, LwM2mNodeDecoder decoder, PublicKey publicKey,
+            PrivateKey privateKey, X509Certificate[] x509CertChain, Certificate[] trustedCertificates,
+            ExecutorService responseProcessingExecutor, RegistrationAdmissionControl admissionControl) {
         Validate.notNull(localAddress, "IP address cannot be null");
         Validate.notNull(localSecureAddress, "Secure IP address cannot be null");
         Validate.notNull(registrationStore, "registration store cannot be null");
@@ -190,15 +251,17 @@ public class LeshanServer implements LwM2mServer {
 
         // define /rd resource
         final RegisterResource rdResource = new RegisterResource(
-                new RegistrationHandler(this.registrationService, this.securityStore));
+                new RegistrationHandler(this.registrationService, this.securityStore), admissionControl);
         coapServer.add(rdResource);
 
         // create sender
         final Set<Endpoint> endpoints = new HashSet<>();
         endpoints.add(nonSecureEndpoint);
         endpoints.add(secureEndpoint);
-        requestSender = new CaliforniumLwM2mRequestSender(endpoints, this.observationService, modelProvider, encoder,
-                decoder);
+        // the same payload is encoded only once when a request is sent to many clients
+        requestSender = new CaliforniumLwM2mRequestSender(endpoints, this.observationService, modelProvider,
+                new CachingLwM2mNodeEncoder(encoder), decoder, responseProcessingExecutor);
+        bulkOperationService = new BulkOperationServiceImpl(registrationService, requestSender);
     }
 
     @Override
@@ -237,6 +300,7 @@ public class LeshanServer implements LwM2mServer {
     public void destroy() {
         // Destroy server
         coapServer.destroy();
+        bulkOperationService.destroy();
 
         // Destroy stores
         if (registrationStore instanceof Destroyable) {
@@ -259,6 +323,11 @@ public class LeshanServer implements LwM2mServer {
         return this.observationService;
     }
 
+    @Override
+    public BulkOperationService getBulkOperationService() {
+        return this.bulkOperationService;
+    }
+
     @Override
     public SecurityStore getSecurityStore() {
         return this.securityStore;
@@ -287,6 +356,12 @@ public class LeshanServer implements LwM2mServer {
         requestSender.send(destination, request, responseCallback, errorCallback);
     }
 
+    @Override
+    public <T extends LwM2mResponse> ResponseFuture<T> sendAsync(final Registration destination,
+            final DownlinkRequest<T> request, long timeout) {
+        return requestSender.sendAsync(destination, request, timeout);
+    }
+
     @Override
     public <T extends LwM2mResponse> void send(Registration destination, String requestTicket, DownlinkRequest<T> request) {
         requestSender.send(destination, requestTicket, request);
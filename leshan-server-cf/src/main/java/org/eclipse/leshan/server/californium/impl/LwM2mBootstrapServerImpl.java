@@ -27,6 +27,7 @@ import org.eclipse.californium.scandium.config.DtlsConnectorConfig.Builder;
 import org.eclipse.leshan.core.model.LwM2mModel;
 import org.eclipse.leshan.core.model.ObjectLoader;
 import org.eclipse.leshan.server.bootstrap.BootstrapHandler;
+import org.eclipse.leshan.server.bootstrap.BootstrapMetrics;
 import org.eclipse.leshan.server.bootstrap.BootstrapSessionManager;
 import org.eclipse.leshan.server.bootstrap.BootstrapStore;
 import org.eclipse.leshan.server.bootstrap.LwM2mBootstrapRequestSender;
@@ -54,6 +55,8 @@ public class LwM2mBootstrapServerImpl implements LwM2mBootstrapServer {
     private final CoapEndpoint secureEndpoint;
 
     private final BootstrapStore bsStore;
+
+    private final BootstrapHandler bsHandler;
     private final BootstrapSecurityStore bsSecurityStore;
 
     public LwM2mBootstrapServerImpl(BootstrapStore bsStore, BootstrapSecurityStore securityStore,
@@ -86,11 +89,16 @@ public class LwM2mBootstrapServerImpl implements LwM2mBootstrapServer {
         LwM2mBootstrapRequestSender requestSender = new CaliforniumLwM2mBootstrapRequestSender(secureEndpoint,
                 nonSecureEndpoint, new LwM2mModel(ObjectLoader.loadDefault()));
 
-        BootstrapResource bsResource = new BootstrapResource(new BootstrapHandler(bsStore, requestSender,
-                bsSessionManager));
+        bsHandler = new BootstrapHandler(bsStore, requestSender, bsSessionManager);
+        BootstrapResource bsResource = new BootstrapResource(bsHandler);
         coapServer.add(bsResource);
     }
 
+    @Override
+    public BootstrapMetrics getBootstrapMetrics() {
+        return bsHandler.getMetrics();
+    }
+
     @Override
     public BootstrapSecurityStore getBootstrapSecurityStore() {
         return bsSecurityStore;
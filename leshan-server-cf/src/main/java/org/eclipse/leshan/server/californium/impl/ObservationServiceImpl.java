@@ -45,6 +45,7 @@ import org.eclipse.leshan.server.client.Registration;
 import org.eclipse.leshan.server.model.LwM2mModelProvider;
 import org.eclipse.leshan.server.observation.ObservationService;
 import org.eclipse.leshan.server.observation.ObservationListener;
+import org.eclipse.leshan.server.observation.RawObservationListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -227,15 +228,28 @@ public class ObservationServiceImpl implements ObservationService, NotificationL
                     // TODO Should we clean registrationIDs maps ?
                     return;
 
-                // get model for this registration
-                LwM2mModel model = modelProvider.getObjectModel(registration);
-
                 // get content format
                 ContentFormat contentFormat = null;
                 if (coapResponse.getOptions().hasContentFormat()) {
                     contentFormat = ContentFormat.fromCode(coapResponse.getOptions().getContentFormat());
                 }
 
+                // notify raw listeners, the notification is only decoded if another listener needs it
+                boolean decodingNeeded = false;
+                for (ObservationListener listener : listeners) {
+                    if (listener instanceof RawObservationListener) {
+                        ((RawObservationListener) listener).newRawValue(observation, registration, contentFormat,
+                                coapResponse.getPayload());
+                    } else {
+                        decodingNeeded = true;
+                    }
+                }
+                if (!decodingNeeded)
+                    return;
+
+                // get model for this registration
+                LwM2mModel model = modelProvider.getObjectModel(registration);
+
                 // decode response
                 List<TimestampedLwM2mNode> timestampedNodes = decoder.decodeTimestampedData(coapResponse.getPayload(),
                         contentFormat, observation.getPath(), model);
@@ -250,9 +264,11 @@ public class ObservationServiceImpl implements ObservationService, NotificationL
                             coapResponse);
                 }
 
-                // notify all listeners
+                // notify the other listeners
                 for (ObservationListener listener : listeners) {
-                    listener.newValue(observation, response);
+                    if (!(listener instanceof RawObservationListener)) {
+                        listener.newValue(observation, response);
+                    }
                 }
             } catch (InvalidValueException e) {
                 LOG.debug(String.format("[%s] ([%s])", e.getMessage(), e.getPath().toString()));
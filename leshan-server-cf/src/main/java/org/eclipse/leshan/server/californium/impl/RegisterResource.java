@@ -46,6 +46,7 @@ import org.eclipse.leshan.core.response.DeregisterResponse;
 import org.eclipse.leshan.core.response.RegisterResponse;
 import org.eclipse.leshan.core.response.UpdateResponse;
 import org.eclipse.leshan.server.client.RegistrationService;
+import org.eclipse.leshan.server.registration.RegistrationAdmissionControl;
 import org.eclipse.leshan.server.registration.RegistrationHandler;
 import org.eclipse.leshan.util.Validate;
 import org.slf4j.Logger;
@@ -57,6 +58,10 @@ import org.slf4j.LoggerFactory;
  * This resource is the entry point of the Resource Directory ("/rd"). Each new client is added to the
  * {@link RegistrationService}.
  * </p>
+ * <p>
+ * When a {@link RegistrationAdmissionControl} is set, Register and Update requests over budget are answered with a
+ * 5.03 (Service Unavailable) response whose Max-Age option tells the client when to retry.
+ * </p>
  */
 public class RegisterResource extends CoapResource {
 
@@ -76,10 +81,21 @@ public class RegisterResource extends CoapResource {
 
     private final RegistrationHandler registrationHandler;
 
+    private final RegistrationAdmissionControl admissionControl;
+
     public RegisterResource(RegistrationHandler registrationHandler) {
+        this(registrationHandler, null);
+    }
+
+    /**
+     * @param registrationHandler the handler of the registration requests
+     * @param admissionControl limits the rate of Register and Update requests, all requests are admitted if null
+     */
+    public RegisterResource(RegistrationHandler registrationHandler, RegistrationAdmissionControl admissionControl) {
         super(RESOURCE_NAME);
 
         this.registrationHandler = registrationHandler;
+        this.admissionControl = admissionControl;
         getAttributes().addResourceType("core.rd");
     }
 
@@ -112,10 +128,14 @@ public class RegisterResource extends CoapResource {
         }
 
         if (uri.size() == 1) {
-            handleRegister(exchange, request);
+            if (admit(exchange, false)) {
+                handleRegister(exchange, request);
+            }
             return;
         } else if (uri.size() == 2) {
-            handleUpdate(exchange, request, uri.get(1));
+            if (admit(exchange, true)) {
+                handleUpdate(exchange, request, uri.get(1));
+            }
             return;
         } else {
             exchange.respond(ResponseCode.BAD_REQUEST);
@@ -137,6 +157,25 @@ public class RegisterResource extends CoapResource {
         }
     }
 
+    /*
+     * Checks the request against the admission control, the request is answered if it is rejected.
+     */
+    private boolean admit(CoapExchange exchange, boolean update) {
+        if (admissionControl == null) {
+            return true;
+        }
+        long retryAfter = update ? admissionControl.admitUpdate(exchange.getSourceAddress())
+                : admissionControl.admitRegister(exchange.getSourceAddress());
+        if (retryAfter == 0) {
+            return true;
+        }
+        LOG.debug("{} from {} rejected, retry in {}s", update ? "Update" : "Register", exchange.getSourceAddress(),
+                retryAfter);
+        exchange.setMaxAge(retryAfter);
+        exchange.respond(ResponseCode.SERVICE_UNAVAILABLE);
+        return false;
+    }
+
     private void handleRegister(CoapExchange exchange, Request request) {
         // Get identity
         // --------------------------------
@@ -319,7 +358,9 @@ public class RegisterResource extends CoapResource {
         LOG.debug(
                 "Warning a client made a registration update using a CoAP PUT, a POST must be used since version V1_0-20150615-D of the specification. Request: {}",
                 request);
-        handleUpdate(exchange, request, uri.get(1));
+        if (admit(exchange, true)) {
+            handleUpdate(exchange, request, uri.get(1));
+        }
     }
 
     /*
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.observe.Observation;
+import org.eclipse.leshan.server.client.Registration;
+import org.eclipse.leshan.server.client.RegistrationUpdate;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileRegistrationStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void registrations_and_observations_are_restored_from_journal() throws Exception {
+        String file = new File(folder.getRoot(), "registration.data").getPath();
+        FileRegistrationStore store = newStore(file, FileRegistrationStore.DEFAULT_COMPACTION_THRESHOLD);
+        store.addRegistration(newRegistration("reg1", "ep1", new Date()));
+        store.addRegistration(newRegistration("reg2", "ep2", new Date()));
+        byte[] token = CaliforniumTestSupport.createToken();
+        store.add(newObservation(token, "reg1"));
+        store.add(newObservation("reg2"));
+        store.updateRegistration(
+                new RegistrationUpdate("reg1", InetAddress.getLocalHost(), 10000, 300L, null, null, null));
+        store.removeRegistration("reg2");
+        close(store);
+
+        FileRegistrationStore restored = newStore(file, FileRegistrationStore.DEFAULT_COMPACTION_THRESHOLD);
+        assertNull(restored.getRegistration("reg2"));
+        assertNull(restored.getRegistrationByEndpoint("ep2"));
+        Registration registration = restored.getRegistration("reg1");
+        assertEquals("ep1", registration.getEndpoint());
+        assertEquals(Long.valueOf(300), registration.getLifeTimeInSec());
+        assertEquals(1, restored.getObservations("reg1").size());
+        assertArrayEquals(token, restored.get(token).getRequest().getToken());
+        close(restored);
+    }
+
+    @Test
+    public void refreshed_registrations_are_restored() throws Exception {
+        String file = new File(folder.getRoot(), "registration.data").getPath();
+        FileRegistrationStore store = newStore(file, FileRegistrationStore.DEFAULT_COMPACTION_THRESHOLD);
+        store.addRegistration(newRegistration("reg1", "ep1", new Date(System.currentTimeMillis() - 60_000)));
+        Registration refreshed = store.refreshRegistration(
+                new RegistrationUpdate("reg1", InetAddress.getLocalHost(), 10000, null, null, null, null));
+        close(store);
+
+        FileRegistrationStore restored = newStore(file, FileRegistrationStore.DEFAULT_COMPACTION_THRESHOLD);
+        assertEquals(refreshed.getLastUpdate(), restored.getRegistration("reg1").getLastUpdate());
+        close(restored);
+    }
+
+    @Test
+    public void journal_is_compacted_into_snapshot() throws Exception {
+        String file = new File(folder.getRoot(), "registration.data").getPath();
+        FileRegistrationStore store = newStore(file, 10);
+        for (int i = 0; i < 10; i++) {
+            store.addRegistration(newRegistration("reg" + i, "ep" + i, new Date()));
+        }
+        File firstJournal = new File(file + ".journal.0");
+        store.add(newObservation("reg0"));
+        // the observation may be appended to the next journal generation
+        long deadline = System.currentTimeMillis() + 5000;
+        while (firstJournal.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(firstJournal.exists());
+        close(store);
+
+        FileRegistrationStore restored = newStore(file, 10);
+        assertEquals(10, restored.getAllRegistration().size());
+        assertEquals(1, restored.getObservations("reg0").size());
+        close(restored);
+    }
+
+    @Test
+    public void corrupted_records_are_skipped_and_kept_aside() throws Exception {
+        String file = new File(folder.getRoot(), "registration.data").getPath();
+        FileRegistrationStore store = newStore(file, FileRegistrationStore.DEFAULT_COMPACTION_THRESHOLD);
+        store.addRegistration(newRegistration("reg1", "ep1", new Date()));
+        close(store);
+
+        // an undeserializable registration followed by a record with a corrupted length
+        File journal = journals().get(0);
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write(new byte[] { 1, 0, 0, 0, 2, 42, 42 });
+            out.write(new byte[] { 1, 0x7f, 0, 0, 0 });
+        }
+        byte[] content = Files.readAllBytes(journal.toPath());
+
+        FileRegistrationStore restored = newStore(file, FileRegistrationStore.DEFAULT_COMPACTION_THRESHOLD);
+        assertEquals("ep1", restored.getRegistration("reg1").getEndpoint());
+        close(restored);
+
+        boolean kept = false;
+        for (File candidate : folder.getRoot().listFiles()) {
+            if (candidate.getName().startsWith(journal.getName() + ".corrupt-")) {
+                assertArrayEquals(content, Files.readAllBytes(candidate.toPath()));
+                kept = true;
+            }
+        }
+        assertTrue(kept);
+
+        restored = newStore(file, FileRegistrationStore.DEFAULT_COMPACTION_THRESHOLD);
+        assertEquals(1, restored.getAllRegistration().size());
+        close(restored);
+    }
+
+    private List<File> journals() {
+        List<File> journals = new ArrayList<>();
+        for (File file : folder.getRoot().listFiles()) {
+            if (file.getName().startsWith("registration.data.journal.") && !file.getName().contains(".corrupt-")) {
+                journals.add(file);
+            }
+        }
+        return journals;
+    }
+
+    private FileRegistrationStore newStore(String file, int compactionThreshold) {
+        FileRegistrationStore store = new FileRegistrationStore(file, 1000, compactionThreshold);
+        store.start();
+        return store;
+    }
+
+    private void close(FileRegistrationStore store) {
+        store.stop();
+        store.destroy();
+    }
+
+    private Registration newRegistration(String registrationId, String endpoint, Date lastUpdate) throws Exception {
+        return new Registration.Builder(registrationId, endpoint, InetAddress.getLocalHost(), 10000,
+                InetSocketAddress.createUnresolved("localhost", 5683)).lastUpdate(lastUpdate).build();
+    }
+
+    private Observation newObservation(String registrationId) {
+        return newObservation(CaliforniumTestSupport.createToken(), registrationId);
+    }
+
+    private Observation newObservation(byte[] token, String registrationId) {
+        Request coapRequest = Request.newGet();
+        coapRequest.setToken(token);
+        Map<String, String> context = new HashMap<>();
+        context.put(CoapRequestBuilder.CTX_REGID, registrationId);
+        context.put(CoapRequestBuilder.CTX_LWM2M_PATH, "/3/0");
+        coapRequest.setUserContext(context);
+        return new Observation(coapRequest, null);
+    }
+}
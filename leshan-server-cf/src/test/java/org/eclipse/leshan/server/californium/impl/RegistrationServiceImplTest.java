@@ -17,10 +17,14 @@ package org.eclipse.leshan.server.californium.impl;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.Iterator;
 
 import org.eclipse.leshan.LinkObject;
 import org.eclipse.leshan.core.request.BindingMode;
 import org.eclipse.leshan.server.client.Registration;
+import org.eclipse.leshan.server.client.RegistrationIterator;
+import org.eclipse.leshan.server.client.RegistrationPage;
+import org.eclipse.leshan.server.client.RegistrationRefreshListener;
 import org.eclipse.leshan.server.client.RegistrationUpdate;
 import org.eclipse.leshan.server.impl.RegistrationServiceImpl;
 import org.junit.Assert;
@@ -84,6 +88,63 @@ public class RegistrationServiceImplTest {
         Assert.assertTrue(reg.isAlive());
     }
 
+    @Test
+    public void empty_update_refreshes_registration_in_place() {
+        givenASimpleRegistration(lifetime);
+        registrationService.registerClient(registration);
+        RecordingListener listener = new RecordingListener();
+        registrationService.addListener(listener);
+
+        RegistrationUpdate update = new RegistrationUpdate(registrationId, address, port, null, null, null, null);
+        Registration refreshedRegistration = registrationService.updateRegistration(update);
+
+        Assert.assertSame(registration, refreshedRegistration);
+        Assert.assertSame(registration, listener.refreshed);
+        Assert.assertNull(listener.updated);
+    }
+
+    @Test
+    public void empty_update_from_new_address_updates_registration() {
+        givenASimpleRegistration(lifetime);
+        registrationService.registerClient(registration);
+        RecordingListener listener = new RecordingListener();
+        registrationService.addListener(listener);
+
+        RegistrationUpdate update = new RegistrationUpdate(registrationId, address, port + 1, null, null, null, null);
+        Registration updatedRegistration = registrationService.updateRegistration(update);
+
+        Assert.assertEquals(port + 1, updatedRegistration.getPort());
+        Assert.assertSame(updatedRegistration, listener.updated);
+        Assert.assertNull(listener.refreshed);
+    }
+
+    @Test
+    public void get_registrations_page_by_page_with_prefix() {
+        for (String endpoint : new String[] { "other1", "sensor3", "sensor1", "light1", "sensor2" }) {
+            registrationService.registerClient(new Registration.Builder(endpoint + "-id", endpoint, address, port,
+                    InetSocketAddress.createUnresolved("localhost", 5683)).lifeTimeInSec(lifetime).build());
+        }
+
+        RegistrationPage page = registrationService.getRegistrations("sensor", null, 2);
+        Assert.assertEquals(2, page.getRegistrations().size());
+        Assert.assertEquals("sensor1", page.getRegistrations().get(0).getEndpoint());
+        Assert.assertEquals("sensor2", page.getRegistrations().get(1).getEndpoint());
+        Assert.assertNotNull(page.getNextCursor());
+
+        page = registrationService.getRegistrations("sensor", page.getNextCursor(), 2);
+        Assert.assertEquals(1, page.getRegistrations().size());
+        Assert.assertEquals("sensor3", page.getRegistrations().get(0).getEndpoint());
+        Assert.assertTrue(page.isLastPage());
+
+        int count = 0;
+        Iterator<Registration> iterator = new RegistrationIterator(registrationService, null, 2);
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        Assert.assertEquals(5, count);
+    }
+
     private void givenASimpleRegistration(Long lifetime) {
 
         Registration.Builder builder = new Registration.Builder(registrationId, ep, address, port,
@@ -91,4 +152,27 @@ public class RegistrationServiceImplTest {
 
         registration = builder.lifeTimeInSec(lifetime).smsNumber(sms).bindingMode(binding).objectLinks(objectLinks).build();
     }
+
+    private static class RecordingListener implements RegistrationRefreshListener {
+        Registration updated;
+        Registration refreshed;
+
+        @Override
+        public void registered(Registration registration) {
+        }
+
+        @Override
+        public void updated(RegistrationUpdate update, Registration updatedRegistration) {
+            updated = updatedRegistration;
+        }
+
+        @Override
+        public void refreshed(Registration registration) {
+            refreshed = registration;
+        }
+
+        @Override
+        public void unregistered(Registration registration) {
+        }
+    }
 }
@@ -0,0 +1,504 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.californium.elements.CorrelationContext;
+import org.eclipse.leshan.core.observation.Observation;
+import org.eclipse.leshan.server.Destroyable;
+import org.eclipse.leshan.server.Startable;
+import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.server.californium.CaliforniumRegistrationStore;
+import org.eclipse.leshan.server.californium.impl.CoapRequestBuilder;
+import org.eclipse.leshan.server.client.Registration;
+import org.eclipse.leshan.server.client.RegistrationPage;
+import org.eclipse.leshan.server.client.RegistrationUpdate;
+import org.eclipse.leshan.server.registration.Deregistration;
+import org.eclipse.leshan.server.registration.ExpirationListener;
+import org.eclipse.leshan.util.Hex;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * A {@link CaliforniumRegistrationStore} decorator keeping a near cache of the registrations (by id) and of the
+ * observations (by token) found in another store, so the notifications of a known observation are handled without any
+ * remote lookup.
+ * <p>
+ * The cache is bounded (least recently used entries are evicted first) and entries expire after a time to live, which
+ * bounds the staleness of the cache if an invalidation is missed. Changes made through this store invalidate the
+ * cache; changes made on other nodes must be reported with the {@code invalidate*} methods (see
+ * {@link RedisRegistrationCacheInvalidator}). An invalidation only removes the given registration or observations, and
+ * only prevents the reads of these keys in progress from being cached. Unknown registrations and observations are not
+ * cached.
+ * </p>
+ */
+public class CachingRegistrationStore implements CaliforniumRegistrationStore, Startable, Stoppable, Destroyable {
+
+    /** Default maximum number of cached registrations, and of cached observations */
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+
+    /** Default time to live of a cached registration or observation */
+    public static final long DEFAULT_TTL = 300_000; // ms
+
+    private final CaliforniumRegistrationStore store;
+    private final long ttlInNanos;
+
+    // guarded by themselves
+    private final Map<String, CacheEntry<Registration>> registrations;
+    private final Map<String, CacheEntry<Observation>> observations;
+    private final Map<String, CacheEntry<org.eclipse.californium.core.observe.Observation>> coapObservations;
+
+    // the reads in progress by key, guarded by the cache of their key: a read is dropped when its key is invalidated, to
+    // avoid caching a value read before an invalidation
+    private final Map<String, PendingRead> registrationReads = new HashMap<>();
+    private final Map<String, PendingRead> observationReads = new HashMap<>();
+    private final Map<String, PendingRead> coapObservationReads = new HashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public CachingRegistrationStore(CaliforniumRegistrationStore store) {
+        this(store, DEFAULT_MAX_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * @param store the cached store
+     * @param maxSize the maximum number of cached registrations, and of cached observations
+     * @param ttlInMs the time to live of a cached registration or observation
+     */
+    public CachingRegistrationStore(CaliforniumRegistrationStore store, int maxSize, long ttlInMs) {
+        Validate.notNull(store);
+        Validate.isTrue(maxSize > 0, "maxSize must be greater than 0");
+        Validate.isTrue(ttlInMs > 0, "ttlInMs must be greater than 0");
+        this.store = store;
+        this.ttlInNanos = TimeUnit.MILLISECONDS.toNanos(ttlInMs);
+        this.registrations = new LruMap<>(maxSize);
+        this.observations = new LruMap<>(maxSize);
+        this.coapObservations = new LruMap<>(maxSize);
+    }
+
+    /* *************** Leshan Registration API **************** */
+
+    @Override
+    public Deregistration addRegistration(Registration registration) {
+        Deregistration deregistration = null;
+        try {
+            deregistration = store.addRegistration(registration);
+            return deregistration;
+        } finally {
+            invalidateRegistration(registration.getId());
+            if (deregistration != null) {
+                invalidateRegistration(deregistration.getRegistration().getId());
+                invalidateObservations(deregistration.getRegistration().getId());
+            }
+        }
+    }
+
+    @Override
+    public Registration updateRegistration(RegistrationUpdate update) {
+        try {
+            return store.updateRegistration(update);
+        } finally {
+            invalidateRegistration(update.getRegistrationId());
+        }
+    }
+
+    @Override
+    public Registration refreshRegistration(RegistrationUpdate update) {
+        Registration registration = store.refreshRegistration(update);
+        if (registration != null) {
+            refreshCachedRegistration(registration.getId(), registration.getLastUpdate());
+        }
+        return registration;
+    }
+
+    @Override
+    public Registration getRegistration(String registrationId) {
+        Registration registration = getCached(registrations, registrationId);
+        if (registration != null) {
+            hitCount.incrementAndGet();
+            return registration;
+        }
+
+        missCount.incrementAndGet();
+        PendingRead read = startRead(registrations, registrationReads, registrationId, registrationId);
+        try {
+            registration = store.getRegistration(registrationId);
+            return registration;
+        } finally {
+            cache(registrations, registrationReads, registrationId, registration, read);
+        }
+    }
+
+    @Override
+    public Registration getRegistrationByEndpoint(String endpoint) {
+        return store.getRegistrationByEndpoint(endpoint);
+    }
+
+    @Override
+    public Collection<Registration> getRegistrationByAdress(InetSocketAddress address) {
+        return store.getRegistrationByAdress(address);
+    }
+
+    @Override
+    @Deprecated
+    public Collection<Registration> getAllRegistration() {
+        return store.getAllRegistration();
+    }
+
+    @Override
+    public RegistrationPage getRegistrations(String endpointPrefix, String cursor, int limit) {
+        return store.getRegistrations(endpointPrefix, cursor, limit);
+    }
+
+    @Override
+    public Deregistration removeRegistration(String registrationId) {
+        try {
+            return store.removeRegistration(registrationId);
+        } finally {
+            invalidateRegistration(registrationId);
+            invalidateObservations(registrationId);
+        }
+    }
+
+    /* *************** Leshan Observation API **************** */
+
+    @Override
+    public Observation addObservation(String registrationId, Observation observation) {
+        try {
+            return store.addObservation(registrationId, observation);
+        } finally {
+            invalidateObservation(observation.getId());
+        }
+    }
+
+    @Override
+    public Observation getObservation(String registrationId, byte[] observationId) {
+        String token = Hex.encodeHexString(observationId);
+        Observation observation = getCached(observations, token);
+        if (observation != null && observation.getRegistrationId().equals(registrationId)) {
+            hitCount.incrementAndGet();
+            return observation;
+        }
+
+        missCount.incrementAndGet();
+        PendingRead read = startRead(observations, observationReads, token, registrationId);
+        observation = null;
+        try {
+            observation = store.getObservation(registrationId, observationId);
+            return observation;
+        } finally {
+            cache(observations, observationReads, token, observation, read);
+        }
+    }
+
+    @Override
+    public Observation removeObservation(String registrationId, byte[] observationId) {
+        try {
+            return store.removeObservation(registrationId, observationId);
+        } finally {
+            invalidateObservation(observationId);
+        }
+    }
+
+    @Override
+    public Collection<Observation> getObservations(String registrationId) {
+        return store.getObservations(registrationId);
+    }
+
+    @Override
+    public Collection<Observation> removeObservations(String registrationId) {
+        try {
+            return store.removeObservations(registrationId);
+        } finally {
+            invalidateObservations(registrationId);
+        }
+    }
+
+    /* *************** Californium ObservationStore API **************** */
+
+    @Override
+    public void add(org.eclipse.californium.core.observe.Observation obs) {
+        try {
+            store.add(obs);
+        } finally {
+            invalidateObservation(obs.getRequest().getToken());
+        }
+    }
+
+    @Override
+    public void remove(byte[] token) {
+        try {
+            store.remove(token);
+        } finally {
+            invalidateObservation(token);
+        }
+    }
+
+    @Override
+    public org.eclipse.californium.core.observe.Observation get(byte[] token) {
+        String key = Hex.encodeHexString(token);
+        org.eclipse.californium.core.observe.Observation observation = getCached(coapObservations, key);
+        if (observation != null) {
+            hitCount.incrementAndGet();
+            return observation;
+        }
+
+        missCount.incrementAndGet();
+        // the registration is unknown until the observation is read
+        PendingRead read = startRead(coapObservations, coapObservationReads, key, null);
+        try {
+            observation = store.get(token);
+            return observation;
+        } finally {
+            cache(coapObservations, coapObservationReads, key, observation, read);
+        }
+    }
+
+    @Override
+    public void setContext(byte[] token, CorrelationContext correlationContext) {
+        try {
+            store.setContext(token, correlationContext);
+        } finally {
+            invalidateObservation(token);
+        }
+    }
+
+    @Override
+    public void setExpirationListener(final ExpirationListener listener) {
+        store.setExpirationListener(new ExpirationListener() {
+            @Override
+            public void registrationExpired(Registration registration, Collection<Observation> observations) {
+                invalidateRegistration(registration.getId());
+                invalidateObservations(registration.getId());
+                if (listener != null) {
+                    listener.registrationExpired(registration, observations);
+                }
+            }
+        });
+    }
+
+    /* *************** Cache handling **************** */
+
+    private <T> T getCached(Map<String, CacheEntry<T>> cache, String key) {
+        synchronized (cache) {
+            CacheEntry<T> entry = cache.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.cachedAt > ttlInNanos) {
+                cache.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    private PendingRead startRead(Map<String, ?> cache, Map<String, PendingRead> reads, String key,
+            String registrationId) {
+        PendingRead read = new PendingRead(registrationId);
+        synchronized (cache) {
+            reads.put(key, read);
+        }
+        return read;
+    }
+
+    private <T> void cache(Map<String, CacheEntry<T>> cache, Map<String, PendingRead> reads, String key, T value,
+            PendingRead read) {
+        synchronized (cache) {
+            // do not cache a value which may have been invalidated while it was read
+            if (reads.get(key) != read) {
+                return;
+            }
+            reads.remove(key);
+            if (value != null) {
+                cache.put(key, new CacheEntry<>(value, System.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * Removes the given registration from the cache. Its observations are kept.
+     */
+    public void invalidateRegistration(String registrationId) {
+        synchronized (registrations) {
+            registrations.remove(registrationId);
+            registrationReads.remove(registrationId);
+        }
+    }
+
+    /**
+     * Extends the last update time of the given registration if it is cached, instead of invalidating it.
+     */
+    public void refreshCachedRegistration(String registrationId, Date lastUpdate) {
+        synchronized (registrations) {
+            CacheEntry<Registration> entry = registrations.get(registrationId);
+            if (entry != null && entry.value != null) {
+                entry.value.refreshLastUpdate(lastUpdate);
+            }
+        }
+    }
+
+    /**
+     * Removes all the observations of the given registration from the cache.
+     */
+    public void invalidateObservations(String registrationId) {
+        synchronized (observations) {
+            Iterator<CacheEntry<Observation>> it = observations.values().iterator();
+            while (it.hasNext()) {
+                if (registrationId.equals(it.next().value.getRegistrationId())) {
+                    it.remove();
+                }
+            }
+            dropReads(observationReads, registrationId);
+        }
+        synchronized (coapObservations) {
+            Iterator<CacheEntry<org.eclipse.californium.core.observe.Observation>> it = coapObservations.values()
+                    .iterator();
+            while (it.hasNext()) {
+                String id = it.next().value.getRequest().getUserContext().get(CoapRequestBuilder.CTX_REGID);
+                if (registrationId.equals(id)) {
+                    it.remove();
+                }
+            }
+            dropReads(coapObservationReads, registrationId);
+        }
+    }
+
+    /**
+     * Drops the reads in progress of the given registration, or of an unknown registration.
+     */
+    private static void dropReads(Map<String, PendingRead> reads, String registrationId) {
+        Iterator<PendingRead> it = reads.values().iterator();
+        while (it.hasNext()) {
+            String id = it.next().registrationId;
+            if (id == null || id.equals(registrationId)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the observation of the given token from the cache.
+     */
+    public void invalidateObservation(byte[] token) {
+        String key = Hex.encodeHexString(token);
+        synchronized (observations) {
+            observations.remove(key);
+            observationReads.remove(key);
+        }
+        synchronized (coapObservations) {
+            coapObservations.remove(key);
+            coapObservationReads.remove(key);
+        }
+    }
+
+    /**
+     * Removes all the registrations and observations from the cache, and drops all the reads in progress.
+     */
+    public void invalidateAll() {
+        synchronized (registrations) {
+            registrations.clear();
+            registrationReads.clear();
+        }
+        synchronized (observations) {
+            observations.clear();
+            observationReads.clear();
+        }
+        synchronized (coapObservations) {
+            coapObservations.clear();
+            coapObservationReads.clear();
+        }
+    }
+
+    /**
+     * @return the number of lookups answered from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of lookups forwarded to the cached store.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public void start() {
+        if (store instanceof Startable) {
+            ((Startable) store).start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (store instanceof Stoppable) {
+            ((Stoppable) store).stop();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (store instanceof Destroyable) {
+            ((Destroyable) store).destroy();
+        }
+    }
+
+    private static class CacheEntry<T> {
+        private final T value;
+        private final long cachedAt;
+
+        public CacheEntry(T value, long cachedAt) {
+            this.value = value;
+            this.cachedAt = cachedAt;
+        }
+    }
+
+    private static class PendingRead {
+        // null when unknown
+        private final String registrationId;
+
+        public PendingRead(String registrationId) {
+            this.registrationId = registrationId;
+        }
+    }
+
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        public LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.eclipse.leshan.server.Destroyable;
+import org.eclipse.leshan.util.NamedThreadFactory;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisClusterInfoCache;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.Pool;
+
+/**
+ * {@link RedisShards} of a Redis Cluster: each key is sent to the primary owning its hash slot.
+ * <p>
+ * The slot map is discovered from the given seed nodes and refreshed periodically. A command sent with
+ * {@link #execute(byte[], RedisCommand)} to a node which does not own its slot anymore is answered with a MOVED
+ * redirection: the slot map is then refreshed at once and the command is sent again to the new owner. A command on a
+ * slot being migrated is answered with an ASK redirection when its key is already on the target node: the command is
+ * then sent once to this node, preceded by <code>ASKING</code>, and the slot map is left unchanged until the end of the
+ * migration. Connections borrowed directly from the pools get the redirections as
+ * {@link redis.clients.jedis.exceptions.JedisRedirectionException}s until the next refresh, which can be forced with
+ * {@link #refresh()}.
+ * </p>
+ */
+public class ClusterRedisShards implements RedisShards, Destroyable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterRedisShards.class);
+
+    private static final int SLOTS = 16384;
+
+    /** Default interval between two refreshes of the slot map */
+    public static final long DEFAULT_REFRESH_PERIOD = 30; // seconds
+
+    private final Set<HostAndPort> seeds;
+    private final int timeout;
+    private final JedisClusterInfoCache cache;
+    private final ScheduledExecutorService scheduler;
+
+    private final SlotRouter router = new SlotRouter() {
+        @Override
+        public Pool<Jedis> getSlotOwner(int slot) {
+            return toShard(slot);
+        }
+
+        @Override
+        public Pool<Jedis> getNode(HostAndPort node) {
+            cache.setNodeIfNotExist(node);
+            return cache.getNode(JedisClusterInfoCache.getNodeKey(node));
+        }
+
+        @Override
+        public void refresh() {
+            ClusterRedisShards.this.refresh();
+        }
+    };
+
+    private volatile List<Pool<Jedis>> primaries;
+
+    public ClusterRedisShards(Set<HostAndPort> seeds) {
+        this(seeds, new GenericObjectPoolConfig(), Protocol.DEFAULT_TIMEOUT, DEFAULT_REFRESH_PERIOD);
+    }
+
+    /**
+     * @param seeds some nodes of the cluster, used to discover the others
+     * @param poolConfig the configuration of the connection pool of each node
+     * @param timeout the connection and socket timeout in milliseconds
+     * @param refreshPeriodInSec the interval between two refreshes of the slot map
+     */
+    public ClusterRedisShards(Set<HostAndPort> seeds, GenericObjectPoolConfig poolConfig, int timeout,
+            long refreshPeriodInSec) {
+        Validate.notEmpty(seeds);
+        Validate.isTrue(refreshPeriodInSec > 0, "refreshPeriodInSec must be greater than 0");
+        this.seeds = new LinkedHashSet<>(seeds);
+        this.timeout = timeout;
+        this.cache = new JedisClusterInfoCache(poolConfig, timeout);
+
+        discover(true);
+
+        final ThreadFactory threadFactory = new NamedThreadFactory("leshan-redis-cluster-%d");
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = threadFactory.newThread(r);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh();
+                } catch (RuntimeException e) {
+                    LOG.warn("Unable to refresh the Redis cluster slot map", e);
+                }
+            }
+        }, refreshPeriodInSec, refreshPeriodInSec, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Reloads the slot map from any reachable node of the cluster.
+     */
+    public void refresh() {
+        discover(false);
+    }
+
+    private synchronized void discover(boolean withNodes) {
+        // known nodes first, then the seeds
+        Set<HostAndPort> candidates = new LinkedHashSet<>();
+        for (String node : cache.getNodes().keySet()) {
+            int separator = node.lastIndexOf(':');
+            candidates.add(
+                    new HostAndPort(node.substring(0, separator), Integer.parseInt(node.substring(separator + 1))));
+        }
+        candidates.addAll(seeds);
+
+        for (HostAndPort candidate : candidates) {
+            try (Jedis j = new Jedis(candidate.getHost(), candidate.getPort(), timeout)) {
+                if (withNodes) {
+                    cache.discoverClusterNodesAndSlots(j);
+                } else {
+                    cache.discoverClusterSlots(j);
+                }
+                primaries = findPrimaries();
+                return;
+            } catch (JedisException e) {
+                LOG.debug("Unable to get the Redis cluster slots from {}", candidate, e);
+            }
+        }
+        throw new JedisConnectionException("No reachable node in the Redis cluster " + seeds);
+    }
+
+    private List<Pool<Jedis>> findPrimaries() {
+        Map<JedisPool, Boolean> owners = new IdentityHashMap<>();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            JedisPool pool = cache.getSlotPool(slot);
+            if (pool != null) {
+                owners.put(pool, Boolean.TRUE);
+            }
+        }
+        if (owners.isEmpty()) {
+            throw new JedisConnectionException("No slot assigned in the Redis cluster " + seeds);
+        }
+
+        // sort the primaries by address to get the same order on all the cluster nodes
+        Map<String, Pool<Jedis>> sorted = new TreeMap<>();
+        for (Entry<String, JedisPool> node : cache.getNodes().entrySet()) {
+            if (owners.containsKey(node.getValue())) {
+                sorted.put(node.getKey(), node.getValue());
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<>(sorted.values()));
+    }
+
+    @Override
+    public Pool<Jedis> getShard(String key) {
+        return toShard(JedisClusterCRC16.getSlot(key));
+    }
+
+    @Override
+    public Pool<Jedis> getShard(byte[] key) {
+        return toShard(JedisClusterCRC16.getSlot(key));
+    }
+
+    @Override
+    public <T> T execute(String key, RedisCommand<T> command) {
+        return execute(JedisClusterCRC16.getSlot(key), command, router);
+    }
+
+    @Override
+    public <T> T execute(byte[] key, RedisCommand<T> command) {
+        return execute(JedisClusterCRC16.getSlot(key), command, router);
+    }
+
+    /**
+     * Sends a command to the owner of a slot and follows its redirection once: the slot map is refreshed on a MOVED
+     * redirection only.
+     */
+    static <T> T execute(int slot, RedisCommand<T> command, SlotRouter router) {
+        try (Jedis j = router.getSlotOwner(slot).getResource()) {
+            return command.execute(j);
+        } catch (JedisMovedDataException e) {
+            // the slot is moved: nothing was done, retry once on its new owner
+            LOG.debug("Slot {} moved to {}, refreshing the slot map", slot, e.getTargetNode());
+            router.refresh();
+            try (Jedis j = router.getSlotOwner(slot).getResource()) {
+                return command.execute(j);
+            }
+        } catch (JedisAskDataException e) {
+            // the slot is being migrated and the key is already on the target: the slot map is still valid
+            LOG.debug("Slot {} migrating to {}, asking it", slot, e.getTargetNode());
+            try (Jedis j = router.getNode(e.getTargetNode()).getResource()) {
+                j.asking();
+                return command.execute(j);
+            }
+        }
+    }
+
+    private Pool<Jedis> toShard(int slot) {
+        JedisPool pool = cache.getSlotPool(slot);
+        if (pool == null) {
+            // the slot may have been moved since the last refresh
+            refresh();
+            pool = cache.getSlotPool(slot);
+            if (pool == null) {
+                throw new JedisConnectionException("No Redis cluster node for slot " + slot);
+            }
+        }
+        return pool;
+    }
+
+    @Override
+    public Pool<Jedis> getDefaultShard() {
+        return primaries.get(0);
+    }
+
+    @Override
+    public List<Pool<Jedis>> getShards() {
+        return primaries;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        for (JedisPool pool : cache.getNodes().values()) {
+            pool.destroy();
+        }
+    }
+
+    /**
+     * Where the commands of a slot are sent.
+     */
+    interface SlotRouter {
+
+        /**
+         * @return the pool of the node owning the slot in the current slot map.
+         */
+        Pool<Jedis> getSlotOwner(int slot);
+
+        /**
+         * @return the pool of the given node, even if it owns no slot in the current slot map.
+         */
+        Pool<Jedis> getNode(HostAndPort node);
+
+        /**
+         * Reloads the slot map.
+         */
+        void refresh();
+    }
+}
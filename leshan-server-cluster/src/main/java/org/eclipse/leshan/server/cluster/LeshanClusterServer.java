@@ -16,6 +16,10 @@
 package org.eclipse.leshan.server.cluster;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
@@ -23,13 +27,17 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.eclipse.leshan.core.node.codec.DefaultLwM2mNodeDecoder;
+import org.eclipse.leshan.server.Destroyable;
 import org.eclipse.leshan.server.californium.LeshanServerBuilder;
 import org.eclipse.leshan.server.californium.impl.LeshanServer;
+import org.eclipse.leshan.server.impl.CachingSecurityStore;
 import org.eclipse.leshan.server.model.LwM2mModelProvider;
 import org.eclipse.leshan.server.model.StandardModelProvider;
+import org.eclipse.leshan.util.BoundedExecutorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.util.Pool;
@@ -57,7 +65,14 @@ public class LeshanClusterServer {
         options.addOption("slh", "coapshost", true, "Sets the local secure CoAP address.\nDefault: any local address.");
         options.addOption("slp", "coapsport", true, "Sets the local secure CoAP port.\nDefault: 5684.");
         options.addOption("r", "redis", true,
-                "Sets the location of the Redis database. The URL is in the format of: 'redis://:password@hostname:port/db_number'\n\nDefault: 'redis://localhost:6379'.");
+                "Sets the location of the Redis database. The URL is in the format of: 'redis://:password@hostname:port/db_number'\n"
+                        + "Several comma-separated URLs shard the data over several independent Redis servers.\n\nDefault: 'redis://localhost:6379'.");
+        options.addOption("cu", "compactupdates", false,
+                "Publishes only the changed fields of the updated registrations and leaves out the lifetime refreshes.");
+        options.addOption("rc", "rediscluster", true,
+                "Uses a Redis Cluster instead of the Redis database, discovered from the given comma-separated seed nodes in the format of: 'hostname:port,hostname:port'.");
+        options.addOption("rn", "rawnotif", false,
+                "Forward the notifications without decoding them, consumers decode the raw payload if needed.");
         HelpFormatter formatter = new HelpFormatter();
         formatter.setOptionComparator(null);
 
@@ -130,18 +145,42 @@ public class LeshanClusterServer {
         }
 
         try {
+            RedisShards shards;
+            if (cl.hasOption("rc")) {
+                shards = new ClusterRedisShards(toHostAndPorts(cl.getOptionValue("rc")));
+            } else {
+                List<JedisPool> pools = new ArrayList<>();
+                for (String url : redisUrl.split(",")) {
+                    // TODO: support sentinel pool and make pool configurable
+                    pools.add(new JedisPool(new URI(url.trim())));
+                }
+                shards = pools.size() == 1 ? new SingleRedisShards(pools.get(0)) : new SlotRangeRedisShards(pools);
+            }
             createAndStartServer(clusterInstanceId, localAddress, localPort, secureLocalAddress,
-                    secureLocalPort, redisUrl);
+                    secureLocalPort, shards, cl.hasOption("rn"), cl.hasOption("cu"));
         }catch (Exception e) {
             LOG.error("Jetty stopped with unexcepted error ...", e);
         }
     }
 
+    private static Set<HostAndPort> toHostAndPorts(String nodes) {
+        Set<HostAndPort> result = new HashSet<>();
+        for (String node : nodes.split(",")) {
+            node = node.trim();
+            int separator = node.lastIndexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid Redis node '" + node + "': expected hostname:port");
+            }
+            result.add(new HostAndPort(node.substring(0, separator), Integer.parseInt(node.substring(separator + 1))));
+        }
+        return result;
+    }
+
     public static void createAndStartServer(String clusterInstanceId, String localAddress, int localPort,
-            String secureLocalAddress, int secureLocalPort, String redisUrl) throws Exception {
-        // Create Redis connector.
-        // TODO: support sentinel pool and make pool configurable
-        Pool<Jedis> jedis = new JedisPool(new URI(redisUrl));
+            String secureLocalAddress, int secureLocalPort, final RedisShards shards, boolean rawNotifications,
+            boolean compactUpdates) throws Exception {
+        // Pub/Sub is not bound to a key: all the instances use the default shard
+        Pool<Jedis> jedis = shards.getDefaultShard();
 
         // Prepare LWM2M server.
         LeshanServerBuilder builder = new LeshanServerBuilder();
@@ -153,23 +192,44 @@ public class LeshanClusterServer {
         LwM2mModelProvider modelProvider = new StandardModelProvider();
         builder.setObjectModelProvider(modelProvider);
 
-        RedisRegistrationStore registrationStore = new RedisRegistrationStore(jedis);
+        // cache registrations and observations to avoid Redis lookups on each notification
+        CachingRegistrationStore registrationStore = new CachingRegistrationStore(new RedisRegistrationStore(shards));
+        new RedisRegistrationCacheInvalidator(jedis, registrationStore);
         builder.setRegistrationStore(registrationStore);
 
         // TODO add support of public and private server key
-        builder.setSecurityStore(new RedisSecurityStore(jedis));
+        // cache security infos to avoid Redis lookups on each handshake
+        CachingSecurityStore securityStore = new CachingSecurityStore(new RedisSecurityStore(shards));
+        new RedisSecurityCacheInvalidator(jedis, securityStore);
+        builder.setSecurityStore(securityStore);
 
         // Create and start LWM2M server
-        LeshanServer lwServer = builder.build();
+        final LeshanServer lwServer = builder.build();
 
         // Create Clustering support
-        RedisTokenHandler tokenHandler = new RedisTokenHandler(jedis, clusterInstanceId);
+        RedisTokenHandler tokenHandler = new RedisTokenHandler(shards, clusterInstanceId);
         new RedisRequestResponseHandler(jedis, lwServer, lwServer.getRegistrationService(), tokenHandler,
-                lwServer.getObservationService());
+                lwServer.getObservationService(), new BoundedExecutorService("Redis LESHAN_RESP channel writer %d"),
+                rawNotifications);
         lwServer.getRegistrationService().addListener(tokenHandler);
-        lwServer.getRegistrationService().addListener(new RedisRegistrationEventPublisher(jedis));
+        final RedisRegistrationEventPublisher eventPublisher = new RedisRegistrationEventPublisher(jedis,
+                RedisRegistrationEventPublisher.DEFAULT_BATCH_SIZE, RedisRegistrationEventPublisher.DEFAULT_FLUSH_PERIOD,
+                compactUpdates, !compactUpdates);
+        lwServer.getRegistrationService().addListener(eventPublisher);
 
         // Start Jetty & Leshan
         lwServer.start();
+
+        // Publish the pending events before the connections are closed on shutdown
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                lwServer.destroy();
+                eventPublisher.destroy();
+                if (shards instanceof Destroyable) {
+                    ((Destroyable) shards).destroy();
+                }
+            }
+        });
     }
 }
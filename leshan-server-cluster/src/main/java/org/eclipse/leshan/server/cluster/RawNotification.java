@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import java.util.List;
+
+import org.eclipse.leshan.ResponseCode;
+import org.eclipse.leshan.core.model.LwM2mModel;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.TimestampedLwM2mNode;
+import org.eclipse.leshan.core.node.codec.InvalidValueException;
+import org.eclipse.leshan.core.node.codec.LwM2mNodeDecoder;
+import org.eclipse.leshan.core.request.ContentFormat;
+import org.eclipse.leshan.core.response.ObserveResponse;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * A notification forwarded as it was received from the client: the payload is only decoded when
+ * {@link #decode(LwM2mNodeDecoder, LwM2mModel)} is called, and only once.
+ */
+public class RawNotification {
+
+    private final byte[] observationId;
+    private final LwM2mPath path;
+    private final ContentFormat contentFormat;
+    private final byte[] payload;
+
+    // guarded by this
+    private ObserveResponse decoded;
+
+    /**
+     * @param observationId the id (token) of the observation
+     * @param path the observed path
+     * @param contentFormat the content format of the payload, may be <code>null</code>
+     * @param payload the payload of the notification
+     */
+    public RawNotification(byte[] observationId, LwM2mPath path, ContentFormat contentFormat, byte[] payload) {
+        Validate.notNull(observationId);
+        Validate.notNull(path);
+        this.observationId = observationId;
+        this.path = path;
+        this.contentFormat = contentFormat;
+        this.payload = payload == null ? new byte[0] : payload;
+    }
+
+    public byte[] getObservationId() {
+        return observationId;
+    }
+
+    public LwM2mPath getPath() {
+        return path;
+    }
+
+    public ContentFormat getContentFormat() {
+        return contentFormat;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Decodes the payload, the decoded response is kept for the next calls.
+     * 
+     * @param decoder the decoder to use
+     * @param model the model of the client which sent the notification
+     * @return the decoded notification, without observation
+     * @throws InvalidValueException if the payload is invalid
+     */
+    public synchronized ObserveResponse decode(LwM2mNodeDecoder decoder, LwM2mModel model)
+            throws InvalidValueException {
+        if (decoded == null) {
+            List<TimestampedLwM2mNode> timestampedNodes = decoder.decodeTimestampedData(payload, contentFormat, path,
+                    model);
+            if (timestampedNodes.size() == 1 && !timestampedNodes.get(0).isTimestamped()) {
+                decoded = new ObserveResponse(ResponseCode.CONTENT, timestampedNodes.get(0).getNode(), null, null,
+                        null);
+            } else {
+                decoded = new ObserveResponse(ResponseCode.CONTENT, null, timestampedNodes, null, null);
+            }
+        }
+        return decoded;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RawNotification [path=%s, contentFormat=%s, payload=%d bytes]", path, contentFormat,
+                payload.length);
+    }
+}
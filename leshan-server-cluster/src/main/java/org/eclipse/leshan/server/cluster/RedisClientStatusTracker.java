@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eclipse.leshan.server.queue.ClientState;
+import org.eclipse.leshan.server.queue.ClientStatusTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+/**
+ * A {@link ClientStatusTracker} implementation based on Redis.
+ *
+ * The state of each client is shared by all the cluster instances, so only one of them sends the queued requests of a
+ * given client at a time. State transitions are done atomically using a compare-and-set Lua script.
+ */
+public class RedisClientStatusTracker implements ClientStatusTracker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RedisClientStatusTracker.class);
+
+    // Redis key prefixes
+    private static final String STATE_EP = "QSTATE#EP#";
+
+    // KEYS[1] state key, ARGV[1] expected state, ARGV[2] new state
+    private static final String CAS_SCRIPT = "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+            + "redis.call('SET', KEYS[1], ARGV[2]) return 1 else return 0 end";
+
+    private final RedisShards shards;
+
+    public RedisClientStatusTracker(Pool<Jedis> pool) {
+        this(new SingleRedisShards(pool));
+    }
+
+    public RedisClientStatusTracker(RedisShards shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public boolean setClientUnreachable(String endpoint) {
+        return transitState(endpoint, ClientState.RECEIVING, ClientState.UNREACHABLE);
+    }
+
+    @Override
+    public boolean setClientReachable(String endpoint) {
+        if (transitState(endpoint, ClientState.UNREACHABLE, ClientState.REACHABLE)) {
+            return true;
+        }
+        final String key = toKey(endpoint);
+        return shards.execute(key, new RedisCommand<Boolean>() {
+            @Override
+            public Boolean execute(Jedis j) {
+                return j.setnx(key, ClientState.REACHABLE.name()) == 1L;
+            }
+        });
+    }
+
+    @Override
+    public boolean startClientReceiving(String endpoint) {
+        return transitState(endpoint, ClientState.REACHABLE, ClientState.RECEIVING);
+    }
+
+    @Override
+    public boolean stopClientReceiving(String endpoint) {
+        return transitState(endpoint, ClientState.RECEIVING, ClientState.REACHABLE);
+    }
+
+    @Override
+    public void clearClientState(String endpoint) {
+        final String key = toKey(endpoint);
+        shards.execute(key, new RedisCommand<Void>() {
+            @Override
+            public Void execute(Jedis j) {
+                j.del(key);
+                return null;
+            }
+        });
+    }
+
+    private boolean transitState(final String endpoint, final ClientState from, final ClientState to) {
+        final String key = toKey(endpoint);
+        return shards.execute(key, new RedisCommand<Boolean>() {
+            @Override
+            public Boolean execute(Jedis j) {
+                Object res = j.eval(CAS_SCRIPT, Collections.singletonList(key), Arrays.asList(from.name(), to.name()));
+                boolean updated = Long.valueOf(1L).equals(res);
+                if (LOG.isDebugEnabled()) {
+                    if (updated) {
+                        LOG.debug("Client {} state update {} -> {}", endpoint, from, to);
+                    } else {
+                        LOG.debug("Cannot update Client {} state {} -> {}. Current state is {}", endpoint, from, to,
+                                j.get(key));
+                    }
+                }
+                return updated;
+            }
+        });
+    }
+
+    private String toKey(String endpoint) {
+        // hash tag: the state of an endpoint is stored on the shard of its other keys
+        return STATE_EP + "{" + endpoint + "}";
+    }
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Commands sent to the shard storing a key, see {@link RedisShards#execute(byte[], RedisCommand)}.
+ * <p>
+ * A command may be sent twice when its shard redirects it to another node, so all the keys it uses must share the same
+ * hash slot and it must not have side effects outside of Redis.
+ * </p>
+ */
+public interface RedisCommand<T> {
+
+    /**
+     * @param j a connection to the shard storing the key of the command.
+     * @return the result of the command.
+     */
+    T execute(Jedis j);
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.leshan.server.cluster.serialization.QueuedRequestSerDes;
+import org.eclipse.leshan.server.queue.MessageStore;
+import org.eclipse.leshan.server.queue.QueuedRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.util.Pool;
+
+/**
+ * A {@link MessageStore} implementation based on Redis.
+ *
+ * Queued requests are stored in a Redis list per endpoint, so a request queued by one cluster instance can be sent by
+ * any other instance when the client wakes up.
+ */
+public class RedisMessageStore implements MessageStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RedisMessageStore.class);
+
+    // Redis key prefixes
+    private static final String QUEUE_EP = "QUEUE#EP#";
+
+    // KEYS[1] queue key, ARGV[1] request ticket
+    private static final String DELETE_SCRIPT = "local items = redis.call('LRANGE', KEYS[1], 0, -1) "
+            + "for _, item in ipairs(items) do "
+            + "if cjson.decode(item)['ticket'] == ARGV[1] then redis.call('LREM', KEYS[1], 1, item) return 1 end "
+            + "end return 0";
+
+    private final RedisShards shards;
+
+    public RedisMessageStore(Pool<Jedis> pool) {
+        this(new SingleRedisShards(pool));
+    }
+
+    public RedisMessageStore(RedisShards shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public void add(final QueuedRequest entity) {
+        LOG.debug("Add entity {}", entity);
+        execute(entity.getEndpoint(), new RedisCommand<Void>() {
+            @Override
+            public Void execute(Jedis j) {
+                j.rpush(toKey(entity.getEndpoint()), serialize(entity));
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public QueuedRequest retrieveFirst(final String endpoint) {
+        LOG.trace("Retrieve first for endpoint {}", endpoint);
+        byte[] data = execute(endpoint, new RedisCommand<byte[]>() {
+            @Override
+            public byte[] execute(Jedis j) {
+                return j.lindex(toKey(endpoint), 0);
+            }
+        });
+        if (data == null) {
+            return null;
+        }
+        return deserialize(data);
+    }
+
+    @Override
+    public List<QueuedRequest> retrieveFirst(final String endpoint, final int count) {
+        LOG.trace("Retrieve first {} for endpoint {}", count, endpoint);
+        List<byte[]> data = execute(endpoint, new RedisCommand<List<byte[]>>() {
+            @Override
+            public List<byte[]> execute(Jedis j) {
+                return j.lrange(toKey(endpoint), 0, count - 1);
+            }
+        });
+        List<QueuedRequest> result = new ArrayList<>(data.size());
+        for (byte[] request : data) {
+            result.add(deserialize(request));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isEmpty(String endpoint) {
+        LOG.trace("Checking for empty Queue {}", endpoint);
+        return getQueueSize(endpoint) == 0L;
+    }
+
+    @Override
+    public void deleteFirst(final String endpoint) {
+        LOG.debug("Delete first entity of endpoint {}", endpoint);
+        execute(endpoint, new RedisCommand<Void>() {
+            @Override
+            public Void execute(Jedis j) {
+                j.lpop(toKey(endpoint));
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public boolean delete(final String endpoint, final String requestTicket) {
+        LOG.debug("Delete entity {} of endpoint {}", requestTicket, endpoint);
+        Object res = execute(endpoint, new RedisCommand<Object>() {
+            @Override
+            public Object execute(Jedis j) {
+                return j.eval(DELETE_SCRIPT, Collections.singletonList(toStringKey(endpoint)),
+                        Collections.singletonList(requestTicket));
+            }
+        });
+        return Long.valueOf(1L).equals(res);
+    }
+
+    @Override
+    public List<QueuedRequest> removeAll(final String endpoint) {
+        LOG.debug("Emptying messages for client {}", endpoint);
+        List<byte[]> requests = execute(endpoint, new RedisCommand<List<byte[]>>() {
+            @Override
+            public List<byte[]> execute(Jedis j) {
+                byte[] key = toKey(endpoint);
+
+                // fetch and delete the whole queue in a single round trip
+                Transaction tx = j.multi();
+                Response<List<byte[]>> requests = tx.lrange(key, 0, -1);
+                tx.del(key);
+                tx.exec();
+                return requests.get();
+            }
+        });
+
+        if (requests == null || requests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<QueuedRequest> removed = new ArrayList<>(requests.size());
+        for (byte[] data : requests) {
+            removed.add(deserialize(data));
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the size of the Queue for given endpoint.
+     *
+     * @param endpoint client's endpoint
+     * @return the number of queued requests for this endpoint.
+     */
+    public long getQueueSize(final String endpoint) {
+        return execute(endpoint, new RedisCommand<Long>() {
+            @Override
+            public Long execute(Jedis j) {
+                return j.llen(toKey(endpoint));
+            }
+        });
+    }
+
+    private <T> T execute(String endpoint, RedisCommand<T> command) {
+        return shards.execute(toStringKey(endpoint), command);
+    }
+
+    private byte[] toKey(String endpoint) {
+        return toStringKey(endpoint).getBytes();
+    }
+
+    private String toStringKey(String endpoint) {
+        // hash tag: the queue of an endpoint is stored on the shard of its other keys
+        return QUEUE_EP + "{" + endpoint + "}";
+    }
+
+    private byte[] serialize(QueuedRequest request) {
+        return QueuedRequestSerDes.bSerialize(request);
+    }
+
+    private QueuedRequest deserialize(byte[] data) {
+        return QueuedRequestSerDes.deserialize(data);
+    }
+}
@@ -19,6 +19,10 @@ import static org.eclipse.leshan.util.Charsets.UTF_8;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.eclipse.californium.core.observe.Observation;
 import org.eclipse.californium.core.observe.ObservationStore;
@@ -30,26 +34,37 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
 import redis.clients.util.Pool;
 
 /**
  * An implementation of the Californium {@link ObservationStore} storing {@link Observation} in a Redis store.
  * 
- * Observations are stored using the token as primary key and a secondary index based on the registration Id.
+ * Observations are stored using the token as primary key and in a hash per registration Id (token to observation), so
+ * the observations of a registration are listed or removed in one command.
+ * 
+ * The keys of a registration are hash-tagged with its id, so they live on the same shard of a {@link RedisShards}; the
+ * token keys are spread over all the shards.
  */
 public class RedisObservationStore implements LwM2mObservationStore {
 
     private final Logger LOG = LoggerFactory.getLogger(RedisObservationStore.class);
 
-    private final Pool<Jedis> pool;
+    private final RedisShards shards;
 
     // Redis key prefixes
     private static final byte[] OBS_TKN = "OBS#TKN#".getBytes(UTF_8);
-    private static final String OBS_REG = "OBS#REG#";
+    private static final String OBS_REG = "OBS#REG#H#"; // hash: token -> observation, per registration
     private static final String LOCK_REG = "LOCK#REG#";
 
     public RedisObservationStore(Pool<Jedis> pool) {
-        this.pool = pool;
+        this(new SingleRedisShards(pool));
+    }
+
+    public RedisObservationStore(RedisShards shards) {
+        this.shards = shards;
     }
 
     @Override
@@ -57,110 +72,197 @@ public class RedisObservationStore implements LwM2mObservationStore {
         this.validateObservation(obs);
         String registrationId = getRegistrationId(obs);
 
-        try (Jedis j = pool.getResource()) {
-            byte[] lockValue = null;
-            byte[] lockKey = toKey(LOCK_REG, registrationId);
-            try {
-                lockValue = RedisLock.acquire(j, lockKey);
-
-                byte[] previousValue = j.getSet(toKey(OBS_TKN, obs.getRequest().getToken()), serialize(obs));
-
-                // secondary index to get the list by registrationId
-                j.lpush(toKey(OBS_REG, registrationId), obs.getRequest().getToken());
-
-                // log any collisions
-                if (previousValue != null && previousValue.length != 0) {
-                    Observation previousObservation = deserialize(previousValue);
-                    LOG.warn(
-                            "Token collision ? observation from request [{}] will be replaced by observation from request [{}] ",
-                            previousObservation.getRequest(), obs.getRequest());
+        byte[] lockKey = toKey(LOCK_REG, registrationId);
+        byte[] lockValue = null;
+        try {
+            lockValue = acquireLock(lockKey);
+
+            final byte[] token = obs.getRequest().getToken();
+            final byte[] serializedObs = serialize(obs);
+            final byte[] tokenKey = toKey(OBS_TKN, token);
+            byte[] previousValue = shards.execute(tokenKey, new RedisCommand<byte[]>() {
+                @Override
+                public byte[] execute(Jedis j) {
+                    return j.getSet(tokenKey, serializedObs);
+                }
+            });
+
+            // secondary index to get the observations by registrationId
+            final byte[] regIdKey = toKey(OBS_REG, registrationId);
+            shards.execute(regIdKey, new RedisCommand<Void>() {
+                @Override
+                public Void execute(Jedis j) {
+                    j.hset(regIdKey, token, serializedObs);
+                    return null;
                 }
-            } finally {
-                RedisLock.release(j, lockKey, lockValue);
+            });
+
+            // log any collisions
+            if (previousValue != null && previousValue.length != 0) {
+                Observation previousObservation = deserialize(previousValue);
+                LOG.warn(
+                        "Token collision ? observation from request [{}] will be replaced by observation from request [{}] ",
+                        previousObservation.getRequest(), obs.getRequest());
             }
+        } finally {
+            releaseLock(lockKey, lockValue);
         }
     }
 
     @Override
-    public void remove(byte[] token) {
-        try (Jedis j = pool.getResource()) {
-            byte[] tokenKey = toKey(OBS_TKN, token);
-
-            // fetch the observation by token
-            byte[] serializedObs = j.get(tokenKey);
-            if (serializedObs == null)
-                return;
-
-            Observation obs = deserialize(serializedObs);
-            String registrationId = getRegistrationId(obs);
-
-            byte[] lockValue = null;
-            byte[] lockKey = toKey(LOCK_REG, registrationId);
-            try {
-                lockValue = RedisLock.acquire(j, lockKey);
-
-                if (j.del(tokenKey) > 0L) {
-                    j.lrem(toKey(OBS_REG, registrationId), 0, token);
-                }
+    public void remove(final byte[] token) {
+        // fetch the observation by token
+        Observation obs = get(token);
+        if (obs == null)
+            return;
+        String registrationId = getRegistrationId(obs);
 
-            } finally {
-                RedisLock.release(j, lockKey, lockValue);
+        byte[] lockKey = toKey(LOCK_REG, registrationId);
+        byte[] lockValue = null;
+        try {
+            lockValue = acquireLock(lockKey);
+
+            if (del(toKey(OBS_TKN, token)) > 0L) {
+                final byte[] regIdKey = toKey(OBS_REG, registrationId);
+                shards.execute(regIdKey, new RedisCommand<Void>() {
+                    @Override
+                    public Void execute(Jedis j) {
+                        j.hdel(regIdKey, token);
+                        return null;
+                    }
+                });
             }
+        } finally {
+            releaseLock(lockKey, lockValue);
         }
     }
 
     @Override
     public Collection<Observation> removeAll(String registrationId) {
-        try (Jedis j = pool.getResource()) {
-
-            byte[] lockValue = null;
-            byte[] lockKey = toKey(LOCK_REG, registrationId);
-            try {
-                lockValue = RedisLock.acquire(j, lockKey);
-
-                Collection<Observation> removed = new ArrayList<>();
-                byte[] regIdKey = toKey(OBS_REG, registrationId);
+        byte[] lockKey = toKey(LOCK_REG, registrationId);
+        byte[] lockValue = null;
+        try {
+            lockValue = acquireLock(lockKey);
+
+            // fetch all observations and delete their index in one round trip
+            final byte[] regIdKey = toKey(OBS_REG, registrationId);
+            Map<byte[], byte[]> observations = shards.execute(regIdKey, new RedisCommand<Map<byte[], byte[]>>() {
+                @Override
+                public Map<byte[], byte[]> execute(Jedis j) {
+                    Pipeline p = j.pipelined();
+                    Response<Map<byte[], byte[]>> all = p.hgetAll(regIdKey);
+                    Response<Long> deleted = p.del(regIdKey);
+                    p.sync();
+                    deleted.get();
+                    return all.get();
+                }
+            });
 
-                // fetch all observations by token
-                for (byte[] token : j.lrange(regIdKey, 0, -1)) {
-                    byte[] obs = j.get(toKey(OBS_TKN, token));
-                    if (obs != null) {
-                        removed.add(deserialize(obs));
+            Collection<Observation> removed = new ArrayList<>(observations.size());
+            List<byte[]> tokenKeys = new ArrayList<>(observations.size());
+            for (Entry<byte[], byte[]> obs : observations.entrySet()) {
+                removed.add(deserialize(obs.getValue()));
+                tokenKeys.add(toKey(OBS_TKN, obs.getKey()));
+            }
+            // token keys are spread over the shards
+            for (Entry<Pool<Jedis>, List<byte[]>> shard : groupByShard(tokenKeys).entrySet()) {
+                List<byte[]> shardKeys = shard.getValue();
+                List<Response<Long>> deleted = new ArrayList<>(shardKeys.size());
+                try (Jedis j = shard.getKey().getResource()) {
+                    // one DEL per key: a Redis Cluster rejects the commands using the keys of several slots
+                    Pipeline p = j.pipelined();
+                    for (byte[] key : shardKeys) {
+                        deleted.add(p.del(key));
+                    }
+                    p.sync();
+                }
+                for (int i = 0; i < shardKeys.size(); i++) {
+                    try {
+                        deleted.get(i).get();
+                    } catch (JedisRedirectionException e) {
+                        del(shardKeys.get(i));
                     }
-                    j.del(toKey(OBS_TKN, token));
                 }
-                j.del(regIdKey);
-
-                return removed;
-
-            } finally {
-                RedisLock.release(j, lockKey, lockValue);
             }
+            return removed;
+
+        } finally {
+            releaseLock(lockKey, lockValue);
         }
     }
 
     @Override
     public Observation get(byte[] token) {
-        try (Jedis j = pool.getResource()) {
-            byte[] obs = j.get(toKey(OBS_TKN, token));
-            if (obs == null) {
-                return null;
-            } else {
-                return deserialize(obs);
+        final byte[] tokenKey = toKey(OBS_TKN, token);
+        byte[] obs = shards.execute(tokenKey, new RedisCommand<byte[]>() {
+            @Override
+            public byte[] execute(Jedis j) {
+                return j.get(tokenKey);
             }
+        });
+        if (obs == null) {
+            return null;
+        } else {
+            return deserialize(obs);
         }
     }
 
     @Override
     public Collection<Observation> getByRegistrationId(String regId) {
+        final byte[] regIdKey = toKey(OBS_REG, regId);
+        List<byte[]> observations = shards.execute(regIdKey, new RedisCommand<List<byte[]>>() {
+            @Override
+            public List<byte[]> execute(Jedis j) {
+                return j.hvals(regIdKey);
+            }
+        });
         Collection<Observation> result = new ArrayList<>();
-        try (Jedis j = pool.getResource()) {
-            for (byte[] token : j.lrange(toKey(OBS_REG, regId), 0, -1)) {
-                byte[] obs = j.get(toKey(OBS_TKN, token));
-                if (obs != null) {
-                    result.add(deserialize(obs));
+        for (byte[] obs : observations) {
+            result.add(deserialize(obs));
+        }
+        return result;
+    }
+
+    private byte[] acquireLock(final byte[] lockKey) {
+        return shards.execute(lockKey, new RedisCommand<byte[]>() {
+            @Override
+            public byte[] execute(Jedis j) {
+                return RedisLock.acquire(j, lockKey);
+            }
+        });
+    }
+
+    private void releaseLock(final byte[] lockKey, final byte[] lockValue) {
+        if (lockValue != null) {
+            shards.execute(lockKey, new RedisCommand<Void>() {
+                @Override
+                public Void execute(Jedis j) {
+                    RedisLock.release(j, lockKey, lockValue);
+                    return null;
                 }
+            });
+        }
+    }
+
+    private long del(final byte[] key) {
+        return shards.execute(key, new RedisCommand<Long>() {
+            @Override
+            public Long execute(Jedis j) {
+                return j.del(key);
+            }
+        });
+    }
+
+    private Map<Pool<Jedis>, List<byte[]>> groupByShard(List<byte[]> keys) {
+        Map<Pool<Jedis>, List<byte[]>> result = new IdentityHashMap<>();
+        for (byte[] key : keys) {
+            Pool<Jedis> shard = shards.getShard(key);
+            List<byte[]> shardKeys = result.get(shard);
+            if (shardKeys == null) {
+                shardKeys = new ArrayList<>();
+                result.put(shard, shardKeys);
             }
+            shardKeys.add(key);
         }
         return result;
     }
@@ -178,7 +280,8 @@ public class RedisObservationStore implements LwM2mObservationStore {
     }
 
     private byte[] toKey(String prefix, String registrationID) {
-        return (prefix + registrationID).getBytes();
+        // hash tag: the lock and the index of a registration are stored on the same shard
+        return (prefix + "{" + registrationID + "}").getBytes();
     }
 
     private byte[] serialize(Observation obs) {
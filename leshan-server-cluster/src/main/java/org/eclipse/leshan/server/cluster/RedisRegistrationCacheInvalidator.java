@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import static org.eclipse.leshan.server.cluster.RedisRegistrationStore.*;
+
+import java.util.Date;
+
+import org.eclipse.leshan.server.Destroyable;
+import org.eclipse.leshan.util.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.util.Pool;
+
+/**
+ * Keeps a {@link CachingRegistrationStore} consistent across the cluster: the cached registrations and observations
+ * modified on any node are invalidated when they are published on
+ * {@link RedisRegistrationStore#REGISTRATION_CHANGE_CHANNEL}.
+ * <p>
+ * As changes may be missed while the subscription is down, the whole cache is invalidated on each (re)subscription.
+ * </p>
+ */
+public class RedisRegistrationCacheInvalidator implements Destroyable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RedisRegistrationCacheInvalidator.class);
+
+    private final Pool<Jedis> pool;
+    private final CachingRegistrationStore cache;
+    private final JedisPubSub subscriber;
+    private volatile boolean running = true;
+
+    public RedisRegistrationCacheInvalidator(Pool<Jedis> p, CachingRegistrationStore cache) {
+        this.pool = p;
+        this.cache = cache;
+        this.subscriber = new JedisPubSub() {
+            @Override
+            public void onSubscribe(String channel, int subscribedChannels) {
+                RedisRegistrationCacheInvalidator.this.cache.invalidateAll();
+            }
+
+            @Override
+            public void onMessage(String channel, String message) {
+                invalidate(message);
+            }
+        };
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    try (Jedis j = pool.getResource()) {
+                        j.subscribe(subscriber, REGISTRATION_CHANGE_CHANNEL);
+                    } catch (RuntimeException e) {
+                        LOG.warn("Redis SUBSCRIBE interrupted.", e);
+                    }
+                    if (!running) {
+                        return;
+                    }
+
+                    // wait & re-launch
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException e) {
+                    }
+                    LOG.warn("Relaunch Redis SUBSCRIBE.");
+                }
+            }
+        }, String.format("Redis %s channel reader", REGISTRATION_CHANGE_CHANNEL));
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void invalidate(String message) {
+        if (message.startsWith(REGISTRATION_REFRESHED)) {
+            String refresh = message.substring(REGISTRATION_REFRESHED.length());
+            int separator = refresh.indexOf(':');
+            try {
+                cache.refreshCachedRegistration(refresh.substring(separator + 1),
+                        new Date(Long.parseLong(refresh.substring(0, separator))));
+            } catch (RuntimeException e) {
+                LOG.warn("Invalid refresh message: {}", message);
+            }
+        } else if (message.startsWith(REGISTRATION_UPDATED)) {
+            cache.invalidateRegistration(message.substring(REGISTRATION_UPDATED.length()));
+        } else if (message.startsWith(REGISTRATION_REMOVED)) {
+            String registrationId = message.substring(REGISTRATION_REMOVED.length());
+            cache.invalidateRegistration(registrationId);
+            cache.invalidateObservations(registrationId);
+        } else if (message.startsWith(OBSERVATION_REMOVED)) {
+            try {
+                cache.invalidateObservation(
+                        Hex.decodeHex(message.substring(OBSERVATION_REMOVED.length()).toCharArray()));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Invalid observation token in change message: {}", message);
+            }
+        } else {
+            LOG.warn("Unknown change message: {}", message);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        if (subscriber.isSubscribed()) {
+            subscriber.unsubscribe();
+        }
+    }
+}
@@ -15,55 +15,219 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.cluster;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.server.Destroyable;
 import org.eclipse.leshan.server.client.Registration;
-import org.eclipse.leshan.server.client.RegistrationListener;
+import org.eclipse.leshan.server.client.RegistrationRefreshListener;
 import org.eclipse.leshan.server.client.RegistrationUpdate;
 import org.eclipse.leshan.server.cluster.serialization.RegistrationSerDes;
 import org.eclipse.leshan.server.cluster.serialization.RegistrationUpdateSerDes;
+import org.eclipse.leshan.util.NamedThreadFactory;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.eclipsesource.json.JsonObject;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
 import redis.clients.util.Pool;
 
 /**
  * A Registration registry Listener which publish registration event on Redis channel.
+ * <p>
+ * Events are queued and published asynchronously, in order, by a background thread: the queue is flushed in one
+ * pipeline every {@code batchSize} events or every {@code flushPeriodInMs} milliseconds. When Redis cannot keep up,
+ * the events exceeding {@link #MAX_PENDING_EVENTS} are dropped, as are the events of a pipeline which failed.
+ * </p>
+ * <p>
+ * With compact updates, an update event only contains the update (the changed fields) with the endpoint and the last
+ * update time of the registration instead of the whole updated registration. The refreshes (updates which do not
+ * change the registration, see {@link RegistrationRefreshListener}) are published as empty updates, or left out.
+ * </p>
  */
-public class RedisRegistrationEventPublisher implements RegistrationListener {
+public class RedisRegistrationEventPublisher implements RegistrationRefreshListener, Destroyable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RedisRegistrationEventPublisher.class);
 
     private static String REGISTER_EVENT = "LESHAN_REG_NEW";
     private static String UPDATE_EVENT = "LESHAN_REG_UP";
     private static String DEREGISTER_EVENT = "LESHAN_REG_DEL";
-    private Pool<Jedis> pool;
+
+    /** Default number of events published in one pipeline */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** Default maximum delay before an event is published */
+    public static final long DEFAULT_FLUSH_PERIOD = 10; // milliseconds
+
+    /** Maximum number of events waiting to be published */
+    public static final int MAX_PENDING_EVENTS = 100_000;
+
+    private final Pool<Jedis> pool;
+    private final int batchSize;
+    private final boolean compactUpdates;
+    private final boolean publishRefreshes;
+
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final ScheduledExecutorService executor;
+    private final Runnable flusher = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
 
     public RedisRegistrationEventPublisher(Pool<Jedis> p) {
+        this(p, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_PERIOD, false, true);
+    }
+
+    /**
+     * @param p the Redis connection pool
+     * @param batchSize the number of events published in one pipeline
+     * @param flushPeriodInMs the maximum delay before an event is published
+     * @param compactUpdates true to publish only the changed fields of the updated registrations
+     * @param publishRefreshes false to leave out the refreshes of the registrations
+     */
+    public RedisRegistrationEventPublisher(Pool<Jedis> p, int batchSize, long flushPeriodInMs,
+            boolean compactUpdates, boolean publishRefreshes) {
+        Validate.isTrue(batchSize > 0, "batchSize must be greater than 0");
+        Validate.isTrue(flushPeriodInMs > 0, "flushPeriodInMs must be greater than 0");
         this.pool = p;
+        this.batchSize = batchSize;
+        this.compactUpdates = compactUpdates;
+        this.publishRefreshes = publishRefreshes;
+
+        final ThreadFactory threadFactory = new NamedThreadFactory("Redis registration event publisher %d");
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = threadFactory.newThread(r);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.scheduleWithFixedDelay(flusher, flushPeriodInMs, flushPeriodInMs, TimeUnit.MILLISECONDS);
     }
 
     @Override
     public void registered(Registration registration) {
-        String payload = RegistrationSerDes.sSerialize(registration);
-        try (Jedis j = pool.getResource()) {
-            j.publish(REGISTER_EVENT, payload);
-        }
+        publish(REGISTER_EVENT, RegistrationSerDes.sSerialize(registration));
     }
 
     @Override
     public void updated(RegistrationUpdate update, Registration updatedRegistration) {
         JsonObject value = new JsonObject();
         value.add("regUpdate", RegistrationUpdateSerDes.jSerialize(update));
-        value.add("regUpdated", RegistrationSerDes.jSerialize(updatedRegistration));
+        if (compactUpdates) {
+            value.add("ep", updatedRegistration.getEndpoint());
+            value.add("lastUp", updatedRegistration.getLastUpdate().getTime());
+        } else {
+            value.add("regUpdated", RegistrationSerDes.jSerialize(updatedRegistration));
+        }
+        publish(UPDATE_EVENT, value.toString());
+    }
 
-        try (Jedis j = pool.getResource()) {
-            j.publish(UPDATE_EVENT, value.toString());
+    @Override
+    public void refreshed(Registration registration) {
+        if (publishRefreshes) {
+            updated(new RegistrationUpdate(registration.getId(), registration.getAddress(), registration.getPort(), null,
+                    null, null, null), registration);
         }
     }
 
     @Override
     public void unregistered(Registration registration) {
-        String payload = RegistrationSerDes.sSerialize(registration);
-        try (Jedis j = pool.getResource()) {
-            j.publish(DEREGISTER_EVENT, payload);
+        publish(DEREGISTER_EVENT, RegistrationSerDes.sSerialize(registration));
+    }
+
+    /**
+     * @return the number of events dropped because too many events were waiting to be published or because they could
+     *         not be sent to Redis.
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    private void publish(String channel, String payload) {
+        if (pending.incrementAndGet() > MAX_PENDING_EVENTS) {
+            pending.decrementAndGet();
+            if (droppedEvents.incrementAndGet() % 10_000 == 1) {
+                LOG.warn("Too many pending registration events: {} events dropped so far", droppedEvents.get());
+            }
+            return;
+        }
+        events.add(new Event(channel, payload));
+        if (pending.get() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(flusher);
+            } catch (RejectedExecutionException e) {
+                // destroyed: the events are not published anymore
+            }
+        }
+    }
+
+    private void flush() {
+        flushRequested.set(false);
+        List<Event> batch = new ArrayList<>(batchSize);
+        while (!events.isEmpty()) {
+            Event event;
+            while (batch.size() < batchSize && (event = events.poll()) != null) {
+                pending.decrementAndGet();
+                batch.add(event);
+            }
+            try (Jedis j = pool.getResource()) {
+                Pipeline p = j.pipelined();
+                for (Event e : batch) {
+                    p.publish(e.channel, e.payload);
+                }
+                p.sync();
+            } catch (RuntimeException e) {
+                // re-sending the batch could publish some events twice: it is given up, the next ones are kept
+                long dropped = droppedEvents.addAndGet(batch.size());
+                LOG.warn("Unable to publish {} registration events: {} events dropped so far", batch.size(), dropped,
+                        e);
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Publishes the pending events and stops the background thread.
+     */
+    @Override
+    public void destroy() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            LOG.warn("Destroying registration event publisher was interrupted.", e);
+        }
+        flush();
+    }
+
+    private static class Event {
+        private final String channel;
+        private final String payload;
+
+        public Event(String channel, String payload) {
+            this.channel = channel;
+            this.payload = payload;
         }
     }
 }
@@ -20,12 +20,18 @@ import static org.eclipse.leshan.util.Charsets.UTF_8;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -38,22 +44,46 @@ import org.eclipse.leshan.server.Stoppable;
 import org.eclipse.leshan.server.californium.CaliforniumRegistrationStore;
 import org.eclipse.leshan.server.californium.impl.CoapRequestBuilder;
 import org.eclipse.leshan.server.client.Registration;
+import org.eclipse.leshan.server.client.RegistrationPage;
 import org.eclipse.leshan.server.client.RegistrationUpdate;
 import org.eclipse.leshan.server.cluster.serialization.RegistrationSerDes;
 import org.eclipse.leshan.server.cluster.serialization.ObservationSerDes;
 import org.eclipse.leshan.server.registration.Deregistration;
 import org.eclipse.leshan.server.registration.ExpirationListener;
+import org.eclipse.leshan.util.Hex;
 import org.eclipse.leshan.util.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.ScanParams;
 import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
 import redis.clients.util.Pool;
 
 /**
  * A RegistrationStore which stores registrations and observations in Redis.
+ * <p>
+ * The expiration time of each registration is indexed in sorted sets, split in {@link #EXPIRATION_PARTITIONS}
+ * partitions by endpoint. Each cluster node regularly cleans the partitions for which it gets a lease, so the expired
+ * registrations are removed once, without reading the registrations which are still alive.
+ * </p>
+ * <p>
+ * An update which does not change the registration only stores its time in a small key next to the registration and
+ * moves the registration in the expiration index, without lock nor rewriting the registration.
+ * </p>
+ * <p>
+ * Each modified or removed registration and each removed observation is published on
+ * {@link #REGISTRATION_CHANGE_CHANNEL}, so the nodes caching them can invalidate their copy (see
+ * {@link RedisRegistrationCacheInvalidator}).
+ * </p>
+ * <p>
+ * The registration and the lock of an endpoint use the endpoint as hash tag, so they are stored on the same shard of
+ * the {@link RedisShards}. The other keys (registration id and token indexes, observations of a registration,
+ * expiration partitions) are spread over the shards: they are only modified while holding the endpoint lock.
+ * </p>
  */
 public class RedisRegistrationStore implements CaliforniumRegistrationStore, Startable, Stoppable {
 
@@ -63,16 +93,94 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
     private static final String EP_REG = "EP#REG#";
     private static final String REGID_EP = "REGID#EP#";
     private static final String LOCK_EP = "LOCK#EP#";
+    private static final String LASTUP_EP = "LASTUP#EP#"; // last refresh time (ms), more recent than the registration
     private static final byte[] OBS_TKN = "OBS#TKN#".getBytes(UTF_8);
-    private static final String OBS_REGID = "OBS#REGID#";
-
-    private final Pool<Jedis> pool;
+    private static final String OBS_REGID = "OBS#REGID#H#"; // hash: token -> observation, per registration
+    private static final String EXP_EP = "EXP#EP#"; // sorted set: endpoint by expiration time, per partition
+    private static final String LOCK_EXP = "LOCK#EXP#"; // cleaning lease of a partition
+    private static final String EXP_INDEXED = "EXP#INDEXED"; // set once existing registrations are indexed
+
+    /** The channel on which the modified registrations and the removed observations are published */
+    public static final String REGISTRATION_CHANGE_CHANNEL = "LESHAN_REG_CHANGE";
+
+    // change message prefixes, followed by a registration id or a hex-encoded observation token
+    static final String REGISTRATION_UPDATED = "UP:"; // the registration was updated
+    static final String REGISTRATION_REFRESHED = "REF:"; // followed by "<last update ms>:<registration id>"
+    static final String REGISTRATION_REMOVED = "DEL:"; // the observations (and maybe the registration) were removed
+    static final String OBSERVATION_REMOVED = "OBS:"; // the observation was removed or replaced
+
+    /** Number of partitions of the expiration index */
+    public static final int EXPIRATION_PARTITIONS = 16;
+
+    /** Default interval between two cleanings of the expired registrations */
+    public static final long DEFAULT_CLEAN_PERIOD = 60; // seconds
+
+    /** Default maximum number of registrations removed by one cleaning step */
+    public static final int DEFAULT_CLEAN_LIMIT = 500;
+
+    // KEYS[1] endpoint registration, KEYS[2] endpoint lock, KEYS[3] endpoint last refresh, ARGV[1] now (ms)
+    // Removes the registration if it is expired and returns it. Returns nil if the endpoint is locked, 0 if there is
+    // no registration anymore, or the expiration time of a registration which was updated meanwhile.
+    private static final String CLEAN_SCRIPT = "if redis.call('EXISTS', KEYS[2]) == 1 then return nil end "
+            + "local data = redis.call('GET', KEYS[1]) "
+            + "if not data then return 0 end "
+            + "local reg = cjson.decode(data) local lastUp = reg.lastUp "
+            + "local refreshed = redis.call('GET', KEYS[3]) "
+            + "if refreshed then lastUp = math.max(lastUp, tonumber(refreshed)) end "
+            + "local expiration = lastUp + reg.lt * 1000 "
+            + "if expiration > tonumber(ARGV[1]) then return expiration end "
+            + "redis.call('DEL', KEYS[1], KEYS[3]) "
+            + "return data";
+
+    // KEYS[1] endpoint registration, KEYS[2] endpoint lock, KEYS[3] endpoint last refresh
+    // ARGV[1] registration id, ARGV[2] address, ARGV[3] port, ARGV[4] now (ms)
+    // Stores the refresh time and returns the registration if it is not locked and the update does not change it.
+    private static final String REFRESH_SCRIPT = "if redis.call('EXISTS', KEYS[2]) == 1 then return nil end "
+            + "local data = redis.call('GET', KEYS[1]) "
+            + "if not data then return nil end "
+            + "local reg = cjson.decode(data) "
+            + "if reg.regId ~= ARGV[1] or reg.address ~= ARGV[2] or reg.port ~= tonumber(ARGV[3]) then return nil end "
+            + "redis.call('SET', KEYS[3], ARGV[4]) "
+            + "return data";
+
+    private final RedisShards shards;
+    private final long cleanPeriodInSec;
+    private final int cleanLimit;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Random random = new Random();
 
     // Listener use to notify when a registration expires
     private ExpirationListener expirationListener;
 
     public RedisRegistrationStore(Pool<Jedis> p) {
-        this.pool = p;
+        this(p, DEFAULT_CLEAN_PERIOD, DEFAULT_CLEAN_LIMIT);
+    }
+
+    /**
+     * @param p the Redis connection pool
+     * @param cleanPeriodInSec the interval between two cleanings of the expired registrations
+     * @param cleanLimit the maximum number of registrations removed by one cleaning step
+     */
+    public RedisRegistrationStore(Pool<Jedis> p, long cleanPeriodInSec, int cleanLimit) {
+        this(new SingleRedisShards(p), cleanPeriodInSec, cleanLimit);
+    }
+
+    public RedisRegistrationStore(RedisShards shards) {
+        this(shards, DEFAULT_CLEAN_PERIOD, DEFAULT_CLEAN_LIMIT);
+    }
+
+    /**
+     * @param shards the Redis shards
+     * @param cleanPeriodInSec the interval between two cleanings of the expired registrations
+     * @param cleanLimit the maximum number of registrations removed by one cleaning step
+     */
+    public RedisRegistrationStore(RedisShards shards, long cleanPeriodInSec, int cleanLimit) {
+        Validate.notNull(shards);
+        Validate.isTrue(cleanPeriodInSec > 0, "cleanPeriodInSec must be greater than 0");
+        Validate.isTrue(cleanLimit > 0, "cleanLimit must be greater than 0");
+        this.shards = shards;
+        this.cleanPeriodInSec = cleanPeriodInSec;
+        this.cleanLimit = cleanLimit;
     }
 
     /* *************** Redis Key utility function **************** */
@@ -89,109 +197,196 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
     }
 
     private byte[] toLockKey(String endpoint) {
-        return toKey(LOCK_EP, endpoint);
+        return toKey(LOCK_EP, "{" + endpoint + "}");
     }
 
-    private byte[] toLockKey(byte[] endpoint) {
-        return toKey(LOCK_EP.getBytes(UTF_8), endpoint);
+    private byte[] toLastUpdateKey(String endpoint) {
+        return toKey(LASTUP_EP, "{" + endpoint + "}");
     }
 
-    /* *************** Leshan Registration API **************** */
+    private byte[] toLastUpdateKey(byte[] endpointKey) {
+        return toKey(LASTUP_EP.getBytes(UTF_8), Arrays.copyOfRange(endpointKey, EP_REG.length(), endpointKey.length));
+    }
 
-    @Override
-    public Deregistration addRegistration(Registration registration) {
-        try (Jedis j = pool.getResource()) {
-            byte[] lockValue = null;
-            byte[] lockKey = toLockKey(registration.getEndpoint());
+    private byte[] acquireLock(final byte[] lockKey) {
+        return shards.execute(lockKey, new RedisCommand<byte[]>() {
+            @Override
+            public byte[] execute(Jedis j) {
+                return RedisLock.acquire(j, lockKey);
+            }
+        });
+    }
 
-            try {
-                lockValue = RedisLock.acquire(j, lockKey);
+    private void releaseLock(final byte[] lockKey, final byte[] lockValue) {
+        if (lockValue != null) {
+            shards.execute(lockKey, new RedisCommand<Void>() {
+                @Override
+                public Void execute(Jedis j) {
+                    RedisLock.release(j, lockKey, lockValue);
+                    return null;
+                }
+            });
+        }
+    }
+
+    private byte[] getValue(final byte[] key) {
+        return shards.execute(key, new RedisCommand<byte[]>() {
+            @Override
+            public byte[] execute(Jedis j) {
+                return j.get(key);
+            }
+        });
+    }
+
+    private void setValue(final byte[] key, final byte[] value) {
+        shards.execute(key, new RedisCommand<Void>() {
+            @Override
+            public Void execute(Jedis j) {
+                j.set(key, value);
+                return null;
+            }
+        });
+    }
+
+    private long del(final byte[]... keys) {
+        // all the keys must share the same hash slot
+        return shards.execute(keys[0], new RedisCommand<Long>() {
+            @Override
+            public Long execute(Jedis j) {
+                return j.del(keys);
+            }
+        });
+    }
+
+    private void publish(String message) {
+        try (Jedis j = shards.getDefaultShard().getResource()) {
+            j.publish(REGISTRATION_CHANGE_CHANNEL, message);
+        }
+    }
 
-                // add registration
-                byte[] k = toEndpointKey(registration.getEndpoint());
-                byte[] old = j.getSet(k, serializeReg(registration));
+    /* *************** Leshan Registration API **************** */
 
-                // add registration: secondary index
-                byte[] idx = toRegIdKey(registration.getId());
-                j.set(idx, registration.getEndpoint().getBytes(UTF_8));
+    @Override
+    public Deregistration addRegistration(final Registration registration) {
+        byte[] lockValue = null;
+        byte[] lockKey = toLockKey(registration.getEndpoint());
 
-                if (old != null) {
-                    Registration oldRegistration = deserializeReg(old);
-                    Collection<Observation> obsRemoved = unsafeRemoveAllObservations(j,
-                            oldRegistration.getId());
-                    return new Deregistration(oldRegistration, obsRemoved);
+        try {
+            lockValue = acquireLock(lockKey);
+
+            // add registration
+            final byte[] k = toEndpointKey(registration.getEndpoint());
+            byte[] old = shards.execute(k, new RedisCommand<byte[]>() {
+                @Override
+                public byte[] execute(Jedis j) {
+                    Pipeline p = j.pipelined();
+                    Response<byte[]> old = p.getSet(k, serializeReg(registration));
+                    Response<Long> refreshDeleted = p.del(toLastUpdateKey(registration.getEndpoint()));
+                    p.sync();
+                    // read all the replies, so that a redirected command is retried
+                    refreshDeleted.get();
+                    return old.get();
                 }
+            });
 
-                return null;
-            } finally {
-                RedisLock.release(j, lockKey, lockValue);
+            // add registration: secondary index
+            setValue(toRegIdKey(registration.getId()), registration.getEndpoint().getBytes(UTF_8));
+            indexExpiration(registration);
+
+            if (old != null) {
+                Registration oldRegistration = deserializeReg(old);
+                if (!oldRegistration.getId().equals(registration.getId())) {
+                    del(toRegIdKey(oldRegistration.getId()));
+                }
+                Collection<Observation> obsRemoved = unsafeRemoveAllObservations(oldRegistration.getId());
+                publish(REGISTRATION_REMOVED + oldRegistration.getId());
+                return new Deregistration(oldRegistration, obsRemoved);
             }
+
+            return null;
+        } finally {
+            releaseLock(lockKey, lockValue);
         }
     }
 
     @Override
     public Registration updateRegistration(RegistrationUpdate update) {
-        try (Jedis j = pool.getResource()) {
-
-            // fetch the client ep by registration ID index
-            byte[] ep = j.get(toRegIdKey(update.getRegistrationId()));
-            if (ep == null) {
-                return null;
-            }
+        Registration r = getRegistration(update.getRegistrationId());
+        if (r == null) {
+            return null;
+        }
 
-            // fetch the client
-            byte[] data = j.get(toEndpointKey(ep));
-            if (data == null) {
-                return null;
-            }
+        byte[] lockValue = null;
+        byte[] lockKey = toLockKey(r.getEndpoint());
+        try {
+            lockValue = acquireLock(lockKey);
 
-            Registration r = deserializeReg(data);
+            Registration updatedRegistration = update.update(r);
 
-            byte[] lockValue = null;
-            byte[] lockKey = toLockKey(r.getEndpoint());
-            try {
-                lockValue = RedisLock.acquire(j, lockKey);
+            // store the new client
+            setValue(toEndpointKey(updatedRegistration.getEndpoint()), serializeReg(updatedRegistration));
+            indexExpiration(updatedRegistration);
+            publish(REGISTRATION_UPDATED + updatedRegistration.getId());
 
-                Registration updatedRegistration = update.update(r);
+            return updatedRegistration;
 
-                // store the new client
-                j.set(toEndpointKey(updatedRegistration.getEndpoint()), serializeReg(updatedRegistration));
+        } finally {
+            releaseLock(lockKey, lockValue);
+        }
+    }
 
-                return updatedRegistration;
+    @Override
+    public Registration refreshRegistration(RegistrationUpdate update) {
+        // fetch the client ep by registration ID index
+        byte[] ep = getValue(toRegIdKey(update.getRegistrationId()));
+        if (ep == null) {
+            return null;
+        }
 
-            } finally {
-                RedisLock.release(j, lockKey, lockValue);
+        // only the refresh time is written, without lock: the registration itself is left untouched
+        String endpoint = new String(ep, UTF_8);
+        byte[] k = toEndpointKey(endpoint);
+        long now = System.currentTimeMillis();
+        final List<byte[]> keys = Arrays.asList(k, toLockKey(endpoint), toLastUpdateKey(endpoint));
+        final List<byte[]> args = Arrays.asList(update.getRegistrationId().getBytes(UTF_8),
+                update.getAddress().getHostAddress().getBytes(UTF_8), update.getPort().toString().getBytes(UTF_8),
+                Long.toString(now).getBytes(UTF_8));
+        Object data = shards.execute(k, new RedisCommand<Object>() {
+            @Override
+            public Object execute(Jedis j) {
+                return j.eval(REFRESH_SCRIPT.getBytes(UTF_8), keys, args);
             }
+        });
+        if (!(data instanceof byte[])) {
+            // locked, removed or changed by this update: use the regular update
+            return null;
         }
+
+        Registration registration = deserializeReg((byte[]) data);
+        registration.refreshLastUpdate(new Date(now));
+        indexExpiration(registration);
+        publish(REGISTRATION_REFRESHED + now + ":" + registration.getId());
+        return registration;
     }
 
     @Override
     public Registration getRegistration(String registrationId) {
-        try (Jedis j = pool.getResource()) {
-            byte[] ep = j.get(toRegIdKey(registrationId));
-            if (ep == null) {
-                return null;
-            }
-            byte[] data = j.get(toEndpointKey(ep));
-            if (data == null) {
-                return null;
-            }
-
-            return deserializeReg(data);
+        // fetch the client ep by registration ID index
+        byte[] ep = getValue(toRegIdKey(registrationId));
+        if (ep == null) {
+            return null;
         }
+
+        Registration r = readRegistration(toEndpointKey(ep));
+        // the index may not be removed yet when the endpoint registered again
+        return r != null && registrationId.equals(r.getId()) ? r : null;
     }
 
     @Override
     public Registration getRegistrationByEndpoint(String endpoint) {
         Validate.notNull(endpoint);
-        try (Jedis j = pool.getResource()) {
-            byte[] data = j.get(toEndpointKey(endpoint));
-            if (data == null) {
-                return null;
-            }
-            Registration r = deserializeReg(data);
-            return r.isAlive() ? r : null;
-        }
+        Registration r = readRegistration(toEndpointKey(endpoint));
+        return r != null && r.isAlive() ? r : null;
     }
 
     @Override
@@ -202,63 +397,105 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
 
     @Override
     public Collection<Registration> getAllRegistration() {
-        try (Jedis j = pool.getResource()) {
-            ScanParams params = new ScanParams().match(EP_REG + "*").count(100);
-            Collection<Registration> list = new LinkedList<>();
-            String cursor = "0";
-            do {
-                ScanResult<byte[]> res = j.scan(cursor.getBytes(), params);
-                for (byte[] key : res.getResult()) {
-                    byte[] element = j.get(key);
-                    if (element != null) {
-                        Registration r = deserializeReg(element);
+        ScanParams params = new ScanParams().match(EP_REG + "{*").count(100);
+        Collection<Registration> list = new LinkedList<>();
+        for (Pool<Jedis> shard : shards.getShards()) {
+            try (Jedis j = shard.getResource()) {
+                String cursor = "0";
+                do {
+                    ScanResult<byte[]> res = j.scan(cursor.getBytes(), params);
+                    for (Registration r : readRegistrations(j, res.getResult())) {
                         if (r.isAlive()) {
                             list.add(r);
                         }
                     }
-                }
-                cursor = res.getStringCursor();
-            } while (!"0".equals(cursor));
-            return list;
+                    cursor = res.getStringCursor();
+                } while (!"0".equals(cursor));
+            }
         }
+        return list;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The cursor is made of the index of the scanned shard and of its Redis SCAN cursor. As SCAN gives no guarantee
+     * about the number of returned keys, a page may contain a bit more than {@code limit} registrations and a
+     * registration added or removed during the iteration may or may not be returned.
+     * </p>
+     */
     @Override
-    public Deregistration removeRegistration(String registrationId) {
-        try (Jedis j = pool.getResource()) {
-
-            byte[] regKey = toRegIdKey(registrationId);
+    public RegistrationPage getRegistrations(String endpointPrefix, String cursor, int limit) {
+        Validate.isTrue(limit > 0, "limit must be greater than 0");
+        String prefix = endpointPrefix == null ? "" : escapeGlob(endpointPrefix);
+        ScanParams params = new ScanParams().match(EP_REG + "{" + prefix + "*").count(limit);
+
+        int shardIndex = 0;
+        String scanCursor = "0";
+        if (cursor != null) {
+            int separator = cursor.indexOf(':');
+            Validate.isTrue(separator > 0, "invalid cursor");
+            shardIndex = Integer.parseInt(cursor.substring(0, separator));
+            scanCursor = cursor.substring(separator + 1);
+        }
 
-            // fetch the client ep by registration ID index
-            byte[] ep = j.get(regKey);
-            if (ep == null) {
-                return null;
+        List<Pool<Jedis>> allShards = shards.getShards();
+        List<Registration> page = new ArrayList<>(limit);
+        while (page.size() < limit && shardIndex < allShards.size()) {
+            try (Jedis j = allShards.get(shardIndex).getResource()) {
+                do {
+                    ScanResult<byte[]> res = j.scan(scanCursor.getBytes(), params);
+                    scanCursor = res.getStringCursor();
+                    for (Registration r : readRegistrations(j, res.getResult())) {
+                        if (r.isAlive()) {
+                            page.add(r);
+                        }
+                    }
+                } while (page.size() < limit && !"0".equals(scanCursor));
             }
-
-            byte[] data = j.get(toEndpointKey(ep));
-            if (data == null) {
-                return null;
+            if ("0".equals(scanCursor)) {
+                // this shard is done, continue with the next one
+                shardIndex++;
             }
+        }
 
-            Registration r = deserializeReg(data);
-            deleteRegistration(j, r);
-            Collection<Observation> obsRemoved = unsafeRemoveAllObservations(j, r.getId());
-            return new Deregistration(r, obsRemoved);
+        return new RegistrationPage(page, shardIndex < allShards.size() ? shardIndex + ":" + scanCursor : null);
+    }
+
+    private static String escapeGlob(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
         }
+        return escaped.toString();
     }
 
-    private void deleteRegistration(Jedis j, Registration r) {
+    @Override
+    public Deregistration removeRegistration(String registrationId) {
+        Registration r = getRegistration(registrationId);
+        if (r == null) {
+            return null;
+        }
+
         byte[] lockValue = null;
         byte[] lockKey = toLockKey(r.getEndpoint());
         try {
-            lockValue = RedisLock.acquire(j, lockKey);
+            lockValue = acquireLock(lockKey);
 
             // delete all entries
-            j.del(toRegIdKey(r.getId()));
-            j.del(toEndpointKey(r.getEndpoint()));
+            del(toRegIdKey(r.getId()));
+            del(toEndpointKey(r.getEndpoint()), toLastUpdateKey(r.getEndpoint()));
+            unindexExpiration(toExpirationKey(r.getEndpoint()), r.getEndpoint());
+            Collection<Observation> obsRemoved = unsafeRemoveAllObservations(r.getId());
+            publish(REGISTRATION_REMOVED + r.getId());
+            return new Deregistration(r, obsRemoved);
 
         } finally {
-            RedisLock.release(j, lockKey, lockValue);
+            releaseLock(lockKey, lockValue);
         }
     }
 
@@ -267,11 +504,91 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
     }
 
     private byte[] toEndpointKey(String endpoint) {
-        return toKey(EP_REG, endpoint);
+        return toKey(EP_REG, "{" + endpoint + "}");
     }
 
     private byte[] toEndpointKey(byte[] endpoint) {
-        return toKey(EP_REG.getBytes(UTF_8), endpoint);
+        return toEndpointKey(new String(endpoint, UTF_8));
+    }
+
+    private Registration readRegistration(final byte[] endpointKey) {
+        List<Registration> registrations = shards.execute(endpointKey, new RedisCommand<List<Registration>>() {
+            @Override
+            public List<Registration> execute(Jedis j) {
+                return readRegistrations(j, Collections.singletonList(endpointKey));
+            }
+        });
+        return registrations.isEmpty() ? null : registrations.get(0);
+    }
+
+    /**
+     * Reads the registrations of the given endpoint keys, stored on the shard of the given connection, with their last
+     * refresh time, in one round trip.
+     */
+    private List<Registration> readRegistrations(Jedis j, List<byte[]> endpointKeys) {
+        if (endpointKeys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // a pipeline rather than MGET, as the keys of different endpoints may be in different slots
+        Pipeline p = j.pipelined();
+        List<Response<byte[]>> data = new ArrayList<>(endpointKeys.size());
+        List<Response<byte[]>> refreshes = new ArrayList<>(endpointKeys.size());
+        for (byte[] key : endpointKeys) {
+            data.add(p.get(key));
+            refreshes.add(p.get(toLastUpdateKey(key)));
+        }
+        p.sync();
+
+        List<Registration> registrations = new ArrayList<>(endpointKeys.size());
+        for (int i = 0; i < endpointKeys.size(); i++) {
+            byte[] element = data.get(i).get();
+            if (element != null) {
+                Registration r = deserializeReg(element);
+                byte[] refreshed = refreshes.get(i).get();
+                if (refreshed != null) {
+                    r.refreshLastUpdate(new Date(Long.parseLong(new String(refreshed, UTF_8))));
+                }
+                registrations.add(r);
+            }
+        }
+        return registrations;
+    }
+
+    private static String toExpirationKey(String endpoint) {
+        return EXP_EP + toPartition(endpoint);
+    }
+
+    static int toPartition(String endpoint) {
+        return (endpoint.hashCode() & Integer.MAX_VALUE) % EXPIRATION_PARTITIONS;
+    }
+
+    private static long expirationTime(Registration registration) {
+        return registration.getLastUpdate().getTime() + registration.getLifeTimeInSec() * 1000;
+    }
+
+    private void indexExpiration(Registration registration) {
+        indexExpiration(toExpirationKey(registration.getEndpoint()), registration.getEndpoint(),
+                expirationTime(registration));
+    }
+
+    private void indexExpiration(final String expirationKey, final String endpoint, final long expirationTime) {
+        shards.execute(expirationKey, new RedisCommand<Void>() {
+            @Override
+            public Void execute(Jedis j) {
+                j.zadd(expirationKey, expirationTime, endpoint);
+                return null;
+            }
+        });
+    }
+
+    private void unindexExpiration(final String expirationKey, final String endpoint) {
+        shards.execute(expirationKey, new RedisCommand<Void>() {
+            @Override
+            public Void execute(Jedis j) {
+                j.zrem(expirationKey, endpoint);
+                return null;
+            }
+        });
     }
 
     private byte[] serializeReg(Registration registration) {
@@ -292,30 +609,26 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
 
     @Override
     public Observation removeObservation(String registrationId, byte[] observationId) {
-        try (Jedis j = pool.getResource()) {
-
-            // fetch the client ep by registration ID index
-            byte[] ep = j.get(toRegIdKey(registrationId));
-            if (ep == null) {
-                return null;
-            }
-
-            // remove observation
-            byte[] lockValue = null;
-            byte[] lockKey = toLockKey(ep);
-            try {
-                lockValue = RedisLock.acquire(j, lockKey);
+        Registration registration = getRegistration(registrationId);
+        if (registration == null) {
+            return null;
+        }
 
-                Observation observation = build(get(observationId));
-                if (observation != null && registrationId.equals(observation.getRegistrationId())) {
-                    unsafeRemoveObservation(j, registrationId, observationId);
-                    return observation;
-                }
-                return null;
+        // remove observation
+        byte[] lockValue = null;
+        byte[] lockKey = toLockKey(registration.getEndpoint());
+        try {
+            lockValue = acquireLock(lockKey);
 
-            } finally {
-                RedisLock.release(j, lockKey, lockValue);
+            Observation observation = build(get(observationId));
+            if (observation != null && registrationId.equals(observation.getRegistrationId())) {
+                unsafeRemoveObservation(registrationId, observationId);
+                return observation;
             }
+            return null;
+
+        } finally {
+            releaseLock(lockKey, lockValue);
         }
     }
 
@@ -326,37 +639,38 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
 
     @Override
     public Collection<Observation> getObservations(String registrationId) {
-        Collection<Observation> result = new ArrayList<>();
-        try (Jedis j = pool.getResource()) {
-            for (byte[] token : j.lrange(toKey(OBS_REGID, registrationId), 0, -1)) {
-                byte[] obs = j.get(toKey(OBS_TKN, token));
-                if (obs != null) {
-                    result.add(build(deserializeObs(obs)));
-                }
+        final byte[] regIdKey = toKey(OBS_REGID, registrationId);
+        List<byte[]> observations = shards.execute(regIdKey, new RedisCommand<List<byte[]>>() {
+            @Override
+            public List<byte[]> execute(Jedis j) {
+                return j.hvals(regIdKey);
             }
+        });
+        Collection<Observation> result = new ArrayList<>();
+        for (byte[] obs : observations) {
+            result.add(build(deserializeObs(obs)));
         }
         return result;
     }
 
     @Override
     public Collection<Observation> removeObservations(String registrationId) {
-        try (Jedis j = pool.getResource()) {
-            // check registration exists
-            Registration registration = getRegistration(registrationId);
-            if (registration == null)
-                return Collections.emptyList();
-
-            // get endpoint and create lock
-            String endpoint = registration.getEndpoint();
-            byte[] lockValue = null;
-            byte[] lockKey = toKey(LOCK_EP, endpoint);
-            try {
-                lockValue = RedisLock.acquire(j, lockKey);
+        // check registration exists
+        Registration registration = getRegistration(registrationId);
+        if (registration == null)
+            return Collections.emptyList();
 
-                return unsafeRemoveAllObservations(j, registrationId);
-            } finally {
-                RedisLock.release(j, lockKey, lockValue);
-            }
+        // get endpoint and create lock
+        byte[] lockValue = null;
+        byte[] lockKey = toLockKey(registration.getEndpoint());
+        try {
+            lockValue = acquireLock(lockKey);
+
+            Collection<Observation> removed = unsafeRemoveAllObservations(registrationId);
+            publish(REGISTRATION_REMOVED + registrationId);
+            return removed;
+        } finally {
+            releaseLock(lockKey, lockValue);
         }
     }
 
@@ -366,101 +680,160 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
     public void add(org.eclipse.californium.core.observe.Observation obs) {
         String endpoint = this.validateObservation(obs);
 
-        try (Jedis j = pool.getResource()) {
-            byte[] lockValue = null;
-            byte[] lockKey = toKey(LOCK_EP, endpoint);
-            try {
-                lockValue = RedisLock.acquire(j, lockKey);
-
-                String registrationId = obs.getRequest().getUserContext().get(CTX_REGID);
-                if (!j.exists(toRegIdKey(registrationId)))
-                    throw new IllegalStateException("no registration for this Id");
-
-                byte[] previousValue = j.getSet(toKey(OBS_TKN, obs.getRequest().getToken()), serializeObs(obs));
-
-                // secondary index to get the list by registrationId
-                j.lpush(toKey(OBS_REGID, registrationId), obs.getRequest().getToken());
-
-                // log any collisions
-                if (previousValue != null && previousValue.length != 0) {
-                    org.eclipse.californium.core.observe.Observation previousObservation = deserializeObs(
-                            previousValue);
-                    LOG.warn(
-                            "Token collision ? observation from request [{}] will be replaced by observation from request [{}] ",
-                            previousObservation.getRequest(), obs.getRequest());
+        byte[] lockValue = null;
+        byte[] lockKey = toLockKey(endpoint);
+        try {
+            lockValue = acquireLock(lockKey);
+
+            // the registration is on the shard of the lock: it cannot be removed while we hold the lock
+            String registrationId = obs.getRequest().getUserContext().get(CTX_REGID);
+            byte[] data = getValue(toEndpointKey(endpoint));
+            if (data == null || !registrationId.equals(deserializeReg(data).getId()))
+                throw new IllegalStateException("no registration for this Id");
+
+            final byte[] token = obs.getRequest().getToken();
+            final byte[] serializedObs = serializeObs(obs);
+            final byte[] tokenKey = toKey(OBS_TKN, token);
+            byte[] previousValue = shards.execute(tokenKey, new RedisCommand<byte[]>() {
+                @Override
+                public byte[] execute(Jedis j) {
+                    return j.getSet(tokenKey, serializedObs);
+                }
+            });
+
+            // secondary index to get the observations by registrationId
+            final byte[] regIdKey = toKey(OBS_REGID, registrationId);
+            shards.execute(regIdKey, new RedisCommand<Void>() {
+                @Override
+                public Void execute(Jedis j) {
+                    j.hset(regIdKey, token, serializedObs);
+                    return null;
                 }
-            } finally {
-                RedisLock.release(j, lockKey, lockValue);
+            });
+
+            // log any collisions
+            if (previousValue != null && previousValue.length != 0) {
+                publish(OBSERVATION_REMOVED + Hex.encodeHexString(token));
+                org.eclipse.californium.core.observe.Observation previousObservation = deserializeObs(previousValue);
+                LOG.warn(
+                        "Token collision ? observation from request [{}] will be replaced by observation from request [{}] ",
+                        previousObservation.getRequest(), obs.getRequest());
             }
+        } finally {
+            releaseLock(lockKey, lockValue);
         }
     }
 
     @Override
     public void remove(byte[] token) {
-        try (Jedis j = pool.getResource()) {
-            byte[] tokenKey = toKey(OBS_TKN, token);
-
-            // fetch the observation by token
-            byte[] serializedObs = j.get(tokenKey);
-            if (serializedObs == null)
-                return;
+        // fetch the observation by token
+        org.eclipse.californium.core.observe.Observation obs = get(token);
+        if (obs == null)
+            return;
 
-            org.eclipse.californium.core.observe.Observation obs = deserializeObs(serializedObs);
-            String registrationId = extractRegistrationId(obs);
-            Registration registration = getRegistration(registrationId);
-            String endpoint = registration.getEndpoint();
+        String registrationId = extractRegistrationId(obs);
+        Registration registration = getRegistration(registrationId);
+        if (registration == null)
+            return;
 
-            byte[] lockValue = null;
-            byte[] lockKey = toKey(LOCK_EP, endpoint);
-            try {
-                lockValue = RedisLock.acquire(j, lockKey);
+        byte[] lockValue = null;
+        byte[] lockKey = toLockKey(registration.getEndpoint());
+        try {
+            lockValue = acquireLock(lockKey);
 
-                unsafeRemoveObservation(j, registrationId, token);
-            } finally {
-                RedisLock.release(j, lockKey, lockValue);
-            }
+            unsafeRemoveObservation(registrationId, token);
+        } finally {
+            releaseLock(lockKey, lockValue);
         }
-
     }
 
     @Override
     public org.eclipse.californium.core.observe.Observation get(byte[] token) {
-        try (Jedis j = pool.getResource()) {
-            byte[] obs = j.get(toKey(OBS_TKN, token));
-            if (obs == null) {
-                return null;
-            } else {
-                return deserializeObs(obs);
-            }
+        byte[] obs = getValue(toKey(OBS_TKN, token));
+        if (obs == null) {
+            return null;
+        } else {
+            return deserializeObs(obs);
         }
     }
 
     /* *************** Observation utility functions **************** */
 
-    private void unsafeRemoveObservation(Jedis j, String registrationId,
-            byte[] observationId) {
-        if (j.del(observationId) > 0L) {
-            j.lrem(toKey(OBS_REGID, registrationId), 0, observationId);
+    private void unsafeRemoveObservation(String registrationId, final byte[] observationId) {
+        if (del(toKey(OBS_TKN, observationId)) > 0L) {
+            final byte[] regIdKey = toKey(OBS_REGID, registrationId);
+            shards.execute(regIdKey, new RedisCommand<Void>() {
+                @Override
+                public Void execute(Jedis j) {
+                    j.hdel(regIdKey, observationId);
+                    return null;
+                }
+            });
+            publish(OBSERVATION_REMOVED + Hex.encodeHexString(observationId));
         }
     }
 
-    private Collection<Observation> unsafeRemoveAllObservations(Jedis j, String registrationId) {
-        Collection<Observation> removed = new ArrayList<>();
-        byte[] regIdKey = toKey(OBS_REGID, registrationId);
+    private Collection<Observation> unsafeRemoveAllObservations(String registrationId) {
+        final byte[] regIdKey = toKey(OBS_REGID, registrationId);
+
+        // fetch all observations and delete their index in one round trip
+        Map<byte[], byte[]> observations = shards.execute(regIdKey, new RedisCommand<Map<byte[], byte[]>>() {
+            @Override
+            public Map<byte[], byte[]> execute(Jedis j) {
+                Pipeline p = j.pipelined();
+                Response<Map<byte[], byte[]>> all = p.hgetAll(regIdKey);
+                Response<Long> deleted = p.del(regIdKey);
+                p.sync();
+                deleted.get();
+                return all.get();
+            }
+        });
 
-        // fetch all observations by token
-        for (byte[] token : j.lrange(regIdKey, 0, -1)) {
-            byte[] obs = j.get(toKey(OBS_TKN, token));
-            if (obs != null) {
-                removed.add(build(deserializeObs(obs)));
-                }
-            j.del(toKey(OBS_TKN, token));
+        Collection<Observation> removed = new ArrayList<>(observations.size());
+        List<byte[]> tokenKeys = new ArrayList<>(observations.size());
+        for (Entry<byte[], byte[]> obs : observations.entrySet()) {
+            removed.add(build(deserializeObs(obs.getValue())));
+            tokenKeys.add(toKey(OBS_TKN, obs.getKey()));
         }
-        j.del(regIdKey);
-
+        delete(tokenKeys);
         return removed;
     }
 
+    /**
+     * Deletes the given keys with one round trip per shard.
+     */
+    private void delete(List<byte[]> keys) {
+        Map<Pool<Jedis>, List<byte[]>> keysByShard = new IdentityHashMap<>();
+        for (byte[] key : keys) {
+            Pool<Jedis> shard = shards.getShard(key);
+            List<byte[]> shardKeys = keysByShard.get(shard);
+            if (shardKeys == null) {
+                shardKeys = new ArrayList<>();
+                keysByShard.put(shard, shardKeys);
+            }
+            shardKeys.add(key);
+        }
+        for (Entry<Pool<Jedis>, List<byte[]>> shard : keysByShard.entrySet()) {
+            List<byte[]> shardKeys = shard.getValue();
+            List<Response<Long>> deleted = new ArrayList<>(shardKeys.size());
+            try (Jedis j = shard.getKey().getResource()) {
+                // one DEL per key: a Redis Cluster rejects the commands using the keys of several slots
+                Pipeline p = j.pipelined();
+                for (byte[] key : shardKeys) {
+                    deleted.add(p.del(key));
+                }
+                p.sync();
+            }
+            for (int i = 0; i < shardKeys.size(); i++) {
+                try {
+                    deleted.get(i).get();
+                } catch (JedisRedirectionException e) {
+                    del(shardKeys.get(i));
+                }
+            }
+        }
+    }
+
     @Override
     public void setContext(byte[] token, CorrelationContext correlationContext) {
         // TODO should be implemented
@@ -525,8 +898,13 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
      */
     @Override
     public void start() {
-        // clean the registration list every minute
-        schedExecutor.scheduleAtFixedRate(new Cleaner(), 1, 1, TimeUnit.MINUTES);
+        schedExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                indexExistingRegistrations();
+            }
+        });
+        schedExecutor.scheduleAtFixedRate(new Cleaner(), cleanPeriodInSec, cleanPeriodInSec, TimeUnit.SECONDS);
     }
 
     /**
@@ -544,30 +922,140 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
 
     private final ScheduledExecutorService schedExecutor = Executors.newScheduledThreadPool(1);
 
+    /**
+     * Adds the registrations stored before the expiration index existed to the index, once for the whole cluster.
+     */
+    private void indexExistingRegistrations() {
+        try {
+            long first = shards.execute(EXP_INDEXED, new RedisCommand<Long>() {
+                @Override
+                public Long execute(Jedis j) {
+                    return j.setnx(EXP_INDEXED, nodeId);
+                }
+            });
+            if (first == 0L) {
+                return;
+            }
+            ScanParams params = new ScanParams().match(EP_REG + "{*").count(100);
+            int indexed = 0;
+            for (Pool<Jedis> shard : shards.getShards()) {
+                String cursor = "0";
+                do {
+                    List<Registration> registrations;
+                    try (Jedis j = shard.getResource()) {
+                        ScanResult<byte[]> res = j.scan(cursor.getBytes(), params);
+                        registrations = readRegistrations(j, res.getResult());
+                        cursor = res.getStringCursor();
+                    }
+                    for (Registration r : registrations) {
+                        indexExpiration(r);
+                        indexed++;
+                    }
+                } while (!"0".equals(cursor));
+            }
+            LOG.debug("{} registrations added to the expiration index", indexed);
+        } catch (Exception e) {
+            LOG.warn("Unexpected Exception while indexing registration expirations", e);
+        }
+    }
+
     private class Cleaner implements Runnable {
 
         @Override
         public void run() {
-
-            try (Jedis j = pool.getResource()) {
-                ScanParams params = new ScanParams().match(EP_REG + "*").count(100);
-                String cursor = "0";
-                do {
-                    // TODO we probably need a lock here
-                    ScanResult<byte[]> res = j.scan(cursor.getBytes(), params);
-                    for (byte[] key : res.getResult()) {
-                        Registration r = deserializeReg(j.get(key));
-                        if (!r.isAlive()) {
-                            deleteRegistration(j, r);
-                            expirationListener.registrationExpired(r, new ArrayList<Observation>());
+            try {
+                // start from a random partition so the nodes do not compete for the same leases
+                int first = random.nextInt(EXPIRATION_PARTITIONS);
+                for (int i = 0; i < EXPIRATION_PARTITIONS; i++) {
+                    int partition = (first + i) % EXPIRATION_PARTITIONS;
+                    // the lease is kept until it expires, so a partition is cleaned once per period
+                    final String lease = LOCK_EXP + partition;
+                    String leased = shards.execute(lease, new RedisCommand<String>() {
+                        @Override
+                        public String execute(Jedis j) {
+                            return j.set(lease, nodeId, "NX", "PX", cleanPeriodInSec * 500);
                         }
+                    });
+                    if ("OK".equals(leased)) {
+                        cleanPartition(partition);
                     }
-                    cursor = res.getStringCursor();
-                } while (!"0".equals(cursor));
+                }
             } catch (Exception e) {
                 LOG.warn("Unexcepted Exception while registration cleaning", e);
             }
         }
+
+        private void cleanPartition(int partition) {
+            final String expirationKey = EXP_EP + partition;
+            final String now = Long.toString(System.currentTimeMillis());
+            int removed = 0;
+            int due;
+            do {
+                Collection<String> endpoints = shards.execute(expirationKey, new RedisCommand<Collection<String>>() {
+                    @Override
+                    public Collection<String> execute(Jedis j) {
+                        return j.zrangeByScore(expirationKey, "-inf", now, 0, cleanLimit);
+                    }
+                });
+                due = endpoints.size();
+                int skipped = 0;
+                for (String endpoint : endpoints) {
+                    if (!cleanEndpoint(expirationKey, endpoint, now)) {
+                        skipped++;
+                    } else {
+                        removed++;
+                    }
+                }
+                // the locked endpoints stay due: stop when only them are left
+                if (skipped == due) {
+                    break;
+                }
+            } while (due == cleanLimit);
+            if (removed > 0) {
+                LOG.debug("{} expired registrations handled in partition {}", removed, partition);
+            }
+        }
+
+        /**
+         * @return false if the endpoint is locked and must be cleaned later.
+         */
+        private boolean cleanEndpoint(String expirationKey, String endpoint, final String now) {
+            byte[] k = toEndpointKey(endpoint);
+            final List<byte[]> keys = Arrays.asList(k, toLockKey(endpoint), toLastUpdateKey(endpoint));
+            Object result = shards.execute(k, new RedisCommand<Object>() {
+                @Override
+                public Object execute(Jedis j) {
+                    return j.eval(CLEAN_SCRIPT.getBytes(UTF_8), keys, Collections.singletonList(now.getBytes(UTF_8)));
+                }
+            });
+            if (result == null) {
+                return false;
+            }
+            if (result instanceof Long && (Long) result > 0L) {
+                // updated meanwhile
+                indexExpiration(expirationKey, endpoint, (Long) result);
+                return true;
+            }
+            unindexExpiration(expirationKey, endpoint);
+            if (result instanceof byte[]) {
+                Registration r = deserializeReg((byte[]) result);
+                byte[] lockValue = null;
+                byte[] lockKey = toLockKey(endpoint);
+                try {
+                    // the registration is gone: remove its indexes like removeRegistration() does
+                    lockValue = acquireLock(lockKey);
+                    del(toRegIdKey(r.getId()));
+                    Collection<Observation> observations = unsafeRemoveAllObservations(r.getId());
+                    publish(REGISTRATION_REMOVED + r.getId());
+                    if (expirationListener != null) {
+                        expirationListener.registrationExpired(r, observations);
+                    }
+                } finally {
+                    releaseLock(lockKey, lockValue);
+                }
+            }
+            return true;
+        }
     }
 
     @Override
@@ -19,11 +19,11 @@ import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.eclipse.californium.core.Utils;
 import org.eclipse.leshan.core.node.LwM2mNode;
 import org.eclipse.leshan.core.observation.Observation;
+import org.eclipse.leshan.core.request.ContentFormat;
 import org.eclipse.leshan.core.request.DownlinkRequest;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ObserveResponse;
@@ -31,11 +31,13 @@ import org.eclipse.leshan.server.LwM2mServer;
 import org.eclipse.leshan.server.client.Registration;
 import org.eclipse.leshan.server.client.RegistrationService;
 import org.eclipse.leshan.server.cluster.serialization.DownlinkRequestSerDes;
+import org.eclipse.leshan.server.cluster.serialization.RawNotificationSerDes;
 import org.eclipse.leshan.server.cluster.serialization.ResponseSerDes;
 import org.eclipse.leshan.server.observation.ObservationService;
 import org.eclipse.leshan.server.observation.ObservationListener;
+import org.eclipse.leshan.server.observation.RawObservationListener;
 import org.eclipse.leshan.server.response.ResponseListener;
-import org.eclipse.leshan.util.NamedThreadFactory;
+import org.eclipse.leshan.util.BoundedExecutorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +53,10 @@ import redis.clients.util.Pool;
  * Send LWM2M Request to a registered LWM2M client when JSON Request Message is received on redis {@code LESHAN_REQ}
  * channel.</br>
  * Send JSON Response Message on redis {@code LESHAN_RESP} channel when LWM2M Response is received from LWM2M Client.
+ * <p>
+ * Notifications are decoded and sent as JSON LWM2M nodes, or forwarded as they were received from the client (see
+ * {@link RawNotificationSerDes}) so that they are only decoded by the consumers which need their content.
+ * </p>
  */
 public class RedisRequestResponseHandler {
 
@@ -68,31 +74,75 @@ public class RedisRequestResponseHandler {
 
     public RedisRequestResponseHandler(Pool<Jedis> p, LwM2mServer server, RegistrationService registrationService,
             RedisTokenHandler tokenHandler, ObservationService observationService) {
+        this(p, server, registrationService, tokenHandler, observationService, new BoundedExecutorService(
+                String.format("Redis %s channel writer", RESPONSE_CHANNEL) + " %d"));
+    }
+
+    /**
+     * @param executorService the executor used to handle Redis messages and LWM2M responses
+     */
+    public RedisRequestResponseHandler(Pool<Jedis> p, LwM2mServer server, RegistrationService registrationService,
+            RedisTokenHandler tokenHandler, ObservationService observationService, ExecutorService executorService) {
+        this(p, server, registrationService, tokenHandler, observationService, executorService, false);
+    }
+
+    /**
+     * @param executorService the executor used to handle Redis messages and LWM2M responses
+     * @param rawNotifications true to forward the notifications without decoding them
+     */
+    public RedisRequestResponseHandler(Pool<Jedis> p, LwM2mServer server, RegistrationService registrationService,
+            RedisTokenHandler tokenHandler, ObservationService observationService, ExecutorService executorService,
+            boolean rawNotifications) {
         // Listen LWM2M response
         this.server = server;
         this.registrationService = registrationService;
         this.observationService = observationService;
         this.tokenHandler = tokenHandler;
-        this.executorService = Executors.newCachedThreadPool(
-                new NamedThreadFactory(String.format("Redis %s channel writer", RESPONSE_CHANNEL)));
+        this.executorService = executorService;
 
         // Listen LWM2M notification from client
-        this.observationService.addListener(new ObservationListener() {
+        if (rawNotifications) {
+            this.observationService.addListener(new RawObservationListener() {
+
+                @Override
+                public void newRawValue(Observation observation, Registration registration,
+                        ContentFormat contentFormat, byte[] payload) {
+                    handleRawNotification(observation,
+                            new RawNotification(observation.getId(), observation.getPath(), contentFormat, payload));
+                }
 
-            @Override
-            public void newValue(Observation observation, ObserveResponse response) {
-                handleNotification(observation, response.getContent());
-            }
+                @Override
+                public void newValue(Observation observation, ObserveResponse response) {
+                    // not called for raw listeners
+                }
 
-            @Override
-            public void newObservation(Observation observation) {
-            }
+                @Override
+                public void newObservation(Observation observation) {
+                }
 
-            @Override
-            public void cancelled(Observation observation) {
-                observatioIdToTicket.remove(new KeyId(observation.getId()));
-            }
-        });
+                @Override
+                public void cancelled(Observation observation) {
+                    observatioIdToTicket.remove(new KeyId(observation.getId()));
+                }
+            });
+        } else {
+            this.observationService.addListener(new ObservationListener() {
+
+                @Override
+                public void newValue(Observation observation, ObserveResponse response) {
+                    handleNotification(observation, response.getContent());
+                }
+
+                @Override
+                public void newObservation(Observation observation) {
+                }
+
+                @Override
+                public void cancelled(Observation observation) {
+                    observatioIdToTicket.remove(new KeyId(observation.getId()));
+                }
+            });
+        }
 
         // Listen LWM2M response from client
         this.server.addResponseListener(new ResponseListener() {
@@ -168,6 +218,22 @@ public class RedisRequestResponseHandler {
         });
     }
 
+    private void handleRawNotification(final Observation observation, final RawNotification notification) {
+        executorService.submit(new Runnable() {
+            @Override
+            public void run() {
+                String ticket = observatioIdToTicket.get(new KeyId(observation.getId()));
+                try {
+                    sendRawNotification(ticket, notification);
+                } catch (RuntimeException t) {
+                    LOG.error("Unable to send Notification.", t);
+                    sendError(ticket,
+                            String.format("Expected error while sending LWM2M Notification.(%s)", t.getMessage()));
+                }
+            }
+        });
+    }
+
     private void handlerError(String clientEndpoint, final String ticket, final Exception exception) {
         executorService.submit(new Runnable() {
             @Override
@@ -268,6 +334,15 @@ public class RedisRequestResponseHandler {
         }
     }
 
+    private void sendRawNotification(String ticket, RawNotification notification) {
+        try (Jedis j = pool.getResource()) {
+            JsonObject m = Json.object();
+            m.add("ticket", ticket);
+            m.add("rep", RawNotificationSerDes.jSerialize(notification));
+            j.publish(RESPONSE_CHANNEL, m.toString());
+        }
+    }
+
     private void sendResponse(String ticket, LwM2mResponse response) {
         if (response instanceof ObserveResponse) {
             Observation observation = ((ObserveResponse) response).getObservation();
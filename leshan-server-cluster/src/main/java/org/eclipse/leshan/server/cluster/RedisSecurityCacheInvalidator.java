@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import org.eclipse.leshan.server.Destroyable;
+import org.eclipse.leshan.server.impl.CachingSecurityStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.util.Pool;
+
+/**
+ * Keeps a {@link CachingSecurityStore} consistent across the cluster: the cached security infos modified on any node
+ * are invalidated when their end-point is published on {@link RedisSecurityStore#SECURITY_CHANGE_CHANNEL}.
+ * <p>
+ * As changes may be missed while the subscription is down, the whole cache is invalidated on each (re)subscription.
+ * </p>
+ */
+public class RedisSecurityCacheInvalidator implements Destroyable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RedisSecurityCacheInvalidator.class);
+
+    private final Pool<Jedis> pool;
+    private final CachingSecurityStore cache;
+    private final JedisPubSub subscriber;
+    private volatile boolean running = true;
+
+    public RedisSecurityCacheInvalidator(Pool<Jedis> p, CachingSecurityStore cache) {
+        this.pool = p;
+        this.cache = cache;
+        this.subscriber = new JedisPubSub() {
+            @Override
+            public void onSubscribe(String channel, int subscribedChannels) {
+                RedisSecurityCacheInvalidator.this.cache.invalidateAll();
+            }
+
+            @Override
+            public void onMessage(String channel, String endpoint) {
+                RedisSecurityCacheInvalidator.this.cache.invalidate(endpoint);
+            }
+        };
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    try (Jedis j = pool.getResource()) {
+                        j.subscribe(subscriber, RedisSecurityStore.SECURITY_CHANGE_CHANNEL);
+                    } catch (RuntimeException e) {
+                        LOG.warn("Redis SUBSCRIBE interrupted.", e);
+                    }
+                    if (!running) {
+                        return;
+                    }
+
+                    // wait & re-launch
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException e) {
+                    }
+                    LOG.warn("Relaunch Redis SUBSCRIBE.");
+                }
+            }
+        }, String.format("Redis %s channel reader", RedisSecurityStore.SECURITY_CHANGE_CHANNEL));
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        if (subscriber.isSubscribed()) {
+            subscriber.unsubscribe();
+        }
+    }
+}
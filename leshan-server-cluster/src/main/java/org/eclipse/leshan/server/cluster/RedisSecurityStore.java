@@ -1,22 +1,27 @@
 /*******************************************************************************
  * Copyright (c) 2016 Sierra Wireless and others.
- * 
+ *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * and Eclipse Distribution License v1.0 which accompany this distribution.
- * 
+ *
  * The Eclipse Public License is available at
  *    http://www.eclipse.org/legal/epl-v10.html
  * and the Eclipse Distribution License is available at
  *    http://www.eclipse.org/org/documents/edl-v10.html.
- * 
+ *
  * Contributors:
  *     Sierra Wireless - initial API and implementation
  *******************************************************************************/
 package org.eclipse.leshan.server.cluster;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.eclipse.leshan.server.cluster.serialization.SecurityInfoSerDes;
 import org.eclipse.leshan.server.security.EditableSecurityStore;
@@ -25,14 +30,21 @@ import org.eclipse.leshan.server.security.SecurityInfo;
 import org.eclipse.leshan.server.security.SecurityStore;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.ScanParams;
 import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
 import redis.clients.util.Pool;
 
 /**
  * A {@link SecurityStore} implementation based on Redis.
  * 
  * Security info are stored using the endpoint as primary key and a secondary index is created for psk-identity lookup.
+ * The end-point of each added or removed security info is published on the {@link #SECURITY_CHANGE_CHANNEL} channel.
+ * <p>
+ * The security info keys use the end-point as hash tag, so they are spread over the {@link RedisShards}.
+ * </p>
  */
 public class RedisSecurityStore implements EditableSecurityStore {
 
@@ -40,87 +52,286 @@ public class RedisSecurityStore implements EditableSecurityStore {
 
     private static final String PSKID_SEC = "PSKID#SEC";
 
-    private final Pool<Jedis> pool;
+    /** The channel on which the end-point of each modified security info is published */
+    public static final String SECURITY_CHANGE_CHANNEL = "LESHAN_SEC_CHANGE";
+
+    private final RedisShards shards;
 
     public RedisSecurityStore(Pool<Jedis> pool) {
-        this.pool = pool;
+        this(new SingleRedisShards(pool));
+    }
+
+    public RedisSecurityStore(RedisShards shards) {
+        this.shards = shards;
     }
 
     @Override
     public SecurityInfo getByEndpoint(String endpoint) {
-        try (Jedis j = pool.getResource()) {
-            byte[] data = j.get((SEC_EP + endpoint).getBytes());
-            if (data == null) {
-                return null;
-            } else {
-                return deserialize(data);
+        final String key = toKey(endpoint);
+        byte[] data = shards.execute(key, new RedisCommand<byte[]>() {
+            @Override
+            public byte[] execute(Jedis j) {
+                return j.get(key.getBytes());
             }
+        });
+        if (data == null) {
+            return null;
+        } else {
+            return deserialize(data);
         }
     }
 
     @Override
-    public SecurityInfo getByIdentity(String identity) {
-        try (Jedis j = pool.getResource()) {
-            String ep = j.hget(PSKID_SEC, identity);
-            if (ep == null) {
-                return null;
-            } else {
-                byte[] data = j.get((SEC_EP + ep).getBytes());
-                if (data == null) {
-                    return null;
-                } else {
-                    return deserialize(data);
-                }
+    public SecurityInfo getByIdentity(final String identity) {
+        String ep = shards.execute(PSKID_SEC, new RedisCommand<String>() {
+            @Override
+            public String execute(Jedis j) {
+                return j.hget(PSKID_SEC, identity);
             }
+        });
+        if (ep == null) {
+            return null;
+        } else {
+            return getByEndpoint(ep);
         }
     }
 
     @Override
     public Collection<SecurityInfo> getAll() {
-        try (Jedis j = pool.getResource()) {
-            ScanParams params = new ScanParams().match(SEC_EP + "*").count(100);
-            Collection<SecurityInfo> list = new LinkedList<>();
-            String cursor = "0";
-            do {
-                ScanResult<byte[]> res = j.scan(cursor.getBytes(), params);
-                for (byte[] key : res.getResult()) {
-                    byte[] element = j.get(key);
-                    list.add(deserialize(element));
+        ScanParams params = new ScanParams().match(SEC_EP + "{*").count(100);
+        Collection<SecurityInfo> list = new LinkedList<>();
+        for (Pool<Jedis> shard : shards.getShards()) {
+            try (Jedis j = shard.getResource()) {
+                String cursor = "0";
+                do {
+                    ScanResult<byte[]> res = j.scan(cursor.getBytes(), params);
+                    for (byte[] key : res.getResult()) {
+                        byte[] element = j.get(key);
+                        if (element != null) {
+                            list.add(deserialize(element));
+                        }
+                    }
+                    cursor = res.getStringCursor();
+                } while (!"0".equals(cursor));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public SecurityInfo add(final SecurityInfo info) throws NonUniqueSecurityInfoException {
+        write(toKey(info.getEndpoint()), serialize(info));
+        if (info.getIdentity() != null) {
+            // populate the secondary index (security info by PSK id)
+            shards.execute(PSKID_SEC, new RedisCommand<Void>() {
+                @Override
+                public Void execute(Jedis j) {
+                    j.hset(PSKID_SEC.getBytes(), info.getIdentity().getBytes(), info.getEndpoint().getBytes());
+                    return null;
                 }
-                cursor = res.getStringCursor();
-            } while (!"0".equals(cursor));
-            return list;
+            });
         }
+        try (Jedis j = shards.getDefaultShard().getResource()) {
+            j.publish(SECURITY_CHANGE_CHANNEL, info.getEndpoint());
+        }
+        return null;
     }
 
     @Override
-    public SecurityInfo add(SecurityInfo info) throws NonUniqueSecurityInfoException {
-        byte[] data = serialize(info);
-        try (Jedis j = pool.getResource()) {
-            j.set((SEC_EP + info.getEndpoint()).getBytes(), data);
-            if (info.getIdentity() != null) {
-                // populate the secondary index (security info by PSK id)
-                j.hset(PSKID_SEC.getBytes(), info.getIdentity().getBytes(), info.getEndpoint().getBytes());
-            }
+    public SecurityInfo remove(String endpoint) {
+        byte[] data = take(toKey(endpoint));
+        if (data == null) {
             return null;
         }
+        final SecurityInfo info = deserialize(data);
+        if (info.getIdentity() != null) {
+            shards.execute(PSKID_SEC, new RedisCommand<Void>() {
+                @Override
+                public Void execute(Jedis j) {
+                    j.hdel(PSKID_SEC.getBytes(), info.getIdentity().getBytes());
+                    return null;
+                }
+            });
+        }
+        try (Jedis j = shards.getDefaultShard().getResource()) {
+            j.publish(SECURITY_CHANGE_CHANNEL, endpoint);
+        }
+        return info;
     }
 
     @Override
-    public SecurityInfo remove(String endpoint) {
-        try (Jedis j = pool.getResource()) {
-            byte[] data = j.get((SEC_EP + endpoint).getBytes());
+    public void addAll(final Collection<SecurityInfo> infos) throws NonUniqueSecurityInfoException {
+        if (infos.isEmpty()) {
+            return;
+        }
+        // send all the commands of a shard in one round trip
+        for (Entry<Pool<Jedis>, List<SecurityInfo>> shard : groupByShard(infos).entrySet()) {
+            List<SecurityInfo> shardInfos = shard.getValue();
+            List<Response<String>> replies = new ArrayList<>(shardInfos.size());
+            try (Jedis j = shard.getKey().getResource()) {
+                Pipeline p = j.pipelined();
+                for (SecurityInfo info : shardInfos) {
+                    replies.add(p.set(toKey(info.getEndpoint()).getBytes(), serialize(info)));
+                }
+                p.sync();
+            }
+            for (int i = 0; i < shardInfos.size(); i++) {
+                try {
+                    replies.get(i).get();
+                } catch (JedisRedirectionException e) {
+                    SecurityInfo info = shardInfos.get(i);
+                    write(toKey(info.getEndpoint()), serialize(info));
+                }
+            }
+        }
+        shards.execute(PSKID_SEC, new RedisCommand<Void>() {
+            @Override
+            public Void execute(Jedis j) {
+                // populate the secondary index (security info by PSK id)
+                Pipeline p = j.pipelined();
+                for (SecurityInfo info : infos) {
+                    if (info.getIdentity() != null) {
+                        p.hset(PSKID_SEC.getBytes(), info.getIdentity().getBytes(), info.getEndpoint().getBytes());
+                    }
+                }
+                sync(p);
+                return null;
+            }
+        });
+        publish(infos);
+    }
 
-            if (data != null) {
-                SecurityInfo info = deserialize(data);
-                if (info.getIdentity() != null) {
-                    j.hdel(PSKID_SEC.getBytes(), info.getIdentity().getBytes());
+    @Override
+    public Collection<SecurityInfo> removeAll(Collection<String> endpoints) {
+        final Collection<SecurityInfo> removed = new ArrayList<>();
+        if (endpoints.isEmpty()) {
+            return removed;
+        }
+        Map<Pool<Jedis>, List<String>> keysByShard = new IdentityHashMap<>();
+        for (String endpoint : endpoints) {
+            String key = toKey(endpoint);
+            Pool<Jedis> shard = shards.getShard(key);
+            List<String> keys = keysByShard.get(shard);
+            if (keys == null) {
+                keys = new ArrayList<>();
+                keysByShard.put(shard, keys);
+            }
+            keys.add(key);
+        }
+
+        for (Entry<Pool<Jedis>, List<String>> shard : keysByShard.entrySet()) {
+            List<String> keys = shard.getValue();
+            List<Response<byte[]>> values = new ArrayList<>(keys.size());
+            List<Response<Long>> deleted = new ArrayList<>(keys.size());
+            try (Jedis j = shard.getKey().getResource()) {
+                // one GET and DEL per key: a Redis Cluster rejects the commands using the keys of several slots
+                Pipeline p = j.pipelined();
+                for (String key : keys) {
+                    values.add(p.get(key.getBytes()));
+                    deleted.add(p.del(key.getBytes()));
+                }
+                p.sync();
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] data;
+                try {
+                    deleted.get(i).get();
+                    data = values.get(i).get();
+                } catch (JedisRedirectionException e) {
+                    data = take(keys.get(i));
+                }
+                if (data != null) {
+                    removed.add(deserialize(data));
                 }
-                j.del((SEC_EP + endpoint).getBytes());
-                return info;
             }
         }
-        return null;
+        if (removed.isEmpty()) {
+            return removed;
+        }
+
+        shards.execute(PSKID_SEC, new RedisCommand<Void>() {
+            @Override
+            public Void execute(Jedis j) {
+                Pipeline p = j.pipelined();
+                for (SecurityInfo info : removed) {
+                    if (info.getIdentity() != null) {
+                        p.hdel(PSKID_SEC.getBytes(), info.getIdentity().getBytes());
+                    }
+                }
+                sync(p);
+                return null;
+            }
+        });
+        publish(removed);
+        return removed;
+    }
+
+    private Map<Pool<Jedis>, List<SecurityInfo>> groupByShard(Collection<SecurityInfo> infos) {
+        Map<Pool<Jedis>, List<SecurityInfo>> infosByShard = new IdentityHashMap<>();
+        for (SecurityInfo info : infos) {
+            Pool<Jedis> shard = shards.getShard(toKey(info.getEndpoint()));
+            List<SecurityInfo> shardInfos = infosByShard.get(shard);
+            if (shardInfos == null) {
+                shardInfos = new ArrayList<>();
+                infosByShard.put(shard, shardInfos);
+            }
+            shardInfos.add(info);
+        }
+        return infosByShard;
+    }
+
+    private void write(final String key, final byte[] data) {
+        shards.execute(key, new RedisCommand<Void>() {
+            @Override
+            public Void execute(Jedis j) {
+                j.set(key.getBytes(), data);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Removes the given key.
+     *
+     * @return its value, or <code>null</code> if it does not exist.
+     */
+    private byte[] take(final String key) {
+        return shards.execute(key, new RedisCommand<byte[]>() {
+            @Override
+            public byte[] execute(Jedis j) {
+                byte[] data = j.get(key.getBytes());
+                if (data != null) {
+                    j.del(key.getBytes());
+                }
+                return data;
+            }
+        });
+    }
+
+    /**
+     * Sends the commands of a pipeline using the keys of a single slot, failing if they were redirected.
+     */
+    private static void sync(Pipeline p) {
+        for (Object reply : p.syncAndReturnAll()) {
+            if (reply instanceof JedisRedirectionException) {
+                throw (JedisRedirectionException) reply;
+            }
+        }
+    }
+
+    private void publish(Collection<SecurityInfo> infos) {
+        try (Jedis j = shards.getDefaultShard().getResource()) {
+            Pipeline p = j.pipelined();
+            for (SecurityInfo info : infos) {
+                p.publish(SECURITY_CHANGE_CHANNEL, info.getEndpoint());
+            }
+            p.sync();
+        }
+    }
+
+    private static String toKey(String endpoint) {
+        // the end-point is the hash tag of the key
+        return SEC_EP + "{" + endpoint + "}";
     }
 
     private byte[] serialize(SecurityInfo secInfo) {
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+/**
+ * Gives access to the Redis primaries storing the cluster data.
+ * <p>
+ * Keys are assigned to a shard by their hash slot, as done by Redis Cluster: when a key contains a hash tag (the part
+ * between the first <code>{</code> and the next <code>}</code>), only the tag is hashed. So all the keys of an
+ * end-point share the same tag and can be used together in a script or a pipeline, while the end-points are spread
+ * over the shards.
+ * </p>
+ * A connection must be returned to its pool before another one is borrowed, to avoid exhausting the pools.
+ */
+public interface RedisShards {
+
+    /**
+     * @return the pool of the shard storing the given key.
+     */
+    Pool<Jedis> getShard(String key);
+
+    /**
+     * @return the pool of the shard storing the given key.
+     */
+    Pool<Jedis> getShard(byte[] key);
+
+    /**
+     * Sends a command to the shard storing the given key.
+     * <p>
+     * When the shard answers with a MOVED redirection, the key to shard mapping is refreshed and the command is sent
+     * once more. When it answers with an ASK redirection, the command is sent once more to the given node, preceded by
+     * <code>ASKING</code>, which only covers the first command of a pipeline. Pipelined replies must be read in the
+     * command for their redirections to be handled: a redirection of a reply which is not read is lost and its command
+     * is not retried.
+     * </p>
+     *
+     * @return the result of the command.
+     */
+    <T> T execute(String key, RedisCommand<T> command);
+
+    /**
+     * Sends a command to the shard storing the given key, see {@link #execute(String, RedisCommand)}.
+     *
+     * @return the result of the command.
+     */
+    <T> T execute(byte[] key, RedisCommand<T> command);
+
+    /**
+     * @return the pool used for the cluster-wide operations which are not bound to a key, like Pub/Sub.
+     */
+    Pool<Jedis> getDefaultShard();
+
+    /**
+     * @return all the shards, always in the same order, e.g. to scan all the keys.
+     */
+    List<Pool<Jedis>> getShards();
+}
@@ -34,49 +34,66 @@ import redis.clients.util.Pool;
 public class RedisTokenHandler implements RegistrationListener {
 
     private static final String EP_UID = "EP#UID#";
-    private final Pool<Jedis> pool;
+    private final RedisShards shards;
     private final String instanceUID;
 
     public RedisTokenHandler(Pool<Jedis> j, String instanceUID) {
+        this(new SingleRedisShards(j), instanceUID);
+    }
+
+    public RedisTokenHandler(RedisShards shards, String instanceUID) {
         Validate.notNull(instanceUID);
         this.instanceUID = instanceUID;
-        this.pool = j;
+        this.shards = shards;
     }
 
     @Override
     public void registered(Registration registration) {
-        try (Jedis j = pool.getResource()) {
-            // create registration entry
-            byte[] k = (EP_UID + registration.getEndpoint()).getBytes();
-            j.set(k, instanceUID.getBytes());
-            j.expire(k, registration.getLifeTimeInSec().intValue());
-        }
+        own(registration);
     }
 
     @Override
     public void updated(RegistrationUpdate update, Registration updatedRegistration) {
-        try (Jedis j = pool.getResource()) {
-            // create registration entry
-            byte[] k = (EP_UID + updatedRegistration.getEndpoint()).getBytes();
-            j.set(k, instanceUID.getBytes());
-            j.expire(k, updatedRegistration.getLifeTimeInSec().intValue());
-        }
+        own(updatedRegistration);
     }
 
     @Override
     public void unregistered(Registration registration) {
-        try (Jedis j = pool.getResource()) {
-            // create registration entry
-            byte[] k = (EP_UID + registration.getEndpoint()).getBytes();
-            j.del(k);
-        }
+        final byte[] k = toKey(registration.getEndpoint());
+        shards.execute(k, new RedisCommand<Void>() {
+            @Override
+            public Void execute(Jedis j) {
+                j.del(k);
+                return null;
+            }
+        });
     }
 
     public boolean isResponsible(String endpoint) {
-        try (Jedis j = pool.getResource()) {
-            byte[] k = (EP_UID + endpoint).getBytes();
-            byte[] data = j.get(k);
-            return data != null && Arrays.equals(data, instanceUID.getBytes());
-        }
+        final byte[] k = toKey(endpoint);
+        byte[] data = shards.execute(k, new RedisCommand<byte[]>() {
+            @Override
+            public byte[] execute(Jedis j) {
+                return j.get(k);
+            }
+        });
+        return data != null && Arrays.equals(data, instanceUID.getBytes());
+    }
+
+    private void own(final Registration registration) {
+        final byte[] k = toKey(registration.getEndpoint());
+        shards.execute(k, new RedisCommand<Void>() {
+            @Override
+            public Void execute(Jedis j) {
+                j.set(k, instanceUID.getBytes());
+                j.expire(k, registration.getLifeTimeInSec().intValue());
+                return null;
+            }
+        });
+    }
+
+    private byte[] toKey(String endpoint) {
+        // hash tag: the owner of an endpoint is stored on the shard of its other keys
+        return (EP_UID + "{" + endpoint + "}").getBytes();
     }
 }
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.leshan.util.Validate;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+/**
+ * {@link RedisShards} storing all the keys in a single Redis instance.
+ */
+public class SingleRedisShards implements RedisShards {
+
+    private final Pool<Jedis> pool;
+    private final List<Pool<Jedis>> shards;
+
+    public SingleRedisShards(Pool<Jedis> pool) {
+        Validate.notNull(pool);
+        this.pool = pool;
+        this.shards = Collections.singletonList(pool);
+    }
+
+    @Override
+    public Pool<Jedis> getShard(String key) {
+        return pool;
+    }
+
+    @Override
+    public Pool<Jedis> getShard(byte[] key) {
+        return pool;
+    }
+
+    @Override
+    public <T> T execute(String key, RedisCommand<T> command) {
+        return execute(pool, command);
+    }
+
+    @Override
+    public <T> T execute(byte[] key, RedisCommand<T> command) {
+        return execute(pool, command);
+    }
+
+    private static <T> T execute(Pool<Jedis> pool, RedisCommand<T> command) {
+        try (Jedis j = pool.getResource()) {
+            return command.execute(j);
+        }
+    }
+
+    @Override
+    public Pool<Jedis> getDefaultShard() {
+        return pool;
+    }
+
+    @Override
+    public List<Pool<Jedis>> getShards() {
+        return shards;
+    }
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.leshan.util.Validate;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.Pool;
+
+/**
+ * {@link RedisShards} spreading the keys over several independent Redis primaries: the 16384 hash slots are split in
+ * contiguous ranges, one per primary.
+ * <p>
+ * The list of primaries must be the same, in the same order, on all the nodes of the cluster. Pub/Sub uses the first
+ * primary.
+ * </p>
+ */
+public class SlotRangeRedisShards implements RedisShards {
+
+    private static final int SLOTS = 16384;
+
+    private final List<Pool<Jedis>> shards;
+
+    public SlotRangeRedisShards(List<? extends Pool<Jedis>> shards) {
+        Validate.notEmpty(shards);
+        this.shards = Collections.unmodifiableList(new ArrayList<Pool<Jedis>>(shards));
+    }
+
+    @Override
+    public Pool<Jedis> getShard(String key) {
+        return toShard(JedisClusterCRC16.getSlot(key));
+    }
+
+    @Override
+    public Pool<Jedis> getShard(byte[] key) {
+        return toShard(JedisClusterCRC16.getSlot(key));
+    }
+
+    private Pool<Jedis> toShard(int slot) {
+        return shards.get(slot * shards.size() / SLOTS);
+    }
+
+    @Override
+    public <T> T execute(String key, RedisCommand<T> command) {
+        return execute(getShard(key), command);
+    }
+
+    @Override
+    public <T> T execute(byte[] key, RedisCommand<T> command) {
+        return execute(getShard(key), command);
+    }
+
+    private static <T> T execute(Pool<Jedis> pool, RedisCommand<T> command) {
+        // independent servers never redirect a command
+        try (Jedis j = pool.getResource()) {
+            return command.execute(j);
+        }
+    }
+
+    @Override
+    public Pool<Jedis> getDefaultShard() {
+        return shards.get(0);
+    }
+
+    @Override
+    public List<Pool<Jedis>> getShards() {
+        return shards;
+    }
+}
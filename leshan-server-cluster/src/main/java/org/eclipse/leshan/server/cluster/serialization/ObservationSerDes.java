@@ -15,7 +15,12 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.cluster.serialization;
 
+import static org.eclipse.leshan.util.Charsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -33,32 +38,127 @@ import com.eclipsesource.json.JsonObject;
 import com.eclipsesource.json.JsonValue;
 
 /**
- * Functions for serializing and deserializing a Californium {@link Observation} in JSON.
+ * Functions for serializing and deserializing a Californium {@link Observation}.
  * 
  * The embedded CoAP request is serialized using the Californium network serialization (see {@link UdpDataParser} and
  * {@link UdpDataSerializer}).
+ * <p>
+ * Observations are serialized in a versioned binary layout, all lengths being unsigned 16 bits big-endian integers:
+ * 
+ * <pre>
+ * version (1 byte) | request length | CoAP request | context entry count | (key length | key | value length | value)*
+ * </pre>
+ * 
+ * The entry count is {@value #NO_LENGTH} when the request has no user context, a value length is {@value #NO_LENGTH}
+ * for a <code>null</code> value. Keys and values are UTF-8 encoded.
+ * </p>
+ * <p>
+ * Observations serialized in the former JSON format (the hex-encoded request and a context object) can still be
+ * deserialized.
+ * </p>
  */
 public class ObservationSerDes {
 
+    /** Version of the binary layout */
+    public static final byte VERSION = 1;
+
+    private static final int NO_LENGTH = 0xFFFF;
+
     private static final DataSerializer serializer = new UdpDataSerializer();
     private static final DataParser parser = new UdpDataParser();
 
     public static byte[] serialize(Observation obs) {
-        JsonObject o = Json.object();
+        byte[] request = serializer.serializeRequest(obs.getRequest()).bytes;
+        Map<String, String> context = obs.getRequest().getUserContext();
 
-        o.set("request", Hex.encodeHexString(serializer.serializeRequest(obs.getRequest()).bytes));
+        // encode the context first to know the size of the buffer
+        int size = 1 + 2 + request.length + 2;
+        List<byte[]> entries = null;
+        if (context != null) {
+            entries = new ArrayList<>(context.size() * 2);
+            for (Entry<String, String> e : context.entrySet()) {
+                byte[] key = e.getKey().getBytes(UTF_8);
+                byte[] value = e.getValue() == null ? null : e.getValue().getBytes(UTF_8);
+                entries.add(key);
+                entries.add(value);
+                size += 2 + key.length + 2 + (value == null ? 0 : value.length);
+            }
+        }
 
-        if (obs.getRequest().getUserContext() != null) {
-            JsonObject ctxObject = Json.object();
-            for (Entry<String, String> e : obs.getRequest().getUserContext().entrySet()) {
-                ctxObject.set(e.getKey(), e.getValue());
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION);
+        putBytes(buffer, request);
+        if (entries == null) {
+            putLength(buffer, NO_LENGTH);
+        } else {
+            putLength(buffer, entries.size() / 2);
+            for (byte[] entry : entries) {
+                putBytes(buffer, entry);
             }
-            o.set("context", ctxObject);
         }
-        return o.toString().getBytes();
+        return buffer.array();
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            putLength(buffer, NO_LENGTH);
+        } else {
+            putLength(buffer, bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static void putLength(ByteBuffer buffer, int length) {
+        if (length > NO_LENGTH) {
+            throw new IllegalArgumentException("Observation field too long: " + length + " bytes");
+        }
+        buffer.putShort((short) length);
     }
 
     public static Observation deserialize(byte[] data) {
+        if (data.length > 0 && data[0] == '{') {
+            return deserializeJson(data);
+        }
+        if (data.length == 0 || data[0] != VERSION) {
+            throw new IllegalArgumentException(
+                    "Unsupported observation serialization version " + (data.length == 0 ? "(empty)" : data[0]));
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data, 1, data.length - 1);
+        byte[] req = getBytes(buffer);
+        Request request = (Request) parser.parseMessage(new RawData(req, null, 0));
+
+        int count = getLength(buffer);
+        if (count != NO_LENGTH) {
+            Map<String, String> context = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = new String(getBytes(buffer), UTF_8);
+                byte[] value = getBytes(buffer);
+                context.put(key, value == null ? null : new String(value, UTF_8));
+            }
+            request.setUserContext(context);
+        }
+
+        // TODO handle security context
+        return new Observation(request, null);
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = getLength(buffer);
+        if (length == NO_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static int getLength(ByteBuffer buffer) {
+        return buffer.getShort() & 0xFFFF;
+    }
+
+    /* Former JSON format */
+    private static Observation deserializeJson(byte[] data) {
         JsonObject v = (JsonObject) Json.parse(new String(data));
 
         byte[] req = Hex.decodeHex(v.getString("request", null).toCharArray());
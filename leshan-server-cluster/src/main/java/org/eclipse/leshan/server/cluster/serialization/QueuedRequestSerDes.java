@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster.serialization;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.server.queue.QueuedRequest;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+
+/**
+ * Functions for serialize and deserialize a {@link QueuedRequest} in JSON.
+ */
+public class QueuedRequestSerDes {
+
+    public static JsonObject jSerialize(QueuedRequest r) {
+        JsonObject o = Json.object();
+        o.add("ep", r.getEndpoint());
+        if (r.getRequestTicket() != null)
+            o.add("ticket", r.getRequestTicket());
+        o.add("req", DownlinkRequestSerDes.jSerialize(r.getDownlinkRequest()));
+        return o;
+    }
+
+    public static String sSerialize(QueuedRequest r) {
+        return jSerialize(r).toString();
+    }
+
+    public static byte[] bSerialize(QueuedRequest r) {
+        return jSerialize(r).toString().getBytes();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static QueuedRequest deserialize(JsonObject o) {
+        String endpoint = o.getString("ep", null);
+        String ticket = o.getString("ticket", null);
+        // safe because DownlinkRequest does not use generic itself
+        DownlinkRequest<LwM2mResponse> request = (DownlinkRequest<LwM2mResponse>) DownlinkRequestSerDes
+                .deserialize((JsonObject) o.get("req"));
+        return new DeserializedQueuedRequest(endpoint, ticket, request);
+    }
+
+    public static QueuedRequest deserialize(byte[] data) {
+        return deserialize((JsonObject) Json.parse(new String(data)));
+    }
+
+    private static class DeserializedQueuedRequest implements QueuedRequest {
+
+        private final String endpoint;
+        private final String requestTicket;
+        private final DownlinkRequest<LwM2mResponse> downlinkRequest;
+
+        public DeserializedQueuedRequest(String endpoint, String requestTicket,
+                DownlinkRequest<LwM2mResponse> downlinkRequest) {
+            this.endpoint = endpoint;
+            this.requestTicket = requestTicket;
+            this.downlinkRequest = downlinkRequest;
+        }
+
+        @Override
+        public String getRequestTicket() {
+            return requestTicket;
+        }
+
+        @Override
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        @Override
+        public DownlinkRequest<LwM2mResponse> getDownlinkRequest() {
+            return downlinkRequest;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("QueuedRequest [requestTicket=%s, downlinkRequest=%s, endpoint=%s]", requestTicket,
+                    downlinkRequest, endpoint);
+        }
+    }
+}
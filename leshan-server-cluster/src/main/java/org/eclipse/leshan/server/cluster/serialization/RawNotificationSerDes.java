@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster.serialization;
+
+import org.eclipse.leshan.ResponseCode;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.request.ContentFormat;
+import org.eclipse.leshan.server.cluster.RawNotification;
+import org.eclipse.leshan.util.Base64;
+import org.eclipse.leshan.util.Hex;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+import com.eclipsesource.json.JsonValue;
+
+/**
+ * Functions for serialize and deserialize a {@link RawNotification} in JSON.
+ * <p>
+ * The serialized notification has the same {@code code} attribute as the other responses, with the {@code rawObserve}
+ * kind.
+ * </p>
+ */
+public class RawNotificationSerDes {
+
+    public static final String KIND = "rawObserve";
+
+    public static JsonObject jSerialize(RawNotification n) {
+        final JsonObject o = Json.object();
+        o.add("code", ResponseCode.CONTENT.toString());
+        o.add("kind", KIND);
+        o.add("obsId", Hex.encodeHexString(n.getObservationId()));
+        o.add("path", n.getPath().toString());
+        if (n.getContentFormat() != null) {
+            o.add("ct", n.getContentFormat().getCode());
+        }
+        o.add("payload", Base64.encodeBase64String(n.getPayload()));
+        return o;
+    }
+
+    public static String sSerialize(RawNotification n) {
+        return jSerialize(n).toString();
+    }
+
+    public static byte[] bSerialize(RawNotification n) {
+        return jSerialize(n).toString().getBytes();
+    }
+
+    public static RawNotification deserialize(JsonObject o) {
+        if (!KIND.equals(o.getString("kind", null)))
+            throw new IllegalStateException("Invalid raw notification kind " + o.getString("kind", null));
+
+        byte[] observationId = Hex.decodeHex(o.getString("obsId", "").toCharArray());
+        LwM2mPath path = new LwM2mPath(o.getString("path", null));
+        JsonValue ct = o.get("ct");
+        ContentFormat contentFormat = ct == null ? null : ContentFormat.fromCode(ct.asInt());
+        byte[] payload = Base64.decodeBase64(o.getString("payload", ""));
+        return new RawNotification(observationId, path, contentFormat, payload);
+    }
+}
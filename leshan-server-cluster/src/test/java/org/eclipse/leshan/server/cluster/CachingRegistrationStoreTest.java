@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import static org.junit.Assert.*;
+
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.observe.Observation;
+import org.eclipse.leshan.server.californium.impl.CoapRequestBuilder;
+import org.eclipse.leshan.server.californium.impl.InMemoryRegistrationStore;
+import org.eclipse.leshan.server.client.Registration;
+import org.eclipse.leshan.server.client.RegistrationUpdate;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingRegistrationStoreTest {
+
+    private InMemoryRegistrationStore store;
+    private CachingRegistrationStore cache;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryRegistrationStore();
+        cache = new CachingRegistrationStore(store, 2, 60_000);
+    }
+
+    @Test
+    public void lookups_are_answered_from_cache() throws Exception {
+        store.addRegistration(registration("reg1", "ep1"));
+        store.add(observation("reg1", "ep1", new byte[] { 1 }));
+
+        assertEquals("ep1", cache.getRegistration("reg1").getEndpoint());
+        assertEquals("ep1", cache.getRegistration("reg1").getEndpoint());
+        assertNotNull(cache.get(new byte[] { 1 }));
+        assertNotNull(cache.get(new byte[] { 1 }));
+        assertEquals("reg1", cache.getObservation("reg1", new byte[] { 1 }).getRegistrationId());
+        assertEquals("reg1", cache.getObservation("reg1", new byte[] { 1 }).getRegistrationId());
+
+        assertEquals(3, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void changes_invalidate_cache() throws Exception {
+        cache.addRegistration(registration("reg1", "ep1"));
+        cache.add(observation("reg1", "ep1", new byte[] { 1 }));
+        cache.getRegistration("reg1");
+        cache.get(new byte[] { 1 });
+
+        cache.updateRegistration(lifetimeUpdate("reg1", 120L));
+        assertEquals(120L, cache.getRegistration("reg1").getLifeTimeInSec().longValue());
+
+        cache.removeRegistration("reg1");
+        assertNull(cache.getRegistration("reg1"));
+        assertNull(cache.get(new byte[] { 1 }));
+    }
+
+    @Test
+    public void external_changes_are_visible_after_invalidation() throws Exception {
+        store.addRegistration(registration("reg1", "ep1"));
+        store.add(observation("reg1", "ep1", new byte[] { 1 }));
+        cache.getRegistration("reg1");
+        cache.getObservation("reg1", new byte[] { 1 });
+
+        store.updateRegistration(lifetimeUpdate("reg1", 120L));
+        store.remove(new byte[] { 1 });
+        assertNotEquals(120L, cache.getRegistration("reg1").getLifeTimeInSec().longValue());
+        assertNotNull(cache.getObservation("reg1", new byte[] { 1 }));
+
+        cache.invalidateRegistration("reg1");
+        cache.invalidateObservation(new byte[] { 1 });
+        assertEquals(120L, cache.getRegistration("reg1").getLifeTimeInSec().longValue());
+        assertNull(cache.getObservation("reg1", new byte[] { 1 }));
+    }
+
+    @Test
+    public void update_only_invalidates_its_registration() throws Exception {
+        cache.addRegistration(registration("reg1", "ep1"));
+        cache.addRegistration(registration("reg2", "ep2"));
+        cache.getRegistration("reg1");
+        cache.getRegistration("reg2");
+
+        cache.updateRegistration(lifetimeUpdate("reg1", 120L));
+        cache.invalidateRegistration("reg1");
+        cache.getRegistration("reg2");
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void invalidation_only_drops_reads_of_its_registration() throws Exception {
+        final String[] changedWhileRead = new String[1];
+        store = new InMemoryRegistrationStore() {
+            @Override
+            public Registration getRegistration(String registrationId) {
+                Registration registration = super.getRegistration(registrationId);
+                // another node changes a registration while this one is read
+                cache.invalidateRegistration(changedWhileRead[0]);
+                return registration;
+            }
+        };
+        cache = new CachingRegistrationStore(store, 2, 60_000);
+        store.addRegistration(registration("reg1", "ep1"));
+        store.addRegistration(registration("reg2", "ep2"));
+
+        changedWhileRead[0] = "reg1";
+        cache.getRegistration("reg2");
+        cache.getRegistration("reg2");
+        assertEquals(1, cache.getHitCount());
+
+        // reg1 itself changes while it is read
+        cache.getRegistration("reg1");
+        cache.getRegistration("reg1");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void cache_is_bounded() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            store.addRegistration(registration("reg" + i, "ep" + i));
+            cache.getRegistration("reg" + i);
+        }
+        cache.getRegistration("reg0");
+        cache.getRegistration("reg2");
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+    private Registration registration(String registrationId, String endpoint) throws Exception {
+        return new Registration.Builder(registrationId, endpoint, Inet4Address.getByName("127.0.0.1"), 5683,
+                new InetSocketAddress(5683)).build();
+    }
+
+    private RegistrationUpdate lifetimeUpdate(String registrationId, long lifetime) throws Exception {
+        return new RegistrationUpdate(registrationId, Inet4Address.getByName("127.0.0.1"), 5683, lifetime, null, null,
+                null);
+    }
+
+    private Observation observation(String registrationId, String endpoint, byte[] token) {
+        Request request = Request.newGet();
+        request.setToken(token);
+        Map<String, String> context = new HashMap<>();
+        context.put(CoapRequestBuilder.CTX_REGID, registrationId);
+        context.put(CoapRequestBuilder.CTX_ENDPOINT, endpoint);
+        context.put(CoapRequestBuilder.CTX_LWM2M_PATH, "/3/0");
+        request.setUserContext(context);
+        return new Observation(request, null);
+    }
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.leshan.server.cluster.ClusterRedisShards.SlotRouter;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.util.Pool;
+
+public class ClusterRedisShardsTest {
+
+    private static final int SLOT = 42;
+
+    private StubNode owner;
+    private StubNode newOwner;
+    private StubNode migrationTarget;
+    private StubRouter router;
+
+    @Before
+    public void setUp() {
+        owner = new StubNode("owner");
+        newOwner = new StubNode("newOwner");
+        migrationTarget = new StubNode("migrationTarget");
+        router = new StubRouter();
+    }
+
+    @Test
+    public void command_is_sent_to_slot_owner() {
+        assertEquals("owner", ClusterRedisShards.execute(SLOT, new StubCommand(), router));
+        assertEquals(0, router.refreshes);
+    }
+
+    @Test
+    public void moved_command_is_sent_again_to_new_owner_after_refresh() {
+        StubCommand command = new StubCommand();
+        command.moved.add(owner);
+
+        assertEquals("newOwner", ClusterRedisShards.execute(SLOT, command, router));
+        assertEquals(1, router.refreshes);
+        assertFalse(newOwner.jedis.asked);
+    }
+
+    @Test
+    public void asked_command_is_sent_to_migration_target_without_refresh() {
+        StubCommand command = new StubCommand();
+        command.asked.add(owner);
+
+        assertEquals("migrationTarget", ClusterRedisShards.execute(SLOT, command, router));
+        assertTrue(migrationTarget.jedis.asked);
+        assertEquals(0, router.refreshes);
+
+        // the slot map is unchanged: the next command goes to the owner again
+        assertEquals("owner", ClusterRedisShards.execute(SLOT, new StubCommand(), router));
+    }
+
+    @Test(expected = JedisMovedDataException.class)
+    public void command_is_redirected_once_only() {
+        StubCommand command = new StubCommand();
+        command.moved.add(owner);
+        command.moved.add(newOwner);
+
+        ClusterRedisShards.execute(SLOT, command, router);
+    }
+
+    /**
+     * Returns the name of the node it is sent to, unless this node redirects it.
+     */
+    private class StubCommand implements RedisCommand<String> {
+        final List<StubNode> moved = new ArrayList<>();
+        final List<StubNode> asked = new ArrayList<>();
+
+        @Override
+        public String execute(Jedis j) {
+            StubNode node = ((StubJedis) j).node;
+            if (moved.contains(node)) {
+                throw new JedisMovedDataException("MOVED", new HostAndPort("newOwner", 6379), SLOT);
+            }
+            if (asked.contains(node)) {
+                throw new JedisAskDataException("ASK", new HostAndPort("migrationTarget", 6379), SLOT);
+            }
+            return node.name;
+        }
+    }
+
+    private class StubRouter implements SlotRouter {
+        int refreshes;
+
+        @Override
+        public Pool<Jedis> getSlotOwner(int slot) {
+            assertEquals(SLOT, slot);
+            return refreshes == 0 ? owner : newOwner;
+        }
+
+        @Override
+        public Pool<Jedis> getNode(HostAndPort node) {
+            assertEquals("migrationTarget", node.getHost());
+            return migrationTarget;
+        }
+
+        @Override
+        public void refresh() {
+            refreshes++;
+        }
+    }
+
+    private static class StubNode extends Pool<Jedis> {
+        final String name;
+        final StubJedis jedis;
+
+        StubNode(String name) {
+            this.name = name;
+            this.jedis = new StubJedis(this);
+        }
+
+        @Override
+        public Jedis getResource() {
+            return jedis;
+        }
+    }
+
+    /**
+     * A connection which is never opened.
+     */
+    private static class StubJedis extends Jedis {
+        final StubNode node;
+        boolean asked;
+
+        StubJedis(StubNode node) {
+            this.node = node;
+        }
+
+        @Override
+        public String asking() {
+            asked = true;
+            return "OK";
+        }
+    }
+}
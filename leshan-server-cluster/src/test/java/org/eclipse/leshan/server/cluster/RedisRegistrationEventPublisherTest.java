@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import static org.junit.Assert.*;
+
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.leshan.LinkObject;
+import org.eclipse.leshan.server.client.Registration;
+import org.eclipse.leshan.server.client.RegistrationUpdate;
+import org.eclipse.leshan.server.cluster.serialization.RegistrationSerDes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.Pool;
+
+public class RedisRegistrationEventPublisherTest {
+
+    // long enough for the timer to never flush during a test
+    private static final long NO_FLUSH_PERIOD = 3_600_000;
+
+    private StubPool pool;
+    private RedisRegistrationEventPublisher publisher;
+
+    @Before
+    public void setUp() {
+        pool = new StubPool();
+    }
+
+    @After
+    public void tearDown() {
+        if (publisher != null) {
+            publisher.destroy();
+        }
+    }
+
+    @Test
+    public void events_are_published_by_batch() throws Exception {
+        publisher = new RedisRegistrationEventPublisher(pool, 3, NO_FLUSH_PERIOD, false, true);
+
+        publisher.registered(registration("ep1"));
+        publisher.registered(registration("ep2"));
+        Thread.sleep(50);
+        assertEquals(0, pool.published().size());
+
+        publisher.registered(registration("ep3"));
+        pool.waitFor(3);
+        assertEquals(Arrays.asList(3), pool.batchSizes());
+    }
+
+    @Test
+    public void events_are_published_periodically() throws Exception {
+        publisher = new RedisRegistrationEventPublisher(pool, 100, 10, false, true);
+
+        publisher.registered(registration("ep1"));
+        pool.waitFor(1);
+        assertEquals("LESHAN_REG_NEW", pool.published().get(0)[0]);
+    }
+
+    @Test
+    public void events_are_published_in_order_across_batches() throws Exception {
+        publisher = new RedisRegistrationEventPublisher(pool, 2, NO_FLUSH_PERIOD, false, true);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Registration registration = registration("ep" + i);
+            publisher.unregistered(registration);
+            expected.add(RegistrationSerDes.sSerialize(registration));
+        }
+        publisher.destroy();
+
+        List<String> payloads = new ArrayList<>();
+        for (String[] event : pool.published()) {
+            payloads.add(event[1]);
+        }
+        assertEquals(expected, payloads);
+        for (int size : pool.batchSizes()) {
+            assertTrue(size <= 2);
+        }
+    }
+
+    @Test
+    public void pending_events_are_published_on_destroy() throws Exception {
+        publisher = new RedisRegistrationEventPublisher(pool, 100, NO_FLUSH_PERIOD, false, true);
+
+        publisher.registered(registration("ep1"));
+        publisher.registered(registration("ep2"));
+        publisher.destroy();
+
+        assertEquals(2, pool.published().size());
+    }
+
+    @Test
+    public void events_of_failed_pipeline_are_dropped() throws Exception {
+        publisher = new RedisRegistrationEventPublisher(pool, 2, NO_FLUSH_PERIOD, false, true);
+        pool.failures = 1;
+
+        publisher.registered(registration("ep1"));
+        publisher.registered(registration("ep2"));
+        publisher.registered(registration("ep3"));
+        publisher.destroy();
+
+        assertEquals(2, publisher.getDroppedEventCount());
+        assertEquals(1, pool.published().size());
+    }
+
+    @Test
+    public void events_exceeding_max_pending_events_are_dropped() throws Exception {
+        int max = RedisRegistrationEventPublisher.MAX_PENDING_EVENTS;
+        publisher = new RedisRegistrationEventPublisher(pool, max + 1, NO_FLUSH_PERIOD, false, true);
+
+        Registration registration = registration("ep1");
+        for (int i = 0; i < max + 2; i++) {
+            publisher.unregistered(registration);
+        }
+        assertEquals(2, publisher.getDroppedEventCount());
+
+        publisher.destroy();
+        assertEquals(max, pool.published().size());
+    }
+
+    @Test
+    public void compact_update_only_contains_update_and_last_update() throws Exception {
+        publisher = new RedisRegistrationEventPublisher(pool, 1, NO_FLUSH_PERIOD, true, true);
+
+        Registration registration = registration("ep1");
+        publisher.updated(new RegistrationUpdate(registration.getId(), registration.getAddress(),
+                registration.getPort(), 120L, null, null, null), registration);
+        pool.waitFor(1);
+
+        String[] event = pool.published().get(0);
+        assertEquals("LESHAN_REG_UP", event[0]);
+        JsonObject payload = (JsonObject) Json.parse(event[1]);
+        assertNotNull(payload.get("regUpdate"));
+        assertEquals("ep1", payload.getString("ep", null));
+        assertEquals(registration.getLastUpdate().getTime(), payload.getLong("lastUp", 0));
+        assertNull(payload.get("regUpdated"));
+    }
+
+    @Test
+    public void refreshes_can_be_left_out() throws Exception {
+        publisher = new RedisRegistrationEventPublisher(pool, 1, NO_FLUSH_PERIOD, true, false);
+
+        publisher.refreshed(registration("ep1"));
+        publisher.destroy();
+
+        assertEquals(0, pool.published().size());
+    }
+
+    private Registration registration(String endpoint) throws Exception {
+        return new Registration.Builder("reg-" + endpoint, endpoint, Inet4Address.getByName("127.0.0.1"), 5683,
+                new InetSocketAddress(5683)).objectLinks(new LinkObject[] { new LinkObject("/3/0") }).build();
+    }
+
+    /**
+     * Records the published events and the size of each pipeline, without any Redis server.
+     */
+    private static class StubPool extends Pool<Jedis> {
+        private final List<String[]> published = new ArrayList<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+        volatile int failures;
+
+        @Override
+        public Jedis getResource() {
+            return new Jedis() {
+                @Override
+                public Pipeline pipelined() {
+                    return new StubPipeline();
+                }
+            };
+        }
+
+        synchronized List<String[]> published() {
+            return new ArrayList<>(published);
+        }
+
+        synchronized List<Integer> batchSizes() {
+            return new ArrayList<>(batchSizes);
+        }
+
+        synchronized void waitFor(int events) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (published.size() < events) {
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue("events not published in time", remaining > 0);
+                wait(remaining);
+            }
+        }
+
+        private class StubPipeline extends Pipeline {
+            private final List<String[]> commands = new ArrayList<>();
+
+            @Override
+            public Response<Long> publish(String channel, String message) {
+                commands.add(new String[] { channel, message });
+                return null;
+            }
+
+            @Override
+            public void sync() {
+                synchronized (StubPool.this) {
+                    if (failures > 0) {
+                        failures--;
+                        throw new JedisConnectionException("connection lost");
+                    }
+                    published.addAll(commands);
+                    batchSizes.add(commands.size());
+                    StubPool.this.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Pool;
+
+public class SlotRangeRedisShardsTest {
+
+    private List<JedisPool> pools;
+    private SlotRangeRedisShards shards;
+
+    @Before
+    public void setUp() {
+        // pools connect lazily: no Redis server is needed
+        pools = Arrays.asList(new JedisPool("localhost", 6379), new JedisPool("localhost", 6380),
+                new JedisPool("localhost", 6381));
+        shards = new SlotRangeRedisShards(pools);
+    }
+
+    @After
+    public void tearDown() {
+        for (JedisPool pool : pools) {
+            pool.destroy();
+        }
+    }
+
+    @Test
+    public void keys_with_same_hash_tag_are_on_same_shard() {
+        for (int i = 0; i < 100; i++) {
+            String endpoint = "urn:imei:" + i;
+            Pool<Jedis> shard = shards.getShard("EP#REG#{" + endpoint + "}");
+            assertSame(shard, shards.getShard("LOCK#EP#{" + endpoint + "}"));
+            assertSame(shard, shards.getShard(("QUEUE#EP#{" + endpoint + "}").getBytes()));
+        }
+    }
+
+    @Test
+    public void keys_are_spread_over_all_shards() {
+        Set<Pool<Jedis>> used = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            used.add(shards.getShard("EP#REG#{urn:imei:" + i + "}"));
+        }
+        assertEquals(new HashSet<Pool<Jedis>>(pools), used);
+        assertSame(pools.get(0), shards.getDefaultShard());
+    }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster.serialization;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.serialization.UdpDataSerializer;
+import org.eclipse.californium.core.observe.Observation;
+import org.eclipse.leshan.util.Hex;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+
+/**
+ * Compares the size and the serialization latency of the binary {@link ObservationSerDes} layout with the former JSON
+ * format, for the observations of a large cluster.
+ * <p>
+ * Run it as a Java application, optionally with the number of stored observations as argument (default 1000000). The
+ * deserialization latency is measured on a random sample of the stored observations, as done by each
+ * {@code RedisRegistrationStore.get(token)}.
+ * </p>
+ */
+public class ObservationSerDesBenchmark {
+
+    private static final int SAMPLES = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(0);
+        int sampleCount = Math.min(SAMPLES, count);
+
+        byte[][] binarySamples = new byte[sampleCount][];
+        byte[][] jsonSamples = new byte[sampleCount][];
+        long binarySize = 0;
+        long jsonSize = 0;
+        long binaryTime = 0;
+        long jsonTime = 0;
+        for (int i = 0; i < count; i++) {
+            Observation obs = observation(i, random);
+
+            long start = System.nanoTime();
+            byte[] binary = ObservationSerDes.serialize(obs);
+            binaryTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            byte[] json = serializeJson(obs);
+            jsonTime += System.nanoTime() - start;
+
+            binarySize += binary.length;
+            jsonSize += json.length;
+            // reservoir sampling of the stored observations
+            int slot = i < sampleCount ? i : random.nextInt(i + 1);
+            if (slot < sampleCount) {
+                binarySamples[slot] = binary;
+                jsonSamples[slot] = json;
+            }
+        }
+
+        System.out.println(String.format("%d observations", count));
+        System.out.println(String.format("binary: %.1f MB (%.0f bytes/observation), serialize %.2f us/observation",
+                binarySize / 1e6, (double) binarySize / count, binaryTime / 1e3 / count));
+        System.out.println(String.format("json:   %.1f MB (%.0f bytes/observation), serialize %.2f us/observation",
+                jsonSize / 1e6, (double) jsonSize / count, jsonTime / 1e3 / count));
+
+        // warm up both parsers before measuring
+        for (int i = 0; i < sampleCount; i++) {
+            ObservationSerDes.deserialize(binarySamples[i]);
+            ObservationSerDes.deserialize(jsonSamples[i]);
+        }
+        report("binary", binarySamples);
+        report("json", jsonSamples);
+    }
+
+    private static void report(String name, byte[][] samples) {
+        long[] latencies = new long[samples.length];
+        long start = System.nanoTime();
+        for (int i = 0; i < samples.length; i++) {
+            long begin = System.nanoTime();
+            ObservationSerDes.deserialize(samples[i]);
+            latencies[i] = System.nanoTime() - begin;
+        }
+        long duration = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        System.out.println(String.format(
+                "%s deserialize: %d samples in %d ms, p50 %.2f us, p99 %.2f us, max %.1f us", name,
+                samples.length, TimeUnit.NANOSECONDS.toMillis(duration), percentile(latencies, 0.50),
+                percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e3));
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, sorted.length * percentile)] / 1e3;
+    }
+
+    private static Observation observation(int i, Random random) {
+        Request request = Request.newGet();
+        request.setURI("coap://10.0." + (i >> 8 & 0xFF) + "." + (i & 0xFF) + ":5683/3303/0/5700");
+        request.setObserve();
+        byte[] token = new byte[8];
+        random.nextBytes(token);
+        request.setToken(token);
+        request.setMID(i & 0xFFFF);
+
+        Map<String, String> context = new HashMap<>();
+        context.put("leshan-regId", Integer.toString(i, 36) + "AbCdEf");
+        context.put("leshan-path", "/3303/0/5700");
+        context.put("leshan-endpoint", "urn:imei:" + (350000000000000L + i));
+        request.setUserContext(context);
+        return new Observation(request, null);
+    }
+
+    /* The JSON format used before the binary layout */
+    private static byte[] serializeJson(Observation obs) {
+        JsonObject o = Json.object();
+        o.set("request", Hex.encodeHexString(new UdpDataSerializer().serializeRequest(obs.getRequest()).bytes));
+        JsonObject ctxObject = Json.object();
+        for (Entry<String, String> e : obs.getRequest().getUserContext().entrySet()) {
+            ctxObject.set(e.getKey(), e.getValue());
+        }
+        o.set("context", ctxObject);
+        return o.toString().getBytes();
+    }
+}
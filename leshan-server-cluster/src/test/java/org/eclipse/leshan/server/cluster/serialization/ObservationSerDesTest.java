@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster.serialization;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.serialization.UdpDataSerializer;
+import org.eclipse.californium.core.observe.Observation;
+import org.eclipse.leshan.util.Hex;
+import org.junit.Test;
+
+public class ObservationSerDesTest {
+
+    @Test
+    public void observation_ser_des_then_equal() {
+        Map<String, String> context = new HashMap<>();
+        context.put("leshan-regId", "regId");
+        context.put("leshan-path", "/3/0");
+        context.put("empty", null);
+        Observation obs = observation(context);
+
+        byte[] data = ObservationSerDes.serialize(obs);
+        assertEquals(ObservationSerDes.VERSION, data[0]);
+
+        Observation obs2 = ObservationSerDes.deserialize(data);
+        assertArrayEquals(obs.getRequest().getToken(), obs2.getRequest().getToken());
+        assertEquals(obs.getRequest().getURI(), obs2.getRequest().getURI());
+        assertEquals(context, obs2.getRequest().getUserContext());
+    }
+
+    @Test
+    public void observation_without_context_ser_des() {
+        Observation obs = observation(null);
+
+        Observation obs2 = ObservationSerDes.deserialize(ObservationSerDes.serialize(obs));
+        assertArrayEquals(obs.getRequest().getToken(), obs2.getRequest().getToken());
+        assertEquals(obs.getRequest().getUserContext(), obs2.getRequest().getUserContext());
+    }
+
+    @Test
+    public void json_observation_is_still_deserialized() {
+        Observation obs = observation(null);
+        String json = "{\"request\":\""
+                + Hex.encodeHexString(new UdpDataSerializer().serializeRequest(obs.getRequest()).bytes)
+                + "\",\"context\":{\"leshan-regId\":\"regId\"}}";
+
+        Observation obs2 = ObservationSerDes.deserialize(json.getBytes());
+        assertArrayEquals(obs.getRequest().getToken(), obs2.getRequest().getToken());
+        assertEquals("regId", obs2.getRequest().getUserContext().get("leshan-regId"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknown_version_is_rejected() {
+        ObservationSerDes.deserialize(new byte[] { 42, 0, 0 });
+    }
+
+    private Observation observation(Map<String, String> context) {
+        Request request = Request.newGet();
+        request.setURI("coap://127.0.0.1:5683/3/0");
+        request.setObserve();
+        request.setToken(new byte[] { 1, 2, 3, 4 });
+        request.setMID(42);
+        if (context != null) {
+            request.setUserContext(context);
+        }
+        return new Observation(request, null);
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster.serialization;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.leshan.core.node.LwM2mResource;
+import org.eclipse.leshan.core.node.LwM2mSingleResource;
+import org.eclipse.leshan.core.request.ContentFormat;
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.WriteRequest;
+import org.eclipse.leshan.core.request.WriteRequest.Mode;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.server.queue.QueuedRequest;
+import org.junit.Test;
+
+public class QueuedRequestSerDesTest {
+
+    @Test
+    public void ser_and_des_are_equals() throws Exception {
+        final DownlinkRequest<?> request = new WriteRequest(Mode.REPLACE, ContentFormat.TLV, 3, 0,
+                new LwM2mResource[] { LwM2mSingleResource.newStringResource(1, "value") });
+
+        QueuedRequest queuedRequest = new QueuedRequest() {
+
+            @Override
+            public String getRequestTicket() {
+                return "ticket";
+            }
+
+            @Override
+            public String getEndpoint() {
+                return "urn:testEndpoint";
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public DownlinkRequest<LwM2mResponse> getDownlinkRequest() {
+                return (DownlinkRequest<LwM2mResponse>) request;
+            }
+        };
+
+        byte[] ser = QueuedRequestSerDes.bSerialize(queuedRequest);
+        QueuedRequest q2 = QueuedRequestSerDes.deserialize(ser);
+
+        assertEquals("ticket", q2.getRequestTicket());
+        assertEquals("urn:testEndpoint", q2.getEndpoint());
+        assertEquals(request, q2.getDownlinkRequest());
+    }
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster.serialization;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.leshan.core.model.LwM2mModel;
+import org.eclipse.leshan.core.model.ObjectLoader;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.LwM2mSingleResource;
+import org.eclipse.leshan.core.node.codec.DefaultLwM2mNodeDecoder;
+import org.eclipse.leshan.core.request.ContentFormat;
+import org.eclipse.leshan.core.response.ObserveResponse;
+import org.eclipse.leshan.server.cluster.RawNotification;
+import org.junit.Test;
+
+public class RawNotificationSerDesTest {
+
+    @Test
+    public void raw_notification_ser_des_then_equal() {
+        RawNotification n = new RawNotification(new byte[] { 1, 2 }, new LwM2mPath("/3/0/0"), ContentFormat.TEXT,
+                "Leshan".getBytes());
+
+        String data = RawNotificationSerDes.sSerialize(n);
+        assertEquals("{\"code\":\"CONTENT\",\"kind\":\"rawObserve\",\"obsId\":\"0102\",\"path\":\"/3/0/0\",\"ct\":0,"
+                + "\"payload\":\"TGVzaGFu\"}", data);
+
+        RawNotification n2 = RawNotificationSerDes.deserialize(RawNotificationSerDes.jSerialize(n));
+        assertArrayEquals(n.getObservationId(), n2.getObservationId());
+        assertEquals(n.getPath(), n2.getPath());
+        assertEquals(n.getContentFormat(), n2.getContentFormat());
+        assertArrayEquals(n.getPayload(), n2.getPayload());
+    }
+
+    @Test
+    public void raw_notification_is_decoded_once() throws Exception {
+        RawNotification n = new RawNotification(new byte[] { 1 }, new LwM2mPath("/3/0/0"), ContentFormat.TEXT,
+                "Leshan".getBytes());
+
+        LwM2mModel model = new LwM2mModel(ObjectLoader.loadDefault());
+        ObserveResponse response = n.decode(new DefaultLwM2mNodeDecoder(), model);
+        assertEquals("Leshan", ((LwM2mSingleResource) response.getContent()).getValue());
+        assertSame(response, n.decode(new DefaultLwM2mNodeDecoder(), model));
+    }
+}
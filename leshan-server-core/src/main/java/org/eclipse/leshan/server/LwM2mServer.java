@@ -19,6 +19,8 @@ import org.eclipse.leshan.core.request.DownlinkRequest;
 import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ResponseFuture;
+import org.eclipse.leshan.server.bulk.BulkOperationService;
 import org.eclipse.leshan.server.client.Registration;
 import org.eclipse.leshan.server.client.RegistrationService;
 import org.eclipse.leshan.server.model.LwM2mModelProvider;
@@ -79,6 +81,20 @@ public interface LwM2mServer {
     <T extends LwM2mResponse> void send(Registration destination, DownlinkRequest<T> request,
             ResponseCallback<T> responseCallback, ErrorCallback errorCallback);
 
+    /**
+     * Sends a Lightweight M2M request asynchronously. The caller is not blocked: the timeout is handled by a shared
+     * timer.
+     *
+     * @param destination the remote client
+     * @param request the request to the client
+     * @param timeout the request timeout in millisecond
+     * @return a future completed with the response, or failed with a
+     *         {@link org.eclipse.leshan.core.request.exception.TimeoutException} if the timeout expires (given parameter
+     *         or CoAP timeout).
+     */
+    <T extends LwM2mResponse> ResponseFuture<T> sendAsync(Registration destination, DownlinkRequest<T> request,
+            long timeout);
+
     /**
      * sends a Lightweight M2M request asynchronously and uses the requestTicket to correlate the response from a LWM2M
      * Client.
@@ -117,6 +133,11 @@ public interface LwM2mServer {
      */
     ObservationService getObservationService();
 
+    /**
+     * Get the bulk operation service to send the same request to many clients.
+     */
+    BulkOperationService getBulkOperationService();
+
     /**
      * Get the SecurityStore containing of security information.
      */
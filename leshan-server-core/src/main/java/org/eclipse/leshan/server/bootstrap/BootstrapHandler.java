@@ -19,11 +19,14 @@ import static org.eclipse.leshan.server.bootstrap.BootstrapFailureCause.*;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
-import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.core.node.LwM2mObject;
 import org.eclipse.leshan.core.node.LwM2mObjectInstance;
 import org.eclipse.leshan.core.node.LwM2mPath;
 import org.eclipse.leshan.core.node.LwM2mResource;
@@ -44,6 +47,7 @@ import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
 import org.eclipse.leshan.server.bootstrap.BootstrapConfig.ServerConfig;
 import org.eclipse.leshan.server.bootstrap.BootstrapConfig.ServerSecurity;
+import org.eclipse.leshan.util.BoundedExecutorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +55,13 @@ import org.slf4j.LoggerFactory;
  * Handle the bootstrap logic at Server side. Check if the client is allowed to bootstrap, with the wanted security
  * scheme. Then send delete and write request to bootstrap the client, then close the bootstrap session by sending a
  * bootstrap finished request.
+ * <p>
+ * Sessions are fully asynchronous: no thread is used while waiting for a client response, so many sessions can be in
+ * progress at the same time. All the instances of an object are written with one object-level write; if the client
+ * refuses it, the instances are written one by one. The nodes written for a {@link BootstrapConfig} are built once and
+ * reused for all the sessions using the same config instance, so a {@link BootstrapStore} must return a new instance
+ * when a config is modified.
+ * </p>
  */
 public class BootstrapHandler {
 
@@ -61,13 +72,15 @@ public class BootstrapHandler {
     private final BootstrapStore bsStore;
     private final LwM2mBootstrapRequestSender requestSender;
     private final BootstrapSessionManager bsSessionManager;
+    private final BootstrapMetrics metrics = new BootstrapMetrics();
+
+    // nodes to write by config, the config instances are compared by identity
+    private final Map<BootstrapConfig, ConfigNodes> nodesByConfig = Collections
+            .synchronizedMap(new WeakHashMap<BootstrapConfig, ConfigNodes>());
 
     public BootstrapHandler(BootstrapStore store, LwM2mBootstrapRequestSender requestSender,
             BootstrapSessionManager bsSessionManager) {
-        this.bsStore = store;
-        this.requestSender = requestSender;
-        this.bsSessionManager = bsSessionManager;
-        this.e = Executors.newFixedThreadPool(5);
+        this(store, requestSender, bsSessionManager, new BoundedExecutorService("leshan-bootstrap-%d"));
     }
 
     protected BootstrapHandler(BootstrapStore store, LwM2mBootstrapRequestSender requestSender,
@@ -98,124 +111,181 @@ public class BootstrapHandler {
         }
 
         // Start the boostrap session
+        metrics.sessionStarted();
+        final SessionContext context = new SessionContext(bsSession, getNodes(cfg));
         e.execute(new Runnable() {
             @Override
             public void run() {
-                sendDelete(bsSession, cfg);
+                sendDelete(context);
             }
         });
 
         return BootstrapResponse.success();
     }
 
-    private void sendDelete(final BootstrapSession bsSession, final BootstrapConfig cfg) {
+    /**
+     * @return the throughput metrics of the sessions handled by this handler.
+     */
+    public BootstrapMetrics getMetrics() {
+        return metrics;
+    }
+
+    private ConfigNodes getNodes(BootstrapConfig cfg) {
+        ConfigNodes nodes = nodesByConfig.get(cfg);
+        if (nodes == null) {
+            Collection<LwM2mObjectInstance> securityInstances = new ArrayList<>();
+            for (Entry<Integer, ServerSecurity> security : cfg.security.entrySet()) {
+                securityInstances.add(convertToSecurityInstance(security.getKey(), security.getValue()));
+            }
+            Collection<LwM2mObjectInstance> serverInstances = new ArrayList<>();
+            for (Entry<Integer, ServerConfig> server : cfg.servers.entrySet()) {
+                serverInstances.add(convertToServerInstance(server.getKey(), server.getValue()));
+            }
+            nodes = new ConfigNodes(new LwM2mObject(0, securityInstances), new LwM2mObject(1, serverInstances));
+            nodesByConfig.put(cfg, nodes);
+        }
+        return nodes;
+    }
 
+    private void sendDelete(final SessionContext context) {
+        final BootstrapSession bsSession = context.bsSession;
         final BootstrapDeleteRequest writeDeleteRequest = new BootstrapDeleteRequest();
         send(bsSession, writeDeleteRequest, new ResponseCallback<BootstrapDeleteResponse>() {
             @Override
             public void onResponse(BootstrapDeleteResponse response) {
                 LOG.debug("Bootstrap delete {} return code {}", bsSession.getEndpoint(), response.getCode());
-                List<Integer> toSend = new ArrayList<>(cfg.security.keySet());
-                sendBootstrap(bsSession, cfg, toSend);
+                sendSecurity(context);
             }
         }, new ErrorCallback() {
             @Override
             public void onError(Exception e) {
                 LOG.warn(String.format("Error pending bootstrap delete '/' on %s", bsSession.getEndpoint()), e);
-                bsSessionManager.failed(bsSession, DELETE_FAILED, writeDeleteRequest);
+                failed(context, DELETE_FAILED, writeDeleteRequest);
             }
         });
     }
 
-    private void sendBootstrap(final BootstrapSession bsSession, final BootstrapConfig cfg,
-            final List<Integer> toSend) {
-        if (!toSend.isEmpty()) {
-            // 1st encode them into a juicy TLV binary
-            Integer key = toSend.remove(0);
-            ServerSecurity securityConfig = cfg.security.get(key);
-
-            // extract write request parameters
-            LwM2mPath path = new LwM2mPath(0, key);
-            final LwM2mNode securityInstance = convertToSecurityInstance(key, securityConfig);
-
-            final BootstrapWriteRequest writeBootstrapRequest = new BootstrapWriteRequest(path, securityInstance,
-                    ContentFormat.TLV);
-            send(bsSession, writeBootstrapRequest, new ResponseCallback<BootstrapWriteResponse>() {
-                @Override
-                public void onResponse(BootstrapWriteResponse response) {
-                    LOG.debug("Bootstrap write {} return code {}", bsSession.getEndpoint(), response.getCode());
-                    // recursive call until toSend is empty
-                    sendBootstrap(bsSession, cfg, toSend);
-                }
-            }, new ErrorCallback() {
-                @Override
-                public void onError(Exception e) {
-                    LOG.warn(String.format("Error pending bootstrap write of security instance %s on %s",
-                            securityInstance, bsSession.getEndpoint()), e);
-                    bsSessionManager.failed(bsSession, WRITE_SECURITY_FAILED,
-                            writeBootstrapRequest);
+    private void sendSecurity(final SessionContext context) {
+        sendObject(context, context.nodes.security, WRITE_SECURITY_FAILED, new Runnable() {
+            @Override
+            public void run() {
+                sendServers(context);
+            }
+        });
+    }
+
+    private void sendServers(final SessionContext context) {
+        sendObject(context, context.nodes.servers, WRITE_SERVER_FAILED, new Runnable() {
+            @Override
+            public void run() {
+                sendFinish(context);
+            }
+        });
+    }
+
+    /**
+     * Writes all the instances of the object with one request, or instance by instance if the client refuses it, then
+     * runs <code>next</code>.
+     */
+    private void sendObject(final SessionContext context, final LwM2mObject object,
+            final BootstrapFailureCause failureCause, final Runnable next) {
+        if (object.getInstances().isEmpty()) {
+            next.run();
+            return;
+        }
+        if (object.getInstances().size() == 1) {
+            sendInstances(context, object.getId(), object.getInstances().values().iterator(), failureCause, next);
+            return;
+        }
+
+        final BootstrapSession bsSession = context.bsSession;
+        final BootstrapWriteRequest writeObjectRequest = new BootstrapWriteRequest(new LwM2mPath(object.getId()),
+                object, ContentFormat.TLV);
+        send(bsSession, writeObjectRequest, new ResponseCallback<BootstrapWriteResponse>() {
+            @Override
+            public void onResponse(BootstrapWriteResponse response) {
+                LOG.debug("Bootstrap write {} on {} return code {}", writeObjectRequest.getPath(),
+                        bsSession.getEndpoint(), response.getCode());
+                if (response.isSuccess()) {
+                    next.run();
+                } else {
+                    // the client does not support object-level writes, write the instances one by one
+                    metrics.objectWriteRefused();
+                    sendInstances(context, object.getId(), object.getInstances().values().iterator(), failureCause,
+                            next);
                 }
-            });
-        } else {
-            // we are done, send the servers
-            List<Integer> serversToSend = new ArrayList<>(cfg.servers.keySet());
-            sendServers(bsSession, cfg, serversToSend);
+            }
+        }, new ErrorCallback() {
+            @Override
+            public void onError(Exception e) {
+                LOG.warn(String.format("Error pending bootstrap write of object %s on %s", object.getId(),
+                        bsSession.getEndpoint()), e);
+                failed(context, failureCause, writeObjectRequest);
+            }
+        });
+    }
+
+    private void sendInstances(final SessionContext context, final int objectId,
+            final Iterator<LwM2mObjectInstance> toSend, final BootstrapFailureCause failureCause, final Runnable next) {
+        if (!toSend.hasNext()) {
+            next.run();
+            return;
         }
+
+        final BootstrapSession bsSession = context.bsSession;
+        final LwM2mObjectInstance instance = toSend.next();
+        final BootstrapWriteRequest writeInstanceRequest = new BootstrapWriteRequest(
+                new LwM2mPath(objectId, instance.getId()), instance, ContentFormat.TLV);
+        send(bsSession, writeInstanceRequest, new ResponseCallback<BootstrapWriteResponse>() {
+            @Override
+            public void onResponse(BootstrapWriteResponse response) {
+                LOG.debug("Bootstrap write {} on {} return code {}", writeInstanceRequest.getPath(),
+                        bsSession.getEndpoint(), response.getCode());
+                // recursive call until toSend is empty
+                sendInstances(context, objectId, toSend, failureCause, next);
+            }
+        }, new ErrorCallback() {
+            @Override
+            public void onError(Exception e) {
+                LOG.warn(String.format("Error pending bootstrap write of instance %s on %s", instance,
+                        bsSession.getEndpoint()), e);
+                failed(context, failureCause, writeInstanceRequest);
+            }
+        });
     }
 
-    private void sendServers(final BootstrapSession bsSession, final BootstrapConfig cfg, final List<Integer> toSend) {
-        if (!toSend.isEmpty()) {
-            // get next config
-            Integer key = toSend.remove(0);
-            ServerConfig serverConfig = cfg.servers.get(key);
-
-            // extract write request parameters
-            LwM2mPath path = new LwM2mPath(1, key);
-            final LwM2mNode serverInstance = convertToServerInstance(key, serverConfig);
-
-            final BootstrapWriteRequest writeServerRequest = new BootstrapWriteRequest(path, serverInstance,
-                    ContentFormat.TLV);
-            send(bsSession, writeServerRequest, new ResponseCallback<BootstrapWriteResponse>() {
-                @Override
-                public void onResponse(BootstrapWriteResponse response) {
-                    LOG.debug("Bootstrap write {} return code {}", bsSession.getEndpoint(), response.getCode());
-                    // recursive call until toSend is empty
-                    sendServers(bsSession, cfg, toSend);
-                }
-            }, new ErrorCallback() {
-                @Override
-                public void onError(Exception e) {
-                    LOG.warn(String.format("Error pending bootstrap write of server instance %s on %s", serverInstance,
-                            bsSession.getEndpoint()), e);
-                    bsSessionManager.failed(bsSession, WRITE_SERVER_FAILED, writeServerRequest);
-                }
-            });
-        } else {
-            final BootstrapFinishRequest finishBootstrapRequest = new BootstrapFinishRequest();
-            send(bsSession, finishBootstrapRequest, new ResponseCallback<BootstrapFinishResponse>() {
-                @Override
-                public void onResponse(BootstrapFinishResponse response) {
-                    LOG.debug("Bootstrap Finished {} return code {}", bsSession.getEndpoint(), response.getCode());
-                    if (response.isSuccess()) {
-                        bsSessionManager.end(bsSession);
-                    } else {
-                        bsSessionManager.failed(bsSession, FINISHED_WITH_ERROR,
-                                finishBootstrapRequest);
-                    }
-                }
-            }, new ErrorCallback() {
-                @Override
-                public void onError(Exception e) {
-                    LOG.warn(String.format("Error pending bootstrap finished on %s", bsSession.getEndpoint()), e);
-                    bsSessionManager.failed(bsSession, SEND_FINISH_FAILED,
-                            finishBootstrapRequest);
+    private void sendFinish(final SessionContext context) {
+        final BootstrapSession bsSession = context.bsSession;
+        final BootstrapFinishRequest finishBootstrapRequest = new BootstrapFinishRequest();
+        send(bsSession, finishBootstrapRequest, new ResponseCallback<BootstrapFinishResponse>() {
+            @Override
+            public void onResponse(BootstrapFinishResponse response) {
+                LOG.debug("Bootstrap Finished {} return code {}", bsSession.getEndpoint(), response.getCode());
+                if (response.isSuccess()) {
+                    metrics.sessionEnded(true, System.nanoTime() - context.startTime);
+                    bsSessionManager.end(bsSession);
+                } else {
+                    failed(context, FINISHED_WITH_ERROR, finishBootstrapRequest);
                 }
-            });
-        }
+            }
+        }, new ErrorCallback() {
+            @Override
+            public void onError(Exception e) {
+                LOG.warn(String.format("Error pending bootstrap finished on %s", bsSession.getEndpoint()), e);
+                failed(context, SEND_FINISH_FAILED, finishBootstrapRequest);
+            }
+        });
+    }
+
+    private void failed(SessionContext context, BootstrapFailureCause cause,
+            DownlinkRequest<? extends LwM2mResponse> request) {
+        metrics.sessionEnded(false, System.nanoTime() - context.startTime);
+        bsSessionManager.failed(context.bsSession, cause, request);
     }
 
     private <T extends LwM2mResponse> void send(final BootstrapSession bsSession, final DownlinkRequest<T> request,
             final ResponseCallback<T> responseCallback, final ErrorCallback errorCallback) {
+        metrics.requestSent();
         requestSender.send(bsSession.getEndpoint(), bsSession.getClientIdentity().getPeerAddress(),
                 bsSession.getClientIdentity().isSecure(), request, responseCallback, errorCallback);
     }
@@ -254,4 +324,28 @@ public class BootstrapHandler {
 
         return new LwM2mObjectInstance(instanceId, resources);
     }
+
+    /**
+     * The security and server objects to write for a config.
+     */
+    private static class ConfigNodes {
+        private final LwM2mObject security;
+        private final LwM2mObject servers;
+
+        public ConfigNodes(LwM2mObject security, LwM2mObject servers) {
+            this.security = security;
+            this.servers = servers;
+        }
+    }
+
+    private static class SessionContext {
+        private final BootstrapSession bsSession;
+        private final ConfigNodes nodes;
+        private final long startTime = System.nanoTime();
+
+        public SessionContext(BootstrapSession bsSession, ConfigNodes nodes) {
+            this.bsSession = bsSession;
+            this.nodes = nodes;
+        }
+    }
 }
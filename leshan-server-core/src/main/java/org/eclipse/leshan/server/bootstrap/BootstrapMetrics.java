@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.bootstrap;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput metrics of the bootstrap sessions handled by a bootstrap server.
+ */
+public class BootstrapMetrics {
+
+    private final long createdAt = System.nanoTime();
+
+    private final AtomicLong startedSessions = new AtomicLong();
+    private final AtomicLong succeededSessions = new AtomicLong();
+    private final AtomicLong failedSessions = new AtomicLong();
+    private final AtomicInteger inFlightSessions = new AtomicInteger();
+    private final AtomicLong sentRequests = new AtomicLong();
+    private final AtomicLong objectWriteFallbacks = new AtomicLong();
+    private final AtomicLong totalSessionDuration = new AtomicLong();
+
+    void sessionStarted() {
+        startedSessions.incrementAndGet();
+        inFlightSessions.incrementAndGet();
+    }
+
+    void sessionEnded(boolean success, long durationInNanos) {
+        inFlightSessions.decrementAndGet();
+        if (success) {
+            succeededSessions.incrementAndGet();
+            totalSessionDuration.addAndGet(durationInNanos);
+        } else {
+            failedSessions.incrementAndGet();
+        }
+    }
+
+    void requestSent() {
+        sentRequests.incrementAndGet();
+    }
+
+    void objectWriteRefused() {
+        objectWriteFallbacks.incrementAndGet();
+    }
+
+    /**
+     * @return the number of sessions started since the server creation.
+     */
+    public long getStartedSessions() {
+        return startedSessions.get();
+    }
+
+    /**
+     * @return the number of sessions which ended with a successful bootstrap finish.
+     */
+    public long getSucceededSessions() {
+        return succeededSessions.get();
+    }
+
+    /**
+     * @return the number of sessions which failed after being started.
+     */
+    public long getFailedSessions() {
+        return failedSessions.get();
+    }
+
+    /**
+     * @return the number of sessions currently in progress.
+     */
+    public int getInFlightSessions() {
+        return inFlightSessions.get();
+    }
+
+    /**
+     * @return the number of requests sent to clients.
+     */
+    public long getSentRequests() {
+        return sentRequests.get();
+    }
+
+    /**
+     * @return the number of object-level writes refused by a client, which were then sent instance by instance.
+     */
+    public long getObjectWriteFallbacks() {
+        return objectWriteFallbacks.get();
+    }
+
+    /**
+     * @return the average duration of a successful session in milliseconds.
+     */
+    public double getAverageSessionDuration() {
+        long succeeded = succeededSessions.get();
+        if (succeeded == 0) {
+            return 0;
+        }
+        return (double) totalSessionDuration.get() / succeeded / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the average number of successful sessions per second since the server creation.
+     */
+    public double getThroughput() {
+        double uptimeInSeconds = (double) (System.nanoTime() - createdAt) / TimeUnit.SECONDS.toNanos(1);
+        return uptimeInSeconds == 0 ? 0 : succeededSessions.get() / uptimeInSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "BootstrapMetrics [started=%d, succeeded=%d, failed=%d, inFlight=%d, requests=%d, objectWriteFallbacks=%d, averageDuration=%.1fms, throughput=%.1f/s]",
+                getStartedSessions(), getSucceededSessions(), getFailedSessions(), getInFlightSessions(),
+                getSentRequests(), getObjectWriteFallbacks(), getAverageSessionDuration(), getThroughput());
+    }
+}
@@ -35,6 +35,11 @@ public interface LwM2mBootstrapServer {
      */
     BootstrapSecurityStore getBootstrapSecurityStore();
 
+    /**
+     * Throughput metrics of the bootstrap sessions handled by this server.
+     */
+    BootstrapMetrics getBootstrapMetrics();
+
     void start();
 
     void stop();
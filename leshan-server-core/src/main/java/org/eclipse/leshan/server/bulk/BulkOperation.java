@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.bulk;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A running bulk operation.
+ */
+public interface BulkOperation {
+
+    /**
+     * Stops sending requests to the remaining clients. Requests already sent are still awaited.
+     */
+    void cancel();
+
+    /**
+     * @return true if all requests are answered or failed.
+     */
+    boolean isDone();
+
+    /**
+     * @return the results so far.
+     */
+    BulkOperationSummary getSummary();
+
+    /**
+     * Waits for the end of the operation.
+     *
+     * @return the final summary or <code>null</code> if the timeout expires.
+     */
+    BulkOperationSummary awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException;
+}
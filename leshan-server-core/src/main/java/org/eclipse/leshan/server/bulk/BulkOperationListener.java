@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.bulk;
+
+import org.eclipse.leshan.core.response.LwM2mResponse;
+
+/**
+ * Receives the results of a bulk operation, device per device.
+ * <p>
+ * Results are delivered concurrently from the threads receiving the responses, so implementations must be thread-safe
+ * and should not block.
+ * </p>
+ *
+ * @param <T> the type of the expected responses
+ */
+public interface BulkOperationListener<T extends LwM2mResponse> {
+
+    /**
+     * Invoked when a client answered the request, the response may be an error response.
+     */
+    void onResponse(String endpoint, T response);
+
+    /**
+     * Invoked when the request could not be sent to a client or when no response was received (e.g. timeout).
+     */
+    void onError(String endpoint, Exception error);
+
+    /**
+     * Invoked once, when all the requests are answered or failed.
+     */
+    void onCompleted(BulkOperationSummary summary);
+}
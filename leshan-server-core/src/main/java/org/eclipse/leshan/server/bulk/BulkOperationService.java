@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.bulk;
+
+import java.util.Collection;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+
+/**
+ * Sends the same request to many clients, e.g. for configuration pushes or firmware campaigns.
+ * <p>
+ * Requests are paced according to the {@link BulkOptions} and the results are streamed to a
+ * {@link BulkOperationListener}. The request payload is encoded once and reused for all the clients sharing the same
+ * content format and model.
+ * </p>
+ */
+public interface BulkOperationService {
+
+    /**
+     * Sends a request to the given clients. Unknown endpoints are reported as errors.
+     *
+     * @param endpoints the endpoints of the targeted clients
+     * @param request the request to send to each client
+     * @param options the pacing configuration
+     * @param listener receives the result for each client
+     * @return the operation, which runs in background
+     */
+    <T extends LwM2mResponse> BulkOperation send(Collection<String> endpoints, DownlinkRequest<T> request,
+            BulkOptions options, BulkOperationListener<T> listener);
+
+    /**
+     * Sends a request to all the registered clients accepted by the filter.
+     *
+     * @param filter selects the targeted clients
+     * @param request the request to send to each client
+     * @param options the pacing configuration
+     * @param listener receives the result for each client
+     * @return the operation, which runs in background
+     */
+    <T extends LwM2mResponse> BulkOperation send(RegistrationFilter filter, DownlinkRequest<T> request,
+            BulkOptions options, BulkOperationListener<T> listener);
+}
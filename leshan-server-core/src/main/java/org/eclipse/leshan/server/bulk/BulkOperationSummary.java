@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.bulk;
+
+/**
+ * The aggregated result of a bulk operation.
+ */
+public class BulkOperationSummary {
+
+    private final int targeted;
+    private final int succeeded;
+    private final int failed;
+    private final int errors;
+    private final int skipped;
+    private final long durationInMs;
+
+    /**
+     * @param targeted number of clients selected by the operation
+     * @param succeeded number of success responses
+     * @param failed number of error responses
+     * @param errors number of requests without response (e.g. timeout, rejected)
+     * @param skipped number of clients to which no request was sent (not registered or operation cancelled)
+     * @param durationInMs the duration of the operation
+     */
+    public BulkOperationSummary(int targeted, int succeeded, int failed, int errors, int skipped, long durationInMs) {
+        this.targeted = targeted;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.errors = errors;
+        this.skipped = skipped;
+        this.durationInMs = durationInMs;
+    }
+
+    public int getTargeted() {
+        return targeted;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public int getErrors() {
+        return errors;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public long getDurationInMs() {
+        return durationInMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "BulkOperationSummary [targeted=%s, succeeded=%s, failed=%s, errors=%s, skipped=%s, durationInMs=%s]",
+                targeted, succeeded, failed, errors, skipped, durationInMs);
+    }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.bulk;
+
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * Pacing configuration of a bulk operation.
+ */
+public class BulkOptions {
+
+    private final int maxInFlightRequests;
+    private final int maxRequestsPerSecond;
+    private final long timeout;
+
+    private BulkOptions(Builder builder) {
+        this.maxInFlightRequests = builder.maxInFlightRequests;
+        this.maxRequestsPerSecond = builder.maxRequestsPerSecond;
+        this.timeout = builder.timeout;
+    }
+
+    /**
+     * @return the maximum number of requests waiting for a response at the same time.
+     */
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    /**
+     * @return the maximum number of requests sent per second, 0 means no limit.
+     */
+    public int getMaxRequestsPerSecond() {
+        return maxRequestsPerSecond;
+    }
+
+    /**
+     * @return the timeout of each request in millisecond.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public static class Builder {
+        private int maxInFlightRequests = 100;
+        private int maxRequestsPerSecond = 0;
+        private long timeout = 5000;
+
+        /**
+         * Sets the maximum number of requests waiting for a response at the same time (100 by default).
+         */
+        public Builder setMaxInFlightRequests(int maxInFlightRequests) {
+            this.maxInFlightRequests = maxInFlightRequests;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests sent per second (no limit by default).
+         */
+        public Builder setMaxRequestsPerSecond(int maxRequestsPerSecond) {
+            this.maxRequestsPerSecond = maxRequestsPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets the timeout of each request in millisecond (5 seconds by default).
+         */
+        public Builder setTimeout(long timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public BulkOptions build() {
+            Validate.isTrue(maxInFlightRequests > 0, "maxInFlightRequests must be greater than 0");
+            Validate.isTrue(maxRequestsPerSecond >= 0, "maxRequestsPerSecond must not be negative");
+            Validate.isTrue(timeout > 0, "timeout must be greater than 0");
+            return new BulkOptions(this);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.bulk.impl;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.server.Destroyable;
+import org.eclipse.leshan.server.bulk.BulkOperation;
+import org.eclipse.leshan.server.bulk.BulkOperationListener;
+import org.eclipse.leshan.server.bulk.BulkOperationService;
+import org.eclipse.leshan.server.bulk.BulkOperationSummary;
+import org.eclipse.leshan.server.bulk.BulkOptions;
+import org.eclipse.leshan.server.bulk.RegistrationFilter;
+import org.eclipse.leshan.server.client.Registration;
+import org.eclipse.leshan.server.client.RegistrationService;
+import org.eclipse.leshan.server.request.LwM2mRequestSender;
+import org.eclipse.leshan.util.NamedThreadFactory;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link BulkOperationService} sending requests with {@link LwM2mRequestSender#sendAsync(Registration,
+ * DownlinkRequest, Long)}.
+ * <p>
+ * Each operation uses one dispatcher thread which paces the requests: no thread is blocked waiting for the responses.
+ * The payload is encoded once as long as the request sender uses a caching encoder (see
+ * {@link org.eclipse.leshan.core.node.codec.CachingLwM2mNodeEncoder}).
+ * </p>
+ */
+public class BulkOperationServiceImpl implements BulkOperationService, Destroyable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkOperationServiceImpl.class);
+
+    private final RegistrationService registrationService;
+    private final LwM2mRequestSender requestSender;
+    private final ExecutorService dispatchExecutor = Executors
+            .newCachedThreadPool(new NamedThreadFactory("leshan-bulk-operation-%d"));
+
+    public BulkOperationServiceImpl(RegistrationService registrationService, LwM2mRequestSender requestSender) {
+        Validate.notNull(registrationService);
+        Validate.notNull(requestSender);
+        this.registrationService = registrationService;
+        this.requestSender = requestSender;
+    }
+
+    @Override
+    public <T extends LwM2mResponse> BulkOperation send(final Collection<String> endpoints,
+            DownlinkRequest<T> request, BulkOptions options, BulkOperationListener<T> listener) {
+        Validate.notNull(endpoints);
+        final Iterator<String> iterator = endpoints.iterator();
+        return start(new Iterator<Target>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Target next() {
+                String endpoint = iterator.next();
+                return new Target(endpoint, registrationService.getByEndpoint(endpoint));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }, request, options, listener);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> BulkOperation send(final RegistrationFilter filter, DownlinkRequest<T> request,
+            BulkOptions options, BulkOperationListener<T> listener) {
+        Validate.notNull(filter);
+        final Iterator<Registration> iterator = registrationService.getAllRegistrations().iterator();
+        return start(new Iterator<Target>() {
+            private Registration next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && iterator.hasNext()) {
+                    Registration registration = iterator.next();
+                    if (filter.accept(registration)) {
+                        next = registration;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Target next() {
+                hasNext();
+                Target target = new Target(next.getEndpoint(), next);
+                next = null;
+                return target;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }, request, options, listener);
+    }
+
+    private <T extends LwM2mResponse> BulkOperation start(Iterator<Target> targets, DownlinkRequest<T> request,
+            BulkOptions options, BulkOperationListener<T> listener) {
+        Validate.notNull(request);
+        Validate.notNull(options);
+        Validate.notNull(listener);
+        BulkOperationImpl<T> operation = new BulkOperationImpl<>(targets, request, options, listener);
+        dispatchExecutor.execute(operation);
+        return operation;
+    }
+
+    @Override
+    public void destroy() {
+        dispatchExecutor.shutdownNow();
+    }
+
+    private static class Target {
+        private final String endpoint;
+        private final Registration registration;
+
+        public Target(String endpoint, Registration registration) {
+            this.endpoint = endpoint;
+            this.registration = registration;
+        }
+    }
+
+    private class BulkOperationImpl<T extends LwM2mResponse> implements BulkOperation, Runnable {
+
+        private final Iterator<Target> targets;
+        private final DownlinkRequest<T> request;
+        private final BulkOptions options;
+        private final BulkOperationListener<T> listener;
+
+        private final Semaphore window;
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private final long startTime = System.currentTimeMillis();
+        private volatile long endTime;
+        private volatile boolean cancelled = false;
+
+        private final AtomicInteger targeted = new AtomicInteger();
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger errors = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+
+        public BulkOperationImpl(Iterator<Target> targets, DownlinkRequest<T> request, BulkOptions options,
+                BulkOperationListener<T> listener) {
+            this.targets = targets;
+            this.request = request;
+            this.options = options;
+            this.listener = listener;
+            this.window = new Semaphore(options.getMaxInFlightRequests());
+        }
+
+        @Override
+        public void run() {
+            long interval = options.getMaxRequestsPerSecond() > 0
+                    ? TimeUnit.SECONDS.toNanos(1) / options.getMaxRequestsPerSecond() : 0;
+            long nextSendTime = System.nanoTime();
+            try {
+                while (targets.hasNext()) {
+                    Target target = targets.next();
+                    targeted.incrementAndGet();
+                    if (cancelled) {
+                        skipped.incrementAndGet();
+                        continue;
+                    }
+                    if (target.registration == null) {
+                        skipped.incrementAndGet();
+                        listener.onError(target.endpoint,
+                                new IllegalArgumentException("no registered client with endpoint " + target.endpoint));
+                        continue;
+                    }
+
+                    // pace the requests
+                    window.acquire();
+                    if (interval > 0) {
+                        long delay = nextSendTime - System.nanoTime();
+                        if (delay > 0) {
+                            TimeUnit.NANOSECONDS.sleep(delay);
+                        }
+                        nextSendTime = Math.max(nextSendTime, System.nanoTime() - interval) + interval;
+                    }
+                    send(target);
+                }
+
+                // wait for the last responses
+                window.acquire(options.getMaxInFlightRequests());
+            } catch (InterruptedException e) {
+                LOG.warn("Bulk operation interrupted", e);
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected error during bulk operation", e);
+            } finally {
+                endTime = System.currentTimeMillis();
+                completed.countDown();
+                listener.onCompleted(getSummary());
+            }
+        }
+
+        private void send(final Target target) {
+            ResponseCallback<T> responseCallback = new ResponseCallback<T>() {
+                @Override
+                public void onResponse(T response) {
+                    if (response.isSuccess()) {
+                        succeeded.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                    try {
+                        listener.onResponse(target.endpoint, response);
+                    } finally {
+                        window.release();
+                    }
+                }
+            };
+            ErrorCallback errorCallback = new ErrorCallback() {
+                @Override
+                public void onError(Exception e) {
+                    errors.incrementAndGet();
+                    try {
+                        listener.onError(target.endpoint, e);
+                    } finally {
+                        window.release();
+                    }
+                }
+            };
+            try {
+                requestSender.sendAsync(target.registration, request, options.getTimeout()).addCallback(
+                        responseCallback, errorCallback);
+            } catch (RuntimeException e) {
+                errorCallback.onError(e);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isDone() {
+            return completed.getCount() == 0;
+        }
+
+        @Override
+        public BulkOperationSummary getSummary() {
+            long end = isDone() ? endTime : System.currentTimeMillis();
+            return new BulkOperationSummary(targeted.get(), succeeded.get(), failed.get(), errors.get(),
+                    skipped.get(), end - startTime);
+        }
+
+        @Override
+        public BulkOperationSummary awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+            if (completed.await(timeout, unit)) {
+                return getSummary();
+            }
+            return null;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.leshan.LinkObject;
 import org.eclipse.leshan.core.request.BindingMode;
@@ -73,7 +74,8 @@ public class Registration implements Serializable {
     /** The location where LWM2M objects are hosted on the device */
     private final String rootPath;
 
-    private final Date lastUpdate;
+    // in milliseconds, extended in place by the updates which only refresh the registration
+    private final AtomicLong lastUpdate;
 
     protected Registration(String id, String endpoint, InetAddress address, int port, String lwM2mVersion,
             Long lifetimeInSec, String smsNumber, BindingMode bindingMode, LinkObject[] objectLinks,
@@ -111,7 +113,7 @@ public class Registration implements Serializable {
         this.lwM2mVersion = lwM2mVersion == null ? DEFAULT_LWM2M_VERSION : lwM2mVersion;
         this.bindingMode = bindingMode == null ? BindingMode.U : bindingMode;
         this.registrationDate = registrationDate == null ? new Date() : registrationDate;
-        this.lastUpdate = lastUpdate == null ? new Date() : lastUpdate;
+        this.lastUpdate = new AtomicLong(lastUpdate == null ? System.currentTimeMillis() : lastUpdate.getTime());
         this.additionalRegistrationAttributes = additionalRegistrationAttributes == null
                 ? Collections.unmodifiableMap(new HashMap<String, String>())
                 : Collections.unmodifiableMap(additionalRegistrationAttributes);
@@ -254,11 +256,29 @@ public class Registration implements Serializable {
     }
 
     public Date getLastUpdate() {
-        return lastUpdate;
+        return new Date(lastUpdate.get());
+    }
+
+    /**
+     * Extends the lifetime of this registration without creating a new one: the last update time is set to the given
+     * time, unless it is already more recent. Used for the updates which do not change any registration property (see
+     * {@link RegistrationUpdate#isRefreshOf(Registration)}).
+     * 
+     * @param time the time of the refresh
+     */
+    public void refreshLastUpdate(Date time) {
+        long refreshed = time.getTime();
+        long current;
+        do {
+            current = lastUpdate.get();
+            if (current >= refreshed) {
+                return;
+            }
+        } while (!lastUpdate.compareAndSet(current, refreshed));
     }
 
     public boolean isAlive() {
-        return lastUpdate.getTime() + lifeTimeInSec * 1000 > System.currentTimeMillis();
+        return lastUpdate.get() + lifeTimeInSec * 1000 > System.currentTimeMillis();
     }
 
     public Map<String, String> getAdditionalRegistrationAttributes() {
@@ -274,7 +294,7 @@ public class Registration implements Serializable {
         return String.format(
                 "Registration [registrationDate=%s, address=%s, port=%s, registrationEndpoint=%s, lifeTimeInSec=%s, smsNumber=%s, lwM2mVersion=%s, bindingMode=%s, endpoint=%s, registrationId=%s, objectLinks=%s, lastUpdate=%s]",
                 registrationDate, address, port, registrationEndpointAddress, lifeTimeInSec, smsNumber, lwM2mVersion,
-                bindingMode, endpoint, id, Arrays.toString(objectLinks), lastUpdate);
+                bindingMode, endpoint, id, Arrays.toString(objectLinks), getLastUpdate());
     }
 
     /**
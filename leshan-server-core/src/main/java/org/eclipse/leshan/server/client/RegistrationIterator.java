@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.client;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * Iterates over registrations page by page, so only one page is loaded in memory at a time.
+ */
+public class RegistrationIterator implements Iterator<Registration> {
+
+    private final RegistrationService registrationService;
+    private final String endpointPrefix;
+    private final int pageSize;
+
+    private Iterator<Registration> currentPage;
+    private String nextCursor;
+    private boolean lastPage = false;
+
+    /**
+     * @param registrationService the service to get the pages from
+     * @param endpointPrefix only registrations with an endpoint starting with this prefix are returned, may be null
+     * @param pageSize the number of registrations to load at a time
+     */
+    public RegistrationIterator(RegistrationService registrationService, String endpointPrefix, int pageSize) {
+        Validate.notNull(registrationService);
+        Validate.isTrue(pageSize > 0, "pageSize must be greater than 0");
+        this.registrationService = registrationService;
+        this.endpointPrefix = endpointPrefix;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (currentPage == null || !currentPage.hasNext()) {
+            if (lastPage) {
+                return false;
+            }
+            RegistrationPage page = registrationService.getRegistrations(endpointPrefix, nextCursor, pageSize);
+            currentPage = page.getRegistrations().iterator();
+            nextCursor = page.getNextCursor();
+            lastPage = page.isLastPage();
+        }
+        return true;
+    }
+
+    @Override
+    public Registration next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.client;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of registrations, as returned by cursor pagination.
+ *
+ * @see RegistrationService#getRegistrations(String, String, int)
+ */
+public class RegistrationPage {
+
+    private final List<Registration> registrations;
+    private final String nextCursor;
+
+    /**
+     * @param registrations the registrations of this page
+     * @param nextCursor the cursor of the next page or <code>null</code> if this is the last page
+     */
+    public RegistrationPage(List<Registration> registrations, String nextCursor) {
+        if (registrations == null)
+            this.registrations = Collections.emptyList();
+        else
+            this.registrations = registrations;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Registration> getRegistrations() {
+        return registrations;
+    }
+
+    /**
+     * @return the opaque cursor to use to get the next page or <code>null</code> if this is the last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isLastPage() {
+        return nextCursor == null;
+    }
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2013-2015 Sierra Wireless and others.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.client;
+
+/**
+ * A {@link RegistrationListener} which is notified with a lighter event when a client update only refreshes the
+ * lifetime of its registration.
+ * <p>
+ * The listeners which do not implement this interface are notified of the refreshes with
+ * {@link #updated(RegistrationUpdate, Registration)}.
+ * </p>
+ */
+public interface RegistrationRefreshListener extends RegistrationListener {
+
+    /**
+     * Invoked when a client sent an update which does not change any property of its registration: only the last
+     * update time of the registration was extended.
+     *
+     * @param registration the refreshed registration
+     */
+    void refreshed(Registration registration);
+}
@@ -47,6 +47,17 @@ public interface RegistrationService {
     @Deprecated
     Collection<Registration> getAllRegistrations();
 
+    /**
+     * Returns a page of registrations. Use {@link RegistrationIterator} to iterate over all of them.
+     * 
+     * @param endpointPrefix only registrations with an endpoint starting with this prefix are returned, may be
+     *        <code>null</code>.
+     * @param cursor the cursor returned with the previous page or <code>null</code> for the first page.
+     * @param limit the expected number of registrations, a store may return a bit more or less.
+     * @return the page of registrations.
+     */
+    RegistrationPage getRegistrations(String endpointPrefix, String cursor, int limit);
+
     /**
      * Adds a new listener to be notified with client registration events.
      * 
@@ -83,6 +83,22 @@ public class RegistrationUpdate {
 
     }
 
+    /**
+     * @return true if this update carries no registration parameter: it only refreshes the lifetime of the registration,
+     *         unless the client address changed.
+     */
+    public boolean isEmpty() {
+        return lifeTimeInSec == null && smsNumber == null && bindingMode == null && objectLinks == null;
+    }
+
+    /**
+     * @return true if this update does not change any property of the given registration, so the registration can be
+     *         refreshed in place (see {@link Registration#refreshLastUpdate(java.util.Date)}) instead of updated.
+     */
+    public boolean isRefreshOf(Registration registration) {
+        return isEmpty() && address.equals(registration.getAddress()) && port == registration.getPort();
+    }
+
     public String getRegistrationId() {
         return registrationId;
     }
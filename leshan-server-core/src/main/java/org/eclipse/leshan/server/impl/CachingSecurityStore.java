@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.server.Destroyable;
+import org.eclipse.leshan.server.security.EditableSecurityStore;
+import org.eclipse.leshan.server.security.NonUniqueSecurityInfoException;
+import org.eclipse.leshan.server.security.SecurityInfo;
+import org.eclipse.leshan.server.security.SecurityStore;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * A {@link SecurityStore} decorator caching the {@link SecurityInfo} found in another store, e.g. to avoid a remote
+ * lookup for each DTLS handshake and each registration.
+ * <p>
+ * The cache is bounded (least recently used entries are evicted first) and entries expire after a time to live, which
+ * bounds the staleness of the cache when the underlying store is modified by someone else. Changes made through this
+ * store invalidate the cache; changes made on other nodes must be reported with {@link #invalidate(String)}. Unknown
+ * end-points and identities are not cached.
+ * </p>
+ */
+public class CachingSecurityStore implements EditableSecurityStore, Destroyable {
+
+    /** Default maximum number of cached security infos */
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+
+    /** Default time to live of a cached security info */
+    public static final long DEFAULT_TTL = 60_000; // ms
+
+    private final EditableSecurityStore store;
+    private final long ttlInNanos;
+
+    // guarded by themselves
+    private final Map<String, CacheEntry> infoByEndpoint;
+    private final Map<String, String> endpointByIdentity;
+
+    // incremented on each invalidation, to avoid caching a security info read before an invalidation
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public CachingSecurityStore(EditableSecurityStore store) {
+        this(store, DEFAULT_MAX_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * @param store the cached store
+     * @param maxSize the maximum number of cached security infos
+     * @param ttlInMs the time to live of a cached security info
+     */
+    public CachingSecurityStore(EditableSecurityStore store, int maxSize, long ttlInMs) {
+        Validate.notNull(store);
+        Validate.isTrue(maxSize > 0, "maxSize must be greater than 0");
+        Validate.isTrue(ttlInMs > 0, "ttlInMs must be greater than 0");
+        this.store = store;
+        this.ttlInNanos = TimeUnit.MILLISECONDS.toNanos(ttlInMs);
+        this.infoByEndpoint = new LruMap<>(maxSize);
+        this.endpointByIdentity = new LruMap<>(maxSize);
+    }
+
+    @Override
+    public SecurityInfo getByEndpoint(String endpoint) {
+        SecurityInfo info = getCached(endpoint);
+        if (info != null) {
+            hitCount.incrementAndGet();
+            return info;
+        }
+
+        missCount.incrementAndGet();
+        long currentGeneration = generation.get();
+        info = store.getByEndpoint(endpoint);
+        cache(info, currentGeneration);
+        return info;
+    }
+
+    @Override
+    public SecurityInfo getByIdentity(String identity) {
+        String endpoint;
+        synchronized (endpointByIdentity) {
+            endpoint = endpointByIdentity.get(identity);
+        }
+        if (endpoint != null) {
+            SecurityInfo info = getCached(endpoint);
+            // the identity of the end-point may have changed since
+            if (info != null && identity.equals(info.getIdentity())) {
+                hitCount.incrementAndGet();
+                return info;
+            }
+        }
+
+        missCount.incrementAndGet();
+        long currentGeneration = generation.get();
+        SecurityInfo info = store.getByIdentity(identity);
+        cache(info, currentGeneration);
+        return info;
+    }
+
+    private SecurityInfo getCached(String endpoint) {
+        synchronized (infoByEndpoint) {
+            CacheEntry entry = infoByEndpoint.get(endpoint);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.cachedAt > ttlInNanos) {
+                infoByEndpoint.remove(endpoint);
+                return null;
+            }
+            return entry.info;
+        }
+    }
+
+    private void cache(SecurityInfo info, long expectedGeneration) {
+        if (info == null) {
+            return;
+        }
+        synchronized (infoByEndpoint) {
+            // do not cache a value which may have been invalidated while it was read
+            if (generation.get() != expectedGeneration) {
+                return;
+            }
+            infoByEndpoint.put(info.getEndpoint(), new CacheEntry(info, System.nanoTime()));
+        }
+        if (info.getIdentity() != null) {
+            synchronized (endpointByIdentity) {
+                endpointByIdentity.put(info.getIdentity(), info.getEndpoint());
+            }
+        }
+    }
+
+    /**
+     * Removes the security info of the given end-point from the cache.
+     */
+    public void invalidate(String endpoint) {
+        synchronized (infoByEndpoint) {
+            generation.incrementAndGet();
+            infoByEndpoint.remove(endpoint);
+        }
+    }
+
+    /**
+     * Removes all the security infos from the cache.
+     */
+    public void invalidateAll() {
+        synchronized (infoByEndpoint) {
+            generation.incrementAndGet();
+            infoByEndpoint.clear();
+        }
+        synchronized (endpointByIdentity) {
+            endpointByIdentity.clear();
+        }
+    }
+
+    @Override
+    public Collection<SecurityInfo> getAll() {
+        return store.getAll();
+    }
+
+    @Override
+    public SecurityInfo add(SecurityInfo info) throws NonUniqueSecurityInfoException {
+        try {
+            return store.add(info);
+        } finally {
+            invalidate(info.getEndpoint());
+        }
+    }
+
+    @Override
+    public SecurityInfo remove(String endpoint) {
+        try {
+            return store.remove(endpoint);
+        } finally {
+            invalidate(endpoint);
+        }
+    }
+
+    @Override
+    public void addAll(Collection<SecurityInfo> infos) throws NonUniqueSecurityInfoException {
+        try {
+            store.addAll(infos);
+        } finally {
+            for (SecurityInfo info : infos) {
+                invalidate(info.getEndpoint());
+            }
+        }
+    }
+
+    @Override
+    public Collection<SecurityInfo> removeAll(Collection<String> endpoints) {
+        try {
+            return store.removeAll(endpoints);
+        } finally {
+            for (String endpoint : endpoints) {
+                invalidate(endpoint);
+            }
+        }
+    }
+
+    /**
+     * @return the number of lookups answered from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of lookups forwarded to the cached store.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the ratio of lookups answered from the cache, between 0 and 1.
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the number of cached security infos.
+     */
+    public int size() {
+        synchronized (infoByEndpoint) {
+            return infoByEndpoint.size();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (store instanceof Destroyable) {
+            ((Destroyable) store).destroy();
+        }
+    }
+
+    private static class CacheEntry {
+        private final SecurityInfo info;
+        private final long cachedAt;
+
+        public CacheEntry(SecurityInfo info, long cachedAt) {
+            this.info = info;
+            this.cachedAt = cachedAt;
+        }
+    }
+
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        public LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -15,16 +15,39 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.impl;
 
+import static org.eclipse.leshan.util.Charsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.eclipse.leshan.server.Destroyable;
 import org.eclipse.leshan.server.security.NonUniqueSecurityInfoException;
 import org.eclipse.leshan.server.security.SecurityInfo;
 import org.eclipse.leshan.server.security.SecurityStore;
+import org.eclipse.leshan.util.NamedThreadFactory;
 import org.eclipse.leshan.util.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,28 +55,93 @@ import org.slf4j.LoggerFactory;
 /**
  * A {@link SecurityStore} which persists {@link SecurityInfo} in a file.
  * <p>
- * This implementation serializes the store content into a file to be able to re-load the {@link SecurityInfo} when the
- * server is restarted.
+ * The store content is persisted in a snapshot of all the {@link SecurityInfo} and in numbered append-only journals
+ * of the changes made since this snapshot. Each change is appended to the current journal and written to the OS, the
+ * journal is synced to the disk every {@code syncIntervalInMs}. When the journal contains more than
+ * {@code compactionThreshold} records and more records than the snapshot, a new journal generation is started and a
+ * snapshot is written in the background, then the previous journals are deleted. On startup, the snapshot is loaded
+ * and the journals are replayed in order. Records which cannot be replayed are skipped, in this case the original
+ * files are kept aside with a {@code .corrupt-<timestamp>} suffix instead of being compacted.
+ * </p>
+ * <p>
+ * The file I/O is done outside of the store lock, and the disk syncs and snapshots are done outside of the journal
+ * lock, so lookups and writes are not blocked by them.
  * </p>
  */
-public class FileSecurityStore extends InMemorySecurityStore {
+public class FileSecurityStore extends InMemorySecurityStore implements Destroyable {
 
     private static final Logger LOG = LoggerFactory.getLogger(FileSecurityStore.class);
 
-    // the name of the file used to persist the store content
-    private final String filename;
-
     // default location for persistence
     private static final String DEFAULT_FILE = "data/security.data";
 
+    /** Default interval between two journal syncs */
+    public static final long DEFAULT_SYNC_INTERVAL = 1000; // ms
+
+    /** Default number of journal records triggering a snapshot */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10_000;
+
+    private static final String JOURNAL_EXTENSION = ".journal.";
+    private static final String CORRUPT_EXTENSION = ".corrupt-";
+    private static final byte ADD_RECORD = 1;
+    private static final byte REMOVE_RECORD = 2;
+    // type and length of a journal record
+    private static final int RECORD_HEADER_SIZE = 5;
+
+    // the name of the file used to persist the store snapshot
+    private final String filename;
+    private final int compactionThreshold;
+
+    // guards the current journal, always acquired after the store lock and never held during a disk sync
+    private final ReentrantLock journalLock = new ReentrantLock();
+    private long generation = 0;
+    private FileOutputStream journalOut;
+    private DataOutputStream journal;
+    private int journalRecords = 0;
+    private boolean dirty = false;
+    private volatile int snapshotSize = 0;
+
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler;
+
     public FileSecurityStore() {
         this(DEFAULT_FILE);
     }
 
     public FileSecurityStore(String file) {
+        this(file, DEFAULT_SYNC_INTERVAL, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param file the snapshot file, the journals are stored next to it with the {@code .journal.<generation>}
+     *        extension
+     * @param syncIntervalInMs the interval between two syncs of the journal to the disk
+     * @param compactionThreshold the number of journal records triggering a new snapshot
+     */
+    public FileSecurityStore(String file, long syncIntervalInMs, int compactionThreshold) {
         Validate.notEmpty(file);
-        filename = file;
+        Validate.isTrue(syncIntervalInMs > 0, "syncIntervalInMs must be greater than 0");
+        Validate.isTrue(compactionThreshold > 0, "compactionThreshold must be greater than 0");
+        this.filename = file;
+        this.compactionThreshold = compactionThreshold;
+
         loadFromFile();
+
+        final ThreadFactory threadFactory = new NamedThreadFactory("leshan-security-store-%d");
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = threadFactory.newThread(r);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sync();
+            }
+        }, syncIntervalInMs, syncIntervalInMs, TimeUnit.MILLISECONDS);
     }
 
     protected SecurityInfo addToStore(SecurityInfo info) throws NonUniqueSecurityInfoException {
@@ -62,67 +150,404 @@ public class FileSecurityStore extends InMemorySecurityStore {
 
     @Override
     public SecurityInfo add(SecurityInfo info) throws NonUniqueSecurityInfoException {
+        byte[] record = serialize(info);
+
         writeLock.lock();
+        SecurityInfo previous;
         try {
-            SecurityInfo previous = addToStore(info);
-            saveToFile();
-            return previous;
+            previous = addToStore(info);
+            // keep the journal in the same order as the store
+            journalLock.lock();
         } finally {
             writeLock.unlock();
         }
+        appendAndUnlock(ADD_RECORD, record);
+        return previous;
     }
 
     @Override
     public SecurityInfo remove(String endpoint) {
+        writeLock.lock();
+        SecurityInfo info;
+        try {
+            info = super.remove(endpoint);
+            if (info == null) {
+                return null;
+            }
+            journalLock.lock();
+        } finally {
+            writeLock.unlock();
+        }
+        appendAndUnlock(REMOVE_RECORD, endpoint.getBytes(UTF_8));
+        return info;
+    }
+
+    @Override
+    public void addAll(Collection<SecurityInfo> infos) throws NonUniqueSecurityInfoException {
+        List<byte[]> records = new ArrayList<>(infos.size());
+        for (SecurityInfo info : infos) {
+            records.add(serialize(info));
+        }
+
         writeLock.lock();
         try {
-            SecurityInfo info = super.remove(endpoint);
-            if (info != null) {
-                saveToFile();
+            super.addAll(infos);
+            journalLock.lock();
+        } finally {
+            writeLock.unlock();
+        }
+        appendAndUnlock(ADD_RECORD, records);
+    }
+
+    @Override
+    public Collection<SecurityInfo> removeAll(Collection<String> endpoints) {
+        writeLock.lock();
+        Collection<SecurityInfo> removed;
+        try {
+            removed = super.removeAll(endpoints);
+            if (removed.isEmpty()) {
+                return removed;
             }
-            return info;
+            journalLock.lock();
         } finally {
             writeLock.unlock();
         }
+        List<byte[]> records = new ArrayList<>(removed.size());
+        for (SecurityInfo info : removed) {
+            records.add(info.getEndpoint().getBytes(UTF_8));
+        }
+        appendAndUnlock(REMOVE_RECORD, records);
+        return removed;
+    }
+
+    private void appendAndUnlock(byte type, byte[] record) {
+        appendAndUnlock(type, Collections.singletonList(record));
+    }
+
+    private void appendAndUnlock(byte type, List<byte[]> records) {
+        boolean compact;
+        try {
+            if (journal == null) {
+                openJournal();
+            }
+            for (byte[] record : records) {
+                journal.writeByte(type);
+                journal.writeInt(record.length);
+                journal.write(record);
+            }
+            // hand the records to the OS in one write, the disk sync is batched
+            journal.flush();
+            dirty = true;
+            journalRecords += records.size();
+        } catch (IOException e) {
+            LOG.error("Could not write security info to journal", e);
+        } finally {
+            // the journal can grow as large as the snapshot, so compaction cost stays proportional to the changes
+            compact = journalRecords >= Math.max(compactionThreshold, snapshotSize);
+            journalLock.unlock();
+        }
+
+        if (compact && !scheduler.isShutdown() && compactionScheduled.compareAndSet(false, true)) {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compactionScheduled.set(false);
+                    saveToFile();
+                }
+            });
+        }
+    }
+
+    private File journalFile(long generation) {
+        return new File(filename + JOURNAL_EXTENSION + generation);
+    }
+
+    private void openJournal() throws IOException {
+        File journalFile = journalFile(generation);
+        File parent = journalFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        journalOut = new FileOutputStream(journalFile, true);
+        journal = new DataOutputStream(new BufferedOutputStream(journalOut));
+    }
+
+    private static void closeJournal(DataOutputStream journal, FileOutputStream journalOut) throws IOException {
+        if (journal != null) {
+            journal.flush();
+            journalOut.getFD().sync();
+            journal.close();
+        }
+    }
+
+    /**
+     * @return the journal files next to the snapshot, sorted by generation
+     */
+    private SortedMap<Long, File> listJournals() {
+        SortedMap<Long, File> journals = new TreeMap<>();
+        File file = new File(filename).getAbsoluteFile();
+        String prefix = file.getName() + JOURNAL_EXTENSION;
+        File[] files = file.getParentFile() == null ? null : file.getParentFile().listFiles();
+        if (files != null) {
+            for (File candidate : files) {
+                String name = candidate.getName();
+                if (name.startsWith(prefix)) {
+                    try {
+                        journals.put(Long.parseLong(name.substring(prefix.length())), candidate);
+                    } catch (NumberFormatException e) {
+                        // not a journal, e.g. a journal kept aside
+                    }
+                }
+            }
+        }
+        return journals;
+    }
+
+    /**
+     * Syncs the journal to the disk.
+     */
+    protected void sync() {
+        FileOutputStream out;
+        journalLock.lock();
+        try {
+            if (!dirty || journal == null) {
+                return;
+            }
+            out = journalOut;
+            dirty = false;
+        } finally {
+            journalLock.unlock();
+        }
+
+        // writers keep appending to the OS while the disk sync is in progress
+        try {
+            out.getFD().sync();
+        } catch (IOException e) {
+            LOG.error("Could not sync security journal", e);
+            journalLock.lock();
+            try {
+                dirty |= out == journalOut;
+            } finally {
+                journalLock.unlock();
+            }
+        }
     }
 
     protected void loadFromFile() {
+        boolean complete = true;
+
         File file = new File(filename);
-        if (!file.exists()) {
-            return;
+        if (file.exists()) {
+            try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));) {
+                SecurityInfo[] infos = (SecurityInfo[]) in.readObject();
+
+                if (infos != null) {
+                    for (SecurityInfo info : infos) {
+                        try {
+                            addToStore(info);
+                        } catch (NonUniqueSecurityInfoException e) {
+                            LOG.warn("Skipping security info of {} from file", info.getEndpoint(), e);
+                            complete = false;
+                        }
+                    }
+                    snapshotSize = infos.length;
+                    if (infos.length > 0) {
+                        LOG.debug("{} security infos loaded", infos.length);
+                    }
+                }
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                LOG.error("Could not load security infos from file", e);
+                complete = false;
+            }
         }
 
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));) {
-            SecurityInfo[] infos = (SecurityInfo[]) in.readObject();
+        SortedMap<Long, File> journals = listJournals();
+        for (Entry<Long, File> journal : journals.entrySet()) {
+            complete &= replayJournal(journal.getValue());
+            generation = journal.getKey() + 1;
+        }
 
-            if (infos != null) {
-                for (SecurityInfo info : infos) {
-                    addToStore(info);
+        if (!complete) {
+            // a compaction would lose the records which could not be loaded, keep them for a manual recovery
+            String suffix = CORRUPT_EXTENSION + System.currentTimeMillis();
+            keepAside(file, suffix);
+            for (File journal : journals.values()) {
+                keepAside(journal, suffix);
+            }
+        }
+        if (!complete || !journals.isEmpty()) {
+            // start again from a clean snapshot, this also drops an incomplete last record
+            saveToFile();
+        }
+    }
+
+    private static void keepAside(File file, String suffix) {
+        if (file.exists()) {
+            File aside = new File(file.getPath() + suffix);
+            if (!file.renameTo(aside)) {
+                throw new IllegalStateException("Unable to rename " + file + " to " + aside);
+            }
+            LOG.warn("{} could not be fully loaded and was renamed to {}", file, aside);
+        }
+    }
+
+    /**
+     * Replays a journal, skipping the records which cannot be applied.
+     * 
+     * @return <code>true</code> if all the complete records of the journal were applied
+     */
+    private boolean replayJournal(File journalFile) {
+        boolean complete = true;
+        int replayed = 0;
+        long remaining = journalFile.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (remaining > 0) {
+                if (remaining < RECORD_HEADER_SIZE) {
+                    // record partially written before a crash
+                    break;
+                }
+                byte type = in.readByte();
+                int length = in.readInt();
+                remaining -= RECORD_HEADER_SIZE;
+                if ((type != ADD_RECORD && type != REMOVE_RECORD) || length < 0) {
+                    LOG.error("Corrupted record in security journal {}, skipping the end of the journal", journalFile);
+                    return false;
                 }
-                if (infos.length > 0) {
-                    LOG.debug("{} security infos loaded", infos.length);
+                if (length > remaining) {
+                    // record partially written before a crash
+                    break;
+                }
+                byte[] record = new byte[length];
+                in.readFully(record);
+                remaining -= length;
+
+                try {
+                    if (type == ADD_RECORD) {
+                        addToStore(deserialize(record));
+                    } else {
+                        super.remove(new String(record, UTF_8));
+                    }
+                    replayed++;
+                } catch (NonUniqueSecurityInfoException | IOException | ClassNotFoundException
+                        | ClassCastException e) {
+                    LOG.warn("Skipping invalid record in security journal {}", journalFile, e);
+                    complete = false;
                 }
             }
-        } catch (NonUniqueSecurityInfoException | IOException | ClassNotFoundException e) {
-            LOG.error("Could not load security infos from file", e);
+        } catch (IOException e) {
+            LOG.error("Could not replay security journal {}", journalFile, e);
+            complete = false;
         }
+        LOG.debug("{} security journal records replayed from {}", replayed, journalFile);
+        return complete;
     }
 
+    /**
+     * Starts a new journal generation, writes a snapshot of the store content and deletes the previous journals.
+     */
     protected void saveToFile() {
+        SecurityInfo[] infos;
+        DataOutputStream previousJournal;
+        FileOutputStream previousJournalOut;
+        long snapshotGeneration;
+        // no change can happen between the copy of the content and the journal rotation
+        readLock.lock();
+        try {
+            infos = this.getAll().toArray(new SecurityInfo[0]);
+            journalLock.lock();
+            try {
+                previousJournal = journal;
+                previousJournalOut = journalOut;
+                journal = null;
+                journalOut = null;
+                snapshotGeneration = ++generation;
+                journalRecords = 0;
+                dirty = false;
+            } finally {
+                journalLock.unlock();
+            }
+        } finally {
+            readLock.unlock();
+        }
+
         try {
+            // the previous journal stays the reference until the snapshot is complete
+            closeJournal(previousJournal, previousJournalOut);
+
             File file = new File(filename);
-            if (!file.exists()) {
-                File parent = file.getParentFile();
-                if (parent != null) {
-                    parent.mkdirs();
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            File tmpFile = new File(filename + ".tmp");
+            try (FileOutputStream fileOut = new FileOutputStream(tmpFile);
+                    ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fileOut));) {
+                out.writeObject(infos);
+                out.flush();
+                fileOut.getFD().sync();
+            }
+            if (!tmpFile.renameTo(file)) {
+                // renaming over an existing file is not supported on all platforms
+                file.delete();
+                if (!tmpFile.renameTo(file)) {
+                    throw new IOException("Unable to rename " + tmpFile + " to " + file);
                 }
-                file.createNewFile();
             }
-            try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filename));) {
-                out.writeObject(this.getAll().toArray(new SecurityInfo[0]));
+            snapshotSize = infos.length;
+
+            for (File previous : listJournals().headMap(snapshotGeneration).values()) {
+                if (!previous.delete()) {
+                    LOG.warn("Could not delete security journal {}", previous);
+                }
             }
+            LOG.debug("{} security infos saved", infos.length);
         } catch (IOException e) {
             LOG.error("Could not save security infos to file", e);
         }
     }
+
+    /**
+     * Syncs the pending changes to the disk and stops the background tasks.
+     */
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        DataOutputStream currentJournal;
+        FileOutputStream currentJournalOut;
+        journalLock.lock();
+        try {
+            currentJournal = journal;
+            currentJournalOut = journalOut;
+            journal = null;
+            journalOut = null;
+        } finally {
+            journalLock.unlock();
+        }
+        try {
+            closeJournal(currentJournal, currentJournalOut);
+        } catch (IOException e) {
+            LOG.error("Could not close security journal", e);
+        }
+    }
+
+    private static byte[] serialize(SecurityInfo info) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(info);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to serialize security info", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static SecurityInfo deserialize(byte[] record) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(record))) {
+            return (SecurityInfo) in.readObject();
+        }
+    }
 }
@@ -15,6 +15,7 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -93,32 +94,83 @@ public class InMemorySecurityStore implements EditableSecurityStore {
                 if (infoByIdentity != null && !info.getEndpoint().equals(infoByIdentity.getEndpoint())) {
                     throw new NonUniqueSecurityInfoException("PSK Identity " + info.getIdentity() + " is already used");
                 }
-
-                securityByIdentity.put(info.getIdentity(), info);
             }
+            return unsafeAdd(info);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private SecurityInfo unsafeAdd(SecurityInfo info) {
+        if (info.getIdentity() != null) {
+            securityByIdentity.put(info.getIdentity(), info);
+        }
+        return securityByEp.put(info.getEndpoint(), info);
+    }
 
-            SecurityInfo previous = securityByEp.put(info.getEndpoint(), info);
+    @Override
+    public void addAll(Collection<SecurityInfo> infos) throws NonUniqueSecurityInfoException {
+        writeLock.lock();
+        try {
+            // check all the identities first, so the batch is added entirely or not at all
+            Map<String, String> endpointByIdentity = new HashMap<>();
+            for (SecurityInfo info : infos) {
+                String identity = info.getIdentity();
+                if (identity != null) {
+                    String endpoint = endpointByIdentity.put(identity, info.getEndpoint());
+                    if (endpoint == null) {
+                        SecurityInfo infoByIdentity = securityByIdentity.get(identity);
+                        endpoint = infoByIdentity == null ? null : infoByIdentity.getEndpoint();
+                    }
+                    if (endpoint != null && !info.getEndpoint().equals(endpoint)) {
+                        throw new NonUniqueSecurityInfoException("PSK Identity " + identity + " is already used");
+                    }
+                }
+            }
 
-            return previous;
+            for (SecurityInfo info : infos) {
+                unsafeAdd(info);
+            }
         } finally {
             writeLock.unlock();
         }
     }
 
     @Override
-    public SecurityInfo remove(String endpoint) {
+    public Collection<SecurityInfo> removeAll(Collection<String> endpoints) {
         writeLock.lock();
         try {
-            SecurityInfo info = securityByEp.get(endpoint);
-            if (info != null) {
-                if (info.getIdentity() != null) {
-                    securityByIdentity.remove(info.getIdentity());
+            Collection<SecurityInfo> removed = new ArrayList<>();
+            for (String endpoint : endpoints) {
+                SecurityInfo info = unsafeRemove(endpoint);
+                if (info != null) {
+                    removed.add(info);
                 }
-                securityByEp.remove(endpoint);
             }
-            return info;
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public SecurityInfo remove(String endpoint) {
+        writeLock.lock();
+        try {
+            return unsafeRemove(endpoint);
         } finally {
             writeLock.unlock();
         }
     }
+
+    private SecurityInfo unsafeRemove(String endpoint) {
+        SecurityInfo info = securityByEp.get(endpoint);
+        if (info != null) {
+            if (info.getIdentity() != null) {
+                securityByIdentity.remove(info.getIdentity());
+            }
+            securityByEp.remove(endpoint);
+        }
+        return info;
+    }
 }
@@ -20,6 +20,7 @@ import org.eclipse.leshan.core.request.DownlinkRequest;
 import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ResponseFuture;
 import org.eclipse.leshan.server.Stoppable;
 import org.eclipse.leshan.server.client.Registration;
 import org.eclipse.leshan.server.queue.impl.QueuedRequestSender;
@@ -64,6 +65,16 @@ public class LwM2mRequestSenderImpl implements LwM2mRequestSender, Stoppable {
         }
     }
 
+    @Override
+    public <T extends LwM2mResponse> ResponseFuture<T> sendAsync(Registration destination,
+            DownlinkRequest<T> request, Long timeout) {
+        if (destination.usesQueueMode()) {
+            return queuedRequestSender.sendAsync(destination, request, timeout);
+        } else {
+            return defaultRequestSender.sendAsync(destination, request, timeout);
+        }
+    }
+
     @Override
     public <T extends LwM2mResponse> void send(Registration destination, String requestTicket, DownlinkRequest<T> request) {
         if (destination.usesQueueMode()) {
@@ -22,6 +22,8 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import org.eclipse.leshan.core.observation.Observation;
 import org.eclipse.leshan.server.client.Registration;
 import org.eclipse.leshan.server.client.RegistrationListener;
+import org.eclipse.leshan.server.client.RegistrationPage;
+import org.eclipse.leshan.server.client.RegistrationRefreshListener;
 import org.eclipse.leshan.server.client.RegistrationService;
 import org.eclipse.leshan.server.client.RegistrationUpdate;
 import org.eclipse.leshan.server.registration.Deregistration;
@@ -62,6 +64,11 @@ public class RegistrationServiceImpl implements RegistrationService, ExpirationL
         return store.getAllRegistration();
     }
 
+    @Override
+    public RegistrationPage getRegistrations(String endpointPrefix, String cursor, int limit) {
+        return store.getRegistrations(endpointPrefix, cursor, limit);
+    }
+
     @Override
     public Registration getByEndpoint(String endpoint) {
         return store.getRegistrationByEndpoint(endpoint);
@@ -88,6 +95,22 @@ public class RegistrationServiceImpl implements RegistrationService, ExpirationL
     public Registration updateRegistration(RegistrationUpdate update) {
         Validate.notNull(update);
 
+        if (update.isEmpty()) {
+            // most updates only refresh the lifetime: try the cheaper path first
+            Registration refreshedRegistration = store.refreshRegistration(update);
+            if (refreshedRegistration != null) {
+                LOG.trace("Refreshed registration for client: {}", update);
+                for (RegistrationListener l : listeners) {
+                    if (l instanceof RegistrationRefreshListener) {
+                        ((RegistrationRefreshListener) l).refreshed(refreshedRegistration);
+                    } else {
+                        l.updated(update, refreshedRegistration);
+                    }
+                }
+                return refreshedRegistration;
+            }
+        }
+
         LOG.debug("Updating registration for client: {}", update);
         Registration updatedRegistration = store.updateRegistration(update);
         if (updatedRegistration != null) {
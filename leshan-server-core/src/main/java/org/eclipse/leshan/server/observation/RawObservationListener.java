@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.observation;
+
+import org.eclipse.leshan.core.observation.Observation;
+import org.eclipse.leshan.core.request.ContentFormat;
+import org.eclipse.leshan.server.client.Registration;
+
+/**
+ * An {@link ObservationListener} receiving the notifications as they were sent by the client, before decoding.
+ * <p>
+ * {@link #newRawValue(Observation, Registration, ContentFormat, byte[])} is called instead of
+ * {@link #newValue(Observation, org.eclipse.leshan.core.response.ObserveResponse)}: a notification is only decoded if
+ * at least one of the listeners is not a raw listener. This avoids decoding the notifications which are only forwarded,
+ * e.g. to another process which decodes them if it needs to.
+ * </p>
+ */
+public interface RawObservationListener extends ObservationListener {
+
+    /**
+     * Called on new notification.
+     * 
+     * @param observation the observation for which new data are received
+     * @param registration the registration of the client which sent the notification
+     * @param contentFormat the content format of the payload, or <code>null</code> if it was not specified
+     * @param payload the payload of the notification
+     */
+    void newRawValue(Observation observation, Registration registration, ContentFormat contentFormat,
+            byte[] payload);
+}
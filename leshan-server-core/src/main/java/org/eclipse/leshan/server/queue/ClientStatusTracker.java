@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Balasubramanian Azhagappan, Daniel Maier (Bosch Software Innovations GmbH)
+ *                                  - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.queue;
+
+/**
+ * Tracks the {@link ClientState} of each client endpoint using Queue Mode and ensures that the state transitions are
+ * carried out atomically.
+ * <p>
+ * A client starts with a REACHABLE state on a Register event. Before the first message is sent, the status is set to
+ * RECEIVING. For further queued messages the client remains in this state until there are no more messages to be
+ * delivered. When there are no more messages left, the state is set to REACHABLE. On timeout of a message, the status
+ * is set to UNREACHABLE.
+ * </p>
+ * Implementations shared between several server instances allow a client to wake up on another instance than the one
+ * which queued the request.
+ *
+ * @see ClientState
+ */
+public interface ClientStatusTracker {
+
+    /**
+     * Sets the client state from RECEIVING to UNREACHABLE.
+     *
+     * @param endpoint client's endpoint
+     * @return true if the state was updated.
+     */
+    boolean setClientUnreachable(String endpoint);
+
+    /**
+     * Sets the client state from UNREACHABLE to REACHABLE, or to REACHABLE if the client state is not known yet.
+     *
+     * @param endpoint client's endpoint
+     * @return true if the state was updated.
+     */
+    boolean setClientReachable(String endpoint);
+
+    /**
+     * Sets the client state from REACHABLE to RECEIVING.
+     *
+     * @param endpoint client's endpoint
+     * @return true if the state was updated, meaning that the caller is now responsible for sending queued requests.
+     */
+    boolean startClientReceiving(String endpoint);
+
+    /**
+     * Sets the client state from RECEIVING to REACHABLE.
+     *
+     * @param endpoint client's endpoint
+     * @return true if the state was updated.
+     */
+    boolean stopClientReceiving(String endpoint);
+
+    /**
+     * Forgets the state of the given client.
+     *
+     * @param endpoint client's endpoint
+     */
+    void clearClientState(String endpoint);
+}
@@ -48,6 +48,15 @@ public interface MessageStore {
      */
     QueuedRequest retrieveFirst(String endpoint);
 
+    /**
+     * Retrieves the first (next, topmost) queue request entities from a given client's queue, without removing them.
+     *
+     * @param endpoint client's endpoint
+     * @param count maximum number of entities to retrieve
+     * @return the first queue request entities in order of processing, or an empty list if no QueuedRequest exists.
+     */
+    List<QueuedRequest> retrieveFirst(String endpoint, int count);
+
     /**
      * checks whether there are any queued message for the given endpoint
      *
@@ -63,6 +72,15 @@ public interface MessageStore {
      */
     void deleteFirst(String endpoint);
 
+    /**
+     * Deletes the first request with the given request ticket from message queue for the given client.
+     *
+     * @param endpoint client endpoint name
+     * @param requestTicket the ticket of the request to delete
+     * @return true if a request was deleted, false otherwise.
+     */
+    boolean delete(String endpoint, String requestTicket);
+
     /**
      * removes all the requests from queue and returns the list of all the requests that got removed.
      * 
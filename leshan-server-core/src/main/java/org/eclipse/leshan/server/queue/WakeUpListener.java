@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Alexander Ellwein, Daniel Maier (Bosch Software Innovations GmbH)
+ *                                - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.queue;
+
+/**
+ * Listener notified when a client using Queue Mode stops receiving queued requests.
+ */
+public interface WakeUpListener {
+
+    /**
+     * Invoked when a client leaves the {@link ClientState#RECEIVING} state, either because there are no more queued
+     * requests to send or because the client became unreachable.
+     *
+     * @param endpoint client's endpoint
+     * @param drainedRequests number of queued requests which were answered during this wake-up
+     * @param unreachable true if the client became unreachable before its queue was emptied
+     */
+    void wakeUpEnded(String endpoint, int drainedRequests, boolean unreachable);
+}
@@ -20,11 +20,12 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.leshan.server.queue.ClientState;
+import org.eclipse.leshan.server.queue.ClientStatusTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Tracks the status of each client endpoint. Also ensures that the state transitions are carried out
+ * Tracks the status of each client endpoint in memory. Also ensures that the state transitions are carried out
  *
  * A client starts with a REACHABLE state on a Register event. Before the first message is sent, the status is set to
  * RECEIVING. For further queued messages the client remains in this state until there are no more messages to be
@@ -36,27 +37,32 @@ import org.slf4j.LoggerFactory;
  *
  * @see ClientState
  */
-public final class ClientStatusTracker {
-    private static final Logger LOG = LoggerFactory.getLogger(ClientStatusTracker.class);
+public final class InMemoryClientStatusTracker implements ClientStatusTracker {
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryClientStatusTracker.class);
     private final ConcurrentMap<String, ClientState> clientStatus = new ConcurrentHashMap<>();
 
+    @Override
     public boolean setClientUnreachable(String endpoint) {
         return transitState(endpoint, ClientState.RECEIVING, ClientState.UNREACHABLE);
     }
 
+    @Override
     public boolean setClientReachable(String endpoint) {
         return transitState(endpoint, ClientState.UNREACHABLE, ClientState.REACHABLE)
                 || clientStatus.putIfAbsent(endpoint, ClientState.REACHABLE) == null;
     }
 
+    @Override
     public boolean startClientReceiving(String endpoint) {
         return transitState(endpoint, ClientState.REACHABLE, ClientState.RECEIVING);
     }
 
+    @Override
     public boolean stopClientReceiving(String endpoint) {
         return transitState(endpoint, ClientState.RECEIVING, ClientState.REACHABLE);
     }
 
+    @Override
     public void clearClientState(String endpoint) {
         clientStatus.remove(endpoint);
     }
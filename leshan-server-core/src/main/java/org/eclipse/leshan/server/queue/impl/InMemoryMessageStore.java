@@ -20,7 +20,9 @@ package org.eclipse.leshan.server.queue.impl;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
@@ -78,6 +80,21 @@ public class InMemoryMessageStore implements MessageStore {
         return null;
     }
 
+    @Override
+    public List<QueuedRequest> retrieveFirst(String endpoint, int count) {
+        LOG.trace("Retrieve first {} for endpoint {}", count, endpoint);
+        BlockingQueue<QueuedRequest> requests = requestQueueMap.get(endpoint);
+        if (requests == null) {
+            return Collections.emptyList();
+        }
+        List<QueuedRequest> result = new ArrayList<>(count);
+        Iterator<QueuedRequest> it = requests.iterator();
+        while (it.hasNext() && result.size() < count) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
     @Override
     public List<QueuedRequest> removeAll(String endpoint) {
         LOG.debug("Emptying messages for client {}", endpoint);
@@ -98,6 +115,22 @@ public class InMemoryMessageStore implements MessageStore {
         }
     }
 
+    @Override
+    public boolean delete(String endpoint, String requestTicket) {
+        LOG.debug("Delete entity {} of endpoint {}", requestTicket, endpoint);
+        Queue<QueuedRequest> requests = requestQueueMap.get(endpoint);
+        if (requests != null) {
+            Iterator<QueuedRequest> it = requests.iterator();
+            while (it.hasNext()) {
+                if (Objects.equals(requestTicket, it.next().getRequestTicket())) {
+                    it.remove();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns the size of the Queue for given endpoint.
      * 
@@ -18,9 +18,10 @@ package org.eclipse.leshan.server.queue.impl;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -33,6 +34,7 @@ import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ObserveResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ResponseFuture;
 import org.eclipse.leshan.server.Stoppable;
 import org.eclipse.leshan.server.client.Registration;
 import org.eclipse.leshan.server.client.RegistrationListener;
@@ -40,12 +42,14 @@ import org.eclipse.leshan.server.client.RegistrationService;
 import org.eclipse.leshan.server.client.RegistrationUpdate;
 import org.eclipse.leshan.server.observation.ObservationListener;
 import org.eclipse.leshan.server.observation.ObservationService;
+import org.eclipse.leshan.server.queue.ClientStatusTracker;
 import org.eclipse.leshan.server.queue.MessageStore;
 import org.eclipse.leshan.server.queue.QueuedRequest;
+import org.eclipse.leshan.server.queue.WakeUpListener;
 import org.eclipse.leshan.server.request.LwM2mRequestSender;
 import org.eclipse.leshan.server.response.ResponseListener;
 import org.eclipse.leshan.server.response.ResponseProcessingTask;
-import org.eclipse.leshan.util.NamedThreadFactory;
+import org.eclipse.leshan.util.BoundedExecutorService;
 import org.eclipse.leshan.util.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,12 +58,15 @@ import org.slf4j.LoggerFactory;
  * This sender is a special implementation of a {@link LwM2mRequestSender} . This sender assumes the client is using "Q"
  * (queue) mode and processes the request using the internal queue, i.e. the request is enqueued first and then sent if
  * a client is back online.
+ * <p>
+ * By default queued requests are sent one at a time. The sender can be configured to send several queued requests
+ * concurrently (see {@link Builder#setMaxInFlightRequests(int)}) to drain more of the queue while the client is awake.
+ * </p>
  */
 public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
     private static final Logger LOG = LoggerFactory.getLogger(QueuedRequestSender.class);
     private final LwM2mRequestSender delegateSender;
-    private final ExecutorService processingExecutor = Executors
-            .newCachedThreadPool(new NamedThreadFactory("leshan-qmode-processingExecutor-%d"));
+    private final ExecutorService processingExecutor;
     private final MessageStore messageStore;
     private final QueueModeRegistrationListener queueModeRegistrationListener;
     private final QueueModeObservationListener queueModeObservationListener;
@@ -67,6 +74,9 @@ public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
     private final ObservationService observationService;
     private final ClientStatusTracker clientStatusTracker;
     private final Collection<ResponseListener> responseListeners = new ConcurrentLinkedQueue<>();
+    private final Collection<WakeUpListener> wakeUpListeners = new ConcurrentLinkedQueue<>();
+    private final ConcurrentMap<String, SendingWindow> sendingWindows = new ConcurrentHashMap<>();
+    private final int maxInFlightRequests;
 
     private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
 
@@ -81,7 +91,9 @@ public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
         this.observationService = builder.observationService;
         this.delegateSender = builder.delegateSender;
 
-        this.clientStatusTracker = new ClientStatusTracker();
+        this.clientStatusTracker = builder.clientStatusTracker;
+        this.maxInFlightRequests = builder.maxInFlightRequests;
+        this.processingExecutor = builder.processingExecutor;
 
         this.queueModeRegistrationListener = new QueueModeRegistrationListener();
         registrationService.addListener(queueModeRegistrationListener);
@@ -112,6 +124,13 @@ public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
                 "QueueMode doesn't support sending of messages with callbacks. Use a request ticket instead and register your response listeners");
     }
 
+    @Override
+    public <T extends LwM2mResponse> ResponseFuture<T> sendAsync(Registration destination,
+            DownlinkRequest<T> request, Long timeout) {
+        throw new UnsupportedOperationException(
+                "QueueMode doesn't support sending of messages with futures. Use a request ticket instead and register your response listeners");
+    }
+
     @Override
     public <T extends LwM2mResponse> void send(Registration destination, String requestTicket, DownlinkRequest<T> request) {
         LOG.trace("send(requestTicket={})", requestTicket);
@@ -130,9 +149,7 @@ public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
                 messageStore.add(queuedRequest);
                 // If Client is reachable and this is the first message, we send it
                 // immediately.
-                if (clientStatusTracker.startClientReceiving(endpoint)) {
-                    processingExecutor.execute(newRequestSendingTask(endpoint));
-                }
+                startClientReceiving(endpoint);
             } else {
                 String message = String.format("message received in Queue Mode for the unknown client [%s]", endpoint);
                 LOG.warn(message);
@@ -155,6 +172,14 @@ public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
         responseListeners.remove(listener);
     }
 
+    public void addWakeUpListener(WakeUpListener listener) {
+        wakeUpListeners.add(listener);
+    }
+
+    public void removeWakeUpListener(WakeUpListener listener) {
+        wakeUpListeners.remove(listener);
+    }
+
     @Override
     public void stop() {
         registrationService.removeListener(queueModeRegistrationListener);
@@ -221,7 +246,7 @@ public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
                 if (registration != null && registration.usesQueueMode()) {
                     LOG.debug("exception on sending the request: {}", requestTicket, exception);
                     if (exception instanceof TimeoutException) {
-                        timeout(registration.getEndpoint());
+                        timeout(registration.getEndpoint(), requestTicket);
                     } else {
                         processException(registration, requestTicket, exception);
                     }
@@ -232,14 +257,14 @@ public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
 
     private void processResponse(Registration registration, String requestTicket, LwM2mResponse response) {
         LOG.debug("Received Response -> {}", requestTicket);
-        messageStore.deleteFirst(registration.getEndpoint());
+        requestAnswered(registration.getEndpoint(), requestTicket);
         processingExecutor.execute(new ResponseProcessingTask(registration, requestTicket, responseListeners, response));
         processingExecutor.execute(newRequestSendingTask(registration.getEndpoint()));
     }
 
     private void processException(Registration registration, String requestTicket, Exception exception) {
         LOG.debug("Received error response {}", requestTicket);
-        messageStore.deleteFirst(registration.getEndpoint());
+        requestAnswered(registration.getEndpoint(), requestTicket);
         processingExecutor.execute(new ResponseProcessingTask(registration, requestTicket, responseListeners, exception));
         // If RequestCanceledException is thrown due to cancelPendingMessages call, then there
         // is no use processing next requests which would be removed in the next few moments.
@@ -248,14 +273,58 @@ public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
         }
     }
 
-    private void timeout(String clientEndpoint) {
+    private void requestAnswered(String clientEndpoint, String requestTicket) {
+        // responses may come back out of order when several requests are in flight
+        messageStore.delete(clientEndpoint, requestTicket);
+        SendingWindow window = sendingWindows.get(clientEndpoint);
+        if (window != null) {
+            window.release(requestTicket, true);
+        }
+    }
+
+    private void timeout(String clientEndpoint, String requestTicket) {
         LOG.debug("Client {} timed out", clientEndpoint);
-        clientStatusTracker.setClientUnreachable(clientEndpoint);
+        SendingWindow window = sendingWindows.get(clientEndpoint);
+        if (window != null) {
+            window.release(requestTicket, false);
+        }
+        if (clientStatusTracker.setClientUnreachable(clientEndpoint) && window != null && window.close()) {
+            wakeUpEnded(clientEndpoint, window, true);
+        }
+    }
+
+    private void startClientReceiving(String clientEndpoint) {
+        if (clientStatusTracker.startClientReceiving(clientEndpoint)) {
+            sendingWindows.put(clientEndpoint, new SendingWindow(maxInFlightRequests));
+            processingExecutor.execute(newRequestSendingTask(clientEndpoint));
+        }
+    }
+
+    private void wakeUpEnded(String clientEndpoint, SendingWindow window, boolean unreachable) {
+        LOG.debug("Client {} received {} queued requests during this wake-up", clientEndpoint, window.getDrained());
+        for (WakeUpListener listener : wakeUpListeners) {
+            listener.wakeUpEnded(clientEndpoint, window.getDrained(), unreachable);
+        }
     }
 
-    private RequestSendingTask newRequestSendingTask(String clientEndpoint) {
+    private RequestSendingTask newRequestSendingTask(final String clientEndpoint) {
+        SendingWindow window = sendingWindows.get(clientEndpoint);
+        if (window == null) {
+            // the client may have started receiving on another server instance
+            SendingWindow newWindow = new SendingWindow(maxInFlightRequests);
+            window = sendingWindows.putIfAbsent(clientEndpoint, newWindow);
+            if (window == null) {
+                window = newWindow;
+            }
+        }
+        final SendingWindow currentWindow = window;
         return new RequestSendingTask(registrationService, delegateSender, clientStatusTracker, messageStore,
-                clientEndpoint);
+                clientEndpoint, currentWindow, new Runnable() {
+                    @Override
+                    public void run() {
+                        wakeUpEnded(clientEndpoint, currentWindow, false);
+                    }
+                });
     }
 
     private final class QueueModeObservationListener implements ObservationListener {
@@ -270,12 +339,11 @@ public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
                 }
                 return;
             }
-            if (registration.usesQueueMode() && clientStatusTracker.setClientReachable(registration.getEndpoint())
-                    && clientStatusTracker.startClientReceiving(registration.getEndpoint())) {
+            if (registration.usesQueueMode() && clientStatusTracker.setClientReachable(registration.getEndpoint())) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Notify from {}. Sending queued requests.", registration.getEndpoint());
                 }
-                processingExecutor.execute(newRequestSendingTask(registration.getEndpoint()));
+                startClientReceiving(registration.getEndpoint());
             }
         }
 
@@ -307,12 +375,11 @@ public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
             // When client is in QueueMode and was previously in unreachable
             // state and when RECEIVING state could be set
             // i.e:- there is no other message currently being sent
-            if (updatedRegistration.usesQueueMode() && clientStatusTracker.setClientReachable(updatedRegistration.getEndpoint())
-                    && clientStatusTracker.startClientReceiving(updatedRegistration.getEndpoint())) {
+            if (updatedRegistration.usesQueueMode() && clientStatusTracker.setClientReachable(updatedRegistration.getEndpoint())) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Registration {} updated. Sending queued request.", updatedRegistration.getEndpoint());
                 }
-                processingExecutor.execute(newRequestSendingTask(updatedRegistration.getEndpoint()));
+                startClientReceiving(updatedRegistration.getEndpoint());
             }
         }
 
@@ -320,6 +387,10 @@ public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
         public void unregistered(Registration registration) {
             if (registration.usesQueueMode()) {
                 clientStatusTracker.clearClientState(registration.getEndpoint());
+                SendingWindow window = sendingWindows.remove(registration.getEndpoint());
+                if (window != null) {
+                    window.close();
+                }
             }
         }
     }
@@ -330,15 +401,27 @@ public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
     public static class Builder {
 
         private MessageStore messageStore;
+        private ClientStatusTracker clientStatusTracker;
         private LwM2mRequestSender delegateSender;
         private RegistrationService registrationService;
         private ObservationService observationService;
+        private int maxInFlightRequests = 1;
+        private ExecutorService processingExecutor;
 
         public Builder setMessageStore(MessageStore messageStore) {
             this.messageStore = messageStore;
             return this;
         }
 
+        /**
+         * Sets the tracker used to store the {@link org.eclipse.leshan.server.queue.ClientState} of each client. An
+         * {@link InMemoryClientStatusTracker} is used by default.
+         */
+        public Builder setClientStatusTracker(ClientStatusTracker clientStatusTracker) {
+            this.clientStatusTracker = clientStatusTracker;
+            return this;
+        }
+
         public Builder setRequestSender(LwM2mRequestSender delegateSender) {
             this.delegateSender = delegateSender;
             return this;
@@ -354,11 +437,36 @@ public class QueuedRequestSender implements LwM2mRequestSender, Stoppable {
             return this;
         }
 
+        /**
+         * Sets the maximum number of queued requests sent concurrently to a client while it is awake. Default is 1,
+         * meaning that the next queued request is sent only when the previous one is answered.
+         */
+        public Builder setMaxInFlightRequests(int maxInFlightRequests) {
+            this.maxInFlightRequests = maxInFlightRequests;
+            return this;
+        }
+
+        /**
+         * Sets the executor used to send queued requests and to notify response listeners. It is shut down when the
+         * sender is stopped. A {@link BoundedExecutorService} is used by default.
+         */
+        public Builder setProcessingExecutor(ExecutorService processingExecutor) {
+            this.processingExecutor = processingExecutor;
+            return this;
+        }
+
         public QueuedRequestSender build() {
             Validate.notNull(messageStore, "messageStore cannot be null");
             Validate.notNull(delegateSender, "delegateSender cannot be null");
             Validate.notNull(registrationService, "registrationService cannot be null");
             Validate.notNull(observationService, "observationService cannot be null");
+            Validate.isTrue(maxInFlightRequests > 0, "maxInFlightRequests must be greater than 0");
+            if (clientStatusTracker == null) {
+                clientStatusTracker = new InMemoryClientStatusTracker();
+            }
+            if (processingExecutor == null) {
+                processingExecutor = new BoundedExecutorService("leshan-qmode-processingExecutor-%d");
+            }
 
             return new QueuedRequestSender(this);
         }
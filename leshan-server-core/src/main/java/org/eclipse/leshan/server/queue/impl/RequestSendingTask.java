@@ -16,10 +16,16 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.queue.impl;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.eclipse.leshan.core.request.DownlinkRequest;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.server.client.Registration;
 import org.eclipse.leshan.server.client.RegistrationService;
+import org.eclipse.leshan.server.queue.ClientStatusTracker;
 import org.eclipse.leshan.server.queue.MessageStore;
 import org.eclipse.leshan.server.queue.QueuedRequest;
 import org.eclipse.leshan.server.request.LwM2mRequestSender;
@@ -27,9 +33,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Request sending task is a Runnable, which is responsible for the actual sending of a queue request. The queue request
- * is sent asynchronously; upon receiving a response or an error the message is removed from queue and a new task is
- * scheduled to process the next message from queue.
+ * Request sending task is a Runnable, which is responsible for the actual sending of queue requests. The queue requests
+ * are sent asynchronously, up to the size of the {@link SendingWindow}; upon receiving a response or an error the
+ * message is removed from queue and a new task is scheduled to process the next messages from queue.
  */
 class RequestSendingTask implements Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(RequestSendingTask.class);
@@ -38,6 +44,8 @@ class RequestSendingTask implements Runnable {
     private final String endpoint;
     private final MessageStore messageStore;
     private final ClientStatusTracker clientStatusTracker;
+    private final SendingWindow window;
+    private final Runnable queueEmptied;
 
     /**
      * Creates a new task which is responsible for sending a queue request.
@@ -47,14 +55,19 @@ class RequestSendingTask implements Runnable {
      * @param clientStatusTracker tracks the status of the client
      * @param messageStore holds queued messages for the client
      * @param endpoint clients endpoint identifier
+     * @param window the requests in flight for the current wake-up of the client
+     * @param queueEmptied invoked when all the queued requests were sent and answered
      */
     public RequestSendingTask(RegistrationService registrationService, LwM2mRequestSender delegateSender,
-            ClientStatusTracker clientStatusTracker, MessageStore messageStore, String endpoint) {
+            ClientStatusTracker clientStatusTracker, MessageStore messageStore, String endpoint,
+            SendingWindow window, Runnable queueEmptied) {
         this.registrationService = registrationService;
         this.requestSender = delegateSender;
         this.clientStatusTracker = clientStatusTracker;
         this.endpoint = endpoint;
         this.messageStore = messageStore;
+        this.window = window;
+        this.queueEmptied = queueEmptied;
     }
 
     @Override
@@ -68,21 +81,58 @@ class RequestSendingTask implements Runnable {
     }
 
     private void executeAction() {
-        QueuedRequest firstRequest = messageStore.retrieveFirst(endpoint);
+        if (window.isClosed()) {
+            LOG.debug("Client {} is not receiving anymore", endpoint);
+            return;
+        }
+
+        List<QueuedRequest> firstRequests = messageStore.retrieveFirst(endpoint, window.getMaxInFlight());
+
+        if (!firstRequests.isEmpty()) {
+            // skip the requests already sent and waiting for a response, or answered since they were read
+            List<QueuedRequest> acquired = new ArrayList<>(firstRequests.size());
+            for (QueuedRequest request : firstRequests) {
+                if (window.acquire(request.getRequestTicket())) {
+                    acquired.add(request);
+                }
+            }
+            if (acquired.isEmpty()) {
+                return;
+            }
+
+            // the requests answered by another server instance are only removed from the store
+            Set<String> queued = new HashSet<>();
+            for (QueuedRequest request : messageStore.retrieveFirst(endpoint, window.getMaxInFlight())) {
+                queued.add(request.getRequestTicket());
+            }
 
-        if (firstRequest != null) {
-            DownlinkRequest<LwM2mResponse> downlinkRequest = firstRequest.getDownlinkRequest();
-            LOG.debug("Sending request: {}", downlinkRequest);
-            Registration registration = registrationService.getByEndpoint(firstRequest.getEndpoint());
-            if (registration == null) {
-                // client not registered anymore -> don't send this request
-                LOG.debug("Client {} not registered anymore: {}", endpoint, downlinkRequest);
-            } else {
-                requestSender.send(registration, firstRequest.getRequestTicket(), downlinkRequest);
+            Registration registration = registrationService.getByEndpoint(endpoint);
+            boolean sent = false;
+            for (QueuedRequest request : acquired) {
+                DownlinkRequest<LwM2mResponse> downlinkRequest = request.getDownlinkRequest();
+                if (!queued.contains(request.getRequestTicket())) {
+                    // not in the queue anymore, so it will not be read again
+                    LOG.debug("Request already removed from the queue: {}", downlinkRequest);
+                    window.release(request.getRequestTicket(), false);
+                } else if (registration == null) {
+                    // client not registered anymore -> don't send this request
+                    LOG.debug("Client {} not registered anymore: {}", endpoint, downlinkRequest);
+                    window.release(request.getRequestTicket(), false);
+                } else {
+                    LOG.debug("Sending request: {}", downlinkRequest);
+                    requestSender.send(registration, request.getRequestTicket(), downlinkRequest);
+                    sent = true;
+                }
             }
-        } else {
+            if (!sent && registration != null && !window.hasInFlight()) {
+                // no response will trigger the next task: go on with the rest of the queue
+                executeAction();
+            }
+        } else if (!window.hasInFlight()) {
             LOG.debug("No more requests to send to client {}", endpoint);
-            clientStatusTracker.stopClientReceiving(endpoint);
+            if (clientStatusTracker.stopClientReceiving(endpoint) && window.close()) {
+                queueEmptied.run();
+            }
         }
     }
 }
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Bosch Software Innovations GmbH and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Alexander Ellwein, Daniel Maier, Balasubramanian Azhagappan (Bosch Software Innovations GmbH)
+ *                                - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.queue.impl;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of the queued requests sent to a client during one wake-up, i.e. while the client is in RECEIVING state.
+ * <p>
+ * At most {@code maxInFlight} requests are sent concurrently. As requests are removed from the queue only when they
+ * are answered, in-flight requests always belong to the first {@code maxInFlight} requests of the queue.
+ * </p>
+ * <p>
+ * The answered requests are remembered until the end of the wake-up: a request read from the queue just before its
+ * response was processed cannot be acquired, and so sent, again.
+ * </p>
+ */
+class SendingWindow {
+
+    private final int maxInFlight;
+    private final Set<String> inFlight = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> answered = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger drained = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public SendingWindow(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Marks a request as sent.
+     *
+     * @return false if the request is already in flight, if it was answered or if the window is closed.
+     */
+    public boolean acquire(String requestTicket) {
+        if (closed.get() || answered.contains(requestTicket) || !inFlight.add(requestTicket)) {
+            return false;
+        }
+        if (answered.contains(requestTicket)) {
+            // answered meanwhile
+            inFlight.remove(requestTicket);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Marks a request as not in flight anymore.
+     *
+     * @param answered true if the request got a response and was removed from the queue, so it must not be sent again
+     *        during this wake-up; false if it can be sent again, e.g. after a timeout.
+     */
+    public void release(String requestTicket, boolean answered) {
+        if (answered) {
+            this.answered.add(requestTicket);
+        }
+        if (inFlight.remove(requestTicket) && answered) {
+            drained.incrementAndGet();
+        }
+    }
+
+    public boolean hasInFlight() {
+        return !inFlight.isEmpty();
+    }
+
+    public int getDrained() {
+        return drained.get();
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Closes this window, no more requests can be sent through it.
+     *
+     * @return true if the window was open.
+     */
+    public boolean close() {
+        return closed.compareAndSet(false, true);
+    }
+}
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.registration;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * Limits the rate of Register and Update requests accepted by the server, so a registration storm (e.g. after a power
+ * outage) does not overload the stores and the registration listeners.
+ * <p>
+ * Requests are admitted by two token buckets: one for the source subnet of the request and a global one. A part of
+ * each bucket ({@code updateReserveRatio}) is reserved to Updates: a Register is only admitted when the bucket
+ * contains more tokens than this reserve, so already registered clients keep their registration alive during a storm.
+ * </p>
+ * <p>
+ * At most {@value #MAX_TRACKED_SUBNETS} subnets get their own bucket: beyond that, the requests of the other subnets
+ * share a single overflow bucket until the buckets of idle subnets are dropped.
+ * </p>
+ * <p>
+ * A rejected request gets a retry delay, which is the time needed to refill the buckets plus a random jitter to spread
+ * the retries.
+ * </p>
+ */
+public class RegistrationAdmissionControl {
+
+    /** Default part of the buckets reserved to Updates */
+    public static final double DEFAULT_UPDATE_RESERVE_RATIO = 0.2;
+
+    /** Prefix length of the IPv4 subnets */
+    public static final int IPV4_SUBNET_PREFIX = 24;
+
+    /** Prefix length of the IPv6 subnets */
+    public static final int IPV6_SUBNET_PREFIX = 48;
+
+    /** Maximum number of subnets with their own bucket */
+    public static final int MAX_TRACKED_SUBNETS = 100_000;
+    private static final long CLEANUP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_RETRY_JITTER = 10; // s
+
+    private final double subnetRatePerSec;
+    private final int subnetBurst;
+    private final double updateReserveRatio;
+
+    private final TokenBucket globalBucket;
+    private final TokenBucket overflowBucket;
+    private final ConcurrentMap<InetAddress, TokenBucket> subnetBuckets = new ConcurrentHashMap<>();
+    private volatile long lastCleanup = System.nanoTime();
+
+    private final AtomicLong admittedRegisters = new AtomicLong();
+    private final AtomicLong rejectedRegisters = new AtomicLong();
+    private final AtomicLong admittedUpdates = new AtomicLong();
+    private final AtomicLong rejectedUpdates = new AtomicLong();
+
+    public RegistrationAdmissionControl(double globalRatePerSec, int globalBurst, double subnetRatePerSec,
+            int subnetBurst) {
+        this(globalRatePerSec, globalBurst, subnetRatePerSec, subnetBurst, DEFAULT_UPDATE_RESERVE_RATIO);
+    }
+
+    /**
+     * @param globalRatePerSec the number of requests admitted per second by the server
+     * @param globalBurst the number of requests the server can admit at once
+     * @param subnetRatePerSec the number of requests admitted per second from a subnet
+     * @param subnetBurst the number of requests a subnet can send at once
+     * @param updateReserveRatio the part of the buckets which can only be used by Updates
+     */
+    public RegistrationAdmissionControl(double globalRatePerSec, int globalBurst, double subnetRatePerSec,
+            int subnetBurst, double updateReserveRatio) {
+        Validate.isTrue(globalRatePerSec > 0, "globalRatePerSec must be greater than 0");
+        Validate.isTrue(globalBurst > 0, "globalBurst must be greater than 0");
+        Validate.isTrue(subnetRatePerSec > 0, "subnetRatePerSec must be greater than 0");
+        Validate.isTrue(subnetBurst > 0, "subnetBurst must be greater than 0");
+        Validate.isTrue(updateReserveRatio >= 0 && updateReserveRatio < 1, "updateReserveRatio must be in [0,1[");
+        this.subnetRatePerSec = subnetRatePerSec;
+        this.subnetBurst = subnetBurst;
+        this.updateReserveRatio = updateReserveRatio;
+        this.globalBucket = new TokenBucket(globalRatePerSec, globalBurst, updateReserveRatio, System.nanoTime());
+        this.overflowBucket = new TokenBucket(subnetRatePerSec, subnetBurst, updateReserveRatio, System.nanoTime());
+    }
+
+    /**
+     * Admits a Register request.
+     *
+     * @param source the address of the client
+     * @return 0 if the request is admitted, otherwise the number of seconds the client should wait before retrying.
+     */
+    public long admitRegister(InetAddress source) {
+        long retryAfter = admit(source, false);
+        (retryAfter == 0 ? admittedRegisters : rejectedRegisters).incrementAndGet();
+        return retryAfter;
+    }
+
+    /**
+     * Admits an Update request.
+     *
+     * @param source the address of the client
+     * @return 0 if the request is admitted, otherwise the number of seconds the client should wait before retrying.
+     */
+    public long admitUpdate(InetAddress source) {
+        long retryAfter = admit(source, true);
+        (retryAfter == 0 ? admittedUpdates : rejectedUpdates).incrementAndGet();
+        return retryAfter;
+    }
+
+    private long admit(InetAddress source, boolean update) {
+        long now = System.nanoTime();
+        TokenBucket subnetBucket = getSubnetBucket(source, now);
+
+        long wait = subnetBucket.tryAcquire(update, now);
+        if (wait == 0) {
+            wait = globalBucket.tryAcquire(update, now);
+            if (wait == 0) {
+                return 0;
+            }
+            // the request is not sent, give the subnet token back
+            subnetBucket.release();
+        }
+        long retryAfter = TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1);
+        return retryAfter + ThreadLocalRandom.current().nextInt(MAX_RETRY_JITTER + 1);
+    }
+
+    private TokenBucket getSubnetBucket(InetAddress source, long now) {
+        InetAddress subnet = subnetOf(source);
+        TokenBucket bucket = subnetBuckets.get(subnet);
+        if (bucket == null) {
+            if (subnetBuckets.size() >= MAX_TRACKED_SUBNETS) {
+                dropIdleSubnets(now);
+                if (subnetBuckets.size() >= MAX_TRACKED_SUBNETS) {
+                    // too many active subnets: the new ones share a bucket until others are idle
+                    return overflowBucket;
+                }
+            }
+            bucket = new TokenBucket(subnetRatePerSec, subnetBurst, updateReserveRatio, now);
+            TokenBucket previous = subnetBuckets.putIfAbsent(subnet, bucket);
+            if (previous != null) {
+                bucket = previous;
+            }
+        }
+        return bucket;
+    }
+
+    private void dropIdleSubnets(long now) {
+        if (now - lastCleanup < CLEANUP_INTERVAL) {
+            return;
+        }
+        lastCleanup = now;
+        // a full bucket behaves exactly like a new one
+        for (Iterator<TokenBucket> it = subnetBuckets.values().iterator(); it.hasNext();) {
+            if (it.next().isFull(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static InetAddress subnetOf(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        int prefix = bytes.length == 4 ? IPV4_SUBNET_PREFIX : IPV6_SUBNET_PREFIX;
+        for (int i = 0; i < bytes.length; i++) {
+            int bits = Math.max(0, Math.min(8, prefix - i * 8));
+            bytes[i] &= (byte) (0xFF << (8 - bits));
+        }
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            // cannot happen, the length of the address is unchanged
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the number of Register requests admitted.
+     */
+    public long getAdmittedRegisters() {
+        return admittedRegisters.get();
+    }
+
+    /**
+     * @return the number of Register requests rejected.
+     */
+    public long getRejectedRegisters() {
+        return rejectedRegisters.get();
+    }
+
+    /**
+     * @return the number of Update requests admitted.
+     */
+    public long getAdmittedUpdates() {
+        return admittedUpdates.get();
+    }
+
+    /**
+     * @return the number of Update requests rejected.
+     */
+    public long getRejectedUpdates() {
+        return rejectedUpdates.get();
+    }
+
+    private static class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        // Registers cannot take the last tokens, a whole token is always left to them when the bucket is full
+        private final double registerReserve;
+
+        private double tokens;
+        private long lastRefill;
+
+        public TokenBucket(double ratePerSec, int capacity, double updateReserveRatio, long now) {
+            this.tokensPerNano = ratePerSec / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.registerReserve = Math.min(capacity * updateReserveRatio, capacity - 1);
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        /**
+         * @return 0 if a token was taken, otherwise the time in nanoseconds before a token is available.
+         */
+        public synchronized long tryAcquire(boolean update, long now) {
+            refill(now);
+            double needed = update ? 1 : registerReserve + 1;
+            if (tokens >= needed) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((needed - tokens) / tokensPerNano));
+        }
+
+        public synchronized void release() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        public synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            if (now > lastRefill) {
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+                lastRefill = now;
+            }
+        }
+    }
+}
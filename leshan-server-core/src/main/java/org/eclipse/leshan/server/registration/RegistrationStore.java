@@ -20,6 +20,7 @@ import java.util.Collection;
 
 import org.eclipse.leshan.core.observation.Observation;
 import org.eclipse.leshan.server.client.Registration;
+import org.eclipse.leshan.server.client.RegistrationPage;
 import org.eclipse.leshan.server.client.RegistrationUpdate;
 
 /**
@@ -43,6 +44,16 @@ public interface RegistrationStore {
      */
     Registration updateRegistration(RegistrationUpdate update);
 
+    /**
+     * Refreshes an existing registration in place, without rewriting it, for an update which does not change any of its
+     * properties (see {@link RegistrationUpdate#isRefreshOf(Registration)}).
+     * 
+     * @param update the empty update
+     * @return the refreshed registration, or null if there is no registration with this Id or if the update changes it:
+     *         {@link #updateRegistration(RegistrationUpdate)} must be used instead.
+     */
+    Registration refreshRegistration(RegistrationUpdate update);
+
     /**
      * Get the registration by registration Id.
      * 
@@ -75,6 +86,16 @@ public interface RegistrationStore {
     @Deprecated
     Collection<Registration> getAllRegistration();
 
+    /**
+     * Get a page of registrations.
+     * 
+     * @param endpointPrefix only registrations with an endpoint starting with this prefix are returned, may be null.
+     * @param cursor the cursor returned with the previous page or null for the first page.
+     * @param limit the expected number of registrations, a store may return a bit more or less.
+     * @return the page of registrations.
+     */
+    RegistrationPage getRegistrations(String endpointPrefix, String cursor, int limit);
+
     /**
      * Remove the registration with the given registration Id
      * 
@@ -21,6 +21,7 @@ import org.eclipse.leshan.core.request.exception.RequestCanceledException;
 import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ResponseFuture;
 import org.eclipse.leshan.server.client.Registration;
 import org.eclipse.leshan.server.response.ResponseListener;
 
@@ -42,6 +43,18 @@ public interface LwM2mRequestSender {
     <T extends LwM2mResponse> void send(Registration destination, DownlinkRequest<T> request,
             ResponseCallback<T> responseCallback, ErrorCallback errorCallback);
 
+    /**
+     * Sends a Lightweight M2M request asynchronously without blocking the caller.
+     *
+     * @param destination registration meta data of a LWM2M client.
+     * @param request an instance of downlink request.
+     * @param timeout the request timeout in millisecond, if <code>null</code> only the CoAP timeout applies.
+     * @return a future completed with the response, or failed with a
+     *         {@link org.eclipse.leshan.core.request.exception.TimeoutException} if the timeout expires.
+     */
+    <T extends LwM2mResponse> ResponseFuture<T> sendAsync(Registration destination, DownlinkRequest<T> request,
+            Long timeout);
+
     /**
      * sends a Lightweight M2M request asynchronously and uses the requestTicket to correlate the response from a LWM2M
      * Client.
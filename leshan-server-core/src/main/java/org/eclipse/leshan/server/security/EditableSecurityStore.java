@@ -44,4 +44,24 @@ public interface EditableSecurityStore extends SecurityStore {
      * @return the removed {@link SecurityInfo} or <code>null</code> if no info for the end-point.
      */
     SecurityInfo remove(String endpoint);
+
+    /**
+     * Registers security information for several client end-points at once.
+     * <p>
+     * This is more efficient than calling {@link #add(SecurityInfo)} for each of them.
+     * </p>
+     * 
+     * @param infos the new security information
+     * @throws NonUniqueSecurityInfoException if some identifiers (PSK identity, RPK public key...) are not unique among
+     *         all end-points. In this case, none of the security information is added.
+     */
+    void addAll(Collection<SecurityInfo> infos) throws NonUniqueSecurityInfoException;
+
+    /**
+     * Removes the security information of several end-points at once.
+     * 
+     * @param endpoints the client end-points
+     * @return the removed {@link SecurityInfo}, end-points without security information are ignored.
+     */
+    Collection<SecurityInfo> removeAll(Collection<String> endpoints);
 }
@@ -18,6 +18,9 @@ package org.eclipse.leshan.server.bootstrap;
 import static org.junit.Assert.*;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executor;
 
 import org.eclipse.leshan.ResponseCode;
@@ -98,14 +101,82 @@ public class BootstrapHandlerTest {
         assertFalse(bsSessionManager.endWasCalled());
     }
 
+    @Test
+    public void writes_all_instances_of_an_object_at_once() {
+        final MockBootstrapSessionManager bsSessionManager = new MockBootstrapSessionManager(true);
+        final MockRequestSender requestSender = new MockRequestSender(true);
+
+        BootstrapHandler bsHandler = new BootstrapHandler(configStore(), requestSender, bsSessionManager,
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                });
+        bsHandler.bootstrap(Identity.psk(new InetSocketAddress(4242), "pskdentity"), new BootstrapRequest("enpoint"));
+
+        assertTrue(bsSessionManager.endWasCalled());
+        assertEquals(Arrays.asList("/", "/0", "/1/0", "/"), requestSender.getSentPaths());
+        assertEquals(1, bsHandler.getMetrics().getSucceededSessions());
+        assertEquals(4, bsHandler.getMetrics().getSentRequests());
+    }
+
+    @Test
+    public void writes_instances_one_by_one_if_object_write_is_refused() {
+        final MockBootstrapSessionManager bsSessionManager = new MockBootstrapSessionManager(true);
+        final MockRequestSender requestSender = new MockRequestSender(true);
+        requestSender.refuseObjectWrites = true;
+
+        BootstrapHandler bsHandler = new BootstrapHandler(configStore(), requestSender, bsSessionManager,
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                });
+        bsHandler.bootstrap(Identity.psk(new InetSocketAddress(4242), "pskdentity"), new BootstrapRequest("enpoint"));
+
+        assertTrue(bsSessionManager.endWasCalled());
+        assertEquals(Arrays.asList("/", "/0", "/0/0", "/0/1", "/1/0", "/"), requestSender.getSentPaths());
+        assertEquals(1, bsHandler.getMetrics().getObjectWriteFallbacks());
+    }
+
+    private BootstrapStore configStore() {
+        final BootstrapConfig config = new BootstrapConfig();
+        for (int i = 0; i < 2; i++) {
+            BootstrapConfig.ServerSecurity security = new BootstrapConfig.ServerSecurity();
+            security.uri = "coap://localhost:" + (5683 + i);
+            security.bootstrapServer = i == 0;
+            security.securityMode = SecurityMode.NO_SEC;
+            security.serverId = i;
+            config.security.put(i, security);
+        }
+        BootstrapConfig.ServerConfig server = new BootstrapConfig.ServerConfig();
+        server.shortId = 1;
+        config.servers.put(0, server);
+
+        return new BootstrapStore() {
+            @Override
+            public BootstrapConfig getBootstrap(String endpoint) {
+                return config;
+            }
+        };
+    }
+
     private class MockRequestSender implements LwM2mBootstrapRequestSender {
 
         private boolean success;
+        private boolean refuseObjectWrites = false;
+        private final List<String> sentPaths = new ArrayList<>();
 
         public MockRequestSender(boolean success) {
             this.success = success;
         }
 
+        public List<String> getSentPaths() {
+            return sentPaths;
+        }
+
         @Override
         public <T extends LwM2mResponse> T send(String clientEndpoint, InetSocketAddress client, boolean secure,
                 DownlinkRequest<T> request, Long timeout) throws InterruptedException {
@@ -116,12 +187,18 @@ public class BootstrapHandlerTest {
         @Override
         public <T extends LwM2mResponse> void send(String clientEndpoint, InetSocketAddress client, boolean secure,
                 DownlinkRequest<T> request, ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+            sentPaths.add(request.getPath() == null ? "/" : request.getPath().toString());
             if (request instanceof BootstrapDeleteRequest) {
                 ((ResponseCallback<BootstrapDeleteResponse>) responseCallback)
                         .onResponse(BootstrapDeleteResponse.success());
             } else if (request instanceof BootstrapWriteRequest) {
-                ((ResponseCallback<BootstrapWriteResponse>) responseCallback)
-                        .onResponse(BootstrapWriteResponse.success());
+                if (refuseObjectWrites && request.getPath().isObject()) {
+                    ((ResponseCallback<BootstrapWriteResponse>) responseCallback)
+                            .onResponse(BootstrapWriteResponse.badRequest("not supported"));
+                } else {
+                    ((ResponseCallback<BootstrapWriteResponse>) responseCallback)
+                            .onResponse(BootstrapWriteResponse.success());
+                }
             } else if (request instanceof BootstrapFinishRequest) {
                 if (this.success) {
                     ((ResponseCallback<BootstrapFinishResponse>) responseCallback)
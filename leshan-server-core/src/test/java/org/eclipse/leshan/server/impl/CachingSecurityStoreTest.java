@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.leshan.server.security.SecurityInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingSecurityStoreTest {
+
+    private InMemorySecurityStore store;
+    private CachingSecurityStore cache;
+
+    @Before
+    public void setUp() {
+        store = new InMemorySecurityStore();
+        cache = new CachingSecurityStore(store, 2, 60_000);
+    }
+
+    @Test
+    public void lookups_are_answered_from_cache() throws Exception {
+        store.add(psk("ep1", "id1"));
+
+        assertEquals("ep1", cache.getByIdentity("id1").getEndpoint());
+        assertEquals("id1", cache.getByEndpoint("ep1").getIdentity());
+        assertEquals("ep1", cache.getByIdentity("id1").getEndpoint());
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2.0 / 3, cache.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void changes_invalidate_cache() throws Exception {
+        cache.add(psk("ep1", "id1"));
+        cache.getByEndpoint("ep1");
+
+        cache.add(psk("ep1", "id2"));
+        assertEquals("id2", cache.getByEndpoint("ep1").getIdentity());
+        assertEquals("ep1", cache.getByIdentity("id2").getEndpoint());
+
+        cache.remove("ep1");
+        assertNull(cache.getByEndpoint("ep1"));
+        assertNull(cache.getByIdentity("id2"));
+    }
+
+    @Test
+    public void external_changes_are_visible_after_invalidation() throws Exception {
+        store.add(psk("ep1", "id1"));
+        cache.getByEndpoint("ep1");
+
+        store.remove("ep1");
+        assertNotNull(cache.getByEndpoint("ep1"));
+
+        cache.invalidate("ep1");
+        assertNull(cache.getByEndpoint("ep1"));
+    }
+
+    @Test
+    public void cache_is_bounded() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            store.add(psk("ep" + i, "id" + i));
+            cache.getByEndpoint("ep" + i);
+        }
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void entries_expire() throws Exception {
+        cache = new CachingSecurityStore(store, 2, 1);
+        store.add(psk("ep1", "id1"));
+        cache.getByEndpoint("ep1");
+        Thread.sleep(5);
+        cache.getByEndpoint("ep1");
+        assertEquals(0, cache.getHitCount());
+    }
+
+    private SecurityInfo psk(String endpoint, String identity) {
+        return SecurityInfo.newPreSharedKeyInfo(endpoint, identity, new byte[] { 1, 2, 3, 4 });
+    }
+}
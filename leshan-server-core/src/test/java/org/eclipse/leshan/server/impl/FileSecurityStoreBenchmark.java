@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.leshan.server.security.SecurityInfo;
+
+/**
+ * Measures the bulk provisioning throughput of {@link FileSecurityStore} and the latency of the PSK identity lookups
+ * done by DTLS handshakes while credentials are provisioned.
+ * <p>
+ * Run it as a Java application, optionally with the number of credentials to provision as argument (default 100000).
+ * </p>
+ */
+public class FileSecurityStoreBenchmark {
+
+    private static final int LOOKUP_SAMPLES = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        File dir = Files.createTempDirectory("leshan-security").toFile();
+        String file = new File(dir, "security.data").getPath();
+
+        final FileSecurityStore store = new FileSecurityStore(file);
+        // some existing credentials to look up during the provisioning
+        for (int i = 0; i < 1000; i++) {
+            store.add(psk("existing" + i));
+        }
+
+        final AtomicBoolean provisioning = new AtomicBoolean(true);
+        final long[] latencies = new long[LOOKUP_SAMPLES];
+        final int[] samples = new int[1];
+        Thread handshakes = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int i = 0;
+                while (provisioning.get() && i < LOOKUP_SAMPLES) {
+                    long start = System.nanoTime();
+                    store.getByIdentity("existing" + (i % 1000) + "-id");
+                    latencies[i++] = System.nanoTime() - start;
+                }
+                samples[0] = i;
+            }
+        });
+
+        long start = System.nanoTime();
+        handshakes.start();
+        for (int i = 0; i < count; i++) {
+            store.add(psk("client" + i));
+        }
+        long duration = System.nanoTime() - start;
+        provisioning.set(false);
+        handshakes.join();
+
+        System.out.println(String.format("provisioning: %d credentials in %d ms, %.0f credentials/s", count,
+                TimeUnit.NANOSECONDS.toMillis(duration), count / (duration / 1e9)));
+
+        long[] measured = Arrays.copyOf(latencies, samples[0]);
+        Arrays.sort(measured);
+        if (measured.length > 0) {
+            System.out.println(String.format("lookup during provisioning: %d samples, p50 %.1f us, p99 %.1f us, max %.1f us",
+                    measured.length, percentile(measured, 0.50), percentile(measured, 0.99),
+                    measured[measured.length - 1] / 1e3));
+        }
+
+        // same provisioning using batches of 1000 credentials
+        List<SecurityInfo> batch = new ArrayList<>(1000);
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            batch.add(psk("batch" + i));
+            if (batch.size() == 1000) {
+                store.addAll(batch);
+                batch.clear();
+            }
+        }
+        store.addAll(batch);
+        duration = System.nanoTime() - start;
+        System.out.println(String.format("bulk provisioning: %d credentials in %d ms, %.0f credentials/s", count,
+                TimeUnit.NANOSECONDS.toMillis(duration), count / (duration / 1e9)));
+
+        store.destroy();
+        start = System.nanoTime();
+        FileSecurityStore restored = new FileSecurityStore(file);
+        System.out.println(String.format("restart: %d credentials loaded in %d ms", restored.getAll().size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        restored.destroy();
+
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, sorted.length * percentile)] / 1e3;
+    }
+
+    private static SecurityInfo psk(String endpoint) {
+        return SecurityInfo.newPreSharedKeyInfo(endpoint, endpoint + "-id", new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+    }
+}
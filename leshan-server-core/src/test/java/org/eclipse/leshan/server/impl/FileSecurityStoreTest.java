@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.leshan.server.security.NonUniqueSecurityInfoException;
+import org.eclipse.leshan.server.security.SecurityInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileSecurityStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void changes_are_restored_from_journal() throws Exception {
+        String file = new File(folder.getRoot(), "security.data").getPath();
+        FileSecurityStore store = new FileSecurityStore(file);
+        store.add(psk("ep1"));
+        store.add(psk("ep2"));
+        store.remove("ep1");
+        store.destroy();
+
+        FileSecurityStore restored = new FileSecurityStore(file);
+        assertNull(restored.getByEndpoint("ep1"));
+        assertEquals("ep2-id", restored.getByEndpoint("ep2").getIdentity());
+        assertEquals("ep2", restored.getByIdentity("ep2-id").getEndpoint());
+        restored.destroy();
+    }
+
+    @Test
+    public void journal_is_compacted_into_snapshot() throws Exception {
+        String file = new File(folder.getRoot(), "security.data").getPath();
+        FileSecurityStore store = new FileSecurityStore(file, 1000, 10);
+        for (int i = 0; i < 10; i++) {
+            store.add(psk("ep" + i));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!journals().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(journals().isEmpty());
+        store.add(psk("ep10"));
+        store.destroy();
+
+        FileSecurityStore restored = new FileSecurityStore(file);
+        assertEquals(11, restored.getAll().size());
+        restored.destroy();
+    }
+
+    @Test
+    public void incomplete_journal_record_is_ignored() throws Exception {
+        String file = new File(folder.getRoot(), "security.data").getPath();
+        FileSecurityStore store = new FileSecurityStore(file);
+        store.add(psk("ep1"));
+        store.destroy();
+
+        // simulate a crash in the middle of a record
+        try (FileOutputStream out = new FileOutputStream(journals().get(0), true)) {
+            out.write(new byte[] { 1, 0, 0, 1, 0, 42 });
+        }
+
+        FileSecurityStore restored = new FileSecurityStore(file);
+        assertEquals(1, restored.getAll().size());
+        assertTrue(corruptFiles().isEmpty());
+        restored.add(psk("ep2"));
+        restored.destroy();
+
+        restored = new FileSecurityStore(file);
+        assertEquals(2, restored.getAll().size());
+        restored.destroy();
+    }
+
+    @Test
+    public void bulk_changes_are_restored_from_journal() throws Exception {
+        String file = new File(folder.getRoot(), "security.data").getPath();
+        FileSecurityStore store = new FileSecurityStore(file);
+        store.addAll(Arrays.asList(psk("ep1"), psk("ep2"), psk("ep3")));
+        Collection<SecurityInfo> removed = store.removeAll(Arrays.asList("ep1", "unknown", "ep3"));
+        assertEquals(2, removed.size());
+        store.destroy();
+
+        FileSecurityStore restored = new FileSecurityStore(file);
+        assertEquals(1, restored.getAll().size());
+        assertEquals("ep2", restored.getByIdentity("ep2-id").getEndpoint());
+        restored.destroy();
+    }
+
+    @Test
+    public void bulk_add_with_non_unique_identity_adds_nothing() throws Exception {
+        String file = new File(folder.getRoot(), "security.data").getPath();
+        FileSecurityStore store = new FileSecurityStore(file);
+        store.add(psk("ep1"));
+        try {
+            store.addAll(Arrays.asList(psk("ep2"),
+                    SecurityInfo.newPreSharedKeyInfo("ep3", "ep1-id", new byte[] { 1, 2, 3, 4 })));
+            fail("NonUniqueSecurityInfoException expected");
+        } catch (NonUniqueSecurityInfoException e) {
+            // expected
+        }
+        assertNull(store.getByEndpoint("ep2"));
+        assertEquals("ep1", store.getByIdentity("ep1-id").getEndpoint());
+        store.destroy();
+    }
+
+    @Test
+    public void invalid_journal_record_is_skipped() throws Exception {
+        String file = new File(folder.getRoot(), "security.data").getPath();
+        FileSecurityStore store = new FileSecurityStore(file);
+        store.add(psk("ep1"));
+        store.destroy();
+
+        // the journal record of ep2, written by another store
+        File otherFile = new File(folder.newFolder(), "security.data");
+        FileSecurityStore other = new FileSecurityStore(otherFile.getPath());
+        other.add(psk("ep2"));
+        other.destroy();
+        byte[] ep2Record = Files.readAllBytes(new File(otherFile.getPath() + ".journal.0").toPath());
+
+        // a record which cannot be deserialized followed by a valid one
+        try (FileOutputStream out = new FileOutputStream(journals().get(0), true)) {
+            out.write(new byte[] { 1, 0, 0, 0, 2, 42, 42 });
+            out.write(ep2Record);
+        }
+
+        FileSecurityStore restored = new FileSecurityStore(file);
+        assertEquals("ep1", restored.getByIdentity("ep1-id").getEndpoint());
+        assertEquals("ep2", restored.getByIdentity("ep2-id").getEndpoint());
+        // the original journal is kept for a manual recovery
+        assertEquals(1, corruptFiles().size());
+        restored.destroy();
+    }
+
+    @Test
+    public void unreadable_snapshot_is_kept_aside() throws Exception {
+        String file = new File(folder.getRoot(), "security.data").getPath();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] { 1, 2, 3, 4 });
+        }
+
+        FileSecurityStore store = new FileSecurityStore(file);
+        assertTrue(store.getAll().isEmpty());
+        store.add(psk("ep1"));
+        store.destroy();
+
+        File[] corrupt = corruptFiles().toArray(new File[0]);
+        assertEquals(1, corrupt.length);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, Files.readAllBytes(corrupt[0].toPath()));
+
+        FileSecurityStore restored = new FileSecurityStore(file);
+        assertEquals(1, restored.getAll().size());
+        restored.destroy();
+    }
+
+    private List<File> journals() {
+        return filesContaining(".journal.", ".corrupt-");
+    }
+
+    private List<File> corruptFiles() {
+        return filesContaining(".corrupt-", null);
+    }
+
+    private List<File> filesContaining(String part, String excluded) {
+        List<File> files = new ArrayList<>();
+        for (File file : folder.getRoot().listFiles()) {
+            if (file.getName().contains(part) && (excluded == null || !file.getName().contains(excluded))) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private SecurityInfo psk(String endpoint) {
+        return SecurityInfo.newPreSharedKeyInfo(endpoint, endpoint + "-id", new byte[] { 1, 2, 3, 4 });
+    }
+}
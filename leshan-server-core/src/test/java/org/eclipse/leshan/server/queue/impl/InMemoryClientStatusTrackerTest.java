@@ -23,15 +23,15 @@ import org.junit.Before;
 import org.junit.Test;
 
 /**
- * Tests whether client state transitions are handled properly in {@link ClientStatusTracker}
+ * Tests whether client state transitions are handled properly in {@link InMemoryClientStatusTracker}
  */
-public class ClientStatusTrackerTest {
+public class InMemoryClientStatusTrackerTest {
     public static final String ENDPOINT = "urn:testEndpoint";
-    private ClientStatusTracker instanceUnderTest;
+    private InMemoryClientStatusTracker instanceUnderTest;
 
     @Before
     public void setup() throws Exception {
-        instanceUnderTest = new ClientStatusTracker();
+        instanceUnderTest = new InMemoryClientStatusTracker();
     }
 
     @Test
@@ -21,6 +21,8 @@ package org.eclipse.leshan.server.queue.impl;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.List;
+
 import org.eclipse.leshan.core.node.LwM2mPath;
 import org.eclipse.leshan.core.request.AbstractDownlinkRequest;
 import org.eclipse.leshan.core.request.DownlinkRequest;
@@ -103,6 +105,34 @@ public class InMemoryMessageStoreTest {
         Assert.assertEquals(store.retrieveFirst(ENDPOINT).getRequestTicket(), "2");
     }
 
+    @Test
+    public void retrieve_first_queued_requests() {
+        fillQueue(10);
+        List<QueuedRequest> result = store.retrieveFirst(ENDPOINT, 3);
+
+        Assert.assertEquals(result.size(), 3);
+        Assert.assertEquals(result.get(0).getRequestTicket(), "1");
+        Assert.assertEquals(result.get(2).getRequestTicket(), "3");
+        Assert.assertEquals(store.getQueueSize(ENDPOINT), 10);
+    }
+
+    @Test
+    public void retrieve_first_queued_requests_from_empty_queue() {
+        Assert.assertTrue(store.retrieveFirst(ENDPOINT, 3).isEmpty());
+    }
+
+    @Test
+    public void delete_element_of_queue_by_ticket() {
+        fillQueue(10);
+        assertTrue(store.delete(ENDPOINT, "2"));
+        assertFalse(store.delete(ENDPOINT, "2"));
+
+        Assert.assertEquals(store.getQueueSize(ENDPOINT), 9);
+        List<QueuedRequest> result = store.retrieveFirst(ENDPOINT, 2);
+        Assert.assertEquals(result.get(0).getRequestTicket(), "1");
+        Assert.assertEquals(result.get(1).getRequestTicket(), "3");
+    }
+
     /**
      * Method creates a new QueuedRequest. With requestTicketID as requestTicket
      * 
@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.queue.impl;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.core.observation.Observation;
+import org.eclipse.leshan.core.request.BindingMode;
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.ReadRequest;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ReadResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ResponseFuture;
+import org.eclipse.leshan.server.client.Registration;
+import org.eclipse.leshan.server.client.RegistrationListener;
+import org.eclipse.leshan.server.client.RegistrationPage;
+import org.eclipse.leshan.server.client.RegistrationService;
+import org.eclipse.leshan.server.client.RegistrationUpdate;
+import org.eclipse.leshan.server.observation.ObservationListener;
+import org.eclipse.leshan.server.observation.ObservationService;
+import org.eclipse.leshan.server.queue.QueuedRequest;
+import org.eclipse.leshan.server.queue.WakeUpListener;
+import org.eclipse.leshan.server.request.LwM2mRequestSender;
+import org.eclipse.leshan.server.response.ResponseListener;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueuedRequestSenderTest {
+
+    private static final String ENDPOINT = "urn:client";
+
+    private Registration registration;
+    private StubRegistrationService registrationService;
+    private StubRequestSender delegate;
+    private HookedMessageStore store;
+    private List<Integer> wakeUps;
+
+    @Before
+    public void setUp() throws Exception {
+        registration = new Registration.Builder("ID", ENDPOINT, InetAddress.getLocalHost(), 10000,
+                InetSocketAddress.createUnresolved("localhost", 5683)).bindingMode(BindingMode.UQ).build();
+        registrationService = new StubRegistrationService();
+        delegate = new StubRequestSender();
+        store = new HookedMessageStore();
+        wakeUps = new ArrayList<>();
+    }
+
+    private QueuedRequestSender newSender(int maxInFlight) {
+        QueuedRequestSender sender = QueuedRequestSender.builder().setMessageStore(store)
+                .setRequestSender(delegate).setRegistrationService(registrationService)
+                .setObservationService(new StubObservationService()).setMaxInFlightRequests(maxInFlight)
+                .setProcessingExecutor(new CallerExecutor()).build();
+        sender.addWakeUpListener(new WakeUpListener() {
+            @Override
+            public void wakeUpEnded(String endpoint, int drainedRequests, boolean unreachable) {
+                wakeUps.add(drainedRequests);
+            }
+        });
+        return sender;
+    }
+
+    /** Queues the requests while the client sleeps, then wakes it up */
+    private void queueAndWakeUp(QueuedRequestSender sender, String... tickets) {
+        for (String ticket : tickets) {
+            sender.send(registration, ticket, new ReadRequest(3));
+        }
+        assertTrue(delegate.sent.isEmpty());
+        registrationService.listener.updated(
+                new RegistrationUpdate(registration.getId(), registration.getAddress(), registration.getPort(), null,
+                        null, null, null),
+                registration);
+    }
+
+    private void answer(String ticket) {
+        delegate.listener.onResponse(registration, ticket, ReadResponse.notFound());
+    }
+
+    @Test
+    public void requests_in_flight_are_limited() {
+        QueuedRequestSender sender = newSender(2);
+        queueAndWakeUp(sender, "1", "2", "3");
+
+        assertEquals(Arrays.asList("1", "2"), delegate.sent);
+
+        answer("2");
+        assertEquals(Arrays.asList("1", "2", "3"), delegate.sent);
+        answer("1");
+        answer("3");
+
+        assertEquals(Arrays.asList("1", "2", "3"), delegate.sent);
+        assertEquals(0, store.getQueueSize(ENDPOINT));
+        assertEquals(Collections.singletonList(3), wakeUps);
+    }
+
+    @Test
+    public void requests_are_sent_one_at_a_time_by_default() {
+        QueuedRequestSender sender = newSender(1);
+        queueAndWakeUp(sender, "1", "2");
+
+        assertEquals(Arrays.asList("1"), delegate.sent);
+        answer("1");
+        assertEquals(Arrays.asList("1", "2"), delegate.sent);
+    }
+
+    @Test
+    public void request_answered_while_a_batch_is_sent_is_not_sent_again() {
+        QueuedRequestSender sender = newSender(2);
+        queueAndWakeUp(sender, "1", "2", "3");
+        assertEquals(Arrays.asList("1", "2"), delegate.sent);
+
+        // "2" is answered after the task sending the next batch read [2, 3] from the queue
+        store.onNextRetrieve = new Runnable() {
+            @Override
+            public void run() {
+                answer("2");
+            }
+        };
+        answer("1");
+
+        assertEquals(Arrays.asList("1", "2", "3"), delegate.sent);
+        answer("3");
+        assertEquals(Arrays.asList("1", "2", "3"), delegate.sent);
+        assertEquals(Collections.singletonList(3), wakeUps);
+    }
+
+    /** Runs the tasks in the calling thread */
+    private static class CallerExecutor extends AbstractExecutorService {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    /** Runs an action once, right after the next read of several requests */
+    private static class HookedMessageStore extends InMemoryMessageStore {
+        private Runnable onNextRetrieve;
+
+        @Override
+        public List<QueuedRequest> retrieveFirst(String endpoint, int count) {
+            List<QueuedRequest> requests = super.retrieveFirst(endpoint, count);
+            Runnable hook = onNextRetrieve;
+            onNextRetrieve = null;
+            if (hook != null) {
+                hook.run();
+            }
+            return requests;
+        }
+    }
+
+    private class StubRegistrationService implements RegistrationService {
+        private RegistrationListener listener;
+
+        @Override
+        public Registration getById(String id) {
+            return registration;
+        }
+
+        @Override
+        public Registration getByEndpoint(String endpoint) {
+            return registration;
+        }
+
+        @Override
+        public Collection<Registration> getAllRegistrations() {
+            return Collections.singletonList(registration);
+        }
+
+        @Override
+        public RegistrationPage getRegistrations(String endpointPrefix, String cursor, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addListener(RegistrationListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void removeListener(RegistrationListener listener) {
+        }
+    }
+
+    private static class StubObservationService implements ObservationService {
+        @Override
+        public int cancelObservations(Registration registration) {
+            return 0;
+        }
+
+        @Override
+        public int cancelObservations(Registration registration, String resourcepath) {
+            return 0;
+        }
+
+        @Override
+        public void cancelObservation(Observation observation) {
+        }
+
+        @Override
+        public Set<Observation> getObservations(Registration registration) {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public void addListener(ObservationListener listener) {
+        }
+
+        @Override
+        public void removeListener(ObservationListener listener) {
+        }
+    }
+
+    /** Records the tickets of the sent requests */
+    private static class StubRequestSender implements LwM2mRequestSender {
+        private final List<String> sent = new ArrayList<>();
+        private ResponseListener listener;
+
+        @Override
+        public <T extends LwM2mResponse> void send(Registration destination, String requestTicket,
+                DownlinkRequest<T> request) {
+            sent.add(requestTicket);
+        }
+
+        @Override
+        public <T extends LwM2mResponse> T send(Registration destination, DownlinkRequest<T> request, Long timeout) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T extends LwM2mResponse> void send(Registration destination, DownlinkRequest<T> request,
+                ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T extends LwM2mResponse> ResponseFuture<T> sendAsync(Registration destination,
+                DownlinkRequest<T> request, Long timeout) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addResponseListener(ResponseListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void removeResponseListener(ResponseListener listener) {
+        }
+
+        @Override
+        public void cancelPendingRequests(Registration registration) {
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.queue.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SendingWindowTest {
+
+    private final SendingWindow window = new SendingWindow(2);
+
+    @Test
+    public void request_in_flight_cannot_be_acquired_twice() {
+        assertTrue(window.acquire("1"));
+        assertFalse(window.acquire("1"));
+        assertTrue(window.hasInFlight());
+    }
+
+    @Test
+    public void timed_out_request_can_be_acquired_again() {
+        assertTrue(window.acquire("1"));
+        window.release("1", false);
+
+        assertFalse(window.hasInFlight());
+        assertEquals(0, window.getDrained());
+        assertTrue(window.acquire("1"));
+    }
+
+    @Test
+    public void answered_request_cannot_be_acquired_again() {
+        assertTrue(window.acquire("1"));
+        window.release("1", true);
+
+        assertFalse(window.hasInFlight());
+        assertEquals(1, window.getDrained());
+        assertFalse(window.acquire("1"));
+    }
+
+    @Test
+    public void request_answered_before_being_acquired_is_refused() {
+        // the response was processed between the read of the queue and the acquisition
+        window.release("1", true);
+
+        assertFalse(window.acquire("1"));
+        assertEquals(0, window.getDrained());
+    }
+
+    @Test
+    public void closed_window_refuses_requests() {
+        assertTrue(window.acquire("1"));
+        assertTrue(window.close());
+        assertFalse(window.close());
+
+        assertTrue(window.isClosed());
+        assertFalse(window.acquire("2"));
+    }
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.registration;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+public class RegistrationAdmissionControlTest {
+
+    // buckets are not refilled during a test
+    private static final double RATE = 0.001;
+
+    @Test
+    public void subnet_budget_is_shared_by_the_subnet() throws Exception {
+        RegistrationAdmissionControl control = new RegistrationAdmissionControl(RATE, 100, RATE, 2, 0);
+
+        assertEquals(0, control.admitRegister(InetAddress.getByName("10.0.0.1")));
+        assertEquals(0, control.admitRegister(InetAddress.getByName("10.0.0.2")));
+        assertTrue(control.admitRegister(InetAddress.getByName("10.0.0.3")) > 0);
+        assertEquals(0, control.admitRegister(InetAddress.getByName("10.0.1.1")));
+        assertEquals(0, control.admitUpdate(InetAddress.getByName("2001:db8:0:1::1")));
+        assertEquals(0, control.admitUpdate(InetAddress.getByName("2001:db8:0:2::1")));
+        assertTrue(control.admitUpdate(InetAddress.getByName("2001:db8:0:3::1")) > 0);
+
+        assertEquals(3, control.getAdmittedRegisters());
+        assertEquals(1, control.getRejectedRegisters());
+        assertEquals(2, control.getAdmittedUpdates());
+        assertEquals(1, control.getRejectedUpdates());
+    }
+
+    @Test
+    public void updates_are_favoured_over_registers() throws Exception {
+        RegistrationAdmissionControl control = new RegistrationAdmissionControl(RATE, 10, RATE, 100, 0.2);
+        InetAddress source = InetAddress.getByName("10.0.0.1");
+
+        for (int i = 0; i < 8; i++) {
+            assertEquals(0, control.admitRegister(source));
+        }
+        assertTrue(control.admitRegister(source) > 0);
+
+        // the reserve is left to updates
+        assertEquals(0, control.admitUpdate(source));
+        assertEquals(0, control.admitUpdate(source));
+        assertTrue(control.admitUpdate(source) > 0);
+    }
+
+    @Test
+    public void untracked_subnets_share_an_overflow_bucket() throws Exception {
+        RegistrationAdmissionControl control = new RegistrationAdmissionControl(RATE, 1_000_000, RATE, 1, 0);
+
+        // a busy bucket for each tracked subnet: none of them is idle
+        for (int i = 0; i < RegistrationAdmissionControl.MAX_TRACKED_SUBNETS; i++) {
+            byte[] address = { (byte) (10 + (i >> 16)), (byte) (i >> 8), (byte) i, 1 };
+            InetAddress source = InetAddress.getByAddress(address);
+            assertEquals(0, control.admitUpdate(source));
+        }
+        assertTrue(control.admitUpdate(InetAddress.getByName("10.0.0.2")) > 0);
+
+        // the next subnets share a single budget
+        assertEquals(0, control.admitUpdate(InetAddress.getByName("192.168.0.1")));
+        assertTrue(control.admitUpdate(InetAddress.getByName("192.168.1.1")) > 0);
+        assertTrue(control.admitRegister(InetAddress.getByName("2001:db8::1")) > 0);
+    }
+}
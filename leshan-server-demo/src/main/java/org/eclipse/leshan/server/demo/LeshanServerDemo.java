@@ -45,6 +45,7 @@ import org.eclipse.leshan.core.node.codec.DefaultLwM2mNodeDecoder;
 import org.eclipse.leshan.core.node.codec.DefaultLwM2mNodeEncoder;
 import org.eclipse.leshan.core.node.codec.LwM2mNodeDecoder;
 import org.eclipse.leshan.server.californium.LeshanServerBuilder;
+import org.eclipse.leshan.server.californium.impl.FileRegistrationStore;
 import org.eclipse.leshan.server.californium.impl.LeshanServer;
 import org.eclipse.leshan.server.cluster.RedisRegistrationStore;
 import org.eclipse.leshan.server.cluster.RedisSecurityStore;
@@ -222,6 +223,7 @@ public class LeshanServerDemo {
         if (jedis == null) {
             // use file persistence
             securityStore = new FileSecurityStore();
+            builder.setRegistrationStore(new FileRegistrationStore());
         } else {
             // use Redis Store
             securityStore = new RedisSecurityStore(jedis);
@@ -243,10 +245,14 @@ public class LeshanServerDemo {
         // Create Servlet
         EventServlet eventServlet = new EventServlet(lwServer, lwServer.getSecureAddress().getPort());
         ServletHolder eventServletHolder = new ServletHolder(eventServlet);
+        // events are written with non-blocking I/O
+        eventServletHolder.setAsyncSupported(true);
         root.addServlet(eventServletHolder, "/event/*");
 
         ServletHolder clientServletHolder = new ServletHolder(
                 new ClientServlet(lwServer, lwServer.getSecureAddress().getPort()));
+        // device requests are answered asynchronously, no HTTP thread is blocked while waiting for the device
+        clientServletHolder.setAsyncSupported(true);
         root.addServlet(clientServletHolder, "/api/clients/*");
 
         ServletHolder securityServletHolder = new ServletHolder(
@@ -15,9 +15,17 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.demo.servlet;
 
-import java.io.IOException;
-import java.util.Collection;
+import static org.eclipse.leshan.util.Charsets.UTF_8;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -31,6 +39,7 @@ import org.eclipse.leshan.core.node.LwM2mSingleResource;
 import org.eclipse.leshan.core.request.ContentFormat;
 import org.eclipse.leshan.core.request.CreateRequest;
 import org.eclipse.leshan.core.request.DeleteRequest;
+import org.eclipse.leshan.core.request.DownlinkRequest;
 import org.eclipse.leshan.core.request.ExecuteRequest;
 import org.eclipse.leshan.core.request.ObserveRequest;
 import org.eclipse.leshan.core.request.ReadRequest;
@@ -38,15 +47,16 @@ import org.eclipse.leshan.core.request.WriteRequest;
 import org.eclipse.leshan.core.request.WriteRequest.Mode;
 import org.eclipse.leshan.core.request.exception.RequestFailedException;
 import org.eclipse.leshan.core.request.exception.ResourceAccessException;
-import org.eclipse.leshan.core.response.CreateResponse;
-import org.eclipse.leshan.core.response.DeleteResponse;
-import org.eclipse.leshan.core.response.ExecuteResponse;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
-import org.eclipse.leshan.core.response.ObserveResponse;
-import org.eclipse.leshan.core.response.ReadResponse;
-import org.eclipse.leshan.core.response.WriteResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ResponseFuture;
 import org.eclipse.leshan.server.LwM2mServer;
 import org.eclipse.leshan.server.client.Registration;
+import org.eclipse.leshan.server.client.RegistrationIterator;
+import org.eclipse.leshan.server.client.RegistrationPage;
+import org.eclipse.leshan.server.client.RegistrationService;
 import org.eclipse.leshan.server.demo.servlet.json.RegistrationSerializer;
 import org.eclipse.leshan.server.demo.servlet.json.LwM2mNodeDeserializer;
 import org.eclipse.leshan.server.demo.servlet.json.LwM2mNodeSerializer;
@@ -56,7 +66,10 @@ import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Service HTTP REST API calls.
@@ -64,6 +77,13 @@ import com.google.gson.JsonSyntaxException;
 public class ClientServlet extends HttpServlet {
 
     private static final String FORMAT_PARAM = "format";
+    private static final String PREFIX_PARAM = "prefix";
+    private static final String CURSOR_PARAM = "cursor";
+    private static final String LIMIT_PARAM = "limit";
+    private static final String FIELDS_PARAM = "fields";
+
+    // maximum number of registrations loaded at once
+    private static final int MAX_PAGE_SIZE = 500;
 
     private static final Logger LOG = LoggerFactory.getLogger(ClientServlet.class);
 
@@ -95,12 +115,7 @@ public class ClientServlet extends HttpServlet {
 
         // all registered clients
         if (req.getPathInfo() == null) {
-            Collection<Registration> registrations = server.getRegistrationService().getAllRegistrations();
-
-            String json = this.gson.toJson(registrations.toArray(new Registration[] {}));
-            resp.setContentType("application/json");
-            resp.getOutputStream().write(json.getBytes("UTF-8"));
-            resp.setStatus(HttpServletResponse.SC_OK);
+            writeRegistrations(req, resp);
             return;
         }
 
@@ -137,8 +152,7 @@ public class ClientServlet extends HttpServlet {
 
                 // create & process request
                 ReadRequest request = new ReadRequest(contentFormat, target);
-                ReadResponse cResponse = server.send(registration, request, TIMEOUT);
-                processDeviceResponse(req, resp, cResponse);
+                sendAsync(req, resp, registration, request);
             } else {
                 resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 resp.getWriter().format("No registered client with id '%s'", clientEndpoint).flush();
@@ -151,13 +165,88 @@ public class ClientServlet extends HttpServlet {
             LOG.warn(String.format("Error accessing resource %s%s.", req.getServletPath(), req.getPathInfo()), e);
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().append(e.getMessage()).flush();
-        } catch (InterruptedException e) {
-            LOG.warn("Thread Interrupted", e);
-            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            resp.getWriter().append(e.getMessage()).flush();
         }
     }
 
+    /**
+     * Streams the registered clients as JSON.
+     * <p>
+     * Supported query parameters:
+     * <ul>
+     * <li>{@code prefix}: only clients with an endpoint starting with this prefix are returned</li>
+     * <li>{@code fields}: comma separated list of the registration fields to return</li>
+     * <li>{@code limit}: maximum number of clients to return, the response is then an object containing the
+     * {@code registrations} array and the {@code next} cursor to use to get the next page (absent for the last
+     * page)</li>
+     * <li>{@code cursor}: the {@code next} cursor of the previous page</li>
+     * </ul>
+     * Without {@code limit}, the response is an array of all the clients, loaded page by page.
+     */
+    private void writeRegistrations(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String prefix = req.getParameter(PREFIX_PARAM);
+        String cursor = req.getParameter(CURSOR_PARAM);
+        Set<String> fields = null;
+        String fieldsParam = req.getParameter(FIELDS_PARAM);
+        if (fieldsParam != null) {
+            fields = new HashSet<>(Arrays.asList(StringUtils.split(fieldsParam, ',')));
+        }
+        Integer limit = null;
+        String limitParam = req.getParameter(LIMIT_PARAM);
+        if (limitParam != null) {
+            try {
+                limit = Integer.valueOf(limitParam);
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                        String.format("limit must be between 1 and %d", MAX_PAGE_SIZE));
+                return;
+            }
+        }
+
+        RegistrationService registrationService = server.getRegistrationService();
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(resp.getOutputStream(), UTF_8));
+        if (limit == null) {
+            writer.beginArray();
+            Iterator<Registration> iterator = new RegistrationIterator(registrationService, prefix, MAX_PAGE_SIZE);
+            while (iterator.hasNext()) {
+                writeRegistration(writer, iterator.next(), fields);
+            }
+            writer.endArray();
+        } else {
+            RegistrationPage page = registrationService.getRegistrations(prefix, cursor, limit);
+            writer.beginObject();
+            writer.name("registrations").beginArray();
+            for (Registration registration : page.getRegistrations()) {
+                writeRegistration(writer, registration, fields);
+            }
+            writer.endArray();
+            if (page.getNextCursor() != null) {
+                writer.name("next").value(page.getNextCursor());
+            }
+            writer.endObject();
+        }
+        writer.flush();
+    }
+
+    private void writeRegistration(JsonWriter writer, Registration registration, Set<String> fields) {
+        JsonElement json = gson.toJsonTree(registration);
+        if (fields != null && json.isJsonObject()) {
+            JsonObject projection = new JsonObject();
+            for (Entry<String, JsonElement> field : json.getAsJsonObject().entrySet()) {
+                if (fields.contains(field.getKey())) {
+                    projection.add(field.getKey(), field.getValue());
+                }
+            }
+            json = projection;
+        }
+        gson.toJson(json, writer);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -184,8 +273,7 @@ public class ClientServlet extends HttpServlet {
                 // create & process request
                 LwM2mNode node = extractLwM2mNode(target, req);
                 WriteRequest request = new WriteRequest(Mode.REPLACE, contentFormat, target, node);
-                WriteResponse cResponse = server.send(registration, request, TIMEOUT);
-                processDeviceResponse(req, resp, cResponse);
+                sendAsync(req, resp, registration, request);
             } else {
                 resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 resp.getWriter().format("No registered client with id '%s'", clientEndpoint).flush();
@@ -198,10 +286,6 @@ public class ClientServlet extends HttpServlet {
             LOG.warn(String.format("Error accessing resource %s%s.", req.getServletPath(), req.getPathInfo()), e);
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().append(e.getMessage()).flush();
-        } catch (InterruptedException e) {
-            LOG.warn("Thread Interrupted", e);
-            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            resp.getWriter().append(e.getMessage()).flush();
         }
     }
 
@@ -226,8 +310,7 @@ public class ClientServlet extends HttpServlet {
 
                     // create & process request
                     ObserveRequest request = new ObserveRequest(contentFormat, target);
-                    ObserveResponse cResponse = server.send(registration, request, TIMEOUT);
-                    processDeviceResponse(req, resp, cResponse);
+                    sendAsync(req, resp, registration, request);
                 } else {
                     resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                     resp.getWriter().format("no registered client with id '%s'", clientEndpoint).flush();
@@ -240,10 +323,6 @@ public class ClientServlet extends HttpServlet {
                 LOG.warn(String.format("Error accessing resource %s%s.", req.getServletPath(), req.getPathInfo()), e);
                 resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
                 resp.getWriter().append(e.getMessage()).flush();
-            } catch (InterruptedException e) {
-                LOG.warn("Thread Interrupted", e);
-                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                resp.getWriter().append(e.getMessage()).flush();
             }
             return;
         }
@@ -256,8 +335,7 @@ public class ClientServlet extends HttpServlet {
                 Registration registration = server.getRegistrationService().getByEndpoint(clientEndpoint);
                 if (registration != null) {
                     ExecuteRequest request = new ExecuteRequest(target, IOUtils.toString(req.getInputStream()));
-                    ExecuteResponse cResponse = server.send(registration, request, TIMEOUT);
-                    processDeviceResponse(req, resp, cResponse);
+                    sendAsync(req, resp, registration, request);
                 } else {
                     resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                     resp.getWriter().format("no registered client with id '%s'", clientEndpoint).flush();
@@ -270,10 +348,6 @@ public class ClientServlet extends HttpServlet {
                 LOG.warn(String.format("Error accessing resource %s%s.", req.getServletPath(), req.getPathInfo()), e);
                 resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
                 resp.getWriter().append(e.getMessage()).flush();
-            } catch (InterruptedException e) {
-                LOG.warn("Thread Interrupted", e);
-                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                resp.getWriter().append(e.getMessage()).flush();
             }
             return;
         }
@@ -292,8 +366,7 @@ public class ClientServlet extends HttpServlet {
                     LwM2mNode node = extractLwM2mNode(target, req);
                     if (node instanceof LwM2mObjectInstance) {
                         CreateRequest request = new CreateRequest(contentFormat, target, (LwM2mObjectInstance) node);
-                        CreateResponse cResponse = server.send(registration, request, TIMEOUT);
-                        processDeviceResponse(req, resp, cResponse);
+                        sendAsync(req, resp, registration, request);
                     } else {
                         throw new IllegalArgumentException("payload must contain an object instance");
                     }
@@ -309,10 +382,6 @@ public class ClientServlet extends HttpServlet {
                 LOG.warn(String.format("Error accessing resource %s%s.", req.getServletPath(), req.getPathInfo()), e);
                 resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
                 resp.getWriter().append(e.getMessage()).flush();
-            } catch (InterruptedException e) {
-                LOG.warn("Thread Interrupted", e);
-                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                resp.getWriter().append(e.getMessage()).flush();
             }
             return;
         }
@@ -353,8 +422,7 @@ public class ClientServlet extends HttpServlet {
             Registration registration = server.getRegistrationService().getByEndpoint(clientEndpoint);
             if (registration != null) {
                 DeleteRequest request = new DeleteRequest(target);
-                DeleteResponse cResponse = server.send(registration, request, TIMEOUT);
-                processDeviceResponse(req, resp, cResponse);
+                sendAsync(req, resp, registration, request);
             } else {
                 resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 resp.getWriter().format("no registered client with id '%s'", clientEndpoint).flush();
@@ -367,8 +435,53 @@ public class ClientServlet extends HttpServlet {
             LOG.warn(String.format("Error accessing resource %s%s.", req.getServletPath(), req.getPathInfo()), e);
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().append(e.getMessage()).flush();
-        } catch (InterruptedException e) {
-            LOG.warn("Interrupted request", e);
+        }
+    }
+
+    /**
+     * Sends the request without blocking the HTTP thread: the HTTP response is written when the device answers.
+     */
+    private <T extends LwM2mResponse> void sendAsync(final HttpServletRequest req, final HttpServletResponse resp,
+            Registration registration, DownlinkRequest<T> request) {
+        ResponseFuture<T> future = server.sendAsync(registration, request, TIMEOUT);
+        final AsyncContext asyncContext = req.startAsync();
+        future.addCallback(new ResponseCallback<T>() {
+            @Override
+            public void onResponse(T response) {
+                try {
+                    processDeviceResponse(req, resp, response);
+                } catch (IOException e) {
+                    LOG.warn("Unable to write response", e);
+                } finally {
+                    asyncContext.complete();
+                }
+            }
+        }, new ErrorCallback() {
+            @Override
+            public void onError(Exception e) {
+                try {
+                    processDeviceError(req, resp, e);
+                } catch (IOException ioe) {
+                    LOG.warn("Unable to write response", ioe);
+                } finally {
+                    asyncContext.complete();
+                }
+            }
+        });
+    }
+
+    private void processDeviceError(HttpServletRequest req, HttpServletResponse resp, Exception e)
+            throws IOException {
+        if (e instanceof TimeoutException) {
+            LOG.warn(String.format("Request %s%s timed out.", req.getServletPath(), req.getPathInfo()));
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            resp.getWriter().append("Request timeout").flush();
+        } else if (e instanceof IllegalArgumentException) {
+            LOG.warn("Invalid request or response", e);
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().append(e.getMessage()).flush();
+        } else {
+            LOG.warn(String.format("Error accessing resource %s%s.", req.getServletPath(), req.getPathInfo()), e);
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().append(e.getMessage()).flush();
         }
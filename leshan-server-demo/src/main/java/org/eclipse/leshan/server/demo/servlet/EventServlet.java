@@ -19,6 +19,8 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -38,6 +40,7 @@ import org.eclipse.leshan.server.demo.servlet.log.CoapMessageTracer;
 import org.eclipse.leshan.server.demo.utils.EventSource;
 import org.eclipse.leshan.server.demo.utils.EventSourceServlet;
 import org.eclipse.leshan.server.observation.ObservationListener;
+import org.eclipse.leshan.util.BoundedExecutorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,27 +71,52 @@ public class EventServlet extends EventSourceServlet {
 
     private final LeshanServer server;
 
-    private Set<LeshanEventSource> eventSources = Collections
+    // event sources listening to all the clients
+    private final Set<LeshanEventSource> eventSources = Collections
             .newSetFromMap(new ConcurrentHashMap<LeshanEventSource, Boolean>());
 
+    // event sources listening to one client, indexed by endpoint
+    private final ConcurrentMap<String, Set<LeshanEventSource>> eventSourcesByEndpoint = new ConcurrentHashMap<>();
+
+    // Events are serialized and dispatched out of the CoAP threads, in order
+    private final ExecutorService dispatcher = new BoundedExecutorService("leshan-event-dispatcher-%d", 1,
+            BoundedExecutorService.DEFAULT_QUEUE_CAPACITY);
+
     private final RegistrationListener registrationListener = new RegistrationListener() {
 
         @Override
-        public void registered(Registration registration) {
-            String jReg = EventServlet.this.gson.toJson(registration);
-            sendEvent(EVENT_REGISTRATION, jReg, registration.getEndpoint());
+        public void registered(final Registration registration) {
+            dispatcher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String jReg = EventServlet.this.gson.toJson(registration);
+                    sendEvent(EVENT_REGISTRATION, jReg, registration.getEndpoint());
+                    traceCoapMessages(registration.getEndpoint());
+                }
+            });
         }
 
         @Override
-        public void updated(RegistrationUpdate update, Registration updatedRegistration) {
-            String jReg = EventServlet.this.gson.toJson(updatedRegistration);
-            sendEvent(EVENT_UPDATED, jReg, updatedRegistration.getEndpoint());
+        public void updated(RegistrationUpdate update, final Registration updatedRegistration) {
+            dispatcher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String jReg = EventServlet.this.gson.toJson(updatedRegistration);
+                    sendEvent(EVENT_UPDATED, jReg, updatedRegistration.getEndpoint());
+                    traceCoapMessages(updatedRegistration.getEndpoint());
+                }
+            });
         };
 
         @Override
-        public void unregistered(Registration registration) {
-            String jReg = EventServlet.this.gson.toJson(registration);
-            sendEvent(EVENT_DEREGISTRATION, jReg, registration.getEndpoint());
+        public void unregistered(final Registration registration) {
+            dispatcher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String jReg = EventServlet.this.gson.toJson(registration);
+                    sendEvent(EVENT_DEREGISTRATION, jReg, registration.getEndpoint());
+                }
+            });
         }
     };
 
@@ -99,21 +127,27 @@ public class EventServlet extends EventSourceServlet {
         }
 
         @Override
-        public void newValue(Observation observation, ObserveResponse response) {
+        public void newValue(final Observation observation, final ObserveResponse response) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Received notification from [{}] containing value [{}]", observation.getPath(),
                         response.getContent().toString());
             }
-            Registration registration = server.getRegistrationService().getById(observation.getRegistrationId());
-
-            if (registration != null) {
-                String data = new StringBuffer("{\"ep\":\"").append(registration.getEndpoint()).append("\",\"res\":\"")
-                        .append(observation.getPath().toString()).append("\",\"val\":")
-                        .append(gson.toJson(response.getContent()))
-                        .append("}").toString();
-
-                sendEvent(EVENT_NOTIFICATION, data, registration.getEndpoint());
-            }
+            dispatcher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Registration registration = server.getRegistrationService()
+                            .getById(observation.getRegistrationId());
+
+                    if (registration != null && hasEventSources(registration.getEndpoint())) {
+                        String data = new StringBuffer("{\"ep\":\"").append(registration.getEndpoint())
+                                .append("\",\"res\":\"").append(observation.getPath().toString())
+                                .append("\",\"val\":").append(gson.toJson(response.getContent())).append("}")
+                                .toString();
+
+                        sendEvent(EVENT_NOTIFICATION, data, registration.getEndpoint());
+                    }
+                }
+            });
         }
 
         @Override
@@ -139,18 +173,76 @@ public class EventServlet extends EventSourceServlet {
         this.gson = gsonBuilder.create();
     }
 
-    private synchronized void sendEvent(String event, String data, String endpoint) {
+    @Override
+    public void destroy() {
+        super.destroy();
+        dispatcher.shutdown();
+    }
+
+    private void sendEvent(String event, String data, String endpoint) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Dispatching {} event from endpoint {}", event, endpoint);
         }
 
+        Set<LeshanEventSource> endpointEventSources = eventSourcesByEndpoint.get(endpoint);
+        if (eventSources.isEmpty() && endpointEventSources == null) {
+            // nobody is listening
+            return;
+        }
+
+        // serialize the event once for all the event sources, sending only queues it
+        byte[] frame = encodeEvent(event, data);
         for (LeshanEventSource eventSource : eventSources) {
-            if (eventSource.getEndpoint() == null || eventSource.getEndpoint().equals(endpoint)) {
-                eventSource.sentEvent(event, data);
+            eventSource.sendEvent(frame);
+        }
+        if (endpointEventSources != null) {
+            for (LeshanEventSource eventSource : endpointEventSources) {
+                eventSource.sendEvent(frame);
             }
         }
     }
 
+    private boolean hasEventSources(String endpoint) {
+        return !eventSources.isEmpty() || eventSourcesByEndpoint.containsKey(endpoint);
+    }
+
+    private synchronized void addEventSource(LeshanEventSource eventSource) {
+        String endpoint = eventSource.getEndpoint();
+        if (endpoint == null) {
+            eventSources.add(eventSource);
+            return;
+        }
+        Set<LeshanEventSource> endpointEventSources = eventSourcesByEndpoint.get(endpoint);
+        if (endpointEventSources == null) {
+            endpointEventSources = Collections.newSetFromMap(new ConcurrentHashMap<LeshanEventSource, Boolean>());
+            eventSourcesByEndpoint.put(endpoint, endpointEventSources);
+        }
+        endpointEventSources.add(eventSource);
+        traceCoapMessages(endpoint);
+    }
+
+    private synchronized void removeEventSource(LeshanEventSource eventSource) {
+        String endpoint = eventSource.getEndpoint();
+        if (endpoint == null) {
+            eventSources.remove(eventSource);
+            return;
+        }
+        Set<LeshanEventSource> endpointEventSources = eventSourcesByEndpoint.get(endpoint);
+        if (endpointEventSources != null && endpointEventSources.remove(eventSource)
+                && endpointEventSources.isEmpty()) {
+            // remove the listener if there is no more eventSources for this endpoint
+            eventSourcesByEndpoint.remove(endpoint);
+            coapMessageTracer.removeListener(endpoint);
+        }
+    }
+
+    private void traceCoapMessages(String endpoint) {
+        // (re)attach the CoAP listener as the client address may have changed
+        if (eventSourcesByEndpoint.containsKey(endpoint)) {
+            coapMessageTracer.addListener(endpoint, new ClientCoapListener(endpoint));
+        }
+    }
+
     class ClientCoapListener implements CoapMessageListener {
 
         private final String endpoint;
@@ -160,23 +252,18 @@ public class EventServlet extends EventSourceServlet {
         }
 
         @Override
-        public void trace(CoapMessage message) {
-            String coapLog = EventServlet.this.gson.toJson(message);
-            sendEvent(EVENT_COAP_LOG, coapLog, endpoint);
+        public void trace(final CoapMessage message) {
+            dispatcher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String coapLog = EventServlet.this.gson.toJson(message);
+                    sendEvent(EVENT_COAP_LOG, coapLog, endpoint);
+                }
+            });
         }
 
     }
 
-    private void cleanCoapListener(String endpoint) {
-        // remove the listener if there is no more eventSources for this endpoint
-        for (LeshanEventSource eventSource : eventSources) {
-            if (eventSource.getEndpoint() == null || eventSource.getEndpoint().equals(endpoint)) {
-                return;
-            }
-        }
-        coapMessageTracer.removeListener(endpoint);
-    }
-
     @Override
     protected EventSource newEventSource(HttpServletRequest req) {
         String endpoint = req.getParameter(QUERY_PARAM_ENDPOINT);
@@ -195,24 +282,17 @@ public class EventServlet extends EventSourceServlet {
         @Override
         public void onOpen(Emitter emitter) throws IOException {
             this.emitter = emitter;
-            eventSources.add(this);
-            if (endpoint != null) {
-                coapMessageTracer.addListener(endpoint, new ClientCoapListener(endpoint));
-            }
+            addEventSource(this);
         }
 
         @Override
         public void onClose() {
-            cleanCoapListener(endpoint);
-            eventSources.remove(this);
+            removeEventSource(this);
         }
 
-        public void sentEvent(String event, String data) {
-            try {
-                emitter.event(event, data);
-            } catch (IOException e) {
-                onClose();
-            }
+        public void sendEvent(byte[] frame) {
+            // the emitter closes the connection and calls onClose() if this client is too slow
+            emitter.send(frame);
         }
 
         public String getEndpoint() {
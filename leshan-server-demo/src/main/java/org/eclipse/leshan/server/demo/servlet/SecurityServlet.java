@@ -15,10 +15,15 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.demo.servlet;
 
+import static org.eclipse.leshan.util.Charsets.UTF_8;
+
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.security.PublicKey;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -31,6 +36,7 @@ import org.eclipse.leshan.server.demo.servlet.json.SecuritySerializer;
 import org.eclipse.leshan.server.security.EditableSecurityStore;
 import org.eclipse.leshan.server.security.NonUniqueSecurityInfoException;
 import org.eclipse.leshan.server.security.SecurityInfo;
+import org.eclipse.leshan.util.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,6 +53,9 @@ public class SecurityServlet extends HttpServlet {
 
     private static final long serialVersionUID = 1L;
 
+    // number of security infos added to the store at once during a bulk upload
+    private static final int BULK_BATCH_SIZE = 1000;
+
     private final EditableSecurityStore store;
 
     private final Gson gsonSer;
@@ -101,6 +110,88 @@ public class SecurityServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Bulk upload of security information on {@code /clients}.
+     * <p>
+     * The body is streamed and added to the store by batches of {@value #BULK_BATCH_SIZE}. Two formats are supported,
+     * depending on the request content type:
+     * <ul>
+     * <li>{@code application/x-ndjson}: one JSON security info per line, in the same format as {@link #doPut}</li>
+     * <li>{@code text/csv}: one PSK security info per line: {@code endpoint,identity,hexadecimal key}</li>
+     * </ul>
+     * Empty lines are ignored. When a line is invalid, the upload stops and the batches already added are kept.
+     * </p>
+     */
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String[] path = StringUtils.split(req.getPathInfo(), '/');
+        if (path == null || path.length != 1 || !"clients".equals(path[0])) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        String contentType = StringUtils.substringBefore(StringUtils.defaultString(req.getContentType()), ";").trim();
+        boolean csv;
+        if ("application/x-ndjson".equals(contentType)) {
+            csv = false;
+        } else if ("text/csv".equals(contentType)) {
+            csv = true;
+        } else {
+            resp.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+            return;
+        }
+
+        int added = 0;
+        int lineNumber = 0;
+        List<SecurityInfo> batch = new ArrayList<>(BULK_BATCH_SIZE);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(req.getInputStream(), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                SecurityInfo info = csv ? parseCsv(line) : gsonDes.fromJson(line, SecurityInfo.class);
+                if (info == null) {
+                    throw new JsonParseException("Security info expected");
+                }
+                batch.add(info);
+                if (batch.size() == BULK_BATCH_SIZE) {
+                    store.addAll(batch);
+                    added += batch.size();
+                    batch.clear();
+                }
+            }
+            store.addAll(batch);
+            added += batch.size();
+            LOG.debug("{} security infos added by bulk upload", added);
+
+            resp.setContentType("application/json");
+            resp.getOutputStream().write(String.format("{\"added\":%d}", added).getBytes(UTF_8));
+            resp.setStatus(HttpServletResponse.SC_OK);
+        } catch (NonUniqueSecurityInfoException e) {
+            LOG.warn("Non unique security info: " + e.getMessage());
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().format("%s (%d security infos added)", e.getMessage(), added).flush();
+        } catch (JsonParseException | IllegalArgumentException e) {
+            LOG.warn("Could not parse line {} of bulk upload", lineNumber, e);
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().format("Invalid line %d (%d security infos added)", lineNumber, added).flush();
+        } catch (RuntimeException e) {
+            LOG.warn("unexpected error for request " + req.getPathInfo(), e);
+            resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private SecurityInfo parseCsv(String line) {
+        String[] columns = StringUtils.splitPreserveAllTokens(line, ',');
+        if (columns.length != 3 || columns[0].trim().isEmpty() || columns[1].trim().isEmpty()) {
+            throw new IllegalArgumentException("Expected endpoint,identity,key");
+        }
+        return SecurityInfo.newPreSharedKeyInfo(columns[0].trim(), columns[1].trim(),
+                Hex.decodeHex(columns[2].trim().toCharArray()));
+    }
+
     /**
      * {@inheritDoc}
      */
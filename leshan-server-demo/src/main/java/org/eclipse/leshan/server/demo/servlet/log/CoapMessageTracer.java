@@ -16,8 +16,11 @@
 package org.eclipse.leshan.server.demo.servlet.log;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.californium.core.coap.EmptyMessage;
 import org.eclipse.californium.core.coap.Request;
@@ -26,38 +29,83 @@ import org.eclipse.californium.core.network.interceptors.MessageInterceptor;
 import org.eclipse.leshan.server.client.Registration;
 import org.eclipse.leshan.server.client.RegistrationService;
 
+/**
+ * A {@link MessageInterceptor} forwarding the CoAP messages exchanged with a client to a listener.
+ * <p>
+ * Listeners are indexed by client address. The index is an immutable snapshot replaced on each change, so looking up
+ * a message does not lock nor allocate, and does nothing at all when no listener is attached.
+ * </p>
+ */
 public class CoapMessageTracer implements MessageInterceptor {
 
-    private final Map<String, CoapMessageListener> listeners = new ConcurrentHashMap<>();
+    // immutable snapshots, replaced under lock
+    private volatile Map<InetAddress, ListenerEntry[]> listenersByAddress = Collections.emptyMap();
+    private final Map<String, ListenerEntry> listenersByEndpoint = new HashMap<>();
 
     private final RegistrationService registry;
 
-    public void addListener(String endpoint, CoapMessageListener listener) {
+    public CoapMessageTracer(RegistrationService registry) {
+        this.registry = registry;
+    }
+
+    public synchronized void addListener(String endpoint, CoapMessageListener listener) {
         Registration registration = registry.getByEndpoint(endpoint);
         if (registration != null) {
-            listeners.put(toStringAddress(registration.getAddress(), registration.getPort()), listener);
+            listenersByEndpoint.put(endpoint,
+                    new ListenerEntry(registration.getAddress(), registration.getPort(), listener));
+            rebuildIndex();
         }
     }
 
-    public void removeListener(String endpoint) {
-        Registration registration = registry.getByEndpoint(endpoint);
-        if (registration != null) {
-            listeners.remove(toStringAddress(registration.getAddress(), registration.getPort()));
+    public synchronized void removeListener(String endpoint) {
+        if (listenersByEndpoint.remove(endpoint) != null) {
+            rebuildIndex();
         }
     }
 
-    private String toStringAddress(InetAddress clientAddress, int clientPort) {
-        return clientAddress.toString() + ":" + clientPort;
+    private void rebuildIndex() {
+        Map<InetAddress, List<ListenerEntry>> entries = new HashMap<>();
+        for (ListenerEntry entry : listenersByEndpoint.values()) {
+            List<ListenerEntry> list = entries.get(entry.address);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                entries.put(entry.address, list);
+            }
+            list.add(entry);
+        }
+        Map<InetAddress, ListenerEntry[]> index = new HashMap<>();
+        for (Map.Entry<InetAddress, List<ListenerEntry>> entry : entries.entrySet()) {
+            index.put(entry.getKey(), entry.getValue().toArray(new ListenerEntry[entry.getValue().size()]));
+        }
+        listenersByAddress = index.isEmpty() ? Collections.<InetAddress, ListenerEntry[]> emptyMap() : index;
     }
 
-    public CoapMessageTracer(RegistrationService registry) {
-        this.registry = registry;
+    /**
+     * @return true if at least one listener is attached.
+     */
+    public boolean hasListeners() {
+        return !listenersByAddress.isEmpty();
+    }
+
+    private CoapMessageListener getListener(InetAddress address, int port) {
+        Map<InetAddress, ListenerEntry[]> index = listenersByAddress;
+        if (index.isEmpty()) {
+            return null;
+        }
+        ListenerEntry[] entries = index.get(address);
+        if (entries != null) {
+            for (ListenerEntry entry : entries) {
+                if (entry.port == port) {
+                    return entry.listener;
+                }
+            }
+        }
+        return null;
     }
 
     @Override
     public void sendRequest(Request request) {
-        CoapMessageListener listener = listeners.get(toStringAddress(request.getDestination(),
-                request.getDestinationPort()));
+        CoapMessageListener listener = getListener(request.getDestination(), request.getDestinationPort());
         if (listener != null) {
             listener.trace(new CoapMessage(request, false));
         }
@@ -65,8 +113,7 @@ public class CoapMessageTracer implements MessageInterceptor {
 
     @Override
     public void sendResponse(Response response) {
-        CoapMessageListener listener = listeners.get(toStringAddress(response.getDestination(),
-                response.getDestinationPort()));
+        CoapMessageListener listener = getListener(response.getDestination(), response.getDestinationPort());
         if (listener != null) {
             listener.trace(new CoapMessage(response, false));
         }
@@ -74,8 +121,7 @@ public class CoapMessageTracer implements MessageInterceptor {
 
     @Override
     public void sendEmptyMessage(EmptyMessage message) {
-        CoapMessageListener listener = listeners.get(toStringAddress(message.getDestination(),
-                message.getDestinationPort()));
+        CoapMessageListener listener = getListener(message.getDestination(), message.getDestinationPort());
         if (listener != null) {
             listener.trace(new CoapMessage(message, false));
         }
@@ -83,29 +129,37 @@ public class CoapMessageTracer implements MessageInterceptor {
 
     @Override
     public void receiveRequest(Request request) {
-        CoapMessageListener listener = listeners.get(toStringAddress(request.getSource(), request.getSourcePort()));
+        CoapMessageListener listener = getListener(request.getSource(), request.getSourcePort());
         if (listener != null) {
             listener.trace(new CoapMessage(request, true));
         }
-
     }
 
     @Override
     public void receiveResponse(Response response) {
-        CoapMessageListener listener = listeners.get(toStringAddress(response.getSource(), response.getSourcePort()));
+        CoapMessageListener listener = getListener(response.getSource(), response.getSourcePort());
         if (listener != null) {
             listener.trace(new CoapMessage(response, true));
         }
-
     }
 
     @Override
     public void receiveEmptyMessage(EmptyMessage message) {
-        CoapMessageListener listener = listeners.get(toStringAddress(message.getSource(), message.getSourcePort()));
+        CoapMessageListener listener = getListener(message.getSource(), message.getSourcePort());
         if (listener != null) {
             listener.trace(new CoapMessage(message, true));
         }
-
     }
 
+    private static class ListenerEntry {
+        private final InetAddress address;
+        private final int port;
+        private final CoapMessageListener listener;
+
+        public ListenerEntry(InetAddress address, int port, CoapMessageListener listener) {
+            this.address = address;
+            this.port = port;
+            this.listener = listener;
+        }
+    }
 }
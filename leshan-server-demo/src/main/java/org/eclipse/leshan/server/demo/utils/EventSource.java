@@ -129,6 +129,17 @@ public interface EventSource {
          */
         public void comment(String comment) throws IOException;
 
+        /**
+         * <p>
+         * Queues an already encoded event (see {@link EventSourceServlet#encodeEvent(String, String)}). This never
+         * blocks: if too many events are waiting to be written, the connection is closed.
+         * </p>
+         *
+         * @param frame the encoded event
+         * @return false if the connection is closed
+         */
+        public boolean send(byte[] frame);
+
         /**
          * <p>
          * Closes this event source connection.
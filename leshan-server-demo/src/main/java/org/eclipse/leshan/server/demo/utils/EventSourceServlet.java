@@ -17,25 +17,30 @@
 package org.eclipse.leshan.server.demo.utils;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.util.Enumeration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.eclipse.jetty.continuation.Continuation;
-import org.eclipse.jetty.continuation.ContinuationSupport;
-
 /**
  * <p>
  * A servlet that implements the <a href="http://www.w3.org/TR/eventsource/">event source protocol</a>, also known as
@@ -52,7 +57,15 @@ import org.eclipse.jetty.continuation.ContinuationSupport;
  * <ul>
  * <li><code>heartBeatPeriod</code>, that specifies the heartbeat period, in seconds, used to check whether the
  * connection has been closed by the client; defaults to 10 seconds.</li>
+ * <li><code>maxQueuedEvents</code>, that specifies the maximum number of events waiting to be written to a client;
+ * when a client is slower than that, its connection is closed (browsers reconnect automatically); defaults to
+ * 1000.</li>
  * </ul>
+ * <p>
+ * Events are written with non-blocking servlet I/O: emitting an event never blocks the caller, it is only queued for
+ * this connection. {@link EventSource.Emitter#send(byte[])} allows to encode an event once with
+ * {@link #encodeEvent(String, String)} and to send it to many connections.
+ * </p>
  *
  * <p>
  * NOTE: there is currently no support for <code>last-event-id</code>.
@@ -77,12 +90,16 @@ public abstract class EventSourceServlet extends HttpServlet {
 
     private ScheduledExecutorService scheduler;
     private int heartBeatPeriod = 10;
+    private int maxQueuedEvents = 1000;
 
     @Override
     public void init() throws ServletException {
         String heartBeatPeriodParam = getServletConfig().getInitParameter("heartBeatPeriod");
         if (heartBeatPeriodParam != null)
             heartBeatPeriod = Integer.parseInt(heartBeatPeriodParam);
+        String maxQueuedEventsParam = getServletConfig().getInitParameter("maxQueuedEvents");
+        if (maxQueuedEventsParam != null)
+            maxQueuedEvents = Integer.parseInt(maxQueuedEventsParam);
         scheduler = Executors.newSingleThreadScheduledExecutor();
     }
 
@@ -103,12 +120,11 @@ public abstract class EventSourceServlet extends HttpServlet {
                     response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
                 } else {
                     respond(request, response);
-                    Continuation continuation = ContinuationSupport.getContinuation(request);
-                    // Infinite timeout because the continuation is never resumed,
+                    AsyncContext asyncContext = request.startAsync();
+                    // Infinite timeout because the request is never resumed,
                     // but only completed on close
-                    continuation.setTimeout(0L);
-                    continuation.suspend(response);
-                    EventSourceEmitter emitter = new EventSourceEmitter(eventSource, continuation);
+                    asyncContext.setTimeout(0L);
+                    EventSourceEmitter emitter = new EventSourceEmitter(eventSource, asyncContext);
                     emitter.scheduleHeartBeat();
                     open(eventSource, emitter);
                 }
@@ -135,89 +151,182 @@ public abstract class EventSourceServlet extends HttpServlet {
         eventSource.onOpen(emitter);
     }
 
-    protected class EventSourceEmitter implements EventSource.Emitter, Runnable {
+    /**
+     * Encodes a named event with data, ready to be sent with {@link EventSource.Emitter#send(byte[])}.
+     */
+    public static byte[] encodeEvent(String name, String data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length() + 64);
+        try {
+            if (name != null) {
+                out.write(EVENT_FIELD);
+                out.write(name.getBytes(UTF_8));
+                out.write(CRLF);
+            }
+            BufferedReader reader = new BufferedReader(new StringReader(data));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                out.write(DATA_FIELD);
+                out.write(line.getBytes(UTF_8));
+                out.write(CRLF);
+            }
+            out.write(CRLF);
+        } catch (IOException e) {
+            // cannot happen with in-memory streams
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeComment(String comment) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(comment.length() + 8);
+        try {
+            out.write(COMMENT_FIELD);
+            out.write(comment.getBytes(UTF_8));
+            out.write(CRLF);
+            out.write(CRLF);
+        } catch (IOException e) {
+            // cannot happen with in-memory streams
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    protected class EventSourceEmitter implements EventSource.Emitter, Runnable, WriteListener, AsyncListener {
         private final EventSource eventSource;
-        private final Continuation continuation;
+        private final AsyncContext asyncContext;
         private final ServletOutputStream output;
+        private final BlockingQueue<byte[]> queue;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
         private Future<?> heartBeat;
-        private boolean closed;
+        private boolean flushNeeded;
 
-        public EventSourceEmitter(EventSource eventSource, Continuation continuation) throws IOException {
+        public EventSourceEmitter(EventSource eventSource, AsyncContext asyncContext) throws IOException {
             this.eventSource = eventSource;
-            this.continuation = continuation;
-            this.output = continuation.getServletResponse().getOutputStream();
+            this.asyncContext = asyncContext;
+            this.queue = new ArrayBlockingQueue<>(maxQueuedEvents);
+            this.output = asyncContext.getResponse().getOutputStream();
+            asyncContext.addListener(this);
+            // switch to non-blocking I/O, onWritePossible() is called as soon as data can be written
+            this.output.setWriteListener(this);
         }
 
         public void event(String name, String data) throws IOException {
-            synchronized (this) {
-                output.write(EVENT_FIELD);
-                output.write(name.getBytes(UTF_8.name()));
-                output.write(CRLF);
-                data(data);
-            }
+            send(encodeEvent(name, data));
         }
 
         public void data(String data) throws IOException {
-            synchronized (this) {
-                BufferedReader reader = new BufferedReader(new StringReader(data));
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.write(DATA_FIELD);
-                    output.write(line.getBytes(UTF_8.name()));
-                    output.write(CRLF);
-                }
-                output.write(CRLF);
-                flush();
-            }
+            send(encodeEvent(null, data));
         }
 
         public void comment(String comment) throws IOException {
-            synchronized (this) {
-                output.write(COMMENT_FIELD);
-                output.write(comment.getBytes(UTF_8.name()));
-                output.write(CRLF);
-                output.write(CRLF);
-                flush();
+            send(encodeComment(comment));
+        }
+
+        public boolean send(byte[] frame) {
+            if (closed.get()) {
+                return false;
+            }
+            if (!queue.offer(frame)) {
+                // this client does not read fast enough: drop it rather than buffering without limit
+                closeAndNotify();
+                return false;
             }
+            write();
+            return true;
         }
 
-        public void run() {
-            // If the other peer closes the connection, the first
-            // flush() should generate a TCP reset that is detected
-            // on the second flush()
+        @Override
+        public void onWritePossible() throws IOException {
+            write();
+        }
+
+        /**
+         * Writes queued frames until the queue is empty or the output is not ready. In that case the container calls
+         * {@link #onWritePossible()} later, so this never blocks.
+         */
+        private void write() {
             try {
                 synchronized (this) {
-                    output.write('\r');
-                    flush();
-                    output.write('\n');
-                    flush();
+                    while (!closed.get() && output.isReady()) {
+                        byte[] frame = queue.poll();
+                        if (frame != null) {
+                            output.write(frame);
+                            flushNeeded = true;
+                        } else if (flushNeeded) {
+                            flushNeeded = false;
+                            output.flush();
+                        } else {
+                            return;
+                        }
+                    }
                 }
-                // We could write, reschedule heartbeat
-                scheduleHeartBeat();
-            } catch (IOException x) {
+            } catch (IOException | IllegalStateException x) {
                 // The other peer closed the connection
-                close();
-                eventSource.onClose();
+                closeAndNotify();
             }
         }
 
-        protected void flush() throws IOException {
-            continuation.getServletResponse().flushBuffer();
+        @Override
+        public void onError(Throwable t) {
+            closeAndNotify();
+        }
+
+        public void run() {
+            // The heartbeat detects the connections closed by the other peer:
+            // the write fails or the queue of a dead connection fills up.
+            if (send(CRLF)) {
+                // We could write, reschedule heartbeat
+                scheduleHeartBeat();
+            }
         }
 
         public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release();
+            }
+        }
+
+        private void closeAndNotify() {
+            // only the thread closing the connection notifies the event source, once
+            if (closed.compareAndSet(false, true)) {
+                release();
+                eventSource.onClose();
+            }
+        }
+
+        private void release() {
             synchronized (this) {
-                closed = true;
-                heartBeat.cancel(false);
+                if (heartBeat != null)
+                    heartBeat.cancel(false);
             }
-            continuation.complete();
+            queue.clear();
+            asyncContext.complete();
         }
 
         private void scheduleHeartBeat() {
             synchronized (this) {
-                if (!closed)
+                if (!closed.get())
                     heartBeat = scheduler.schedule(this, heartBeatPeriod, TimeUnit.SECONDS);
             }
         }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            closeAndNotify();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            closeAndNotify();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+            closeAndNotify();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+        }
     }
 }
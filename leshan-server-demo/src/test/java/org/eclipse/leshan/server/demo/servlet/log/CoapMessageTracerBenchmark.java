@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.demo.servlet.log;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.leshan.server.demo.servlet.log.CoapMessageTracerTest.StaticRegistrationService;
+
+/**
+ * Measures the overhead of {@link CoapMessageTracer} on the CoAP stack, at a rate of 50k messages per second.
+ * <p>
+ * Run it as a Java application: it prints the time and the bytes allocated per message when no listener is attached,
+ * and when only other clients are traced.
+ * </p>
+ */
+public class CoapMessageTracerBenchmark {
+
+    private static final int MESSAGES_PER_SECOND = 50_000;
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        StaticRegistrationService registry = new StaticRegistrationService();
+        for (int i = 1; i <= 100; i++) {
+            registry.add("client" + i, InetAddress.getByName("10.0.1." + i), 5683);
+        }
+
+        // messages of 1000 distinct clients
+        Request[] messages = new Request[1000];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = CoapMessageTracerTest.newRequest("10.0.2." + (i % 250), 40000 + i);
+        }
+
+        CoapMessageTracer tracer = new CoapMessageTracer(registry);
+        run("no listener", tracer, messages);
+
+        for (int i = 1; i <= 100; i++) {
+            tracer.addListener("client" + i, new CoapMessageListener() {
+                @Override
+                public void trace(CoapMessage message) {
+                }
+            });
+        }
+        run("100 listeners on other clients", tracer, messages);
+    }
+
+    private static void run(String name, CoapMessageTracer tracer, Request[] messages) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            trace(tracer, messages);
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            trace(tracer, messages);
+        }
+        long duration = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        long count = (long) ITERATIONS * MESSAGES_PER_SECOND;
+        double nsPerMessage = (double) duration / count;
+        System.out.println(String.format("%s: %.1f ns/msg, %.2f bytes/msg, %.3f%% of one core at %d msgs/s", name,
+                nsPerMessage, (double) allocated / count,
+                nsPerMessage * MESSAGES_PER_SECOND / TimeUnit.SECONDS.toNanos(1) * 100, MESSAGES_PER_SECOND));
+    }
+
+    /**
+     * Traces one second worth of messages (as fast as possible).
+     */
+    private static void trace(CoapMessageTracer tracer, Request[] messages) {
+        for (int i = 0; i < MESSAGES_PER_SECOND; i++) {
+            Request message = messages[i % messages.length];
+            if ((i & 1) == 0) {
+                tracer.receiveRequest(message);
+            } else {
+                tracer.sendRequest(message);
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
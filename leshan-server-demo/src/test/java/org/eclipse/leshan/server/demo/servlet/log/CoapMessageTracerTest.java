@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.demo.servlet.log;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.leshan.server.client.Registration;
+import org.eclipse.leshan.server.client.RegistrationListener;
+import org.eclipse.leshan.server.client.RegistrationPage;
+import org.eclipse.leshan.server.client.RegistrationService;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoapMessageTracerTest {
+
+    private StaticRegistrationService registry;
+    private CoapMessageTracer tracer;
+    private List<CoapMessage> traced;
+
+    @Before
+    public void setUp() throws UnknownHostException {
+        registry = new StaticRegistrationService();
+        registry.add("client1", InetAddress.getByName("10.0.0.1"), 5683);
+        registry.add("client2", InetAddress.getByName("10.0.0.1"), 5684);
+        tracer = new CoapMessageTracer(registry);
+        traced = new ArrayList<>();
+    }
+
+    @Test
+    public void no_message_traced_without_listener() throws UnknownHostException {
+        tracer.receiveRequest(newRequest("10.0.0.1", 5683));
+
+        assertFalse(tracer.hasListeners());
+    }
+
+    @Test
+    public void message_from_traced_client_is_forwarded() throws UnknownHostException {
+        tracer.addListener("client1", new CoapMessageListener() {
+            @Override
+            public void trace(CoapMessage message) {
+                traced.add(message);
+            }
+        });
+
+        tracer.receiveRequest(newRequest("10.0.0.1", 5683));
+        tracer.receiveRequest(newRequest("10.0.0.1", 5684));
+        tracer.receiveRequest(newRequest("10.0.0.2", 5683));
+
+        assertEquals(1, traced.size());
+        assertTrue(traced.get(0).incoming);
+    }
+
+    @Test
+    public void message_is_not_forwarded_after_listener_removal() throws UnknownHostException {
+        tracer.addListener("client1", new CoapMessageListener() {
+            @Override
+            public void trace(CoapMessage message) {
+                traced.add(message);
+            }
+        });
+        tracer.removeListener("client1");
+
+        tracer.receiveRequest(newRequest("10.0.0.1", 5683));
+
+        assertFalse(tracer.hasListeners());
+        assertTrue(traced.isEmpty());
+    }
+
+    static Request newRequest(String address, int port) throws UnknownHostException {
+        Request request = Request.newGet();
+        request.setSource(InetAddress.getByName(address));
+        request.setSourcePort(port);
+        request.setDestination(InetAddress.getByName(address));
+        request.setDestinationPort(port);
+        return request;
+    }
+
+    static class StaticRegistrationService implements RegistrationService {
+        private final Map<String, Registration> registrations = new HashMap<>();
+
+        public void add(String endpoint, InetAddress address, int port) {
+            registrations.put(endpoint, new Registration.Builder(endpoint + "_id", endpoint, address, port,
+                    new InetSocketAddress(5683)).build());
+        }
+
+        @Override
+        public Registration getById(String id) {
+            return null;
+        }
+
+        @Override
+        public Registration getByEndpoint(String endpoint) {
+            return registrations.get(endpoint);
+        }
+
+        @Override
+        public Collection<Registration> getAllRegistrations() {
+            return registrations.values();
+        }
+
+        @Override
+        public RegistrationPage getRegistrations(String endpointPrefix, String cursor, int limit) {
+            return new RegistrationPage(new ArrayList<>(registrations.values()), null);
+        }
+
+        @Override
+        public void addListener(RegistrationListener listener) {
+        }
+
+        @Override
+        public void removeListener(RegistrationListener listener) {
+        }
+    }
+}